@@ -1,5 +1,6 @@
 package com.innvo;
 
+import com.innvo.config.ApplicationProperties;
 import com.innvo.config.Constants;
 import com.innvo.config.DefaultProfileUtil;
 import com.innvo.config.JHipsterProperties;
@@ -29,7 +30,7 @@ import java.util.Collection;
 
 @ComponentScan
 @EnableAutoConfiguration(exclude = { MetricFilterAutoConfiguration.class, MetricRepositoryAutoConfiguration.class })
-@EnableConfigurationProperties({ JHipsterProperties.class, LiquibaseProperties.class })
+@EnableConfigurationProperties({ JHipsterProperties.class, ApplicationProperties.class, LiquibaseProperties.class })
 @EnableEurekaClient
 @EnableJms
 public class AdapEventApp {
@@ -38,7 +39,7 @@ public class AdapEventApp {
 
     @Bean
 	public Topic topic() {
-		return new ActiveMQTopic("AlertMessageQueue");
+		return new ActiveMQTopic(Constants.ALERT_TOPIC);
 	}
     
     @Inject
@@ -0,0 +1,874 @@
+package com.innvo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Properties specific to adap_event.
+ *
+ * <p>
+ *     Properties are configured in the application.yml file.
+ * </p>
+ */
+@ConfigurationProperties(prefix = "application", ignoreUnknownFields = false)
+public class ApplicationProperties {
+
+    private final RecentEvents recentEvents = new RecentEvents();
+
+    private final TimeIndex timeIndex = new TimeIndex();
+
+    private final Deduplication deduplication = new Deduplication();
+
+    private final LiveStream liveStream = new LiveStream();
+
+    private final ColdStorage coldStorage = new ColdStorage();
+
+    private final Elasticsearch elasticsearch = new Elasticsearch();
+
+    private final SearchCache searchCache = new SearchCache();
+
+    private final RateLimit rateLimit = new RateLimit();
+
+    private final ConcurrencyLimit concurrencyLimit = new ConcurrencyLimit();
+
+    private final JdbcInstrumentation jdbcInstrumentation = new JdbcInstrumentation();
+
+    private final Replicas replicas = new Replicas();
+
+    private final Sharding sharding = new Sharding();
+
+    private final EntityCache entityCache = new EntityCache();
+
+    private final RequestCoalescing requestCoalescing = new RequestCoalescing();
+
+    private final ResponseCache responseCache = new ResponseCache();
+
+    public RecentEvents getRecentEvents() {
+        return recentEvents;
+    }
+
+    public TimeIndex getTimeIndex() {
+        return timeIndex;
+    }
+
+    public Deduplication getDeduplication() {
+        return deduplication;
+    }
+
+    public LiveStream getLiveStream() {
+        return liveStream;
+    }
+
+    public ColdStorage getColdStorage() {
+        return coldStorage;
+    }
+
+    public Elasticsearch getElasticsearch() {
+        return elasticsearch;
+    }
+
+    public SearchCache getSearchCache() {
+        return searchCache;
+    }
+
+    public RateLimit getRateLimit() {
+        return rateLimit;
+    }
+
+    public ConcurrencyLimit getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    public JdbcInstrumentation getJdbcInstrumentation() {
+        return jdbcInstrumentation;
+    }
+
+    public Replicas getReplicas() {
+        return replicas;
+    }
+
+    public Sharding getSharding() {
+        return sharding;
+    }
+
+    public EntityCache getEntityCache() {
+        return entityCache;
+    }
+
+    public RequestCoalescing getRequestCoalescing() {
+        return requestCoalescing;
+    }
+
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    public static class RecentEvents {
+
+        private boolean enabled = false;
+
+        private int retentionMinutes = 60;
+
+        private int bucketSeconds = 60;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getRetentionMinutes() {
+            return retentionMinutes;
+        }
+
+        public void setRetentionMinutes(int retentionMinutes) {
+            this.retentionMinutes = retentionMinutes;
+        }
+
+        public int getBucketSeconds() {
+            return bucketSeconds;
+        }
+
+        public void setBucketSeconds(int bucketSeconds) {
+            this.bucketSeconds = bucketSeconds;
+        }
+    }
+
+    public static class TimeIndex {
+
+        private boolean enabled = false;
+
+        private int bufferSize = 65536;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getBufferSize() {
+            return bufferSize;
+        }
+
+        public void setBufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+        }
+    }
+
+    public static class Deduplication {
+
+        private boolean enabled = false;
+
+        private List<String> fields = new ArrayList<>(Arrays.asList("startdatetime", "name", "description", "domain"));
+
+        private int windowMinutes = 60;
+
+        private long expectedEvents = 1000000;
+
+        private double falsePositiveProbability = 0.01;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public List<String> getFields() {
+            return fields;
+        }
+
+        public void setFields(List<String> fields) {
+            this.fields = fields;
+        }
+
+        public int getWindowMinutes() {
+            return windowMinutes;
+        }
+
+        public void setWindowMinutes(int windowMinutes) {
+            this.windowMinutes = windowMinutes;
+        }
+
+        public long getExpectedEvents() {
+            return expectedEvents;
+        }
+
+        public void setExpectedEvents(long expectedEvents) {
+            this.expectedEvents = expectedEvents;
+        }
+
+        public double getFalsePositiveProbability() {
+            return falsePositiveProbability;
+        }
+
+        public void setFalsePositiveProbability(double falsePositiveProbability) {
+            this.falsePositiveProbability = falsePositiveProbability;
+        }
+    }
+
+    public static class LiveStream {
+
+        private boolean enabled = false;
+
+        private int maxSubscribers = 5000;
+
+        private int subscriberQueueSize = 256;
+
+        private int writerThreads = 4;
+
+        private int timeoutMinutes = 30;
+
+        private int heartbeatSeconds = 20;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxSubscribers() {
+            return maxSubscribers;
+        }
+
+        public void setMaxSubscribers(int maxSubscribers) {
+            this.maxSubscribers = maxSubscribers;
+        }
+
+        public int getSubscriberQueueSize() {
+            return subscriberQueueSize;
+        }
+
+        public void setSubscriberQueueSize(int subscriberQueueSize) {
+            this.subscriberQueueSize = subscriberQueueSize;
+        }
+
+        public int getWriterThreads() {
+            return writerThreads;
+        }
+
+        public void setWriterThreads(int writerThreads) {
+            this.writerThreads = writerThreads;
+        }
+
+        public int getTimeoutMinutes() {
+            return timeoutMinutes;
+        }
+
+        public void setTimeoutMinutes(int timeoutMinutes) {
+            this.timeoutMinutes = timeoutMinutes;
+        }
+
+        public int getHeartbeatSeconds() {
+            return heartbeatSeconds;
+        }
+
+        public void setHeartbeatSeconds(int heartbeatSeconds) {
+            this.heartbeatSeconds = heartbeatSeconds;
+        }
+    }
+
+    public static class ColdStorage {
+
+        private boolean enabled = false;
+
+        private String directory = "cold-storage";
+
+        private int retentionDays = 365;
+
+        private int segmentSize = 100000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public int getRetentionDays() {
+            return retentionDays;
+        }
+
+        public void setRetentionDays(int retentionDays) {
+            this.retentionDays = retentionDays;
+        }
+
+        public int getSegmentSize() {
+            return segmentSize;
+        }
+
+        public void setSegmentSize(int segmentSize) {
+            this.segmentSize = segmentSize;
+        }
+    }
+
+    public static class Elasticsearch {
+
+        private boolean migrationEnabled = false;
+
+        private int bulkActions = 1000;
+
+        private int bulkSizeMb = 5;
+
+        private int bulkConcurrentRequests = 4;
+
+        public boolean isMigrationEnabled() {
+            return migrationEnabled;
+        }
+
+        public void setMigrationEnabled(boolean migrationEnabled) {
+            this.migrationEnabled = migrationEnabled;
+        }
+
+        public int getBulkActions() {
+            return bulkActions;
+        }
+
+        public void setBulkActions(int bulkActions) {
+            this.bulkActions = bulkActions;
+        }
+
+        public int getBulkSizeMb() {
+            return bulkSizeMb;
+        }
+
+        public void setBulkSizeMb(int bulkSizeMb) {
+            this.bulkSizeMb = bulkSizeMb;
+        }
+
+        public int getBulkConcurrentRequests() {
+            return bulkConcurrentRequests;
+        }
+
+        public void setBulkConcurrentRequests(int bulkConcurrentRequests) {
+            this.bulkConcurrentRequests = bulkConcurrentRequests;
+        }
+    }
+
+    public static class SearchCache {
+
+        private boolean enabled = false;
+
+        private int timeToLiveSeconds = 10;
+
+        private int maxEntries = 10000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getTimeToLiveSeconds() {
+            return timeToLiveSeconds;
+        }
+
+        public void setTimeToLiveSeconds(int timeToLiveSeconds) {
+            this.timeToLiveSeconds = timeToLiveSeconds;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+    }
+
+    public static class RateLimit {
+
+        private boolean enabled = false;
+
+        private int syncMillis = 1000;
+
+        private final Limit ingest = new Limit(100, 200);
+
+        private final Limit search = new Limit(20, 40);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getSyncMillis() {
+            return syncMillis;
+        }
+
+        public void setSyncMillis(int syncMillis) {
+            this.syncMillis = syncMillis;
+        }
+
+        public Limit getIngest() {
+            return ingest;
+        }
+
+        public Limit getSearch() {
+            return search;
+        }
+
+        public static class Limit {
+
+            private double requestsPerSecond;
+
+            private int burst;
+
+            public Limit(double requestsPerSecond, int burst) {
+                this.requestsPerSecond = requestsPerSecond;
+                this.burst = burst;
+            }
+
+            public double getRequestsPerSecond() {
+                return requestsPerSecond;
+            }
+
+            public void setRequestsPerSecond(double requestsPerSecond) {
+                this.requestsPerSecond = requestsPerSecond;
+            }
+
+            public int getBurst() {
+                return burst;
+            }
+
+            public void setBurst(int burst) {
+                this.burst = burst;
+            }
+        }
+    }
+
+    public static class ConcurrencyLimit {
+
+        private boolean enabled = false;
+
+        private final Limit read = new Limit(50, 10, 400);
+
+        private final Limit write = new Limit(20, 4, 100);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Limit getRead() {
+            return read;
+        }
+
+        public Limit getWrite() {
+            return write;
+        }
+
+        public static class Limit {
+
+            private int initialLimit;
+
+            private int minLimit;
+
+            private int maxLimit;
+
+            public Limit(int initialLimit, int minLimit, int maxLimit) {
+                this.initialLimit = initialLimit;
+                this.minLimit = minLimit;
+                this.maxLimit = maxLimit;
+            }
+
+            public int getInitialLimit() {
+                return initialLimit;
+            }
+
+            public void setInitialLimit(int initialLimit) {
+                this.initialLimit = initialLimit;
+            }
+
+            public int getMinLimit() {
+                return minLimit;
+            }
+
+            public void setMinLimit(int minLimit) {
+                this.minLimit = minLimit;
+            }
+
+            public int getMaxLimit() {
+                return maxLimit;
+            }
+
+            public void setMaxLimit(int maxLimit) {
+                this.maxLimit = maxLimit;
+            }
+        }
+    }
+
+    public static class JdbcInstrumentation {
+
+        private boolean enabled = false;
+
+        private long slowQueryMillis = 200;
+
+        private int slowQueryBufferSize = 100;
+
+        private int repeatedStatementThreshold = 10;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getSlowQueryMillis() {
+            return slowQueryMillis;
+        }
+
+        public void setSlowQueryMillis(long slowQueryMillis) {
+            this.slowQueryMillis = slowQueryMillis;
+        }
+
+        public int getSlowQueryBufferSize() {
+            return slowQueryBufferSize;
+        }
+
+        public void setSlowQueryBufferSize(int slowQueryBufferSize) {
+            this.slowQueryBufferSize = slowQueryBufferSize;
+        }
+
+        public int getRepeatedStatementThreshold() {
+            return repeatedStatementThreshold;
+        }
+
+        public void setRepeatedStatementThreshold(int repeatedStatementThreshold) {
+            this.repeatedStatementThreshold = repeatedStatementThreshold;
+        }
+    }
+
+    public static class Replicas {
+
+        private boolean enabled = false;
+
+        private double maxLagSeconds = 5;
+
+        private long lagCheckMillis = 1000;
+
+        // PostgreSQL 9.x: 0 when all the received WAL is replayed, else the age of the last replayed transaction
+        private String lagQuery = "SELECT CASE WHEN pg_last_xlog_receive_location() = pg_last_xlog_replay_location() "
+            + "THEN 0 ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) END";
+
+        private List<Pool> pools = new ArrayList<>();
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getMaxLagSeconds() {
+            return maxLagSeconds;
+        }
+
+        public void setMaxLagSeconds(double maxLagSeconds) {
+            this.maxLagSeconds = maxLagSeconds;
+        }
+
+        public long getLagCheckMillis() {
+            return lagCheckMillis;
+        }
+
+        public void setLagCheckMillis(long lagCheckMillis) {
+            this.lagCheckMillis = lagCheckMillis;
+        }
+
+        public String getLagQuery() {
+            return lagQuery;
+        }
+
+        public void setLagQuery(String lagQuery) {
+            this.lagQuery = lagQuery;
+        }
+
+        public List<Pool> getPools() {
+            return pools;
+        }
+
+        public void setPools(List<Pool> pools) {
+            this.pools = pools;
+        }
+
+        public static class Pool {
+
+            private String url;
+
+            private String username;
+
+            private String password;
+
+            private int maximumPoolSize = 10;
+
+            public String getUrl() {
+                return url;
+            }
+
+            public void setUrl(String url) {
+                this.url = url;
+            }
+
+            public String getUsername() {
+                return username;
+            }
+
+            public void setUsername(String username) {
+                this.username = username;
+            }
+
+            public String getPassword() {
+                return password;
+            }
+
+            public void setPassword(String password) {
+                this.password = password;
+            }
+
+            public int getMaximumPoolSize() {
+                return maximumPoolSize;
+            }
+
+            public void setMaximumPoolSize(int maximumPoolSize) {
+                this.maximumPoolSize = maximumPoolSize;
+            }
+        }
+    }
+
+    public static class Sharding {
+
+        private boolean enabled = false;
+
+        private int copyBatchSize = 1000;
+
+        private long freezeGraceMillis = 2000;
+
+        private List<Shard> shards = new ArrayList<>();
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getCopyBatchSize() {
+            return copyBatchSize;
+        }
+
+        public void setCopyBatchSize(int copyBatchSize) {
+            this.copyBatchSize = copyBatchSize;
+        }
+
+        public long getFreezeGraceMillis() {
+            return freezeGraceMillis;
+        }
+
+        public void setFreezeGraceMillis(long freezeGraceMillis) {
+            this.freezeGraceMillis = freezeGraceMillis;
+        }
+
+        public List<Shard> getShards() {
+            return shards;
+        }
+
+        public void setShards(List<Shard> shards) {
+            this.shards = shards;
+        }
+
+        public static class Shard {
+
+            private String name;
+
+            private String schema;
+
+            // The database of the primary data source, when not set
+            private String url;
+
+            private String username;
+
+            private String password;
+
+            private int maximumPoolSize = 10;
+
+            public String getName() {
+                return name;
+            }
+
+            public void setName(String name) {
+                this.name = name;
+            }
+
+            public String getSchema() {
+                return schema;
+            }
+
+            public void setSchema(String schema) {
+                this.schema = schema;
+            }
+
+            public String getUrl() {
+                return url;
+            }
+
+            public void setUrl(String url) {
+                this.url = url;
+            }
+
+            public String getUsername() {
+                return username;
+            }
+
+            public void setUsername(String username) {
+                this.username = username;
+            }
+
+            public String getPassword() {
+                return password;
+            }
+
+            public void setPassword(String password) {
+                this.password = password;
+            }
+
+            public int getMaximumPoolSize() {
+                return maximumPoolSize;
+            }
+
+            public void setMaximumPoolSize(int maximumPoolSize) {
+                this.maximumPoolSize = maximumPoolSize;
+            }
+        }
+    }
+
+    public static class EntityCache {
+
+        private boolean enabled = false;
+
+        private int timeToLiveSeconds = 300;
+
+        private int maxEntries = 10000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getTimeToLiveSeconds() {
+            return timeToLiveSeconds;
+        }
+
+        public void setTimeToLiveSeconds(int timeToLiveSeconds) {
+            this.timeToLiveSeconds = timeToLiveSeconds;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+    }
+
+    public static class RequestCoalescing {
+
+        private boolean enabled = false;
+
+        private List<String> paths = new ArrayList<>(Arrays.asList(
+            "/api/eventobject/*", "/api/events/{id:[0-9]+}", "/api/alerts/{id:[0-9]+}"));
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public List<String> getPaths() {
+            return paths;
+        }
+
+        public void setPaths(List<String> paths) {
+            this.paths = paths;
+        }
+    }
+
+    public static class ResponseCache {
+
+        private boolean enabled = false;
+
+        private int timeToLiveSeconds = 60;
+
+        private int maxEntries = 5000;
+
+        private int maxBytes = 262144;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getTimeToLiveSeconds() {
+            return timeToLiveSeconds;
+        }
+
+        public void setTimeToLiveSeconds(int timeToLiveSeconds) {
+            this.timeToLiveSeconds = timeToLiveSeconds;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        public int getMaxBytes() {
+            return maxBytes;
+        }
+
+        public void setMaxBytes(int maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+    }
+}
@@ -7,6 +7,12 @@ import com.hazelcast.instance.HazelcastInstanceFactory;
 import com.hazelcast.config.MapConfig;
 import com.hazelcast.config.EvictionPolicy;
 import com.hazelcast.config.MaxSizeConfig;
+import com.hazelcast.config.NearCacheConfig;
+import com.innvo.service.AlertService;
+import com.innvo.service.EventService;
+import com.innvo.service.ResponseCache;
+import com.innvo.service.SearchResultCache;
+import com.innvo.service.ShardService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
@@ -56,7 +62,7 @@ public class CacheConfiguration {
     }
 
     @Bean
-    public HazelcastInstance hazelcastInstance(JHipsterProperties jHipsterProperties) {
+    public HazelcastInstance hazelcastInstance(JHipsterProperties jHipsterProperties, ApplicationProperties applicationProperties) {
         log.debug("Configuring Hazelcast");
         Config config = new Config();
         config.setInstanceName("adap_event");
@@ -92,6 +98,11 @@ public class CacheConfiguration {
         
         config.getMapConfigs().put("default", initializeDefaultMapConfig());
         config.getMapConfigs().put("com.innvo.domain.*", initializeDomainMapConfig(jHipsterProperties));
+        config.getMapConfigs().put(SearchResultCache.MAP_NAME, initializeSearchResultsMapConfig(applicationProperties));
+        config.getMapConfigs().put(EventService.CACHE_NAME, initializeEntityMapConfig(EventService.CACHE_NAME, applicationProperties));
+        config.getMapConfigs().put(AlertService.CACHE_NAME, initializeEntityMapConfig(AlertService.CACHE_NAME, applicationProperties));
+        config.getMapConfigs().put(ResponseCache.MAP_NAME, initializeResponseMapConfig(applicationProperties));
+        config.getMapConfigs().put(ShardService.MAP_NAME, initializeShardMapConfig());
 
         hazelcastInstance = HazelcastInstanceFactory.newHazelcastInstance(config);
 
@@ -143,6 +154,65 @@ public class CacheConfiguration {
         return mapConfig;
     }
 
+    private MapConfig initializeSearchResultsMapConfig(ApplicationProperties applicationProperties) {
+        MapConfig mapConfig = new MapConfig(SearchResultCache.MAP_NAME);
+
+        // Entries of older generations are never read again, and are left to expire
+        mapConfig.setTimeToLiveSeconds(applicationProperties.getSearchCache().getTimeToLiveSeconds());
+        mapConfig.setEvictionPolicy(EvictionPolicy.LRU);
+        mapConfig.setMaxSizeConfig(new MaxSizeConfig(applicationProperties.getSearchCache().getMaxEntries(),
+            MaxSizeConfig.MaxSizePolicy.PER_NODE));
+        mapConfig.setBackupCount(0);
+        return mapConfig;
+    }
+
+    private MapConfig initializeEntityMapConfig(String name, ApplicationProperties applicationProperties) {
+        MapConfig mapConfig = new MapConfig(name);
+
+        mapConfig.setTimeToLiveSeconds(applicationProperties.getEntityCache().getTimeToLiveSeconds());
+        mapConfig.setEvictionPolicy(EvictionPolicy.LRU);
+        mapConfig.setMaxSizeConfig(new MaxSizeConfig(applicationProperties.getEntityCache().getMaxEntries(),
+            MaxSizeConfig.MaxSizePolicy.PER_NODE));
+        mapConfig.setBackupCount(0);
+
+        // Hits are served from a copy on each member, which the evictions of any member invalidate
+        NearCacheConfig nearCacheConfig = new NearCacheConfig();
+        nearCacheConfig.setInvalidateOnChange(true);
+        nearCacheConfig.setTimeToLiveSeconds(applicationProperties.getEntityCache().getTimeToLiveSeconds());
+        nearCacheConfig.setMaxSize(applicationProperties.getEntityCache().getMaxEntries());
+        nearCacheConfig.setEvictionPolicy(EvictionPolicy.LRU.name());
+        mapConfig.setNearCacheConfig(nearCacheConfig);
+        return mapConfig;
+    }
+
+    private MapConfig initializeResponseMapConfig(ApplicationProperties applicationProperties) {
+        MapConfig mapConfig = new MapConfig(ResponseCache.MAP_NAME);
+
+        // Pages of older watermarks are never read again, and are left to expire
+        mapConfig.setTimeToLiveSeconds(applicationProperties.getResponseCache().getTimeToLiveSeconds());
+        mapConfig.setEvictionPolicy(EvictionPolicy.LRU);
+        mapConfig.setMaxSizeConfig(new MaxSizeConfig(applicationProperties.getResponseCache().getMaxEntries(),
+            MaxSizeConfig.MaxSizePolicy.PER_NODE));
+        mapConfig.setBackupCount(0);
+
+        NearCacheConfig nearCacheConfig = new NearCacheConfig();
+        nearCacheConfig.setInvalidateOnChange(true);
+        nearCacheConfig.setTimeToLiveSeconds(applicationProperties.getResponseCache().getTimeToLiveSeconds());
+        nearCacheConfig.setMaxSize(applicationProperties.getResponseCache().getMaxEntries());
+        nearCacheConfig.setEvictionPolicy(EvictionPolicy.LRU.name());
+        mapConfig.setNearCacheConfig(nearCacheConfig);
+        return mapConfig;
+    }
+
+    private MapConfig initializeShardMapConfig() {
+        MapConfig mapConfig = new MapConfig(ShardService.MAP_NAME);
+
+        // Every request is routed with it: it survives the loss of a member, and is never evicted
+        mapConfig.setBackupCount(1);
+        mapConfig.setEvictionPolicy(EvictionPolicy.NONE);
+        return mapConfig;
+    }
+
     /**
     * @return the unique instance.
     */
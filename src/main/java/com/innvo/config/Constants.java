@@ -21,6 +21,11 @@ public final class Constants {
 
     public static final String SYSTEM_ACCOUNT = "system";
 
+    // JMS topic of the alerts sent as text by POST /alerttojms
+    public static final String ALERT_TOPIC = "AlertMessageQueue";
+    // JMS topic of the new alerts in JSON, which feeds the live stream
+    public static final String ALERT_JSON_TOPIC = "AlertJsonQueue";
+
     private Constants() {
     }
 }
@@ -1,5 +1,9 @@
 package com.innvo.config;
 
+import com.innvo.config.jdbc.InstrumentedDataSourcePostProcessor;
+import com.innvo.config.jdbc.ReplicaRoutingPostProcessor;
+import com.innvo.config.jdbc.ShardRoutingPostProcessor;
+import com.innvo.config.jdbc.StatementRecorder;
 import com.innvo.config.liquibase.AsyncSpringLiquibase;
 
 import com.codahale.metrics.MetricRegistry;
@@ -11,6 +15,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.cache.CacheManager;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceBuilder;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
 import org.springframework.boot.autoconfigure.liquibase.LiquibaseProperties;
@@ -91,6 +96,31 @@ public class DatabaseConfiguration {
         return liquibase;
     }
 
+    @Bean
+    @ConditionalOnProperty(name = "application.jdbc-instrumentation.enabled")
+    public StatementRecorder statementRecorder(ApplicationProperties applicationProperties) {
+        log.debug("Configuring JDBC statement instrumentation");
+        return new StatementRecorder(metricRegistry, applicationProperties.getJdbcInstrumentation());
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "application.jdbc-instrumentation.enabled")
+    public static InstrumentedDataSourcePostProcessor instrumentedDataSourcePostProcessor() {
+        return new InstrumentedDataSourcePostProcessor();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "application.replicas.enabled")
+    public static ReplicaRoutingPostProcessor replicaRoutingPostProcessor() {
+        return new ReplicaRoutingPostProcessor();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "application.sharding.enabled")
+    public static ShardRoutingPostProcessor shardRoutingPostProcessor() {
+        return new ShardRoutingPostProcessor();
+    }
+
     @Bean
     public Hibernate4Module hibernate4Module() {
         return new Hibernate4Module();
@@ -1,13 +1,26 @@
 package com.innvo.config;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
+import com.innvo.config.elasticsearch.ElasticsearchIndexMigration;
+import com.innvo.service.ShardService;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
 import org.springframework.data.elasticsearch.core.EntityMapper;
+import org.springframework.data.elasticsearch.core.FacetedPage;
+import org.springframework.data.elasticsearch.core.FacetedPageImpl;
+import org.springframework.data.elasticsearch.core.SearchResultMapper;
 import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
@@ -17,12 +30,47 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 @AutoConfigureAfter(value = { JacksonConfiguration.class })
 public class ElasticSearchConfiguration {
 
+    /**
+     * Brings the event and alert indices, and those of the shards, to their latest definition before the
+     * repositories use them.
+     */
     @Bean
-    public ElasticsearchTemplate elasticsearchTemplate(Client client, Jackson2ObjectMapperBuilder jackson2ObjectMapperBuilder) {
-        return new ElasticsearchTemplate(client, new CustomEntityMapper(jackson2ObjectMapperBuilder.createXmlMapper(false).build()));
+    public ElasticsearchIndexMigration elasticsearchIndexMigration(Client client, ApplicationProperties applicationProperties) {
+        List<String> aliases = new ArrayList<>();
+        aliases.add(ShardService.EVENT);
+        aliases.add(ShardService.ALERT);
+        if (applicationProperties.getSharding().isEnabled()) {
+            for (ApplicationProperties.Sharding.Shard shard : applicationProperties.getSharding().getShards()) {
+                aliases.add(ShardService.indexOf(ShardService.EVENT, shard.getName()));
+                aliases.add(ShardService.indexOf(ShardService.ALERT, shard.getName()));
+            }
+        }
+        ElasticsearchIndexMigration migration = new ElasticsearchIndexMigration(client, aliases.toArray(new String[aliases.size()]));
+        migration.setShouldRun(applicationProperties.getElasticsearch().isMigrationEnabled());
+        return migration;
+    }
+
+    @Bean
+    public CustomEntityMapper customEntityMapper(Jackson2ObjectMapperBuilder jackson2ObjectMapperBuilder) {
+        return new CustomEntityMapper(jackson2ObjectMapperBuilder.createXmlMapper(false).build());
+    }
+
+    // Takes the migration as a dependency, so that the repositories find the indices it created
+    @Bean
+    public ElasticsearchTemplate elasticsearchTemplate(Client client, CustomEntityMapper customEntityMapper,
+                                                       ElasticsearchIndexMigration elasticsearchIndexMigration) {
+        return new ElasticsearchTemplate(client, customEntityMapper);
     }
 
-    public class CustomEntityMapper implements EntityMapper {
+    /**
+     * Maps the documents with the object mapper of the application, Afterburner included.
+     *
+     * <p>
+     * The template only maps through strings; {@link #mapToBytes} and {@link #mapResults} write and read the bytes
+     * of the documents directly, for the bulk indexing and the searches of {@link ShardService}.
+     * </p>
+     */
+    public static class CustomEntityMapper implements EntityMapper, SearchResultMapper {
 
         private ObjectMapper objectMapper;
 
@@ -41,5 +89,36 @@ public class ElasticSearchConfiguration {
         public <T> T mapToObject(String source, Class<T> clazz) throws IOException {
             return objectMapper.readValue(source, clazz);
         }
+
+        /**
+         * @return the UTF-8 JSON source of the document
+         */
+        public byte[] mapToBytes(Object object) throws IOException {
+            return objectMapper.writeValueAsBytes(object);
+        }
+
+        public <T> T mapToObject(BytesReference source, Class<T> clazz) throws IOException {
+            if (source.hasArray()) {
+                return objectMapper.readValue(source.array(), source.arrayOffset(), source.length(), clazz);
+            }
+            return objectMapper.readValue(source.streamInput(), clazz);
+        }
+
+        @Override
+        public <T> FacetedPage<T> mapResults(SearchResponse response, Class<T> clazz, Pageable pageable) {
+            SearchHits hits = response.getHits();
+            List<T> content = new ArrayList<>(hits.getHits().length);
+            for (SearchHit hit : hits) {
+                if (hit.isSourceEmpty()) {
+                    continue;
+                }
+                try {
+                    content.add(mapToObject(hit.getSourceRef(), clazz));
+                } catch (IOException e) {
+                    throw new ElasticsearchException("Failed to map the source of document " + hit.getId(), e);
+                }
+            }
+            return new FacetedPageImpl<>(content, pageable, hits.getTotalHits());
+        }
     }
 }
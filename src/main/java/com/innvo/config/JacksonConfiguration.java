@@ -1,11 +1,18 @@
 package com.innvo.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
 import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateDeserializer;
-import com.fasterxml.jackson.datatype.jsr310.ser.ZonedDateTimeSerializer;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+import com.innvo.domain.util.FixedIsoZonedDateTimeDeserializer;
+import com.innvo.domain.util.FixedIsoZonedDateTimeSerializer;
+import com.innvo.web.rest.converter.FramedStreamCodec;
+import com.innvo.web.rest.converter.SmileHttpMessageConverter;
 
 import java.time.LocalDate;
 import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
 
@@ -36,14 +43,44 @@ public class JacksonConfiguration {
     //To be replaced by a Jackson2ObjectMapperBuilderCustomizer in Spring-boot 1.4
     @PostConstruct
     public void postConstruct() {
-        this.builder.serializers(new ZonedDateTimeSerializer(ISO_FIXED_FORMAT));
+        this.builder.serializers(new FixedIsoZonedDateTimeSerializer(ISO_FIXED_FORMAT));
+        this.builder.deserializerByType(ZonedDateTime.class, new FixedIsoZonedDateTimeDeserializer());
         //Will not be needed anymore with SB 1.4 (Jackson > 2.7.1)
         this.builder.deserializerByType(LocalDate.class, new LocalDateDeserializer(ISO_DATE_OPTIONAL_TIME));
     }
 
+    /**
+     * Replaces the reflective accessors of the beans by generated bytecode, for the REST, Smile and Elasticsearch
+     * mappers, which all get the modules of the context from the builder. Static, as the builder of this
+     * configuration is built with it.
+     */
+    @Bean
+    public static AfterburnerModule afterburnerModule() {
+        return new AfterburnerModule();
+    }
+
     @Bean
     public ObjectMapper jacksonObjectMapper() {
         return this.builder.createXmlMapper(false).build();
     }
 
+    /**
+     * Smile encoding of the same object model, for clients sending or accepting application/x-jackson-smile.
+     */
+    @Bean
+    public SmileHttpMessageConverter smileHttpMessageConverter() {
+        SmileFactory smileFactory = new SmileFactory();
+        // Back-references repeated short values, which dictionary-encodes low-cardinality fields
+        // such as status or domain in arrays of events
+        smileFactory.enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES);
+        ObjectMapper smileObjectMapper = new ObjectMapper(smileFactory);
+        this.builder.configure(smileObjectMapper);
+        return new SmileHttpMessageConverter(smileObjectMapper);
+    }
+
+    @Bean
+    public FramedStreamCodec framedStreamCodec(SmileHttpMessageConverter smileHttpMessageConverter) {
+        return new FramedStreamCodec(smileHttpMessageConverter.getObjectMapper());
+    }
+
 }
@@ -1,6 +1,9 @@
 package com.innvo.config;
 
+import com.innvo.config.metrics.SearchCacheMetrics;
 import com.innvo.config.metrics.SpectatorLogMetricWriter;
+import com.innvo.config.metrics.StringInternPoolMetrics;
+import com.innvo.domain.util.StringInternPool;
 import com.netflix.spectator.api.Registry;
 import org.springframework.boot.actuate.autoconfigure.ExportMetricReader;
 import org.springframework.boot.actuate.autoconfigure.ExportMetricWriter;
@@ -38,6 +41,8 @@ public class MetricsConfiguration extends MetricsConfigurerAdapter {
     private static final String PROP_METRIC_REG_JVM_THREADS = "jvm.threads";
     private static final String PROP_METRIC_REG_JVM_FILES = "jvm.files";
     private static final String PROP_METRIC_REG_JVM_BUFFERS = "jvm.buffers";
+    private static final String PROP_METRIC_REG_SEARCH_CACHE = "search.cache";
+    private static final String PROP_METRIC_REG_STRING_POOL = "string.pool";
 
     private final Logger log = LoggerFactory.getLogger(MetricsConfiguration.class);
 
@@ -60,6 +65,13 @@ public class MetricsConfiguration extends MetricsConfigurerAdapter {
         return healthCheckRegistry;
     }
 
+    @Bean
+    public SearchCacheMetrics searchCacheMetrics() {
+        SearchCacheMetrics searchCacheMetrics = new SearchCacheMetrics();
+        metricRegistry.register(PROP_METRIC_REG_SEARCH_CACHE, searchCacheMetrics);
+        return searchCacheMetrics;
+    }
+
     @PostConstruct
     public void init() {
         log.debug("Registering JVM gauges");
@@ -68,6 +80,7 @@ public class MetricsConfiguration extends MetricsConfigurerAdapter {
         metricRegistry.register(PROP_METRIC_REG_JVM_THREADS, new ThreadStatesGaugeSet());
         metricRegistry.register(PROP_METRIC_REG_JVM_FILES, new FileDescriptorRatioGauge());
         metricRegistry.register(PROP_METRIC_REG_JVM_BUFFERS, new BufferPoolMetricSet(ManagementFactory.getPlatformMBeanServer()));
+        metricRegistry.register(PROP_METRIC_REG_STRING_POOL, new StringInternPoolMetrics(StringInternPool.shared()));
         if (jHipsterProperties.getMetrics().getJmx().isEnabled()) {
             log.debug("Initializing Metrics JMX reporting");
             JmxReporter jmxReporter = JmxReporter.forRegistry(metricRegistry).build();
@@ -13,10 +13,18 @@ package com.innvo.config;
   import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
   import org.springframework.security.config.http.SessionCreationPolicy;
   import org.springframework.security.data.repository.query.SecurityEvaluationContextExtension;
+  import org.springframework.security.web.access.intercept.FilterSecurityInterceptor;
+  import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
+  import com.codahale.metrics.MetricRegistry;
   import com.innvo.security.AuthoritiesConstants;
   import com.innvo.security.jwt.JWTConfigurer;
   import com.innvo.security.jwt.TokenProvider;
+  import com.innvo.service.RateLimiter;
+  import com.innvo.service.ResponseCache;
+  import com.innvo.web.filter.RateLimitingFilter;
+  import com.innvo.web.filter.RequestCoalescingFilter;
+  import com.innvo.web.filter.ResponseCachingFilter;
 
   @Configuration
   @EnableWebSecurity
@@ -26,6 +34,18 @@ package com.innvo.config;
       @Inject
       private TokenProvider tokenProvider;
 
+      @Inject
+      private RateLimiter rateLimiter;
+
+      @Inject
+      private ResponseCache responseCache;
+
+      @Inject
+      private ApplicationProperties applicationProperties;
+
+      @Inject
+      private MetricRegistry metricRegistry;
+
       @Override
       public void configure(WebSecurity web) throws Exception {
           web.ignoring()
@@ -58,6 +78,18 @@ package com.innvo.config;
           .and()
               .apply(securityConfigurerAdapter());
 
+          // After the JWT filter, which is added before this one, so that the subject is known
+          http.addFilterAfter(new RateLimitingFilter(rateLimiter), UsernamePasswordAuthenticationFilter.class);
+          // After the authorization, so that only the requests which were allowed share a response;
+          // the cached responses are looked up before the identical requests in flight
+          if (responseCache.isEnabled()) {
+              http.addFilterAfter(new ResponseCachingFilter(responseCache, applicationProperties.getResponseCache().getMaxBytes()),
+                  FilterSecurityInterceptor.class);
+          }
+          if (applicationProperties.getRequestCoalescing().isEnabled()) {
+              http.addFilterAfter(new RequestCoalescingFilter(applicationProperties.getRequestCoalescing(), metricRegistry),
+                  FilterSecurityInterceptor.class);
+          }
       }
 
       private JWTConfigurer securityConfigurerAdapter() {
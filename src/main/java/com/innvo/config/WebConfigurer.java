@@ -4,6 +4,9 @@ import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.servlet.InstrumentedFilter;
 import com.codahale.metrics.servlets.MetricsServlet;
 import com.hazelcast.core.HazelcastInstance;
+import com.innvo.config.jdbc.StatementRecorder;
+import com.innvo.web.filter.ConcurrencyLimitingFilter;
+import com.innvo.web.filter.StatementCountingFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -37,9 +40,15 @@ public class WebConfigurer implements ServletContextInitializer, EmbeddedServlet
     @Inject
     private JHipsterProperties jHipsterProperties;
 
+    @Inject
+    private ApplicationProperties applicationProperties;
+
     @Autowired(required = false)
     private MetricRegistry metricRegistry;
 
+    @Autowired(required = false)
+    private StatementRecorder statementRecorder;
+
     // Hazelcast instance is injected to force its initialization before the Servlet filter uses it.
     @Inject
     private HazelcastInstance hazelcastInstance;
@@ -51,6 +60,12 @@ public class WebConfigurer implements ServletContextInitializer, EmbeddedServlet
         }
         EnumSet<DispatcherType> disps = EnumSet.of(DispatcherType.REQUEST, DispatcherType.FORWARD, DispatcherType.ASYNC);
         initMetrics(servletContext, disps);
+        if (applicationProperties.getConcurrencyLimit().isEnabled()) {
+            initConcurrencyLimitingFilter(servletContext);
+        }
+        if (statementRecorder != null) {
+            initStatementCountingFilter(servletContext);
+        }
         log.info("Web application fully configured");
     }
 
@@ -93,6 +108,31 @@ public class WebConfigurer implements ServletContextInitializer, EmbeddedServlet
         metricsAdminServlet.setLoadOnStartup(2);
     }
 
+    /**
+     * Initializes the concurrency limiting filter, after the Metrics filter so that the rejected requests are counted.
+     */
+    private void initConcurrencyLimitingFilter(ServletContext servletContext) {
+        log.debug("Registering Concurrency Limiting Filter");
+        FilterRegistration.Dynamic concurrencyLimitingFilter = servletContext.addFilter("concurrencyLimitingFilter",
+            new ConcurrencyLimitingFilter(applicationProperties.getConcurrencyLimit(), metricRegistry));
+
+        // Requests only: the asynchronous dispatches of a request were already admitted
+        concurrencyLimitingFilter.addMappingForUrlPatterns(EnumSet.of(DispatcherType.REQUEST), true, "/api/*");
+        concurrencyLimitingFilter.setAsyncSupported(true);
+    }
+
+    /**
+     * Initializes the statement counting filter, which reports the N+1 selects of the API requests.
+     */
+    private void initStatementCountingFilter(ServletContext servletContext) {
+        log.debug("Registering Statement Counting Filter");
+        FilterRegistration.Dynamic statementCountingFilter = servletContext.addFilter("statementCountingFilter",
+            new StatementCountingFilter(statementRecorder));
+
+        statementCountingFilter.addMappingForUrlPatterns(EnumSet.of(DispatcherType.REQUEST), true, "/api/*");
+        statementCountingFilter.setAsyncSupported(true);
+    }
+
     @Bean
     @ConditionalOnProperty(name = "jhipster.cors.allowed-origins")
     public CorsFilter corsFilter() {
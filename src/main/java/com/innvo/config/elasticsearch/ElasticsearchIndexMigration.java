@@ -0,0 +1,208 @@
+package com.innvo.config.elasticsearch;
+
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.metadata.AliasMetaData;
+import org.elasticsearch.common.collect.ImmutableOpenMap;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.StopWatch;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Creates and migrates the Elasticsearch indices from versioned definitions, the way Liquibase manages the
+ * database schema.
+ * <p>
+ *     The definitions, settings and mappings of an index, are in config/elasticsearch/&lt;name&gt;/v&lt;n&gt;.json.
+ *     The index of version n is named &lt;name&gt;_v&lt;n&gt; and is used through the &lt;name&gt; alias, which is
+ *     what the entities are mapped to. At startup, when the alias does not point to the latest version, the
+ *     latest index is created, the documents of the previous one are copied into it with a scan, and the alias
+ *     is switched to it before the previous index is deleted. An index created without a definition, named
+ *     after the alias, is migrated the same way. The aliases of the shards of an index, named
+ *     &lt;name&gt;_&lt;shard&gt;, share the definitions of &lt;name&gt;.
+ * </p>
+ * <p>
+ *     The indices have no _all field: the fields searched by a query string without a field name are copied to
+ *     the text field, the default field of the index. From version 2, these are the name, description, category,
+ *     status and domain; other fields must be named in the query, as in type:HTTP.
+ * </p>
+ * <p>
+ *     Documents written to the previous index while it is being copied may be lost, so migrations should run
+ *     while the other members of the cluster are stopped, as for Liquibase.
+ * </p>
+ */
+public class ElasticsearchIndexMigration implements InitializingBean {
+
+    private static final String DEFINITION_LOCATION = "config/elasticsearch/";
+
+    private static final int BATCH_SIZE = 500;
+
+    private static final TimeValue SCROLL_TIMEOUT = TimeValue.timeValueMinutes(5);
+
+    private final Logger log = LoggerFactory.getLogger(ElasticsearchIndexMigration.class);
+
+    private final Client client;
+
+    private final String[] aliases;
+
+    private boolean shouldRun = true;
+
+    public ElasticsearchIndexMigration(Client client, String... aliases) {
+        this.client = client;
+        this.aliases = aliases;
+    }
+
+    public void setShouldRun(boolean shouldRun) {
+        this.shouldRun = shouldRun;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws IOException {
+        if (!shouldRun) {
+            log.debug("Elasticsearch index migration is disabled");
+            return;
+        }
+        for (String alias : aliases) {
+            migrate(alias);
+        }
+    }
+
+    /**
+     * @return the latest version of the index of the alias, 0 if it has no definition
+     */
+    public static int latestVersion(String alias) {
+        int version = 0;
+        while (definition(alias, version + 1).exists()) {
+            version++;
+        }
+        return version;
+    }
+
+    /**
+     * @return the name of the index of the given version
+     */
+    public static String indexName(String alias, int version) {
+        return alias + "_v" + version;
+    }
+
+    /**
+     * @return the definition of the latest version of the index of the alias, or null if it has none
+     */
+    public static ClassPathResource latestDefinition(String alias) {
+        int latest = latestVersion(alias);
+        return latest > 0 ? definition(alias, latest) : null;
+    }
+
+    private static ClassPathResource definition(String alias, int version) {
+        int shard = alias.indexOf('_');
+        String name = shard < 0 ? alias : alias.substring(0, shard);
+        return new ClassPathResource(DEFINITION_LOCATION + name + "/v" + version + ".json");
+    }
+
+    private void migrate(String alias) throws IOException {
+        int latest = latestVersion(alias);
+        if (latest == 0) {
+            log.warn("No Elasticsearch index definition for {}", alias);
+            return;
+        }
+        String target = indexName(alias, latest);
+        String current = currentIndex(alias);
+        if (target.equals(current)) {
+            log.debug("Elasticsearch index {} is up to date", target);
+            return;
+        }
+        StopWatch watch = new StopWatch();
+        watch.start();
+        log.info("Migrating Elasticsearch index {} from {} to {}", alias, current, target);
+        String source;
+        try (InputStream in = definition(alias, latest).getInputStream()) {
+            source = StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+        }
+        if (!client.admin().indices().prepareExists(target).get().isExists()) {
+            client.admin().indices().prepareCreate(target).setSource(source).get();
+        }
+        client.admin().cluster().prepareHealth(target).setWaitForYellowStatus().get();
+
+        long copied = 0;
+        if (current != null) {
+            copied = copy(current, target);
+        }
+        client.admin().indices().prepareRefresh(target).get();
+
+        if (current == null) {
+            client.admin().indices().prepareAliases().addAlias(target, alias).get();
+        } else if (current.equals(alias)) {
+            // An alias cannot have the name of an index
+            client.admin().indices().prepareDelete(current).get();
+            client.admin().indices().prepareAliases().addAlias(target, alias).get();
+        } else {
+            client.admin().indices().prepareAliases().removeAlias(current, alias).addAlias(target, alias).get();
+            client.admin().indices().prepareDelete(current).get();
+        }
+        watch.stop();
+        log.info("Migrated Elasticsearch index {} to {} with {} documents in {} ms", alias, target, copied, watch.getTotalTimeMillis());
+    }
+
+    /**
+     * @return the index the alias points to, the index named after the alias if any, or null
+     */
+    private String currentIndex(String alias) {
+        ImmutableOpenMap<String, List<AliasMetaData>> indices =
+            client.admin().indices().prepareGetAliases(alias).get().getAliases();
+        for (Iterator<String> it = indices.keysIt(); it.hasNext(); ) {
+            String index = it.next();
+            if (!indices.get(index).isEmpty()) {
+                return index;
+            }
+        }
+        return client.admin().indices().prepareExists(alias).get().isExists() ? alias : null;
+    }
+
+    private long copy(String from, String to) {
+        long copied = 0;
+        SearchResponse response = client.prepareSearch(from)
+            .setSearchType(SearchType.SCAN)
+            .setScroll(SCROLL_TIMEOUT)
+            .setQuery(QueryBuilders.matchAllQuery())
+            .setSize(BATCH_SIZE)
+            .get();
+        String scrollId = response.getScrollId();
+        try {
+            while (true) {
+                response = client.prepareSearchScroll(scrollId).setScroll(SCROLL_TIMEOUT).get();
+                scrollId = response.getScrollId();
+                SearchHit[] hits = response.getHits().getHits();
+                if (hits.length == 0) {
+                    return copied;
+                }
+                BulkRequestBuilder bulk = client.prepareBulk();
+                for (SearchHit hit : hits) {
+                    bulk.add(client.prepareIndex(to, hit.getType(), hit.getId()).setSource(hit.sourceRef()));
+                }
+                BulkResponse bulkResponse = bulk.get();
+                if (bulkResponse.hasFailures()) {
+                    throw new IllegalStateException("Could not copy documents from " + from + " to " + to + ": "
+                        + bulkResponse.buildFailureMessage());
+                }
+                copied += hits.length;
+            }
+        } finally {
+            // Otherwise the search contexts of the scan stay open on every shard until the scroll times out
+            client.prepareClearScroll().addScrollId(scrollId).get();
+        }
+    }
+}
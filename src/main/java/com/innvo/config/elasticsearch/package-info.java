@@ -0,0 +1,4 @@
+/**
+ * Elasticsearch specific code.
+ */
+package com.innvo.config.elasticsearch;
@@ -0,0 +1,189 @@
+package com.innvo.config.jdbc;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A data source of which the connections time the statements they run and the reading of their results, and
+ * report them to a {@link StatementRecorder}.
+ *
+ * <p>
+ * Connections, statements and result sets are wrapped in dynamic proxies, the calls they do not instrument going
+ * straight to the pooled objects.
+ * </p>
+ */
+public class InstrumentedDataSource extends DelegatingDataSource {
+
+    // The shape of the batches of plain statements, and of the results of their executions
+    private static final String OTHER_SHAPE = "other";
+
+    private static final ClassLoader CLASS_LOADER = InstrumentedDataSource.class.getClassLoader();
+
+    private final StatementRecorder recorder;
+
+    public InstrumentedDataSource(DataSource targetDataSource, StatementRecorder recorder) {
+        super(targetDataSource);
+        this.recorder = recorder;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(getTargetDataSource().getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(getTargetDataSource().getConnection(username, password));
+    }
+
+    private Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(CLASS_LOADER, new Class<?>[]{Connection.class},
+            new ConnectionHandler(connection));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+
+        private final Connection target;
+
+        private ConnectionHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = InstrumentedDataSource.invoke(target, method, args);
+            switch (method.getName()) {
+                case "createStatement":
+                    return wrap(Statement.class, (Statement) result, null);
+                case "prepareStatement":
+                    return wrap(PreparedStatement.class, (Statement) result, (String) args[0]);
+                case "prepareCall":
+                    return wrap(CallableStatement.class, (Statement) result, (String) args[0]);
+                default:
+                    return result;
+            }
+        }
+
+        private Object wrap(Class<? extends Statement> type, Statement statement, String sql) {
+            return Proxy.newProxyInstance(CLASS_LOADER, new Class<?>[]{type}, new StatementHandler(statement, sql));
+        }
+    }
+
+    private final class StatementHandler implements InvocationHandler {
+
+        private final Statement target;
+
+        private final String preparedShape;
+
+        private final Map<Integer, Object> parameters;
+
+        private ResultSetHandler resultSet;
+
+        private StatementHandler(Statement target, String sql) {
+            this.target = target;
+            this.preparedShape = sql != null ? recorder.shape(sql) : null;
+            this.parameters = sql != null ? new TreeMap<>() : null;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                String shape = preparedShape != null ? preparedShape
+                    : args != null && args.length > 0 ? recorder.shape(String.valueOf(args[0])) : OTHER_SHAPE;
+                long start = System.nanoTime();
+                Object result = InstrumentedDataSource.invoke(target, method, args);
+                recorder.executed(shape, parameters, System.nanoTime() - start);
+                if (result instanceof ResultSet) {
+                    return wrap((ResultSet) result, shape);
+                }
+                return result;
+            }
+            if (parameters != null && name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                parameters.put((Integer) args[0], "setNull".equals(name) ? null : args[1]);
+            } else if ("clearParameters".equals(name) && parameters != null) {
+                parameters.clear();
+            } else if ("getResultSet".equals(name)) {
+                Object result = InstrumentedDataSource.invoke(target, method, args);
+                return result == null ? null
+                    : wrap((ResultSet) result, preparedShape != null ? preparedShape : OTHER_SHAPE);
+            } else if ("close".equals(name) && resultSet != null) {
+                // Closing a statement closes its result set, which may not have been closed itself
+                resultSet.finish();
+            }
+            return InstrumentedDataSource.invoke(target, method, args);
+        }
+
+        private ResultSet wrap(ResultSet result, String shape) {
+            if (resultSet != null) {
+                resultSet.finish();
+            }
+            resultSet = new ResultSetHandler(result, shape);
+            return (ResultSet) Proxy.newProxyInstance(CLASS_LOADER, new Class<?>[]{ResultSet.class}, resultSet);
+        }
+    }
+
+    private final class ResultSetHandler implements InvocationHandler {
+
+        private final ResultSet target;
+
+        private final String shape;
+
+        private long rows;
+
+        private long fetchNanos;
+
+        private boolean finished;
+
+        private ResultSetHandler(ResultSet target, String shape) {
+            this.target = target;
+            this.shape = shape;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("next".equals(name)) {
+                long start = System.nanoTime();
+                Object result = InstrumentedDataSource.invoke(target, method, args);
+                fetchNanos += System.nanoTime() - start;
+                if (Boolean.TRUE.equals(result)) {
+                    rows++;
+                }
+                return result;
+            }
+            if ("close".equals(name)) {
+                finish();
+            }
+            return InstrumentedDataSource.invoke(target, method, args);
+        }
+
+        private void finish() {
+            if (!finished) {
+                finished = true;
+                recorder.fetched(shape, rows, fetchNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.innvo.config.jdbc;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+import javax.sql.DataSource;
+
+/**
+ * Wraps the data sources in {@link InstrumentedDataSource}s once they are configured, so that the pool keeps its
+ * own configuration and lifecycle.
+ */
+public class InstrumentedDataSourcePostProcessor implements BeanPostProcessor, BeanFactoryAware {
+
+    private BeanFactory beanFactory;
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        if (bean instanceof DataSource && !(bean instanceof InstrumentedDataSource)) {
+            // Looked up here rather than injected, as post-processors are created before the other beans
+            return new InstrumentedDataSource((DataSource) bean, beanFactory.getBean(StatementRecorder.class));
+        }
+        return bean;
+    }
+}
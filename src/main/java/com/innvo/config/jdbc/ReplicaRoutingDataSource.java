@@ -0,0 +1,161 @@
+package com.innvo.config.jdbc;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.innvo.config.ApplicationProperties;
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Routes the connections of read-only transactions to the replica pools, in turn, and the others to the primary.
+ *
+ * <p>
+ * The lag of each replica is measured periodically with the configured query: a replica lagging more than the
+ * maximum, or failing the query, is skipped until it catches up, and read-only transactions go to the primary
+ * while no replica is available. The routing key is read when the connection is fetched, so this data source must
+ * be used through a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}, which defers the
+ * fetch until the transaction has started. Reads may be as stale as the maximum lag.
+ * </p>
+ * <p>
+ * Each replica pool is a Hikari pool named after it, with the metrics of Hikari, and each pool has meters of the
+ * connections routed to it, along with the lag of the replicas and the number of fallbacks to the primary.
+ * </p>
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+
+    private static final String PRIMARY = "primary";
+
+    private final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    private final ApplicationProperties.Replicas properties;
+
+    private final List<Replica> replicas = new ArrayList<>();
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final Meter primaryConnections;
+
+    private final Meter fallbacks;
+
+    private final ScheduledExecutorService lagChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "replica-lag-check");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ReplicaRoutingDataSource(DataSource primary, ApplicationProperties.Replicas properties, MetricRegistry metricRegistry) {
+        this.properties = properties;
+        this.primaryConnections = metricRegistry.meter(MetricRegistry.name(ReplicaRoutingDataSource.class, PRIMARY, "connections"));
+        this.fallbacks = metricRegistry.meter(MetricRegistry.name(ReplicaRoutingDataSource.class, "fallbacks"));
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (ApplicationProperties.Replicas.Pool pool : properties.getPools()) {
+            Replica replica = new Replica("replica-" + (replicas.size() + 1), pool, metricRegistry);
+            replicas.add(replica);
+            targets.put(replica.name, replica.pool);
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+        checkLag();
+        lagChecker.scheduleWithFixedDelay(this::checkLag, properties.getLagCheckMillis(), properties.getLagCheckMillis(),
+            TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            int size = replicas.size();
+            int start = next.getAndIncrement();
+            for (int i = 0; i < size; i++) {
+                Replica replica = replicas.get(Math.floorMod(start + i, size));
+                if (replica.available) {
+                    replica.connections.mark();
+                    return replica.name;
+                }
+            }
+            fallbacks.mark();
+        }
+        primaryConnections.mark();
+        return PRIMARY;
+    }
+
+    private void checkLag() {
+        for (Replica replica : replicas) {
+            boolean available;
+            try (Connection connection = replica.pool.getConnection();
+                 Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery(properties.getLagQuery())) {
+                // No row or null: not a replica, or nothing replayed yet
+                replica.lagSeconds = resultSet.next() ? resultSet.getDouble(1) : 0;
+                available = replica.lagSeconds <= properties.getMaxLagSeconds();
+            } catch (Exception e) {
+                log.debug("Could not measure the lag of {}: {}", replica.name, e.getMessage());
+                replica.lagSeconds = Double.NaN;
+                available = false;
+            }
+            if (available != replica.available) {
+                if (available) {
+                    log.info("Replica {} is available, lagging {} s", replica.name, replica.lagSeconds);
+                } else {
+                    log.warn("Replica {} is unavailable, lagging {} s, reads go to the other pools", replica.name, replica.lagSeconds);
+                }
+                replica.available = available;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        lagChecker.shutdownNow();
+        replicas.forEach(replica -> replica.pool.close());
+    }
+
+    private static final class Replica {
+
+        private final String name;
+
+        private final HikariDataSource pool;
+
+        private final Meter connections;
+
+        private volatile boolean available;
+
+        private volatile double lagSeconds = Double.NaN;
+
+        private Replica(String name, ApplicationProperties.Replicas.Pool properties, MetricRegistry metricRegistry) {
+            this.name = name;
+            this.pool = new HikariDataSource();
+            pool.setPoolName(name);
+            pool.setJdbcUrl(properties.getUrl());
+            pool.setUsername(properties.getUsername());
+            pool.setPassword(properties.getPassword());
+            pool.setMaximumPoolSize(properties.getMaximumPoolSize());
+            pool.setReadOnly(true);
+            // A replica which is down at startup is only skipped
+            pool.setInitializationFailFast(false);
+            pool.setMetricRegistry(metricRegistry);
+            this.connections = metricRegistry.meter(MetricRegistry.name(ReplicaRoutingDataSource.class, name, "connections"));
+            metricRegistry.register(MetricRegistry.name(ReplicaRoutingDataSource.class, name, "lag-seconds"),
+                (Gauge<Double>) () -> lagSeconds);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.innvo.config.jdbc;
+
+import com.codahale.metrics.MetricRegistry;
+import com.innvo.config.ApplicationProperties;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+
+/**
+ * Puts the primary data source behind a {@link ReplicaRoutingDataSource} once it is configured, so that the pool
+ * keeps its own configuration and lifecycle. Ordered, so that it runs before the statement instrumentation,
+ * which then sees the statements of all the pools.
+ */
+public class ReplicaRoutingPostProcessor implements BeanPostProcessor, BeanFactoryAware, Ordered, DisposableBean {
+
+    private static final String DATA_SOURCE_BEAN_NAME = "dataSource";
+
+    private BeanFactory beanFactory;
+
+    private ReplicaRoutingDataSource routingDataSource;
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public int getOrder() {
+        return 0;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        if (DATA_SOURCE_BEAN_NAME.equals(beanName) && bean instanceof DataSource) {
+            // Looked up here rather than injected, as post-processors are created before the other beans
+            ApplicationProperties applicationProperties = beanFactory.getBean(ApplicationProperties.class);
+            routingDataSource = new ReplicaRoutingDataSource((DataSource) bean, applicationProperties.getReplicas(),
+                beanFactory.getBean(MetricRegistry.class));
+            return new LazyConnectionDataSourceProxy(routingDataSource);
+        }
+        return bean;
+    }
+
+    @Override
+    public void destroy() {
+        if (routingDataSource != null) {
+            routingDataSource.close();
+        }
+    }
+}
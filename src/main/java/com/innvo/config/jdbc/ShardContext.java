@@ -0,0 +1,53 @@
+package com.innvo.config.jdbc;
+
+import java.util.function.Supplier;
+
+/**
+ * The shard which the connections of the current thread are fetched from, see {@link ShardRoutingDataSource}.
+ *
+ * <p>
+ * The shard must be set before the transaction starts, as the connection is fetched when it starts, and is used
+ * until it ends: a shard cannot be changed within a transaction.
+ * </p>
+ */
+public final class ShardContext {
+
+    public static final String DEFAULT_SHARD = "default";
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    /**
+     * @return the shard of the current thread, the default shard if none is set
+     */
+    public static String current() {
+        String shard = CURRENT.get();
+        return shard != null ? shard : DEFAULT_SHARD;
+    }
+
+    /**
+     * Runs the work with the connections of a shard, then restores the shard of the current thread.
+     */
+    public static <T> T call(String shard, Supplier<T> work) {
+        String previous = CURRENT.get();
+        CURRENT.set(shard);
+        try {
+            return work.get();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    public static void run(String shard, Runnable work) {
+        call(shard, () -> {
+            work.run();
+            return null;
+        });
+    }
+}
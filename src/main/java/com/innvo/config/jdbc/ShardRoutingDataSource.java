@@ -0,0 +1,97 @@
+package com.innvo.config.jdbc;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.innvo.config.ApplicationProperties;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Routes the connections to the pool of the shard of the current thread, see {@link ShardContext}, and to the
+ * primary data source for the default shard.
+ *
+ * <p>
+ * Each shard is a schema, in the database of the primary data source unless the shard has its own: its pool sets
+ * the search path of its connections to the schema, so that the unqualified tables of the entities are those of
+ * the shard. A connection of an unknown shard is an error rather than one of the default shard, which would
+ * hold none of its rows.
+ * </p>
+ * <p>
+ * Each shard pool is a Hikari pool named after the shard, with the metrics of Hikari, and each shard has a meter
+ * of the connections routed to it.
+ * </p>
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[a-z][a-z0-9_]*");
+
+    private final List<HikariDataSource> pools = new ArrayList<>();
+
+    private final Map<String, Meter> connections = new HashMap<>();
+
+    public ShardRoutingDataSource(HikariDataSource primary, DataSource defaultShard, ApplicationProperties.Sharding properties,
+                                  MetricRegistry metricRegistry) {
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(ShardContext.DEFAULT_SHARD, defaultShard);
+        connections.put(ShardContext.DEFAULT_SHARD, meter(metricRegistry, ShardContext.DEFAULT_SHARD));
+        for (ApplicationProperties.Sharding.Shard shard : properties.getShards()) {
+            checkIdentifier(shard.getName());
+            checkIdentifier(shard.getSchema());
+            if (targets.containsKey(shard.getName())) {
+                throw new IllegalArgumentException("Duplicate shard " + shard.getName());
+            }
+            HikariDataSource pool = new HikariDataSource();
+            pool.setPoolName("shard-" + shard.getName());
+            pool.setJdbcUrl(shard.getUrl() != null ? shard.getUrl() : primary.getJdbcUrl());
+            pool.setUsername(shard.getUrl() != null ? shard.getUsername() : primary.getUsername());
+            pool.setPassword(shard.getUrl() != null ? shard.getPassword() : primary.getPassword());
+            pool.setMaximumPoolSize(shard.getMaximumPoolSize());
+            pool.setConnectionInitSql("SET search_path TO " + shard.getSchema() + ", public");
+            pool.setInitializationFailFast(false);
+            pool.setMetricRegistry(metricRegistry);
+            pools.add(pool);
+            targets.put(shard.getName(), pool);
+            connections.put(shard.getName(), meter(metricRegistry, shard.getName()));
+        }
+        setTargetDataSources(targets);
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    /**
+     * Shard names and schemas end up in SQL statements and index names, so they are restricted to lower case
+     * identifiers.
+     */
+    public static void checkIdentifier(String identifier) {
+        if (identifier == null || !IDENTIFIER.matcher(identifier).matches()) {
+            throw new IllegalArgumentException("Invalid shard name or schema: " + identifier);
+        }
+    }
+
+    private static Meter meter(MetricRegistry metricRegistry, String shard) {
+        return metricRegistry.meter(MetricRegistry.name(ShardRoutingDataSource.class, shard, "connections"));
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        String shard = ShardContext.current();
+        Meter meter = connections.get(shard);
+        if (meter != null) {
+            meter.mark();
+        }
+        return shard;
+    }
+
+    @Override
+    public void close() {
+        pools.forEach(HikariDataSource::close);
+    }
+}
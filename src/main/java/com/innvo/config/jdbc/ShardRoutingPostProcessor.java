@@ -0,0 +1,70 @@
+package com.innvo.config.jdbc;
+
+import com.codahale.metrics.MetricRegistry;
+import com.innvo.config.ApplicationProperties;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.Ordered;
+
+import javax.sql.DataSource;
+
+/**
+ * Puts the primary data source behind a {@link ShardRoutingDataSource} once it is configured. Ordered after the
+ * {@link ReplicaRoutingPostProcessor}, so that the default shard keeps its replicas, and before the statement
+ * instrumentation, which then sees the statements of all the shards.
+ */
+public class ShardRoutingPostProcessor implements BeanPostProcessor, BeanFactoryAware, Ordered, DisposableBean {
+
+    private static final String DATA_SOURCE_BEAN_NAME = "dataSource";
+
+    private BeanFactory beanFactory;
+
+    private HikariDataSource primary;
+
+    private ShardRoutingDataSource routingDataSource;
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public int getOrder() {
+        return 1;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        // Kept for the connection settings of the shards without their own database, as it may be wrapped later
+        if (DATA_SOURCE_BEAN_NAME.equals(beanName) && bean instanceof HikariDataSource) {
+            primary = (HikariDataSource) bean;
+        }
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        if (DATA_SOURCE_BEAN_NAME.equals(beanName) && bean instanceof DataSource) {
+            if (primary == null) {
+                throw new IllegalStateException("Sharding requires a Hikari data source");
+            }
+            // Looked up here rather than injected, as post-processors are created before the other beans
+            ApplicationProperties applicationProperties = beanFactory.getBean(ApplicationProperties.class);
+            routingDataSource = new ShardRoutingDataSource(primary, (DataSource) bean, applicationProperties.getSharding(),
+                beanFactory.getBean(MetricRegistry.class));
+            return routingDataSource;
+        }
+        return bean;
+    }
+
+    @Override
+    public void destroy() {
+        if (routingDataSource != null) {
+            routingDataSource.close();
+        }
+    }
+}
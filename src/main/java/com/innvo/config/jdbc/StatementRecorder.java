@@ -0,0 +1,293 @@
+package com.innvo.config.jdbc;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.innvo.config.ApplicationProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Records the statements run through an {@link InstrumentedDataSource}.
+ *
+ * <p>
+ * Statements are grouped by shape, their SQL with the literals replaced by placeholders, each with a timer of
+ * its executions, a histogram of the rows it returned and a timer of the time spent fetching them. The slowest
+ * executions are kept, with a summary of their bind parameters, in a buffer of bounded size. Within a request, as
+ * delimited by {@link #beginRequest()} and {@link #endRequest(String)}, the executions of each shape are counted:
+ * a shape repeated as often as the threshold is reported as a likely N+1 select, typically an eager association
+ * loaded entity by entity.
+ * </p>
+ */
+public class StatementRecorder {
+
+    private static final int MAX_SHAPES = 500;
+
+    private static final String OTHER_SHAPE = "other";
+
+    private static final int MAX_PARAMETERS = 20;
+
+    private static final int MAX_PARAMETER_LENGTH = 40;
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?\\b");
+
+    private static final Pattern IN_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final Logger log = LoggerFactory.getLogger(StatementRecorder.class);
+
+    private final MetricRegistry metricRegistry;
+
+    private final long slowQueryNanos;
+
+    private final int slowQueryBufferSize;
+
+    private final int repeatedStatementThreshold;
+
+    private final Map<String, String> shapes = new ConcurrentHashMap<>();
+
+    private final Map<String, ShapeMetrics> shapeMetrics = new ConcurrentHashMap<>();
+
+    private final Deque<SlowQuery> slowQueries = new ArrayDeque<>();
+
+    private final Deque<RepeatedStatement> repeatedStatements = new ArrayDeque<>();
+
+    private final ThreadLocal<Map<String, Integer>> requestExecutions = new ThreadLocal<>();
+
+    private final Meter repeated;
+
+    public StatementRecorder(MetricRegistry metricRegistry, ApplicationProperties.JdbcInstrumentation properties) {
+        this.metricRegistry = metricRegistry;
+        this.slowQueryNanos = TimeUnit.MILLISECONDS.toNanos(properties.getSlowQueryMillis());
+        this.slowQueryBufferSize = properties.getSlowQueryBufferSize();
+        this.repeatedStatementThreshold = properties.getRepeatedStatementThreshold();
+        this.repeated = metricRegistry.meter(MetricRegistry.name(StatementRecorder.class, "repeated-statements"));
+    }
+
+    /**
+     * @return the SQL with its literals and lists of placeholders replaced by single placeholders
+     */
+    public String shape(String sql) {
+        String shape = shapes.get(sql);
+        if (shape == null) {
+            shape = normalize(sql);
+            if (shapes.size() < MAX_SHAPES * 4) {
+                shapes.put(sql, shape);
+            }
+        }
+        return shape;
+    }
+
+    static String normalize(String sql) {
+        String shape = STRING_LITERAL.matcher(sql).replaceAll("?");
+        shape = NUMBER_LITERAL.matcher(shape).replaceAll("?");
+        shape = IN_LIST.matcher(shape).replaceAll("(?)");
+        return WHITESPACE.matcher(shape).replaceAll(" ").trim();
+    }
+
+    /**
+     * Records an execution of a statement, and keeps it if it is slow.
+     *
+     * @param parameters the bind parameters, by index, or null for a plain statement
+     */
+    public void executed(String shape, Map<Integer, Object> parameters, long elapsedNanos) {
+        metrics(shape).execution.update(elapsedNanos, TimeUnit.NANOSECONDS);
+        if (elapsedNanos >= slowQueryNanos) {
+            SlowQuery slowQuery = new SlowQuery(shape, summarize(parameters), TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+            log.debug("Slow statement, {} ms: {} {}", slowQuery.millis, shape, slowQuery.parameters);
+            add(slowQueries, slowQuery);
+        }
+        Map<String, Integer> executions = requestExecutions.get();
+        if (executions != null) {
+            executions.merge(shape, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Records the rows read from the result set of a statement, and the time spent reading them.
+     */
+    public void fetched(String shape, long rows, long fetchNanos) {
+        ShapeMetrics metrics = metrics(shape);
+        metrics.rows.update(rows);
+        metrics.fetch.update(fetchNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Starts counting the statements run by the current thread.
+     */
+    public void beginRequest() {
+        requestExecutions.set(new HashMap<>());
+    }
+
+    /**
+     * Stops counting the statements run by the current thread, and reports the shapes repeated by the request.
+     */
+    public void endRequest(String request) {
+        Map<String, Integer> executions = requestExecutions.get();
+        requestExecutions.remove();
+        if (executions == null) {
+            return;
+        }
+        executions.forEach((shape, count) -> {
+            if (count >= repeatedStatementThreshold) {
+                log.warn("Statement run {} times by {}, possible N+1 select: {}", count, request, shape);
+                repeated.mark();
+                add(repeatedStatements, new RepeatedStatement(request, shape, count));
+            }
+        });
+    }
+
+    /**
+     * @return the slow queries, latest first
+     */
+    public List<SlowQuery> getSlowQueries() {
+        return snapshot(slowQueries);
+    }
+
+    /**
+     * @return the statements repeated within a request, latest first
+     */
+    public List<RepeatedStatement> getRepeatedStatements() {
+        return snapshot(repeatedStatements);
+    }
+
+    private ShapeMetrics metrics(String shape) {
+        ShapeMetrics metrics = shapeMetrics.get(shape);
+        if (metrics == null) {
+            String name = shapeMetrics.size() < MAX_SHAPES ? shape : OTHER_SHAPE;
+            metrics = shapeMetrics.computeIfAbsent(name, ShapeMetrics::new);
+        }
+        return metrics;
+    }
+
+    private <T> void add(Deque<T> buffer, T item) {
+        synchronized (buffer) {
+            if (buffer.size() >= slowQueryBufferSize) {
+                buffer.removeLast();
+            }
+            buffer.addFirst(item);
+        }
+    }
+
+    private static <T> List<T> snapshot(Deque<T> buffer) {
+        synchronized (buffer) {
+            return new ArrayList<>(buffer);
+        }
+    }
+
+    private static List<String> summarize(Map<Integer, Object> parameters) {
+        List<String> summary = new ArrayList<>();
+        if (parameters == null) {
+            return summary;
+        }
+        for (Map.Entry<Integer, Object> parameter : parameters.entrySet()) {
+            if (summary.size() == MAX_PARAMETERS) {
+                summary.add("... " + (parameters.size() - MAX_PARAMETERS) + " more");
+                break;
+            }
+            Object value = parameter.getValue();
+            String text = value == null ? "null" : value.getClass().getSimpleName() + ":" + value;
+            if (text.length() > MAX_PARAMETER_LENGTH) {
+                text = text.substring(0, MAX_PARAMETER_LENGTH) + "...";
+            }
+            summary.add(parameter.getKey() + "=" + text);
+        }
+        return summary;
+    }
+
+    private final class ShapeMetrics {
+
+        private final Timer execution;
+
+        private final Histogram rows;
+
+        private final Timer fetch;
+
+        private ShapeMetrics(String shape) {
+            this.execution = metricRegistry.timer(MetricRegistry.name(StatementRecorder.class, shape, "execution"));
+            this.rows = metricRegistry.histogram(MetricRegistry.name(StatementRecorder.class, shape, "rows"));
+            this.fetch = metricRegistry.timer(MetricRegistry.name(StatementRecorder.class, shape, "fetch"));
+        }
+    }
+
+    public static final class SlowQuery {
+
+        private final ZonedDateTime time = ZonedDateTime.now();
+
+        private final String sql;
+
+        private final List<String> parameters;
+
+        private final long millis;
+
+        private SlowQuery(String sql, List<String> parameters, long millis) {
+            this.sql = sql;
+            this.parameters = parameters;
+            this.millis = millis;
+        }
+
+        public ZonedDateTime getTime() {
+            return time;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public List<String> getParameters() {
+            return parameters;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+    }
+
+    public static final class RepeatedStatement {
+
+        private final ZonedDateTime time = ZonedDateTime.now();
+
+        private final String request;
+
+        private final String sql;
+
+        private final int count;
+
+        private RepeatedStatement(String request, String sql, int count) {
+            this.request = request;
+            this.sql = sql;
+            this.count = count;
+        }
+
+        public ZonedDateTime getTime() {
+            return time;
+        }
+
+        public String getRequest() {
+            return request;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+}
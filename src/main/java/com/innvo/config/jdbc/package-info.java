@@ -0,0 +1,4 @@
+/**
+ * JDBC data source routing and instrumentation.
+ */
+package com.innvo.config.jdbc;
@@ -0,0 +1,61 @@
+package com.innvo.config.metrics;
+
+import com.codahale.metrics.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics of a cache of entities read by id: hits, misses, the misses which waited for the load of another
+ * caller instead of loading, the evictions, and the latency of the loads.
+ */
+public class EntityCacheMetrics implements MetricSet {
+
+    private final Meter hits = new Meter();
+
+    private final Meter misses = new Meter();
+
+    private final Meter coalesced = new Meter();
+
+    private final Meter evictions = new Meter();
+
+    private final Timer loads = new Timer();
+
+    public void hit() {
+        hits.mark();
+    }
+
+    public void miss() {
+        misses.mark();
+    }
+
+    public void coalesced() {
+        coalesced.mark();
+    }
+
+    public void evicted(int count) {
+        evictions.mark(count);
+    }
+
+    public void loaded(long nanos) {
+        loads.update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics() {
+        Map<String, Metric> metrics = new HashMap<>();
+        metrics.put("hits", hits);
+        metrics.put("misses", misses);
+        metrics.put("coalesced", coalesced);
+        metrics.put("evictions", evictions);
+        metrics.put("loads", loads);
+        metrics.put("hit-ratio", new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(hits.getFiveMinuteRate(), hits.getFiveMinuteRate() + misses.getFiveMinuteRate());
+            }
+        });
+        return metrics;
+    }
+}
@@ -0,0 +1,55 @@
+package com.innvo.config.metrics;
+
+import com.codahale.metrics.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics of the search result cache: hits and misses, their latencies, and the time saved by the hits,
+ * estimated with the mean latency of the misses.
+ */
+public class SearchCacheMetrics implements MetricSet {
+
+    private final Meter hits = new Meter();
+
+    private final Meter misses = new Meter();
+
+    private final Timer hitLatency = new Timer();
+
+    private final Timer missLatency = new Timer();
+
+    private final Counter savedMillis = new Counter();
+
+    public void hit(long nanos) {
+        hits.mark();
+        hitLatency.update(nanos, TimeUnit.NANOSECONDS);
+        double saved = missLatency.getSnapshot().getMean() - nanos;
+        if (saved > 0) {
+            savedMillis.inc(TimeUnit.NANOSECONDS.toMillis((long) saved));
+        }
+    }
+
+    public void miss(long nanos) {
+        misses.mark();
+        missLatency.update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics() {
+        Map<String, Metric> metrics = new HashMap<>();
+        metrics.put("hits", hits);
+        metrics.put("misses", misses);
+        metrics.put("hit-latency", hitLatency);
+        metrics.put("miss-latency", missLatency);
+        metrics.put("saved-millis", savedMillis);
+        metrics.put("hit-ratio", new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(hits.getFiveMinuteRate(), hits.getFiveMinuteRate() + misses.getFiveMinuteRate());
+            }
+        });
+        return metrics;
+    }
+}
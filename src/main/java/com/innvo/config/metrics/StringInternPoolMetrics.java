@@ -0,0 +1,32 @@
+package com.innvo.config.metrics;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import com.innvo.domain.util.StringInternPool;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Metrics of the pool of the low-cardinality strings of the entities: its size, the duplicates it replaced and
+ * the bytes they held.
+ */
+public class StringInternPoolMetrics implements MetricSet {
+
+    private final StringInternPool pool;
+
+    public StringInternPoolMetrics(StringInternPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics() {
+        Map<String, Metric> metrics = new HashMap<>();
+        metrics.put("size", (Gauge<Integer>) pool::size);
+        metrics.put("hits", (Gauge<Long>) pool::hits);
+        metrics.put("misses", (Gauge<Long>) pool::misses);
+        metrics.put("saved-bytes", (Gauge<Long>) pool::savedBytes);
+        return metrics;
+    }
+}
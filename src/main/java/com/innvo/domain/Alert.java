@@ -1,8 +1,14 @@
 package com.innvo.domain;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.innvo.domain.util.InternedStringDeserializer;
+import com.innvo.domain.util.StringInternPool;
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 import org.springframework.data.elasticsearch.annotations.Document;
 
 import javax.persistence.*;
@@ -19,15 +25,28 @@ import java.util.Objects;
 @Entity
 @Table(name = "alert")
 @Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
+@DynamicUpdate
 @Document(indexName = "alert")
 public class Alert implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    // Ids are allocated 50 at a time, a round trip to the sequence for each 50 inserts, which can then be batched
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "alertSequenceGenerator")
+    @GenericGenerator(name = "alertSequenceGenerator",
+        strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator",
+        parameters = {
+            @Parameter(name = "sequence_name", value = "alert_sequence"),
+            @Parameter(name = "increment_size", value = "50"),
+            @Parameter(name = "optimizer", value = "pooled-lo")
+        })
     private Long id;
 
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
+
     @Column(name = "asset_id", length = 100)
     private Long asset_id;
     
@@ -40,18 +59,22 @@ public class Alert implements Serializable {
     private String description;
 
     @Size(max = 50)
+    @JsonDeserialize(using = InternedStringDeserializer.class)
     @Column(name = "category", length = 50)
     private String category;
 
     @Size(max = 50)
+    @JsonDeserialize(using = InternedStringDeserializer.class)
     @Column(name = "subcategory", length = 50)
     private String subcategory;
 
     @Size(max = 50)
+    @JsonDeserialize(using = InternedStringDeserializer.class)
     @Column(name = "subtype", length = 50)
     private String subtype;
 
     @Size(max = 50)
+    @JsonDeserialize(using = InternedStringDeserializer.class)
     @Column(name = "type", length = 50)
     private String type;
 
@@ -63,11 +86,13 @@ public class Alert implements Serializable {
 
     @NotNull
     @Size(max = 25)
+    @JsonDeserialize(using = InternedStringDeserializer.class)
     @Column(name = "status", length = 25, nullable = false)
     private String status;
 
     @NotNull
     @Size(max = 50)
+    @JsonDeserialize(using = InternedStringDeserializer.class)
     @Column(name = "lastmodifiedby", length = 50, nullable = false)
     private String lastmodifiedby;
 
@@ -77,6 +102,7 @@ public class Alert implements Serializable {
 
     @NotNull
     @Size(max = 25)
+    @JsonDeserialize(using = InternedStringDeserializer.class)
     @Column(name = "domain", length = 25, nullable = false)
     private String domain;
 
@@ -93,6 +119,14 @@ public class Alert implements Serializable {
         this.id = id;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public Long getAsset_id() {
 		return asset_id;
 	}
@@ -206,6 +240,22 @@ public class Alert implements Serializable {
     //    this.identifiers = identifiers;
     //}
 
+    /**
+     * Interns the low-cardinality fields of an entity loaded from the database or from the second-level cache,
+     * whose entries are deserialized into new strings on every hit.
+     */
+    @PostLoad
+    void intern() {
+        StringInternPool pool = StringInternPool.shared();
+        category = pool.intern(category);
+        subcategory = pool.intern(subcategory);
+        subtype = pool.intern(subtype);
+        type = pool.intern(type);
+        status = pool.intern(status);
+        lastmodifiedby = pool.intern(lastmodifiedby);
+        domain = pool.intern(domain);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -0,0 +1,163 @@
+package com.innvo.domain.util;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+/**
+ * Writes and parses the fixed yyyy-MM-dd'T'HH:mm:ss.SSS'Z' format of the dates of the API, in UTC, without
+ * the formatters of java.time: the hot paths serialize three dates per event.
+ *
+ * <p>
+ * Only the years 0001 to 9999 fit the format, whose years are those of the era; {@link #write} returns -1 for
+ * the others, and {@link #parse} returns null for any text which is not exactly in the format, so that the caller
+ * may fall back to a formatter.
+ * </p>
+ */
+public final class FixedIsoDateTime {
+
+    /**
+     * The length of the format.
+     */
+    public static final int LENGTH = 24;
+
+    private static final long SECONDS_PER_DAY = 86400;
+
+    // Epoch seconds of 0001-01-01T00:00:00Z and of 10000-01-01T00:00:00Z
+    private static final long MIN_SECOND = -62135596800L;
+
+    private static final long MAX_SECOND = 253402300800L;
+
+    private FixedIsoDateTime() {}
+
+    /**
+     * Writes the date, truncated to the millisecond, into the buffer.
+     *
+     * @param buffer the buffer, with at least {@link #LENGTH} chars from the offset
+     * @return {@link #LENGTH}, or -1 if the year does not fit the format
+     */
+    public static int write(ZonedDateTime dateTime, char[] buffer, int offset) {
+        return write(dateTime.toEpochSecond(), dateTime.getNano() / 1_000_000, buffer, offset);
+    }
+
+    /**
+     * Writes the instant, truncated to the millisecond, into the buffer.
+     *
+     * @param buffer the buffer, with at least {@link #LENGTH} chars from the offset
+     * @return {@link #LENGTH}, or -1 if the year does not fit the format
+     */
+    public static int write(long epochSecond, int millis, char[] buffer, int offset) {
+        if (epochSecond < MIN_SECOND || epochSecond >= MAX_SECOND) {
+            return -1;
+        }
+        long epochDay = Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+        int secondOfDay = (int) Math.floorMod(epochSecond, SECONDS_PER_DAY);
+
+        // Civil date of the day, with years starting in March so that the leap day is the last of the year
+        long days = epochDay + 719468;
+        long era = Math.floorDiv(days, 146097);
+        int dayOfEra = (int) (days - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        int year = (int) (yearOfEra + era * 400) + (month <= 2 ? 1 : 0);
+
+        write4(year, buffer, offset);
+        buffer[offset + 4] = '-';
+        write2(month, buffer, offset + 5);
+        buffer[offset + 7] = '-';
+        write2(day, buffer, offset + 8);
+        buffer[offset + 10] = 'T';
+        write2(secondOfDay / 3600, buffer, offset + 11);
+        buffer[offset + 13] = ':';
+        write2(secondOfDay / 60 % 60, buffer, offset + 14);
+        buffer[offset + 16] = ':';
+        write2(secondOfDay % 60, buffer, offset + 17);
+        buffer[offset + 19] = '.';
+        buffer[offset + 20] = (char) ('0' + millis / 100);
+        write2(millis % 100, buffer, offset + 21);
+        buffer[offset + 23] = 'Z';
+        return LENGTH;
+    }
+
+    private static void write2(int value, char[] buffer, int offset) {
+        buffer[offset] = (char) ('0' + value / 10);
+        buffer[offset + 1] = (char) ('0' + value % 10);
+    }
+
+    private static void write4(int value, char[] buffer, int offset) {
+        write2(value / 100, buffer, offset);
+        write2(value % 100, buffer, offset + 2);
+    }
+
+    /**
+     * @return the date, or null if the text is not exactly in the format
+     */
+    public static ZonedDateTime parse(CharSequence text) {
+        Instant instant = parseInstant(text);
+        return instant == null ? null : ZonedDateTime.ofInstant(instant, ZoneOffset.UTC);
+    }
+
+    /**
+     * @return the instant, or null if the text is not exactly in the format
+     */
+    public static Instant parseInstant(CharSequence text) {
+        if (text.length() != LENGTH || text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(10) != 'T'
+            || text.charAt(13) != ':' || text.charAt(16) != ':' || text.charAt(19) != '.' || text.charAt(23) != 'Z') {
+            return null;
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 2);
+        int day = digits(text, 8, 2);
+        int hour = digits(text, 11, 2);
+        int minute = digits(text, 14, 2);
+        int second = digits(text, 17, 2);
+        int millis = digits(text, 20, 3);
+        if (year < 1 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+            || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59 || millis < 0) {
+            return null;
+        }
+        long epochSecond = epochDay(year, month, day) * SECONDS_PER_DAY + hour * 3600 + minute * 60 + second;
+        return Instant.ofEpochSecond(epochSecond, millis * 1_000_000L);
+    }
+
+    /**
+     * @return the value of the decimal digits, or -1 if one of the chars is not a digit
+     */
+    private static int digits(CharSequence text, int offset, int length) {
+        int value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static long epochDay(int year, int month, int day) {
+        int shiftedYear = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(shiftedYear, 400);
+        int yearOfEra = (int) (shiftedYear - era * 400);
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
@@ -0,0 +1,71 @@
+package com.innvo.domain.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+import com.fasterxml.jackson.datatype.jsr310.deser.InstantDeserializer;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.TimeZone;
+
+/**
+ * Parses the dates in the fixed format of {@link FixedIsoDateTime} from the characters of the parser, and
+ * falls back to the deserializer of jackson-datatype-jsr310 for any other form. Like it, the dates are moved to
+ * the time zone of the context unless {@link DeserializationFeature#ADJUST_DATES_TO_CONTEXT_TIME_ZONE} is disabled.
+ */
+public class FixedIsoZonedDateTimeDeserializer extends StdScalarDeserializer<ZonedDateTime> {
+
+    private static final long serialVersionUID = 1L;
+
+    private transient volatile ZoneMapping lastZone;
+
+    public FixedIsoZonedDateTimeDeserializer() {
+        super(ZonedDateTime.class);
+    }
+
+    @Override
+    public ZonedDateTime deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        if (parser.getCurrentToken() == JsonToken.VALUE_STRING && parser.getTextLength() == FixedIsoDateTime.LENGTH) {
+            Instant instant = FixedIsoDateTime.parseInstant(
+                CharBuffer.wrap(parser.getTextCharacters(), parser.getTextOffset(), FixedIsoDateTime.LENGTH));
+            if (instant != null) {
+                return ZonedDateTime.ofInstant(instant,
+                    context.isEnabled(DeserializationFeature.ADJUST_DATES_TO_CONTEXT_TIME_ZONE)
+                        ? zoneOf(context.getTimeZone())
+                        : ZoneOffset.UTC);
+            }
+        }
+        return InstantDeserializer.ZONED_DATE_TIME.deserialize(parser, context);
+    }
+
+    /**
+     * The zone of the context is almost always the same, so the last conversion is kept.
+     */
+    private ZoneId zoneOf(TimeZone timeZone) {
+        ZoneMapping mapping = lastZone;
+        if (mapping == null || mapping.timeZone != timeZone) {
+            mapping = new ZoneMapping(timeZone);
+            lastZone = mapping;
+        }
+        return mapping.zoneId;
+    }
+
+    private static final class ZoneMapping {
+
+        private final TimeZone timeZone;
+
+        private final ZoneId zoneId;
+
+        private ZoneMapping(TimeZone timeZone) {
+            this.timeZone = timeZone;
+            this.zoneId = timeZone.toZoneId();
+        }
+    }
+}
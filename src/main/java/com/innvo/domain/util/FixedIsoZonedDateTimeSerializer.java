@@ -0,0 +1,36 @@
+package com.innvo.domain.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.datatype.jsr310.ser.ZonedDateTimeSerializer;
+
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Writes the dates in the fixed format of {@link FixedIsoDateTime} straight into the generator, and falls back
+ * to the formatter, which must be the same format, for the years out of the format or when the dates are written
+ * as timestamps.
+ */
+public class FixedIsoZonedDateTimeSerializer extends ZonedDateTimeSerializer {
+
+    private static final long serialVersionUID = 1L;
+
+    public FixedIsoZonedDateTimeSerializer(DateTimeFormatter formatter) {
+        super(formatter);
+    }
+
+    @Override
+    public void serialize(ZonedDateTime value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        if (!provider.isEnabled(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)) {
+            char[] buffer = new char[FixedIsoDateTime.LENGTH];
+            if (FixedIsoDateTime.write(value, buffer, 0) > 0) {
+                generator.writeString(buffer, 0, FixedIsoDateTime.LENGTH);
+                return;
+            }
+        }
+        super.serialize(value, generator, provider);
+    }
+}
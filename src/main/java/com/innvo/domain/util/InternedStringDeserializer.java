@@ -0,0 +1,26 @@
+package com.innvo.domain.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StringDeserializer;
+
+import java.io.IOException;
+
+/**
+ * Interns a string through {@link StringInternPool}, for the REST and Elasticsearch documents of the entities,
+ * which intern their fields loaded through JPA themselves.
+ */
+public class InternedStringDeserializer extends StdScalarDeserializer<String> {
+
+    private static final long serialVersionUID = 1L;
+
+    public InternedStringDeserializer() {
+        super(String.class);
+    }
+
+    @Override
+    public String deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        return StringInternPool.shared().intern(StringDeserializer.instance.deserialize(parser, context));
+    }
+}
@@ -2,6 +2,7 @@ package com.innvo.domain.util;
 
 import com.innvo.domain.util.JSR310DateConverters.*;
 
+import java.sql.Timestamp;
 import java.time.*;
 import java.util.Date;
 
@@ -26,17 +27,25 @@ public final class JSR310PersistenceConverters {
         }
     }
 
+    /**
+     * Converts straight to and from the Timestamp bound by Hibernate, rather than through a Date, in the time zone
+     * of the JVM at startup. Like with a Date, the timestamps are truncated to the millisecond.
+     */
     @Converter(autoApply = true)
-    public static class ZonedDateTimeConverter implements AttributeConverter<ZonedDateTime, Date> {
+    public static class ZonedDateTimeConverter implements AttributeConverter<ZonedDateTime, Timestamp> {
+
+        private static final ZoneId ZONE = ZoneId.systemDefault();
 
         @Override
-        public Date convertToDatabaseColumn(ZonedDateTime zonedDateTime) {
-            return ZonedDateTimeToDateConverter.INSTANCE.convert(zonedDateTime);
+        public Timestamp convertToDatabaseColumn(ZonedDateTime zonedDateTime) {
+            return zonedDateTime == null
+                ? null
+                : new Timestamp(zonedDateTime.toEpochSecond() * 1000 + zonedDateTime.getNano() / 1_000_000);
         }
 
         @Override
-        public ZonedDateTime convertToEntityAttribute(Date date) {
-            return DateToZonedDateTimeConverter.INSTANCE.convert(date);
+        public ZonedDateTime convertToEntityAttribute(Timestamp timestamp) {
+            return timestamp == null ? null : ZonedDateTime.ofInstant(timestamp.toInstant(), ZONE);
         }
     }
 
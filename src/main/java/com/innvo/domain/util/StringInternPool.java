@@ -0,0 +1,122 @@
+package com.innvo.domain.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, concurrent pool of canonical strings, used for low-cardinality fields such as status or domain.
+ *
+ * <p>
+ * Unlike {@link String#intern()} the pool never grows past its maximum size. It keeps two generations of half
+ * that size: values are added to the current one, values found in the previous one are moved back to the
+ * current one, and once the current one is full it replaces the previous one, which is dropped. A value not
+ * used for a whole generation is evicted, so a burst of high-cardinality values cannot keep the pool full.
+ * </p>
+ * <p>
+ * The pool counts the duplicates it replaced and estimates the bytes they held, which is the saving as long as
+ * the entities holding the values are retained, for instance in the second-level cache.
+ * </p>
+ */
+public final class StringInternPool {
+
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    private static final StringInternPool SHARED = new StringInternPool(DEFAULT_MAX_SIZE);
+
+    private final int generationSize;
+
+    private volatile ConcurrentHashMap<String, String> current = new ConcurrentHashMap<>();
+
+    private volatile ConcurrentHashMap<String, String> previous = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder savedBytes = new LongAdder();
+
+    public StringInternPool(int maxSize) {
+        if (maxSize < 2) {
+            throw new IllegalArgumentException("Maximum size must be at least 2: " + maxSize);
+        }
+        this.generationSize = maxSize / 2;
+    }
+
+    /**
+     * @return the pool shared by the JPA and JSON mappings of the domain entities
+     */
+    public static StringInternPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * @param value the value to intern, may be null
+     * @return the canonical instance equal to value, or value itself if it is the first one pooled
+     */
+    public String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        ConcurrentHashMap<String, String> generation = current;
+        String pooled = generation.get(value);
+        if (pooled == null) {
+            pooled = previous.get(value);
+            if (pooled == null) {
+                pooled = value;
+            }
+            String raced = generation.putIfAbsent(value, pooled);
+            if (raced != null) {
+                pooled = raced;
+            } else if (generation.size() >= generationSize) {
+                rotate(generation);
+            }
+        }
+        if (pooled == value) {
+            misses.increment();
+        } else {
+            hits.increment();
+            savedBytes.add(retainedBytes(value));
+        }
+        return pooled;
+    }
+
+    private synchronized void rotate(ConcurrentHashMap<String, String> full) {
+        if (current == full) {
+            previous = full;
+            current = new ConcurrentHashMap<>();
+        }
+    }
+
+    /**
+     * @return an estimate of the heap held by a string on a 64-bit JVM with compressed references: the 24 bytes
+     * of the string and its character array, with its 16 bytes header, aligned to 8 bytes
+     */
+    static long retainedBytes(String value) {
+        return 24 + ((16 + 2L * value.length() + 7) & ~7L);
+    }
+
+    public int size() {
+        return current.size() + previous.size();
+    }
+
+    /**
+     * @return the number of values replaced by their canonical instance
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of values which were their own canonical instance
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the estimated bytes held by the replaced values
+     */
+    public long savedBytes() {
+        return savedBytes.sum();
+    }
+}
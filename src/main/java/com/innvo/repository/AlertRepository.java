@@ -3,6 +3,9 @@ package com.innvo.repository;
 import com.innvo.domain.Alert;
 import com.innvo.domain.Event;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.*;
 import org.springframework.data.repository.query.Param;
 
@@ -17,4 +20,14 @@ public interface AlertRepository extends JpaRepository<Alert,Long> {
 	@Query("SELECT e FROM Event e WHERE e.startdatetime BETWEEN :startdatetime AND :startdatetime1")
     public List<Event> findEventDates(@Param("startdatetime") ZonedDateTime startdatetime, @Param("startdatetime1") ZonedDateTime startdatetime1);
 
+    @Query("SELECT a.version FROM Alert a WHERE a.id = :id")
+    Long findVersionById(@Param("id") Long id);
+
+    @Query("SELECT a.domain FROM Alert a WHERE a.id = :id")
+    String findDomainById(@Param("id") Long id);
+
+    Page<Alert> findByDomain(String domain, Pageable pageable);
+
+    Slice<Alert> findByDomainAndIdGreaterThan(String domain, Long id, Pageable pageable);
+
 }
@@ -2,6 +2,9 @@ package com.innvo.repository;
 
 import com.innvo.domain.Event;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.*;
 import org.springframework.data.repository.query.Param;
 
@@ -16,4 +19,25 @@ public interface EventRepository extends JpaRepository<Event,Long> {
 	@Query("SELECT e FROM Event e WHERE e.startdatetime BETWEEN :startdatetime AND :startdatetime1")
     public List<Event> findEventDates(@Param("startdatetime") ZonedDateTime startdatetime, @Param("startdatetime1") ZonedDateTime startdatetime1);
 
+    Slice<Event> findByStartdatetimeBetween(ZonedDateTime from, ZonedDateTime to, Pageable pageable);
+
+    Slice<Event> findByStartdatetimeGreaterThanEqual(ZonedDateTime from, Pageable pageable);
+
+    Slice<Event> findByStartdatetimeBefore(ZonedDateTime before, Pageable pageable);
+
+    Slice<Event> findByLastmodifieddatetimeGreaterThanEqual(ZonedDateTime from, Pageable pageable);
+
+    @Query("SELECT e.version FROM Event e WHERE e.id = :id")
+    Long findVersionById(@Param("id") Long id);
+
+    @Query("SELECT e.domain FROM Event e WHERE e.id = :id")
+    String findDomainById(@Param("id") Long id);
+
+    Page<Event> findByDomain(String domain, Pageable pageable);
+
+    Slice<Event> findByDomainAndIdGreaterThan(String domain, Long id, Pageable pageable);
+
+    @Query("SELECT e.id, e.startdatetime FROM Event e WHERE e.id > :afterId AND e.startdatetime IS NOT NULL ORDER BY e.id")
+    List<Object[]> findStartdatetimesAfterId(@Param("afterId") Long afterId, Pageable pageable);
+
 }
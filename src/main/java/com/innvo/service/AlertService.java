@@ -0,0 +1,259 @@
+package com.innvo.service;
+
+import com.codahale.metrics.MetricRegistry;
+import com.innvo.config.ApplicationProperties;
+import com.innvo.config.Constants;
+import com.innvo.config.metrics.EntityCacheMetrics;
+import com.innvo.domain.Alert;
+import com.innvo.repository.AlertRepository;
+import com.innvo.security.SecurityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Service Implementation for managing Alert.
+ */
+@Service
+@Transactional
+public class AlertService {
+
+    public static final String CACHE_NAME = "alert-by-id";
+
+    private static final int REINDEX_PAGE_SIZE = 500;
+
+    private final Logger log = LoggerFactory.getLogger(AlertService.class);
+
+    @Inject
+    private AlertRepository alertRepository;
+
+    @Inject
+    private ShardService shardService;
+
+    @Inject
+    private ApplicationProperties applicationProperties;
+
+    @Inject
+    private CacheManager cacheManager;
+
+    @Inject
+    private ResponseCache responseCache;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    @Inject
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private EntityCache<Alert> cache;
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        if (!applicationProperties.getEntityCache().isEnabled()) {
+            log.debug("Alert cache is disabled");
+            return;
+        }
+        EntityCacheMetrics metrics = new EntityCacheMetrics();
+        metricRegistry.register(MetricRegistry.name("entity.cache", CACHE_NAME), metrics);
+        cache = new EntityCache<>(cacheManager.getCache(CACHE_NAME), metrics);
+    }
+
+    /**
+     * Get one alert by id, from the cache or else from the shards.
+     * Joins the current transaction if there is one: within a read-write transaction, the cache is bypassed so
+     * that the changes of the transaction are seen, and not cached before they are committed. Misses are loaded
+     * from the primary database, as a replica may not have the latest change yet.
+     *
+     * @param id the id of the entity
+     * @return the entity, or null
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public Alert findOne(Long id) {
+        log.debug("Request to get Alert : {}", id);
+        if (cache == null || !EntityCache.isUsable()) {
+            return shardService.findInShards(id, alertRepository::findOne);
+        }
+        return cache.get(id, () -> shardService.findInShardsOnPrimary(id, alertRepository::findOne));
+    }
+
+    /**
+     * Save an alert in the shard of the current thread, and evict it from the caches once committed.
+     *
+     * @param alert the entity to save
+     * @return the persisted entity
+     */
+    public Alert save(Alert alert) {
+        log.debug("Request to save Alert : {}", alert);
+        Alert result = alertRepository.save(alert);
+        evict(result.getId());
+        return result;
+    }
+
+    /**
+     * Changes an alert of the shard of the current thread within one transaction: the alert is loaded, changed, and
+     * only its changed columns written by the dirty checking of Hibernate at commit, its version being checked.
+     *
+     * @param id the id of the entity
+     * @param changes the changes to apply to the entity, which roll the transaction back if they throw
+     * @return the changed entity, or null if it does not exist
+     */
+    public Alert patch(Long id, Consumer<Alert> changes) {
+        log.debug("Request to patch Alert : {}", id);
+        Alert alert = alertRepository.findOne(id);
+        if (alert == null) {
+            return null;
+        }
+        changes.accept(alert);
+        evict(id);
+        return alert;
+    }
+
+    /**
+     * Delete the alert by id from the shard of the current thread, and evict it from the caches once committed.
+     *
+     * @param id the id of the entity
+     */
+    public void delete(Long id) {
+        log.debug("Request to delete Alert : {}", id);
+        alertRepository.delete(id);
+        evict(id);
+    }
+
+    /**
+     * Evicts alerts changed or deleted without this service from the caches, once the current transaction, if any,
+     * is committed.
+     *
+     * @param ids the ids of the entities
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public void evict(Collection<Long> ids) {
+        if (cache != null) {
+            cache.evictAfterCommit(ids);
+        }
+        responseCache.invalidateAfterCommit(ModificationWatermarkService.ALERT);
+    }
+
+    private void evict(Long id) {
+        evict(Collections.singletonList(id));
+    }
+
+    /**
+     * Changes the status of all the alerts matching the given criteria with one UPDATE statement, then reindexes
+     * them and evicts them from the cache once it is committed. Only the alerts of the current shard are changed.
+     * <p>
+     * No id is loaded for the update: the changed alerts are found again for the reindexing by their new status
+     * and the modification date set by the update, one page of ids at a time.
+     *
+     * @param status the current status of the alerts to change, any if null
+     * @param category the category of the alerts to change, any if null
+     * @param domain the domain of the alerts to change, any if null
+     * @param newStatus the new status
+     * @return the number of changed alerts
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public int transitionStatus(String status, String category, String domain, String newStatus) {
+        log.debug("Request to change the status of the alerts with status {}, category {} and domain {} to {}",
+            status, category, domain, newStatus);
+        // Truncated to what every database stores, so that it can be compared with the stored one
+        ZonedDateTime now = ZonedDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        String login = Optional.ofNullable(SecurityUtils.getCurrentUserLogin()).orElse(Constants.SYSTEM_ACCOUNT);
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+
+        int updated = transactionTemplate.execute(transaction -> {
+            CriteriaUpdate<Alert> update = builder.createCriteriaUpdate(Alert.class);
+            Root<Alert> root = update.from(Alert.class);
+            update.set(root.<String>get("status"), newStatus)
+                .set(root.<String>get("lastmodifiedby"), login)
+                .set(root.<ZonedDateTime>get("lastmodifieddatetime"), now)
+                .set(root.<Long>get("version"), builder.sum(root.<Long>get("version"), 1L))
+                .where(matching(builder, root, status, category, domain, newStatus));
+            // Hibernate evicts the second-level cache of the alerts after a bulk update
+            return entityManager.createQuery(update).executeUpdate();
+        });
+        if (updated == 0) {
+            return 0;
+        }
+
+        Long afterId = 0L;
+        do {
+            Long after = afterId;
+            afterId = transactionTemplate.execute(transaction -> reindexTransitioned(builder, category, domain, newStatus, now, login, after));
+        } while (afterId != null);
+        return updated;
+    }
+
+    /**
+     * Reindexes and evicts a page of the alerts changed by a transition, after an id.
+     *
+     * @return the last id of the page, or null if it was the last page
+     */
+    private Long reindexTransitioned(CriteriaBuilder builder, String category, String domain, String newStatus,
+                                     ZonedDateTime at, String login, Long afterId) {
+        CriteriaQuery<Alert> select = builder.createQuery(Alert.class);
+        Root<Alert> root = select.from(Alert.class);
+        List<Predicate> predicates = new ArrayList<>(Arrays.asList(matching(builder, root, newStatus, category, domain, null)));
+        predicates.add(builder.equal(root.get("lastmodifieddatetime"), at));
+        predicates.add(builder.equal(root.get("lastmodifiedby"), login));
+        predicates.add(builder.greaterThan(root.<Long>get("id"), afterId));
+        select.where(predicates.toArray(new Predicate[predicates.size()])).orderBy(builder.asc(root.get("id")));
+        List<Alert> alerts = entityManager.createQuery(select).setMaxResults(REINDEX_PAGE_SIZE).getResultList();
+        if (alerts.isEmpty()) {
+            return null;
+        }
+        shardService.indexAlerts(shardService.currentShard(), alerts);
+        List<Long> ids = new ArrayList<>(alerts.size());
+        alerts.forEach(alert -> ids.add(alert.getId()));
+        evict(ids);
+        // Nothing was changed in memory: the indexed alerts only need to be let go
+        entityManager.clear();
+        return alerts.size() < REINDEX_PAGE_SIZE ? null : ids.get(ids.size() - 1);
+    }
+
+    private static Predicate[] matching(CriteriaBuilder builder, Root<Alert> root, String status, String category,
+                                        String domain, String newStatus) {
+        List<Predicate> predicates = new ArrayList<>();
+        if (newStatus != null) {
+            predicates.add(builder.notEqual(root.get("status"), newStatus));
+        }
+        if (status != null) {
+            predicates.add(builder.equal(root.get("status"), status));
+        }
+        if (category != null) {
+            predicates.add(builder.equal(root.get("category"), category));
+        }
+        if (domain != null) {
+            predicates.add(builder.equal(root.get("domain"), domain));
+        }
+        return predicates.toArray(new Predicate[predicates.size()]);
+    }
+}
@@ -0,0 +1,314 @@
+package com.innvo.service;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.Member;
+import com.innvo.config.ApplicationProperties;
+import com.innvo.config.elasticsearch.ElasticsearchIndexMigration;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk-load sessions, during which an index is not refreshed nor replicated, and documents are indexed by a
+ * bulk processor with several requests in flight.
+ *
+ * <p>
+ * Opening a session saves the refresh interval and replica count of the index in a Hazelcast map, then disables
+ * both. Closing it waits for the in-flight requests, restores the settings, and merges the segments of the index
+ * in the background. Settings are restored even when the session is not closed: on shutdown for the sessions of
+ * this member, and by a periodic check, on any member, for the indices left without refresh while no member of
+ * the cluster owns a session on them, such as after a crash. The check falls back to the index definition, then
+ * to the Elasticsearch defaults, when the saved settings were lost with the cluster.
+ * </p>
+ */
+@Service
+public class BulkLoadService {
+
+    public static final String EVENT_INDEX = "event";
+
+    static final String SESSIONS_MAP_NAME = "bulk-load-sessions";
+
+    private static final String REFRESH_INTERVAL = "index.refresh_interval";
+
+    private static final String NUMBER_OF_REPLICAS = "index.number_of_replicas";
+
+    private static final String DEFAULT_REFRESH_INTERVAL = "1s";
+
+    private static final String DEFAULT_NUMBER_OF_REPLICAS = "1";
+
+    private static final String[] GUARDED_INDICES = {EVENT_INDEX, "alert"};
+
+    private static final long CLOSE_TIMEOUT_MINUTES = 10;
+
+    private final Logger log = LoggerFactory.getLogger(BulkLoadService.class);
+
+    @Inject
+    private ApplicationProperties applicationProperties;
+
+    @Inject
+    private Client client;
+
+    @Inject
+    private ObjectMapper objectMapper;
+
+    @Inject
+    private HazelcastInstance hazelcastInstance;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    private final Map<String, Session> localSessions = new ConcurrentHashMap<>();
+
+    private IMap<String, SavedSettings> sessions;
+
+    private Meter indexed;
+
+    private Meter failed;
+
+    @PostConstruct
+    public void init() {
+        sessions = hazelcastInstance.getMap(SESSIONS_MAP_NAME);
+        indexed = metricRegistry.meter(MetricRegistry.name(BulkLoadService.class, "indexed"));
+        failed = metricRegistry.meter(MetricRegistry.name(BulkLoadService.class, "failed"));
+        metricRegistry.register(MetricRegistry.name(BulkLoadService.class, "sessions"), (Gauge<Integer>) localSessions::size);
+    }
+
+    /**
+     * Opens a session on an index, of which the documents have the type of the same name.
+     *
+     * @throws IllegalStateException if a session is already open on the index
+     */
+    public Session open(String index) {
+        Settings current = currentSettings(index);
+        SavedSettings saved = new SavedSettings(
+            hazelcastInstance.getCluster().getLocalMember().getUuid(),
+            current.get(REFRESH_INTERVAL, DEFAULT_REFRESH_INTERVAL),
+            current.get(NUMBER_OF_REPLICAS, DEFAULT_NUMBER_OF_REPLICAS));
+        if (sessions.putIfAbsent(index, saved) != null) {
+            throw new IllegalStateException("A bulk-load session is already open on " + index);
+        }
+        log.info("Opening bulk-load session on {}, saved refresh interval {} and {} replicas",
+            index, saved.refreshInterval, saved.numberOfReplicas);
+        Session session;
+        try {
+            updateSettings(index, "-1", "0");
+            session = new Session(index);
+        } catch (RuntimeException e) {
+            restore(index, saved);
+            throw e;
+        }
+        localSessions.put(index, session);
+        return session;
+    }
+
+    private Settings currentSettings(String index) {
+        // The settings are keyed by the concrete index, the given name may be an alias
+        return client.admin().indices().prepareGetSettings(index).get().getIndexToSettings().valuesIt().next();
+    }
+
+    private void updateSettings(String index, String refreshInterval, String numberOfReplicas) {
+        client.admin().indices().prepareUpdateSettings(index)
+            .setSettings(ImmutableSettings.settingsBuilder()
+                .put(REFRESH_INTERVAL, refreshInterval)
+                .put(NUMBER_OF_REPLICAS, numberOfReplicas)
+                .build())
+            .get();
+    }
+
+    private void restore(String index, SavedSettings saved) {
+        try {
+            updateSettings(index, saved.refreshInterval, saved.numberOfReplicas);
+            log.info("Restored refresh interval {} and {} replicas on {}", saved.refreshInterval, saved.numberOfReplicas, index);
+        } finally {
+            sessions.remove(index);
+        }
+    }
+
+    /**
+     * Restores the settings of the indices left in bulk-load mode by a member which is gone.
+     */
+    @Scheduled(initialDelay = 10000, fixedDelay = 60000)
+    public void restoreAbandonedSessions() {
+        Set<String> members = hazelcastInstance.getCluster().getMembers().stream()
+            .map(Member::getUuid).collect(Collectors.toSet());
+        for (String index : GUARDED_INDICES) {
+            try {
+                SavedSettings saved = sessions.get(index);
+                if (saved != null && members.contains(saved.owner)) {
+                    continue;
+                }
+                if (!client.admin().indices().prepareExists(index).get().isExists()) {
+                    continue;
+                }
+                if (!"-1".equals(currentSettings(index).get(REFRESH_INTERVAL))) {
+                    if (saved != null) {
+                        sessions.remove(index);
+                    }
+                    continue;
+                }
+                log.warn("Index {} was left in bulk-load mode, restoring its settings", index);
+                restore(index, saved != null ? saved : definitionSettings(index));
+            } catch (Exception e) {
+                log.warn("Could not check the bulk-load mode of index {}: {}", index, e.getMessage());
+            }
+        }
+    }
+
+    private SavedSettings definitionSettings(String index) throws IOException {
+        String refreshInterval = DEFAULT_REFRESH_INTERVAL;
+        String numberOfReplicas = DEFAULT_NUMBER_OF_REPLICAS;
+        ClassPathResource definition = ElasticsearchIndexMigration.latestDefinition(index);
+        if (definition != null) {
+            try (InputStream in = definition.getInputStream()) {
+                JsonNode settings = objectMapper.readTree(in).path("settings");
+                refreshInterval = settings.path("refresh_interval").asText(refreshInterval);
+                numberOfReplicas = settings.path("number_of_replicas").asText(numberOfReplicas);
+            }
+        }
+        return new SavedSettings(null, refreshInterval, numberOfReplicas);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        localSessions.values().forEach(Session::close);
+    }
+
+    /**
+     * A bulk-load session on an index, to close when the load is over, whether it succeeded or not.
+     */
+    public final class Session implements Closeable {
+
+        private final String index;
+
+        private final BulkProcessor processor;
+
+        private final AtomicLong failures = new AtomicLong();
+
+        private boolean closed;
+
+        private Session(String index) {
+            this.index = index;
+            ApplicationProperties.Elasticsearch properties = applicationProperties.getElasticsearch();
+            this.processor = BulkProcessor.builder(client, new BulkProcessor.Listener() {
+                @Override
+                public void beforeBulk(long executionId, BulkRequest request) {
+                }
+
+                @Override
+                public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+                    long requestFailures = 0;
+                    if (response.hasFailures()) {
+                        requestFailures = Arrays.stream(response.getItems()).filter(BulkItemResponse::isFailed).count();
+                        log.warn("Bulk-load request on {} failed for {} documents: {}", index, requestFailures, response.buildFailureMessage());
+                        failed.mark(requestFailures);
+                        failures.addAndGet(requestFailures);
+                    }
+                    indexed.mark(request.numberOfActions() - requestFailures);
+                }
+
+                @Override
+                public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+                    log.warn("Bulk-load request on {} failed for {} documents: {}", index, request.numberOfActions(), failure.getMessage());
+                    failed.mark(request.numberOfActions());
+                    failures.addAndGet(request.numberOfActions());
+                }
+            })
+                .setBulkActions(properties.getBulkActions())
+                .setBulkSize(new ByteSizeValue(properties.getBulkSizeMb(), ByteSizeUnit.MB))
+                .setConcurrentRequests(properties.getBulkConcurrentRequests())
+                .build();
+        }
+
+        /**
+         * Queues a document for indexing; blocks while all the concurrent requests are in flight.
+         */
+        public void index(Long id, Object document) throws JsonProcessingException {
+            processor.add(new IndexRequest(index, index, id.toString()).source(objectMapper.writeValueAsBytes(document)));
+        }
+
+        /**
+         * @return the number of documents which could not be indexed so far
+         */
+        public long getFailures() {
+            return failures.get();
+        }
+
+        /**
+         * Waits for the in-flight requests, restores the settings of the index, and starts merging its segments.
+         */
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            localSessions.remove(index);
+            try {
+                processor.awaitClose(CLOSE_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                SavedSettings saved = sessions.get(index);
+                restore(index, saved != null ? saved : new SavedSettings(null, DEFAULT_REFRESH_INTERVAL, DEFAULT_NUMBER_OF_REPLICAS));
+            }
+            client.admin().indices().prepareRefresh(index).execute();
+            // The force merge of Elasticsearch 1.x, which may take a while: not waited for
+            client.admin().indices().prepareOptimize(index).setMaxNumSegments(1).execute();
+            log.info("Closed bulk-load session on {}, {} documents failed", index, failures.get());
+        }
+    }
+
+    /**
+     * The settings of an index before a session, and the member of the cluster which owns the session.
+     */
+    static final class SavedSettings implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String owner;
+
+        private final String refreshInterval;
+
+        private final String numberOfReplicas;
+
+        SavedSettings(String owner, String refreshInterval, String numberOfReplicas) {
+            this.owner = owner;
+            this.refreshInterval = refreshInterval;
+            this.numberOfReplicas = numberOfReplicas;
+        }
+    }
+}
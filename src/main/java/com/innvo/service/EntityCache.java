@@ -0,0 +1,125 @@
+package com.innvo.service;
+
+import com.innvo.config.metrics.EntityCacheMetrics;
+import com.innvo.service.util.SingleFlight;
+import org.springframework.cache.Cache;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache of the entities of a type by id, in a cache of the Spring cache manager.
+ *
+ * <p>
+ * A miss loads the entity once for all the concurrent callers of the same id, see {@link SingleFlight}, and
+ * caches it unless an entity was evicted by this member in the meantime: the load may then have read the entity
+ * before the change which evicted it. Missing entities are not cached, so that a new entity is found as soon as
+ * it is committed.
+ * </p>
+ * <p>
+ * Writers evict the entities they change once their transaction is committed, since a reader could otherwise
+ * cache the old row between the eviction and the commit. For the same reason, the loader must read the committed
+ * row from the primary database, not from a replica which may not have the change yet, and the cache is not used
+ * within a read-write transaction, whose changes are not committed yet, see {@link #isUsable()}.
+ * </p>
+ */
+public class EntityCache<T> {
+
+    private final Cache cache;
+
+    private final EntityCacheMetrics metrics;
+
+    private final SingleFlight<Long, T> loads = new SingleFlight<>();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    public EntityCache(Cache cache, EntityCacheMetrics metrics) {
+        this.cache = cache;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the cached entity, or loads it and caches it.
+     *
+     * @param loader loads the committed entity from the primary database, or returns null if there is none
+     * @return the entity, or null
+     */
+    @SuppressWarnings("unchecked")
+    public T get(Long id, Supplier<T> loader) {
+        Cache.ValueWrapper cached = cache.get(id);
+        if (cached != null) {
+            metrics.hit();
+            return (T) cached.get();
+        }
+        metrics.miss();
+        boolean[] leader = new boolean[1];
+        T entity = loads.call(id, () -> {
+            leader[0] = true;
+            long generation = evictions.get();
+            long start = System.nanoTime();
+            T loaded = loader.get();
+            metrics.loaded(System.nanoTime() - start);
+            if (loaded != null && evictions.get() == generation) {
+                cache.put(id, loaded);
+                // An eviction between the check and the put may have missed the put
+                if (evictions.get() != generation) {
+                    cache.evict(id);
+                }
+            }
+            return loaded;
+        });
+        if (!leader[0]) {
+            metrics.coalesced();
+        }
+        return entity;
+    }
+
+    /**
+     * @return false within a read-write transaction, whose reads may see changes which are not committed and may
+     * be rolled back: they must neither be cached nor be served from the cache
+     */
+    public static boolean isUsable() {
+        return !TransactionSynchronizationManager.isActualTransactionActive()
+            || TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
+    /**
+     * Evicts the entities at the end of the current transaction if it commits, or at once without a transaction.
+     */
+    public void evictAfterCommit(Collection<Long> ids) {
+        if (!ids.isEmpty()) {
+            List<Long> evicted = new ArrayList<>(ids);
+            afterCommit(() -> evict(evicted));
+        }
+    }
+
+    /**
+     * Runs the action at the end of the current transaction if it commits, or at once without a transaction.
+     */
+    static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * Evicts the entities at once.
+     */
+    public void evict(Collection<Long> ids) {
+        evictions.incrementAndGet();
+        ids.forEach(cache::evict);
+        metrics.evicted(ids.size());
+    }
+}
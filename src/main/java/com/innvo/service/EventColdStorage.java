@@ -0,0 +1,502 @@
+package com.innvo.service;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ILock;
+import com.innvo.config.ApplicationProperties;
+import com.innvo.domain.Event;
+import com.innvo.domain.Recordtype;
+import com.innvo.repository.EventRepository;
+import com.innvo.service.util.ColumnarSegment;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.query.DeleteQuery;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.*;
+
+/**
+ * Moves the events which started before the live retention from the database and Elasticsearch to compressed
+ * columnar files, and reads them back for the time range queries reaching that far.
+ *
+ * <p>
+ * Each file is a {@link ColumnarSegment} of up to the configured number of events, sorted by start date. A JSON
+ * manifest lists the files with the time and id range of their events, so that a query only reads the files its
+ * range overlaps. Files and manifest are written before the events are deleted from the database; an event may
+ * therefore briefly be both archived and live, and is then returned once. When some of its events could not be
+ * deleted, the next archiving archives them again in a later segment: an event is read from the last segment
+ * holding it. Each shard is archived in turn, so that a segment holds the events of a single shard, and the
+ * archived events are read the same whichever shard their domain is now in. In a cluster the directory should be
+ * shared: a single member archives at a time, and the others reload the manifest when it changes.
+ * </p>
+ */
+@Service
+public class EventColdStorage {
+
+    private static final String MANIFEST_FILE = "manifest.json";
+
+    private static final String LOCK_NAME = "event-cold-storage";
+
+    private static final int PAGE_SIZE = 1000;
+
+    private static final int CACHED_SEGMENTS = 4;
+
+    private static final String[] LONG_COLUMNS = {
+        "id", "version", "startdatetime", "enddatetime", "lastmodifieddatetime", "recordtype_id"};
+
+    private static final String[] STRING_COLUMNS = {
+        "name", "description", "category", "subcategory", "subtype", "type", "status", "lastmodifiedby", "domain"};
+
+    private final Logger log = LoggerFactory.getLogger(EventColdStorage.class);
+
+    @Inject
+    private ApplicationProperties applicationProperties;
+
+    @Inject
+    private EventRepository eventRepository;
+
+    @Inject
+    private EventService eventService;
+
+    @Inject
+    private ElasticsearchTemplate elasticsearchTemplate;
+
+    @Inject
+    private ShardService shardService;
+
+    @Inject
+    private ModificationWatermarkService modificationWatermarkService;
+
+    @Inject
+    private HazelcastInstance hazelcastInstance;
+
+    @Inject
+    private PlatformTransactionManager transactionManager;
+
+    @Inject
+    private ObjectMapper objectMapper;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private ApplicationProperties.ColdStorage properties;
+
+    private Path directory;
+
+    private volatile List<Segment> segments = Collections.emptyList();
+
+    private volatile long manifestModified;
+
+    private final Map<String, ColumnarSegment> cache = new LinkedHashMap<String, ColumnarSegment>(CACHED_SEGMENTS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ColumnarSegment> eldest) {
+            return size() > CACHED_SEGMENTS;
+        }
+    };
+
+    private TransactionTemplate transactionTemplate;
+
+    private Meter archived;
+
+    private Meter segmentReads;
+
+    @PostConstruct
+    public void init() throws IOException {
+        properties = applicationProperties.getColdStorage();
+        if (!properties.isEnabled()) {
+            log.debug("Event cold storage is disabled");
+            return;
+        }
+        directory = Paths.get(properties.getDirectory());
+        Files.createDirectories(directory);
+        log.debug("Configuring event cold storage in {} after {} days", directory.toAbsolutePath(), properties.getRetentionDays());
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        archived = metricRegistry.meter(MetricRegistry.name(EventColdStorage.class, "archived"));
+        segmentReads = metricRegistry.meter(MetricRegistry.name(EventColdStorage.class, "segment-reads"));
+        metricRegistry.register(MetricRegistry.name(EventColdStorage.class, "segments"), (Gauge<Integer>) () -> segments.size());
+        metricRegistry.register(MetricRegistry.name(EventColdStorage.class, "bytes"),
+            (Gauge<Long>) () -> segments.stream().mapToLong(Segment::getBytes).sum());
+        loadManifest();
+    }
+
+    /**
+     * Whether events which started at or after the given date may have been archived.
+     */
+    public boolean isArchived(ZonedDateTime from) {
+        if (!properties.isEnabled() || from == null) {
+            return false;
+        }
+        long fromMillis = from.toInstant().toEpochMilli();
+        return segments.stream().anyMatch(segment -> segment.getMaxTime() >= fromMillis);
+    }
+
+    /**
+     * Adds the archived events which started in a time range, both inclusive, to the live events found in that range.
+     *
+     * @param live the events found in the database, returned as is when the range is not archived
+     * @return the archived then the live events, each event once
+     */
+    @Transactional(readOnly = true)
+    public List<Event> withArchived(ZonedDateTime from, ZonedDateTime to, List<Event> live) {
+        if (!isArchived(from)) {
+            return live;
+        }
+        List<Event> events = findBetween(from, to);
+        Set<Long> ids = new HashSet<>();
+        events.forEach(event -> ids.add(event.getId()));
+        for (Event event : live) {
+            if (!ids.contains(event.getId())) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Reads the archived events which started in a time range, both inclusive, in start date then id order.
+     */
+    @Transactional(readOnly = true)
+    public List<Event> findBetween(ZonedDateTime from, ZonedDateTime to) {
+        if (!properties.isEnabled()) {
+            return new ArrayList<>();
+        }
+        // By id, the segments archived last replacing the events archived again
+        Map<Long, Event> events = new HashMap<>();
+        long fromMillis = from.toInstant().toEpochMilli();
+        long toMillis = to.toInstant().toEpochMilli();
+        Map<Long, Recordtype> recordtypes = new HashMap<>();
+        for (Segment segment : segments) {
+            if (segment.getMaxTime() < fromMillis || segment.getMinTime() > toMillis) {
+                continue;
+            }
+            ColumnarSegment data;
+            try {
+                data = read(segment);
+            } catch (IOException e) {
+                log.error("Could not read archived events from {}", segment.getFile(), e);
+                continue;
+            }
+            int start = data.longColumn("startdatetime");
+            // Rows are sorted by start date
+            int low = 0;
+            int high = data.size();
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (data.getLong(start, middle) < fromMillis) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            for (int row = low; row < data.size() && data.getLong(start, row) <= toMillis; row++) {
+                Event event = toEvent(data, row, recordtypes);
+                events.put(event.getId(), event);
+            }
+        }
+        List<Event> result = new ArrayList<>(events.values());
+        result.sort(Comparator.comparing(Event::getStartdatetime).thenComparing(Event::getId));
+        return result;
+    }
+
+    private ColumnarSegment read(Segment segment) throws IOException {
+        synchronized (cache) {
+            ColumnarSegment data = cache.get(segment.getFile());
+            if (data != null) {
+                return data;
+            }
+        }
+        segmentReads.mark();
+        ColumnarSegment data;
+        try (InputStream in = Files.newInputStream(directory.resolve(segment.getFile()))) {
+            data = ColumnarSegment.readFrom(in);
+        }
+        synchronized (cache) {
+            cache.put(segment.getFile(), data);
+        }
+        return data;
+    }
+
+    private Event toEvent(ColumnarSegment data, int row, Map<Long, Recordtype> recordtypes) {
+        Event event = new Event();
+        event.setId(data.getLong(data.longColumn("id"), row));
+        event.setVersion(toLong(data.getLong(data.longColumn("version"), row)));
+        event.setStartdatetime(toDate(data.getLong(data.longColumn("startdatetime"), row)));
+        event.setEnddatetime(toDate(data.getLong(data.longColumn("enddatetime"), row)));
+        event.setLastmodifieddatetime(toDate(data.getLong(data.longColumn("lastmodifieddatetime"), row)));
+        event.setName(data.getString(data.stringColumn("name"), row));
+        event.setDescription(data.getString(data.stringColumn("description"), row));
+        event.setCategory(data.getString(data.stringColumn("category"), row));
+        event.setSubcategory(data.getString(data.stringColumn("subcategory"), row));
+        event.setSubtype(data.getString(data.stringColumn("subtype"), row));
+        event.setType(data.getString(data.stringColumn("type"), row));
+        event.setStatus(data.getString(data.stringColumn("status"), row));
+        event.setLastmodifiedby(data.getString(data.stringColumn("lastmodifiedby"), row));
+        event.setDomain(data.getString(data.stringColumn("domain"), row));
+        Long recordtypeId = toLong(data.getLong(data.longColumn("recordtype_id"), row));
+        if (recordtypeId != null) {
+            // Record types are in the second-level cache
+            event.setRecordtype(recordtypes.computeIfAbsent(recordtypeId, id -> entityManager.find(Recordtype.class, id)));
+        }
+        return event;
+    }
+
+    private static Long toLong(long value) {
+        return value == ColumnarSegment.NULL ? null : value;
+    }
+
+    private static ZonedDateTime toDate(long millis) {
+        return millis == ColumnarSegment.NULL ? null : ZonedDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    private static long toColumn(Long value) {
+        return value == null ? ColumnarSegment.NULL : value;
+    }
+
+    private static long toColumn(ZonedDateTime value) {
+        return value == null ? ColumnarSegment.NULL : value.toInstant().toEpochMilli();
+    }
+
+    /**
+     * Reloads the manifest when another member of the cluster has changed it.
+     */
+    @Scheduled(initialDelay = 60000, fixedDelay = 60000)
+    public void refresh() {
+        if (properties.isEnabled()) {
+            try {
+                Path manifest = directory.resolve(MANIFEST_FILE);
+                if (Files.exists(manifest) && Files.getLastModifiedTime(manifest).toMillis() != manifestModified) {
+                    loadManifest();
+                }
+            } catch (IOException e) {
+                log.warn("Could not reload the event cold storage manifest: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Archives the events older than the retention, one shard then one segment at a time.
+     */
+    @Scheduled(initialDelay = 300000, fixedDelay = 3600000)
+    public void archive() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        ILock lock = hazelcastInstance.getLock(LOCK_NAME);
+        if (!lock.tryLock()) {
+            log.debug("Events are being archived by another member");
+            return;
+        }
+        try {
+            loadManifest();
+            ZonedDateTime cutoff = ZonedDateTime.now().minusDays(properties.getRetentionDays());
+            for (String shard : shardService.getShards()) {
+                int count;
+                do {
+                    count = archiveSegment(shard, cutoff);
+                } while (count >= properties.getSegmentSize());
+            }
+        } catch (Exception e) {
+            log.error("Could not archive events", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int archiveSegment(String shard, ZonedDateTime cutoff) throws IOException {
+        ColumnarSegment data = new ColumnarSegment(LONG_COLUMNS, STRING_COLUMNS);
+        List<Long> ids = new ArrayList<>();
+        shardService.runInShard(shard, () -> transactionTemplate.execute(status -> {
+            Pageable pageable = new PageRequest(0, PAGE_SIZE,
+                new Sort(new Sort.Order(Sort.Direction.ASC, "startdatetime"), new Sort.Order(Sort.Direction.ASC, "id")));
+            Slice<Event> slice;
+            do {
+                slice = eventRepository.findByStartdatetimeBefore(cutoff, pageable);
+                for (Event event : slice) {
+                    Recordtype recordtype = event.getRecordtype();
+                    data.addRow(new long[] {
+                        event.getId(),
+                        toColumn(event.getVersion()),
+                        toColumn(event.getStartdatetime()),
+                        toColumn(event.getEnddatetime()),
+                        toColumn(event.getLastmodifieddatetime()),
+                        toColumn(recordtype != null ? recordtype.getId() : null)
+                    }, new String[] {
+                        event.getName(), event.getDescription(), event.getCategory(), event.getSubcategory(),
+                        event.getSubtype(), event.getType(), event.getStatus(), event.getLastmodifiedby(), event.getDomain()
+                    });
+                    ids.add(event.getId());
+                }
+                entityManager.clear();
+                pageable = slice.nextPageable();
+            } while (slice.hasNext() && data.size() < properties.getSegmentSize());
+            return null;
+        }));
+        if (data.size() == 0) {
+            return 0;
+        }
+
+        int startColumn = data.longColumn("startdatetime");
+        Segment segment = new Segment();
+        segment.setFile("events-" + data.getLong(startColumn, 0) + "-" + ids.get(0) + ".seg");
+        segment.setMinTime(data.getLong(startColumn, 0));
+        segment.setMaxTime(data.getLong(startColumn, data.size() - 1));
+        segment.setMinId(Collections.min(ids));
+        segment.setMaxId(Collections.max(ids));
+        segment.setRows(data.size());
+        Path file = directory.resolve(segment.getFile());
+        Path temporary = directory.resolve(segment.getFile() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temporary)) {
+            data.writeTo(out);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        segment.setBytes(Files.size(file));
+        List<Segment> updated = new ArrayList<>(segments);
+        updated.add(segment);
+        writeManifest(updated);
+
+        for (int i = 0; i < ids.size(); i += PAGE_SIZE) {
+            List<Long> chunk = ids.subList(i, Math.min(i + PAGE_SIZE, ids.size()));
+            // Hibernate evicts the second-level cache of the events after a bulk delete
+            shardService.runInShard(shard, () -> transactionTemplate.execute(status ->
+                entityManager.createQuery("DELETE FROM Event e WHERE e.id IN :ids")
+                    .setParameter("ids", chunk)
+                    .executeUpdate()));
+            eventService.evict(chunk);
+            String[] documentIds = chunk.stream().map(String::valueOf).toArray(String[]::new);
+            DeleteQuery deleteQuery = new DeleteQuery();
+            deleteQuery.setIndex(ShardService.indexOf(ShardService.EVENT, shard));
+            deleteQuery.setType(ShardService.EVENT);
+            deleteQuery.setQuery(QueryBuilders.idsQuery().ids(documentIds));
+            elasticsearchTemplate.delete(deleteQuery);
+        }
+        modificationWatermarkService.touch(ModificationWatermarkService.EVENT);
+        archived.mark(data.size());
+        log.info("Archived {} events of shard {} which started from {} to {} in {} ({} bytes)", data.size(), shard,
+            toDate(segment.getMinTime()), toDate(segment.getMaxTime()), segment.getFile(), segment.getBytes());
+        return data.size();
+    }
+
+    private synchronized void loadManifest() throws IOException {
+        Path manifest = directory.resolve(MANIFEST_FILE);
+        if (Files.exists(manifest)) {
+            manifestModified = Files.getLastModifiedTime(manifest).toMillis();
+            segments = objectMapper.readValue(manifest.toFile(), new TypeReference<List<Segment>>() { });
+            log.debug("Loaded event cold storage manifest with {} segments", segments.size());
+        }
+    }
+
+    private synchronized void writeManifest(List<Segment> updated) throws IOException {
+        Path manifest = directory.resolve(MANIFEST_FILE);
+        Path temporary = directory.resolve(MANIFEST_FILE + ".tmp");
+        objectMapper.writeValue(temporary.toFile(), updated);
+        Files.move(temporary, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        manifestModified = Files.getLastModifiedTime(manifest).toMillis();
+        segments = Collections.unmodifiableList(updated);
+    }
+
+    /**
+     * An entry of the manifest: a file and the range of its events.
+     */
+    public static class Segment {
+
+        private String file;
+
+        private long minTime;
+
+        private long maxTime;
+
+        private long minId;
+
+        private long maxId;
+
+        private int rows;
+
+        private long bytes;
+
+        public String getFile() {
+            return file;
+        }
+
+        public void setFile(String file) {
+            this.file = file;
+        }
+
+        public long getMinTime() {
+            return minTime;
+        }
+
+        public void setMinTime(long minTime) {
+            this.minTime = minTime;
+        }
+
+        public long getMaxTime() {
+            return maxTime;
+        }
+
+        public void setMaxTime(long maxTime) {
+            this.maxTime = maxTime;
+        }
+
+        public long getMinId() {
+            return minId;
+        }
+
+        public void setMinId(long minId) {
+            this.minId = minId;
+        }
+
+        public long getMaxId() {
+            return maxId;
+        }
+
+        public void setMaxId(long maxId) {
+            this.maxId = maxId;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        public void setRows(int rows) {
+            this.rows = rows;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public void setBytes(long bytes) {
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package com.innvo.service;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ITopic;
+import com.innvo.config.ApplicationProperties;
+import com.innvo.domain.Event;
+import com.innvo.repository.EventRepository;
+import com.innvo.service.util.RotatingBloomFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.ReflectionUtils;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drops duplicate events on ingestion, two events being duplicates when the configured properties
+ * (start date, name, description and domain by default) are equal.
+ *
+ * <p>
+ * The hash of those properties is looked up in a {@link RotatingBloomFilter} of the events ingested within
+ * the window. A miss, by far the most common case, means the event is new and costs no database access.
+ * A hit is confirmed with an exact query on the primary database, since it may be a false positive. The hashes
+ * are added once the events are committed, see {@link #added(List)}, and broadcast to the other members of the
+ * Hazelcast cluster; the filter is loaded at startup from the events modified within the window, and until it
+ * is, every event is checked against the database.
+ * </p>
+ * <p>
+ * Only the events modified within the window are checked: past it, the same content is a new event. The filter
+ * cannot see the events of concurrent requests which are not committed yet: the hash is also stored as the
+ * fingerprint of the event, with the number of the window it is ingested in, the pair being unique, so that
+ * only one of two concurrent duplicates is inserted. The other request gets a unique violation, and checks its
+ * events again with {@link #filterExactly(List)}. The fingerprint of an event saved outside of the ingestion is
+ * kept up to date by {@link #fingerprint(Event)}.
+ * </p>
+ */
+@Service
+public class EventDeduplicator {
+
+    private static final String TOPIC_NAME = "event-deduplication";
+
+    private static final int WARM_UP_PAGE_SIZE = 1000;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Logger log = LoggerFactory.getLogger(EventDeduplicator.class);
+
+    @Inject
+    private ApplicationProperties applicationProperties;
+
+    @Inject
+    private EventRepository eventRepository;
+
+    @Inject
+    private HazelcastInstance hazelcastInstance;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private boolean enabled;
+
+    private volatile boolean ready;
+
+    private long windowMillis;
+
+    private List<String> fields;
+
+    private List<Method> getters;
+
+    private RotatingBloomFilter filter;
+
+    private ITopic<long[]> topic;
+
+    private Meter received;
+
+    private Meter duplicates;
+
+    private Meter exactChecks;
+
+    private Meter falsePositives;
+
+    @PostConstruct
+    public void init() {
+        ApplicationProperties.Deduplication properties = applicationProperties.getDeduplication();
+        enabled = properties.isEnabled();
+        if (!enabled) {
+            log.debug("Event deduplication is disabled");
+            return;
+        }
+        fields = new ArrayList<>(properties.getFields());
+        getters = new ArrayList<>(fields.size());
+        for (String field : fields) {
+            PropertyDescriptor descriptor = BeanUtils.getPropertyDescriptor(Event.class, field);
+            if (descriptor == null || descriptor.getReadMethod() == null) {
+                throw new IllegalArgumentException("Unknown Event property for deduplication: " + field);
+            }
+            getters.add(descriptor.getReadMethod());
+        }
+        windowMillis = TimeUnit.MINUTES.toMillis(properties.getWindowMinutes());
+        filter = new RotatingBloomFilter(properties.getExpectedEvents(), properties.getFalsePositiveProbability(), windowMillis);
+        log.debug("Configuring event deduplication on {} within {} minutes, {} bits and {} hash functions",
+            fields, properties.getWindowMinutes(), filter.bitsPerGeneration(), filter.hashFunctions());
+
+        received = metricRegistry.meter(MetricRegistry.name(EventDeduplicator.class, "received"));
+        duplicates = metricRegistry.meter(MetricRegistry.name(EventDeduplicator.class, "duplicates"));
+        exactChecks = metricRegistry.meter(MetricRegistry.name(EventDeduplicator.class, "exact-checks"));
+        falsePositives = metricRegistry.meter(MetricRegistry.name(EventDeduplicator.class, "false-positives"));
+        metricRegistry.register(MetricRegistry.name(EventDeduplicator.class, "duplicate-rate"), new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(duplicates.getFiveMinuteRate(), received.getFiveMinuteRate());
+            }
+        });
+        metricRegistry.register(MetricRegistry.name(EventDeduplicator.class, "false-positive-rate"), new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(falsePositives.getFiveMinuteRate(), exactChecks.getFiveMinuteRate());
+            }
+        });
+
+        topic = hazelcastInstance.getTopic(TOPIC_NAME);
+        topic.addMessageListener(message -> {
+            if (!message.getPublishingMember().localMember()) {
+                for (long hash : message.getMessageObject()) {
+                    filter.put(hash);
+                }
+            }
+        });
+    }
+
+    /**
+     * Removes from a batch of new events the duplicates of each other, and of the events already ingested, and
+     * sets the fingerprint of the others.
+     *
+     * @return the events which are not duplicates, in their original order
+     */
+    @Transactional
+    public List<Event> filter(List<Event> events) {
+        return filter(events, false);
+    }
+
+    /**
+     * Same as {@link #filter(List)}, but checks every event against the database, after a unique violation of
+     * the fingerprints showed that the filter missed some of them.
+     *
+     * @return the events which are not duplicates, in their original order
+     */
+    @Transactional
+    public List<Event> filterExactly(List<Event> events) {
+        return filter(events, true);
+    }
+
+    private List<Event> filter(List<Event> events, boolean exact) {
+        if (!enabled || events.isEmpty()) {
+            return events;
+        }
+        received.mark(events.size());
+        long window = System.currentTimeMillis() / windowMillis;
+        List<Event> unique = new ArrayList<>(events.size());
+        Set<List<Object>> batchKeys = new HashSet<>();
+        for (Event event : events) {
+            Object[] values = values(event);
+            List<Object> key = key(values);
+            if (!batchKeys.add(key)) {
+                duplicates.mark();
+                continue;
+            }
+            long hash = hash(key);
+            boolean bloomHit = filter.mightContain(hash);
+            if (bloomHit || !ready || exact) {
+                exactChecks.mark();
+                if (exists(values)) {
+                    duplicates.mark();
+                    continue;
+                }
+                if (bloomHit) {
+                    falsePositives.mark();
+                }
+            }
+            event.setFingerprint(hash);
+            event.setFingerprintWindow(window);
+            unique.add(event);
+        }
+        if (unique.size() < events.size()) {
+            log.debug("Dropped {} duplicate events out of {}", events.size() - unique.size(), events.size());
+        }
+        return unique;
+    }
+
+    /**
+     * Sets the fingerprint of an event saved outside of the ingestion, so that it matches the changed properties.
+     * Its window is cleared: an update is not rejected for making an event the duplicate of another one.
+     *
+     * @param event the event to save
+     */
+    public void fingerprint(Event event) {
+        if (enabled) {
+            event.setFingerprint(hash(key(values(event))));
+            event.setFingerprintWindow(null);
+        }
+    }
+
+    /**
+     * Adds the fingerprints of committed events to the filter of every member.
+     *
+     * @param events the events returned by {@link #filter(List)} once inserted, or saved with their
+     * {@link #fingerprint(Event)}
+     */
+    public void added(List<Event> events) {
+        if (!enabled || events.isEmpty()) {
+            return;
+        }
+        long[] hashes = new long[events.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = events.get(i).getFingerprint();
+            filter.put(hashes[i]);
+        }
+        topic.publish(hashes);
+    }
+
+    private Object[] values(Event event) {
+        Object[] values = new Object[getters.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = ReflectionUtils.invokeMethod(getters.get(i), event);
+        }
+        return values;
+    }
+
+    // Dates are compared as instants, whatever their zone
+    private static List<Object> key(Object[] values) {
+        List<Object> key = new ArrayList<>(values.length);
+        for (Object value : values) {
+            key.add(value instanceof ZonedDateTime ? ((ZonedDateTime) value).toInstant() : value);
+        }
+        return key;
+    }
+
+    private static long hash(List<Object> key) {
+        long hash = FNV_OFFSET_BASIS;
+        for (Object value : key) {
+            String text = value == null ? "\u0000" : value.toString();
+            for (int i = 0; i < text.length(); i++) {
+                hash = (hash ^ text.charAt(i)) * FNV_PRIME;
+            }
+            hash = (hash ^ 0x1f) * FNV_PRIME;
+        }
+        return RotatingBloomFilter.mix(hash);
+    }
+
+    private boolean exists(Object[] values) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = builder.createQuery(Long.class);
+        Root<Event> root = query.from(Event.class);
+        Predicate[] predicates = new Predicate[values.length + 1];
+        for (int i = 0; i < values.length; i++) {
+            predicates[i] = values[i] == null
+                ? builder.isNull(root.get(fields.get(i)))
+                : builder.equal(root.get(fields.get(i)), values[i]);
+        }
+        predicates[values.length] = builder.greaterThanOrEqualTo(root.<ZonedDateTime>get("lastmodifieddatetime"), windowStart());
+        query.select(root.<Long>get("id")).where(predicates);
+        return !entityManager.createQuery(query).setMaxResults(1).getResultList().isEmpty();
+    }
+
+    private ZonedDateTime windowStart() {
+        return ZonedDateTime.ofInstant(Instant.ofEpochMilli(System.currentTimeMillis() - windowMillis), ZoneId.systemDefault());
+    }
+
+    /**
+     * Loads the filter once the database is available.
+     */
+    @Scheduled(initialDelay = 10000, fixedDelay = 60000)
+    public void maintain() {
+        if (enabled && !ready) {
+            warmUp();
+        }
+    }
+
+    private void warmUp() {
+        ZonedDateTime since = windowStart();
+        log.debug("Loading event deduplication filter with events modified since {}", since);
+        try {
+            Pageable pageable = new PageRequest(0, WARM_UP_PAGE_SIZE, Sort.Direction.ASC, "id");
+            Slice<Event> slice;
+            int loaded = 0;
+            do {
+                slice = eventRepository.findByLastmodifieddatetimeGreaterThanEqual(since, pageable);
+                for (Event event : slice) {
+                    filter.put(hash(key(values(event))));
+                    loaded++;
+                }
+                pageable = slice.nextPageable();
+            } while (slice.hasNext());
+            ready = true;
+            log.info("Event deduplication filter ready with {} events", loaded);
+        } catch (Exception e) {
+            log.warn("Could not load event deduplication filter, will retry: {}", e.getMessage());
+        }
+    }
+}
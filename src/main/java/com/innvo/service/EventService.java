@@ -0,0 +1,178 @@
+package com.innvo.service;
+
+import com.codahale.metrics.MetricRegistry;
+import com.innvo.config.ApplicationProperties;
+import com.innvo.config.metrics.EntityCacheMetrics;
+import com.innvo.domain.Event;
+import com.innvo.repository.EventRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Service Implementation for managing Event.
+ */
+@Service
+@Transactional
+public class EventService {
+
+    public static final String CACHE_NAME = "event-by-id";
+
+    private final Logger log = LoggerFactory.getLogger(EventService.class);
+
+    @Inject
+    private EventRepository eventRepository;
+
+    @Inject
+    private ShardService shardService;
+
+    @Inject
+    private ApplicationProperties applicationProperties;
+
+    @Inject
+    private CacheManager cacheManager;
+
+    @Inject
+    private ResponseCache responseCache;
+
+    @Inject
+    private EventDeduplicator eventDeduplicator;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+    private int batchSize;
+
+    private EntityCache<Event> cache;
+
+    @PostConstruct
+    public void init() {
+        if (!applicationProperties.getEntityCache().isEnabled()) {
+            log.debug("Event cache is disabled");
+            return;
+        }
+        EntityCacheMetrics metrics = new EntityCacheMetrics();
+        metricRegistry.register(MetricRegistry.name("entity.cache", CACHE_NAME), metrics);
+        cache = new EntityCache<>(cacheManager.getCache(CACHE_NAME), metrics);
+    }
+
+    /**
+     * Get one event by id, from the cache or else from the shards.
+     * Joins the current transaction if there is one: within a read-write transaction, the cache is bypassed so
+     * that the changes of the transaction are seen, and not cached before they are committed. Misses are loaded
+     * from the primary database, as a replica may not have the latest change yet.
+     *
+     * @param id the id of the entity
+     * @return the entity, or null
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public Event findOne(Long id) {
+        log.debug("Request to get Event : {}", id);
+        if (cache == null || !EntityCache.isUsable()) {
+            return shardService.findInShards(id, eventRepository::findOne);
+        }
+        return cache.get(id, () -> shardService.findInShardsOnPrimary(id, eventRepository::findOne));
+    }
+
+    /**
+     * Save an event in the shard of the current thread with the fingerprint of its properties, and evict it from
+     * the caches once committed.
+     *
+     * @param event the entity to save
+     * @return the persisted entity
+     */
+    public Event save(Event event) {
+        log.debug("Request to save Event : {}", event);
+        eventDeduplicator.fingerprint(event);
+        Event result = eventRepository.save(event);
+        evict(result.getId());
+        return result;
+    }
+
+    /**
+     * Changes an event of the shard of the current thread within one transaction: the event is loaded, changed, its
+     * fingerprint updated, and only its changed columns written by the dirty checking of Hibernate at commit, its version being checked.
+     *
+     * @param id the id of the entity
+     * @param changes the changes to apply to the entity, which roll the transaction back if they throw
+     * @return the changed entity, or null if it does not exist
+     */
+    public Event patch(Long id, Consumer<Event> changes) {
+        log.debug("Request to patch Event : {}", id);
+        Event event = eventRepository.findOne(id);
+        if (event == null) {
+            return null;
+        }
+        changes.accept(event);
+        eventDeduplicator.fingerprint(event);
+        evict(id);
+        return event;
+    }
+
+    /**
+     * Delete the event by id from the shard of the current thread, and evict it from the caches once committed.
+     *
+     * @param id the id of the entity
+     */
+    public void delete(Long id) {
+        log.debug("Request to delete Event : {}", id);
+        eventRepository.delete(id);
+        evict(id);
+    }
+
+    /**
+     * Evicts events changed or deleted without this service from the caches, once the current transaction, if any,
+     * is committed.
+     *
+     * @param ids the ids of the entities
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public void evict(Collection<Long> ids) {
+        if (cache != null) {
+            cache.evictAfterCommit(ids);
+        }
+        responseCache.invalidateAfterCommit(ModificationWatermarkService.EVENT);
+    }
+
+    private void evict(Long id) {
+        evict(Collections.singletonList(id));
+    }
+
+    /**
+     * Inserts new events in JDBC batches, flushing and clearing the persistence context after each batch so that
+     * it does not grow with the number of events.
+     *
+     * @param events the events to insert, without ids
+     * @return the inserted events, detached, with their ids and versions
+     */
+    public List<Event> insertAll(List<Event> events) {
+        log.debug("Request to insert {} Events", events.size());
+        for (int i = 0; i < events.size(); i++) {
+            entityManager.persist(events.get(i));
+            if ((i + 1) % batchSize == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+        return events;
+    }
+}
@@ -0,0 +1,237 @@
+package com.innvo.service;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ITopic;
+import com.innvo.config.ApplicationProperties;
+import com.innvo.domain.Event;
+import com.innvo.repository.EventRepository;
+import com.innvo.service.util.TimeIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.ZonedDateTime;
+import java.util.*;
+
+/**
+ * Index of the start date of every event, used to answer time-window lookups with event ids only.
+ *
+ * <p>
+ * The index lives in a {@link TimeIndex}, so that millions of events cost 16 bytes each on the heap. A lookup
+ * returns ids, and the events are then hydrated from the Hibernate second-level cache when they are cached,
+ * and in batches of {@code findAll(ids)} in every shard otherwise, as the domain of an event may have been moved.
+ * Entries are broadcast to the other members of the Hazelcast cluster. The index is loaded from the database of
+ * every shard at startup and does not answer queries until it is.
+ * </p>
+ */
+@Service
+public class EventTimeIndex {
+
+    private static final String TOPIC_NAME = "event-time-index";
+
+    private static final int WARM_UP_PAGE_SIZE = 10000;
+
+    private static final int HYDRATION_BATCH_SIZE = 1000;
+
+    private final Logger log = LoggerFactory.getLogger(EventTimeIndex.class);
+
+    @Inject
+    private ApplicationProperties applicationProperties;
+
+    @Inject
+    private EventRepository eventRepository;
+
+    @Inject
+    private ShardService shardService;
+
+    @Inject
+    private HazelcastInstance hazelcastInstance;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private boolean enabled;
+
+    private volatile boolean ready;
+
+    private TimeIndex index;
+
+    // Pairs of (id, start date in epoch millis)
+    private ITopic<long[]> topic;
+
+    private Meter hits;
+
+    private Meter misses;
+
+    private Meter cachedLoads;
+
+    private Meter batchedLoads;
+
+    @PostConstruct
+    public void init() {
+        ApplicationProperties.TimeIndex properties = applicationProperties.getTimeIndex();
+        enabled = properties.isEnabled();
+        if (!enabled) {
+            log.debug("Event time index is disabled");
+            return;
+        }
+        log.debug("Configuring event time index with a buffer of {} entries", properties.getBufferSize());
+        index = new TimeIndex(properties.getBufferSize());
+
+        hits = metricRegistry.meter(MetricRegistry.name(EventTimeIndex.class, "hits"));
+        misses = metricRegistry.meter(MetricRegistry.name(EventTimeIndex.class, "misses"));
+        cachedLoads = metricRegistry.meter(MetricRegistry.name(EventTimeIndex.class, "loads", "cached"));
+        batchedLoads = metricRegistry.meter(MetricRegistry.name(EventTimeIndex.class, "loads", "batched"));
+        metricRegistry.register(MetricRegistry.name(EventTimeIndex.class, "entries"), (Gauge<Long>) index::size);
+        metricRegistry.register(MetricRegistry.name(EventTimeIndex.class, "runs"), (Gauge<Integer>) index::runCount);
+        metricRegistry.register(MetricRegistry.name(EventTimeIndex.class, "bytes"), (Gauge<Long>) index::memoryBytes);
+
+        topic = hazelcastInstance.getTopic(TOPIC_NAME);
+        topic.addMessageListener(message -> {
+            if (!message.getPublishingMember().localMember()) {
+                apply(message.getMessageObject());
+            }
+        });
+    }
+
+    public void add(Event event) {
+        add(Collections.singletonList(event));
+    }
+
+    /**
+     * Indexes created or updated events; the previous start date of an updated event stays indexed.
+     */
+    public void add(Collection<Event> events) {
+        if (!enabled) {
+            return;
+        }
+        long[] entries = new long[events.size() * 2];
+        int length = 0;
+        for (Event event : events) {
+            if (event.getId() != null && event.getStartdatetime() != null) {
+                entries[length++] = event.getId();
+                entries[length++] = event.getStartdatetime().toInstant().toEpochMilli();
+            }
+        }
+        if (length > 0) {
+            entries = Arrays.copyOf(entries, length);
+            apply(entries);
+            topic.publish(entries);
+        }
+    }
+
+    private void apply(long[] entries) {
+        for (int i = 0; i < entries.length; i += 2) {
+            index.add(entries[i + 1], entries[i]);
+        }
+    }
+
+    /**
+     * Finds the events which started in a time range, bounds included.
+     *
+     * @return the events sorted by start date, or an empty optional if the index is not loaded yet
+     */
+    public Optional<List<Event>> findBetween(ZonedDateTime from, ZonedDateTime to) {
+        if (!enabled || !ready) {
+            if (enabled) {
+                misses.mark();
+            }
+            return Optional.empty();
+        }
+        long[] ids = index.findIds(from.toInstant().toEpochMilli(), to.toInstant().toEpochMilli());
+        List<Event> events = new ArrayList<>(ids.length);
+        for (Event event : load(ids)) {
+            // Stale entries of updated events, and entries of deleted events, are dropped here
+            ZonedDateTime start = event.getStartdatetime();
+            if (start != null && !start.isBefore(from) && !start.isAfter(to)) {
+                events.add(event);
+            }
+        }
+        events.sort(Comparator.comparing(Event::getStartdatetime));
+        hits.mark();
+        return Optional.of(events);
+    }
+
+    private List<Event> load(long[] ids) {
+        Arrays.sort(ids);
+        Cache cache = entityManager.getEntityManagerFactory().getCache();
+        List<Event> events = new ArrayList<>(ids.length);
+        List<Long> uncached = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0 && ids[i] == ids[i - 1]) {
+                continue;
+            }
+            Long id = ids[i];
+            if (cache.contains(Event.class, id)) {
+                Event event = entityManager.find(Event.class, id);
+                if (event != null) {
+                    events.add(event);
+                }
+                cachedLoads.mark();
+            } else {
+                uncached.add(id);
+            }
+        }
+        Set<Long> found = new HashSet<>();
+        for (int from = 0; from < uncached.size(); from += HYDRATION_BATCH_SIZE) {
+            List<Long> batch = uncached.subList(from, Math.min(from + HYDRATION_BATCH_SIZE, uncached.size()));
+            for (Event event : shardService.readAllShards(() -> eventRepository.findAll(batch))) {
+                // The events of a domain being moved are in two shards
+                if (found.add(event.getId())) {
+                    events.add(event);
+                }
+            }
+            batchedLoads.mark(batch.size());
+        }
+        return events;
+    }
+
+    /**
+     * Loads the index once the database is available.
+     */
+    @Scheduled(initialDelay = 10000, fixedDelay = 60000)
+    public void maintain() {
+        if (enabled && !ready) {
+            warmUp();
+        }
+    }
+
+    private void warmUp() {
+        log.debug("Loading event time index");
+        try {
+            // Entries received in the meantime are kept, they are at worst indexed twice
+            long loaded = 0;
+            for (String shard : shardService.getShards()) {
+                long afterId = 0L;
+                List<Object[]> rows;
+                do {
+                    long after = afterId;
+                    rows = shardService.readInShard(shard,
+                        () -> eventRepository.findStartdatetimesAfterId(after, new PageRequest(0, WARM_UP_PAGE_SIZE)));
+                    for (Object[] row : rows) {
+                        afterId = (Long) row[0];
+                        index.add(((ZonedDateTime) row[1]).toInstant().toEpochMilli(), afterId);
+                    }
+                    loaded += rows.size();
+                } while (rows.size() == WARM_UP_PAGE_SIZE);
+            }
+            ready = true;
+            log.info("Event time index ready with {} events", loaded);
+        } catch (Exception e) {
+            log.warn("Could not load event time index, will retry: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package com.innvo.service;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ITopic;
+import com.innvo.config.ApplicationProperties;
+import com.innvo.config.Constants;
+import com.innvo.domain.Alert;
+import com.innvo.domain.Event;
+import com.innvo.domain.Recordtype;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.jms.annotation.JmsListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pushes new events and alerts to Server-Sent Events subscribers, such as dashboards. Alerts also come from a
+ * JMS topic of JSON alerts, see {@link #onAlertMessage(String)}.
+ *
+ * <p>
+ * Every item is serialized once, broadcast to the members of the Hazelcast cluster, and handed by a single
+ * dispatcher thread to the matching subscribers of this member. Each subscriber has a bounded queue drained by
+ * a small pool of writer threads, so a slow client never blocks the dispatcher or the other clients: when its
+ * queue is full, new items are dropped for that client, and a client which keeps dropping a full queue worth
+ * of items is disconnected, to reconnect and catch up with a query.
+ * </p>
+ */
+@Service
+public class LiveStreamService {
+
+    public static final String TYPE_EVENT = "event";
+
+    public static final String TYPE_ALERT = "alert";
+
+    private static final String TOPIC_NAME = "live-stream";
+
+    private static final int INBOUND_QUEUE_SIZE = 10000;
+
+    private static final Item HEARTBEAT = new Item(null, null, null, null, null, null);
+
+    private final Logger log = LoggerFactory.getLogger(LiveStreamService.class);
+
+    @Inject
+    private ApplicationProperties applicationProperties;
+
+    @Inject
+    private ObjectMapper objectMapper;
+
+    @Inject
+    private HazelcastInstance hazelcastInstance;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    private final BlockingQueue<Item> inbound = new ArrayBlockingQueue<>(INBOUND_QUEUE_SIZE);
+
+    private ApplicationProperties.LiveStream properties;
+
+    private ITopic<Item> topic;
+
+    private Thread dispatcher;
+
+    private ScheduledExecutorService writers;
+
+    private Meter published;
+
+    private Meter received;
+
+    private Meter delivered;
+
+    private Meter dropped;
+
+    private Meter disconnected;
+
+    @PostConstruct
+    public void init() {
+        properties = applicationProperties.getLiveStream();
+        if (!properties.isEnabled()) {
+            log.debug("Live stream is disabled");
+            return;
+        }
+        log.debug("Configuring live stream for up to {} subscribers", properties.getMaxSubscribers());
+        published = metricRegistry.meter(MetricRegistry.name(LiveStreamService.class, "published"));
+        received = metricRegistry.meter(MetricRegistry.name(LiveStreamService.class, "received"));
+        delivered = metricRegistry.meter(MetricRegistry.name(LiveStreamService.class, "delivered"));
+        dropped = metricRegistry.meter(MetricRegistry.name(LiveStreamService.class, "dropped"));
+        disconnected = metricRegistry.meter(MetricRegistry.name(LiveStreamService.class, "disconnected"));
+        metricRegistry.register(MetricRegistry.name(LiveStreamService.class, "subscribers"), (Gauge<Integer>) subscribers::size);
+        metricRegistry.register(MetricRegistry.name(LiveStreamService.class, "backlog"), (Gauge<Integer>) inbound::size);
+
+        writers = Executors.newScheduledThreadPool(properties.getWriterThreads(), new CustomizableThreadFactory("live-stream-writer-"));
+        writers.scheduleWithFixedDelay(this::heartbeat,
+            properties.getHeartbeatSeconds(), properties.getHeartbeatSeconds(), TimeUnit.SECONDS);
+        dispatcher = new CustomizableThreadFactory("live-stream-dispatcher").newThread(this::dispatch);
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+
+        topic = hazelcastInstance.getTopic(TOPIC_NAME);
+        topic.addMessageListener(message -> receive(message.getMessageObject()));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+            writers.shutdownNow();
+            subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        }
+    }
+
+    public void publish(Event event) {
+        if (properties.isEnabled()) {
+            Recordtype recordtype = event.getRecordtype();
+            publish(new Item(TYPE_EVENT, event.getCategory(), event.getDomain(),
+                recordtype != null ? recordtype.getId() : null, recordtype != null ? recordtype.getName() : null, toJson(event)));
+        }
+    }
+
+    public void publish(Alert alert) {
+        if (properties.isEnabled()) {
+            publish(new Item(TYPE_ALERT, alert.getCategory(), alert.getDomain(), null, null, toJson(alert)));
+        }
+    }
+
+    /**
+     * Feeds the stream with the alerts sent in JSON to their JMS topic by other applications. Every member
+     * subscribes to the topic, so the alerts are handed to the subscribers of this member only.
+     *
+     * @param json the alert, in JSON
+     */
+    @JmsListener(destination = Constants.ALERT_JSON_TOPIC)
+    public void onAlertMessage(String json) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        Alert alert;
+        try {
+            alert = objectMapper.readValue(json, Alert.class);
+        } catch (IOException e) {
+            log.warn("Ignoring an alert message which is not an alert: {}", e.getMessage());
+            return;
+        }
+        received.mark();
+        receive(new Item(TYPE_ALERT, alert.getCategory(), alert.getDomain(), null, null, json));
+    }
+
+    private void publish(Item item) {
+        if (item.json != null) {
+            topic.publish(item);
+            published.mark();
+        }
+    }
+
+    private void receive(Item item) {
+        if (!inbound.offer(item)) {
+            dropped.mark();
+        }
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            log.warn("Could not serialize {} for the live stream: {}", value, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Subscribes to the stream; null filter values match everything.
+     *
+     * @param types the item types to receive, {@link #TYPE_EVENT} and/or {@link #TYPE_ALERT}
+     * @param recordtype the name or id of the record type of the events; alerts have no record type and never match
+     * @return the emitter to return from the request handler, or an empty optional if the stream is disabled
+     * or has too many subscribers
+     */
+    public Optional<SseEmitter> subscribe(Set<String> types, String category, String domain, String recordtype) {
+        if (!properties.isEnabled() || subscribers.size() >= properties.getMaxSubscribers()) {
+            return Optional.empty();
+        }
+        SseEmitter emitter = new SseEmitter(TimeUnit.MINUTES.toMillis(properties.getTimeoutMinutes()));
+        Subscriber subscriber = new Subscriber(emitter, types, category, domain, recordtype, properties.getSubscriberQueueSize());
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        log.debug("Live stream subscriber added, {} subscribers", subscribers.size());
+        return Optional.of(emitter);
+    }
+
+    private void dispatch() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Item item;
+            try {
+                item = inbound.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.matches(item)) {
+                    offer(subscriber, item);
+                }
+            }
+        }
+    }
+
+    private void heartbeat() {
+        subscribers.forEach(subscriber -> offer(subscriber, HEARTBEAT));
+    }
+
+    private void offer(Subscriber subscriber, Item item) {
+        if (subscriber.queue.offer(item)) {
+            if (item != HEARTBEAT) {
+                subscriber.consecutiveDrops = 0;
+            }
+            if (subscriber.draining.compareAndSet(false, true)) {
+                writers.execute(() -> drain(subscriber));
+            }
+        } else if (item != HEARTBEAT) {
+            dropped.mark();
+            if (++subscriber.consecutiveDrops >= properties.getSubscriberQueueSize() && subscribers.remove(subscriber)) {
+                log.debug("Disconnecting slow live stream subscriber");
+                disconnected.mark();
+                subscriber.emitter.complete();
+            }
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            Item item;
+            while ((item = subscriber.queue.poll()) != null) {
+                if (item == HEARTBEAT) {
+                    subscriber.emitter.send(SseEmitter.event().comment("heartbeat"));
+                } else {
+                    // Already serialized: written as is by the string converter, which comes before the JSON one
+                    subscriber.emitter.send(SseEmitter.event().name(item.type).data(item.json, MediaType.APPLICATION_JSON_UTF8));
+                    delivered.mark();
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Live stream subscriber is gone: {}", e.getMessage());
+            subscribers.remove(subscriber);
+            subscriber.queue.clear();
+            return;
+        } finally {
+            subscriber.draining.set(false);
+        }
+        // An item offered after the last poll, but before the flag was cleared, would be left behind
+        if (!subscriber.queue.isEmpty() && subscriber.draining.compareAndSet(false, true)) {
+            writers.execute(() -> drain(subscriber));
+        }
+    }
+
+    /**
+     * An event or alert as broadcast to the members of the cluster, with the properties filters apply to.
+     */
+    private static final class Item implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String type;
+
+        private final String category;
+
+        private final String domain;
+
+        private final Long recordtypeId;
+
+        private final String recordtypeName;
+
+        private final String json;
+
+        private Item(String type, String category, String domain, Long recordtypeId, String recordtypeName, String json) {
+            this.type = type;
+            this.category = category;
+            this.domain = domain;
+            this.recordtypeId = recordtypeId;
+            this.recordtypeName = recordtypeName;
+            this.json = json;
+        }
+    }
+
+    private static final class Subscriber {
+
+        private final SseEmitter emitter;
+
+        private final Set<String> types;
+
+        private final String category;
+
+        private final String domain;
+
+        private final String recordtype;
+
+        private final BlockingQueue<Item> queue;
+
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        // Only updated by the dispatcher thread
+        private int consecutiveDrops;
+
+        private Subscriber(SseEmitter emitter, Set<String> types, String category, String domain, String recordtype, int queueSize) {
+            this.emitter = emitter;
+            this.types = types;
+            this.category = category;
+            this.domain = domain;
+            this.recordtype = recordtype;
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+        }
+
+        private boolean matches(Item item) {
+            return (types == null || types.contains(item.type))
+                && (category == null || category.equals(item.category))
+                && (domain == null || domain.equals(item.domain))
+                && (recordtype == null || recordtype.equals(item.recordtypeName)
+                    || (item.recordtypeId != null && recordtype.equals(item.recordtypeId.toString())));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.innvo.service;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IAtomicLong;
+import com.innvo.config.ApplicationProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps, for each entity type, the time of the last change made through the API, shared by the members of
+ * the Hazelcast cluster.
+ *
+ * <p>
+ * The watermark strictly increases with every change, so that it can be used both as the Last-Modified date and
+ * as the ETag of the lists of an entity, and answer conditional requests without querying the database.
+ * A watermark is started at the current time, since changes may have been made while the cluster was down.
+ * </p>
+ * <p>
+ * With replicas, a response read from them may not have the last change yet: it must not be validated nor cached
+ * with the watermark until the watermark is older than their maximum lag, see {@link #isSettled(long)}.
+ * </p>
+ */
+@Service
+public class ModificationWatermarkService {
+
+    public static final String EVENT = "event";
+
+    public static final String ALERT = "alert";
+
+    private final Logger log = LoggerFactory.getLogger(ModificationWatermarkService.class);
+
+    @Inject
+    private HazelcastInstance hazelcastInstance;
+
+    @Inject
+    private ApplicationProperties applicationProperties;
+
+    private final ConcurrentMap<String, IAtomicLong> watermarks = new ConcurrentHashMap<>();
+
+    private long settleMillis;
+
+    @PostConstruct
+    public void init() {
+        ApplicationProperties.Replicas replicas = applicationProperties.getReplicas();
+        settleMillis = replicas.isEnabled() ? (long) (replicas.getMaxLagSeconds() * 1000) : 0;
+    }
+
+    /**
+     * @return the watermark of an entity type, in epoch millis
+     */
+    public long get(String entityName) {
+        return watermark(entityName).get();
+    }
+
+    /**
+     * @param watermark a watermark, read before the response was started
+     * @return whether the replicas have every change up to the watermark, its age being over their maximum lag
+     */
+    public boolean isSettled(long watermark) {
+        return System.currentTimeMillis() - watermark >= settleMillis;
+    }
+
+    /**
+     * Records a change to an entity type.
+     */
+    public void touch(String entityName) {
+        IAtomicLong watermark = watermark(entityName);
+        long current;
+        do {
+            current = watermark.get();
+        } while (!watermark.compareAndSet(current, Math.max(System.currentTimeMillis(), current + 1)));
+    }
+
+    private IAtomicLong watermark(String entityName) {
+        return watermarks.computeIfAbsent(entityName, name -> {
+            IAtomicLong watermark = hazelcastInstance.getAtomicLong("watermark-" + name);
+            if (watermark.compareAndSet(0L, System.currentTimeMillis())) {
+                log.debug("Started modification watermark of {}", name);
+            }
+            return watermark;
+        });
+    }
+}
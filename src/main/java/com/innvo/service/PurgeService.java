@@ -0,0 +1,318 @@
+package com.innvo.service;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.innvo.config.jdbc.ShardContext;
+import com.innvo.domain.Alert;
+import com.innvo.domain.Event;
+import com.innvo.web.rest.dto.PurgeJobDTO;
+import com.innvo.web.rest.dto.PurgeRequestDTO;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.hibernate.SQLQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.query.DeleteQuery;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.sql.Timestamp;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Deletes the events or alerts matching a filter in the background, optionally moving them to their archive table.
+ *
+ * <p>
+ * Rows are processed in chunks of {@link #CHUNK_SIZE} ids, in increasing id order, each chunk in its own short
+ * transaction: an INSERT ... SELECT into the archive table, a set-based DELETE, then a delete-by-query of the
+ * chunk ids in Elasticsearch. Locks are therefore only held for a chunk, and an interrupted job leaves the
+ * database consistent, with the remaining rows still matching the filter. The shards are purged one after the
+ * other, from their tables and their indices; the archive tables are those of the public schema, found through
+ * the search path of the shards. The progress of the jobs is shared in a Hazelcast map, so that it can be queried
+ * from any member.
+ * </p>
+ */
+@Service
+public class PurgeService {
+
+    public static final int CHUNK_SIZE = 1000;
+
+    private static final String JOBS_MAP_NAME = "purge-jobs";
+
+    private static final long JOB_RETENTION_DAYS = 7;
+
+    private static final String EVENT_COLUMNS = "id, name, description, category, subcategory, subtype, type, "
+        + "startdatetime, enddatetime, status, lastmodifiedby, lastmodifieddatetime, domain, recordtype_id, version";
+
+    private static final String ALERT_COLUMNS = "id, asset_id, name, description, category, subcategory, subtype, type, "
+        + "startdatetime, enddatetime, status, lastmodifiedby, lastmodifieddatetime, domain, version";
+
+    private final Logger log = LoggerFactory.getLogger(PurgeService.class);
+
+    @Inject
+    private HazelcastInstance hazelcastInstance;
+
+    @Inject
+    private PlatformTransactionManager transactionManager;
+
+    @Inject
+    private ElasticsearchTemplate elasticsearchTemplate;
+
+    @Inject
+    private ShardService shardService;
+
+    @Inject
+    private RecentEventStore recentEventStore;
+
+    @Inject
+    private ModificationWatermarkService modificationWatermarkService;
+
+    @Inject
+    private EventService eventService;
+
+    @Inject
+    private AlertService alertService;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    @Inject
+    @Qualifier("taskExecutor")
+    private Executor taskExecutor;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final AtomicInteger running = new AtomicInteger();
+
+    private IMap<String, PurgeJobDTO> jobs;
+
+    private TransactionTemplate transactionTemplate;
+
+    private Meter deleted;
+
+    private Meter archived;
+
+    private Timer chunks;
+
+    @PostConstruct
+    public void init() {
+        jobs = hazelcastInstance.getMap(JOBS_MAP_NAME);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        deleted = metricRegistry.meter(MetricRegistry.name(PurgeService.class, "deleted"));
+        archived = metricRegistry.meter(MetricRegistry.name(PurgeService.class, "archived"));
+        chunks = metricRegistry.timer(MetricRegistry.name(PurgeService.class, "chunks"));
+        metricRegistry.register(MetricRegistry.name(PurgeService.class, "running"), (Gauge<Integer>) running::get);
+    }
+
+    /**
+     * Starts deleting the events matching the request.
+     *
+     * @return the job, to follow its progress with {@link #findJob(String)}
+     * @throws com.innvo.web.rest.errors.ServiceUnavailableException if a domain is being moved to another shard
+     */
+    public PurgeJobDTO purgeEvents(PurgeRequestDTO request) {
+        return submit(Target.EVENT, request);
+    }
+
+    /**
+     * Starts deleting the alerts matching the request; alerts have no record type.
+     *
+     * @return the job, to follow its progress with {@link #findJob(String)}
+     * @throws com.innvo.web.rest.errors.ServiceUnavailableException if a domain is being moved to another shard
+     */
+    public PurgeJobDTO purgeAlerts(PurgeRequestDTO request) {
+        if (request.getRecordtypeId() != null) {
+            throw new IllegalArgumentException("Alerts have no record type");
+        }
+        return submit(Target.ALERT, request);
+    }
+
+    public Optional<PurgeJobDTO> findJob(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    public List<PurgeJobDTO> findAllJobs() {
+        List<PurgeJobDTO> result = new ArrayList<>(jobs.values());
+        result.sort(Comparator.comparing(PurgeJobDTO::getStartedAt).reversed());
+        return result;
+    }
+
+    private PurgeJobDTO submit(Target target, PurgeRequestDTO request) {
+        if (!request.hasCriteria()) {
+            throw new IllegalArgumentException("At least one criterion is required");
+        }
+        List<String> shards = shardService.getWritableShards();
+        PurgeJobDTO job = new PurgeJobDTO();
+        job.setId(UUID.randomUUID().toString());
+        job.setEntity(target.entityName);
+        job.setRequest(request);
+        job.setState(PurgeJobDTO.State.RUNNING);
+        job.setStartedAt(ZonedDateTime.now());
+        save(job);
+        log.debug("Starting purge job {}", job);
+        taskExecutor.execute(() -> run(target, job, shards));
+        return job;
+    }
+
+    private void run(Target target, PurgeJobDTO job, List<String> shards) {
+        running.incrementAndGet();
+        try {
+            for (String shard : shards) {
+                purgeShard(target, job, shard);
+            }
+            job.setState(PurgeJobDTO.State.COMPLETED);
+            log.info("Purge job {} deleted {} {} rows", job.getId(), job.getDeleted(), target.entityName);
+        } catch (Exception e) {
+            log.error("Purge job {} failed after deleting {} rows", job.getId(), job.getDeleted(), e);
+            job.setState(PurgeJobDTO.State.FAILED);
+            job.setError(e.getMessage());
+        } finally {
+            job.setFinishedAt(ZonedDateTime.now());
+            save(job);
+            running.decrementAndGet();
+        }
+    }
+
+    private void purgeShard(Target target, PurgeJobDTO job, String shard) {
+        PurgeRequestDTO request = job.getRequest();
+        long lastId = 0;
+        List<Long> ids;
+        do {
+            long afterId = lastId;
+            Timer.Context context = chunks.time();
+            try {
+                ids = ShardContext.call(shard, () -> transactionTemplate.execute(status -> purgeChunk(target, request, afterId)));
+            } finally {
+                context.stop();
+            }
+            if (!ids.isEmpty()) {
+                lastId = ids.get(ids.size() - 1);
+                deleteFromIndex(target, shard, ids);
+                if (target == Target.EVENT) {
+                    ids.forEach(recentEventStore::remove);
+                    eventService.evict(ids);
+                } else {
+                    alertService.evict(ids);
+                }
+                modificationWatermarkService.touch(target.entityName);
+                deleted.mark(ids.size());
+                job.setDeleted(job.getDeleted() + ids.size());
+                if (request.isArchive()) {
+                    archived.mark(ids.size());
+                    job.setArchived(job.getArchived() + ids.size());
+                }
+                job.setChunks(job.getChunks() + 1);
+                save(job);
+            }
+        } while (ids.size() == CHUNK_SIZE);
+    }
+
+    private List<Long> purgeChunk(Target target, PurgeRequestDTO request, long afterId) {
+        List<Long> ids = findIds(target, request, afterId);
+        if (ids.isEmpty()) {
+            return ids;
+        }
+        if (request.isArchive()) {
+            // The synchronized entity class limits the cache invalidation of the native query to its region
+            entityManager.createNativeQuery("INSERT INTO " + target.archiveTable + " (" + target.columns + ", archived_at)"
+                    + " SELECT " + target.columns + ", :archivedAt FROM " + target.table + " WHERE id IN (:ids)")
+                .unwrap(SQLQuery.class)
+                .addSynchronizedEntityClass(target.entityClass)
+                .setParameter("archivedAt", new Timestamp(System.currentTimeMillis()))
+                .setParameterList("ids", ids)
+                .executeUpdate();
+        }
+        // Hibernate evicts the second-level cache of the entity after a bulk delete
+        entityManager.createQuery("DELETE FROM " + target.entityClass.getSimpleName() + " e WHERE e.id IN :ids")
+            .setParameter("ids", ids)
+            .executeUpdate();
+        return ids;
+    }
+
+    private List<Long> findIds(Target target, PurgeRequestDTO request, long afterId) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = builder.createQuery(Long.class);
+        Root<?> root = query.from(target.entityClass);
+        List<Predicate> predicates = new ArrayList<>();
+        predicates.add(builder.greaterThan(root.<Long>get("id"), afterId));
+        if (request.getFrom() != null) {
+            predicates.add(builder.greaterThanOrEqualTo(root.<ZonedDateTime>get("startdatetime"), request.getFrom()));
+        }
+        if (request.getTo() != null) {
+            predicates.add(builder.lessThan(root.<ZonedDateTime>get("startdatetime"), request.getTo()));
+        }
+        if (request.getDomain() != null) {
+            predicates.add(builder.equal(root.get("domain"), request.getDomain()));
+        }
+        if (request.getRecordtypeId() != null) {
+            predicates.add(builder.equal(root.get("recordtype").get("id"), request.getRecordtypeId()));
+        }
+        if (request.getStatus() != null) {
+            predicates.add(builder.equal(root.get("status"), request.getStatus()));
+        }
+        query.select(root.<Long>get("id"))
+            .where(predicates.toArray(new Predicate[predicates.size()]))
+            .orderBy(builder.asc(root.get("id")));
+        return entityManager.createQuery(query).setMaxResults(CHUNK_SIZE).getResultList();
+    }
+
+    private void deleteFromIndex(Target target, String shard, List<Long> ids) {
+        String[] documentIds = new String[ids.size()];
+        for (int i = 0; i < documentIds.length; i++) {
+            documentIds[i] = ids.get(i).toString();
+        }
+        DeleteQuery deleteQuery = new DeleteQuery();
+        deleteQuery.setIndex(ShardService.indexOf(target.table, shard));
+        deleteQuery.setType(target.table);
+        deleteQuery.setQuery(QueryBuilders.idsQuery().ids(documentIds));
+        elasticsearchTemplate.delete(deleteQuery);
+    }
+
+    private void save(PurgeJobDTO job) {
+        jobs.set(job.getId(), job, JOB_RETENTION_DAYS, TimeUnit.DAYS);
+    }
+
+    private enum Target {
+        EVENT(ModificationWatermarkService.EVENT, Event.class, "event", "event_archive", EVENT_COLUMNS),
+        ALERT(ModificationWatermarkService.ALERT, Alert.class, "alert", "alert_archive", ALERT_COLUMNS);
+
+        private final String entityName;
+
+        private final Class<?> entityClass;
+
+        private final String table;
+
+        private final String archiveTable;
+
+        private final String columns;
+
+        Target(String entityName, Class<?> entityClass, String table, String archiveTable, String columns) {
+            this.entityName = entityName;
+            this.entityClass = entityClass;
+            this.table = table;
+            this.archiveTable = archiveTable;
+            this.columns = columns;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.innvo.service;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.innvo.config.ApplicationProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token buckets limiting the request rate of each JWT subject, per class of endpoint, across the cluster.
+ *
+ * <p>
+ * The buckets are local to each member, each with its own lock, so that taking a token costs a map lookup and an
+ * uncontended lock rather than a round trip to Hazelcast. Every sync period, each member publishes the rate at
+ * which its buckets were consumed to a Hazelcast map, and refills each of its buckets at the cluster-wide rate
+ * less what the other members consumed, but never below an equal share of it: while a subject calls a single
+ * member, that member allows the whole rate, and when it calls all of them evenly each allows its share. A burst
+ * across members between two syncs may exceed the limit for one period.
+ * </p>
+ * <p>
+ * Requests take one token, and are rejected when there is none. Bulk requests are also charged for each of their
+ * events, which may put the bucket in debt: the following requests of the subject are then rejected until it is
+ * refilled.
+ * </p>
+ * <p>
+ * Buckets left idle for ten minutes are dropped, with their metrics.
+ * </p>
+ */
+@Service
+public class RateLimiter {
+
+    public enum EndpointClass { INGEST, SEARCH }
+
+    private static final String USAGE_MAP_NAME = "rate-limit-usage";
+
+    private static final long IDLE_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    private final Logger log = LoggerFactory.getLogger(RateLimiter.class);
+
+    @Inject
+    private ApplicationProperties applicationProperties;
+
+    @Inject
+    private HazelcastInstance hazelcastInstance;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    private boolean enabled;
+
+    private IMap<String, HashMap<String, Double>> usage;
+
+    private long lastSync = System.nanoTime();
+
+    @PostConstruct
+    public void init() {
+        enabled = applicationProperties.getRateLimit().isEnabled();
+        if (!enabled) {
+            log.debug("Rate limiting is disabled");
+            return;
+        }
+        usage = hazelcastInstance.getMap(USAGE_MAP_NAME);
+        metricRegistry.register(MetricRegistry.name(RateLimiter.class, "buckets"), (Gauge<Integer>) buckets::size);
+    }
+
+    /**
+     * Takes a token from the bucket of a subject for a class of endpoints.
+     *
+     * @return 0 if the request is allowed, or else the number of seconds after which it may be retried
+     */
+    public long tryAcquire(String subject, EndpointClass endpointClass) {
+        if (!enabled) {
+            return 0;
+        }
+        return bucket(subject, endpointClass).tryAcquire(System.nanoTime());
+    }
+
+    /**
+     * Takes tokens from the bucket of a subject for a class of endpoints, whether there are enough of them or not,
+     * for the items of a bulk request.
+     *
+     * @return 0 if the bucket has tokens left, or else the number of milliseconds until it is out of debt
+     */
+    public long charge(String subject, EndpointClass endpointClass, int tokens) {
+        if (!enabled || tokens <= 0) {
+            return 0;
+        }
+        return bucket(subject, endpointClass).charge(System.nanoTime(), tokens);
+    }
+
+    private Bucket bucket(String subject, EndpointClass endpointClass) {
+        String key = endpointClass.name().toLowerCase() + '.' + subject;
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(key, k -> new Bucket(k, limit(endpointClass)));
+        }
+        return bucket;
+    }
+
+    private ApplicationProperties.RateLimit.Limit limit(EndpointClass endpointClass) {
+        ApplicationProperties.RateLimit properties = applicationProperties.getRateLimit();
+        return endpointClass == EndpointClass.INGEST ? properties.getIngest() : properties.getSearch();
+    }
+
+    /**
+     * Publishes the consumption of the local buckets, and adjusts their rates to the consumption of the cluster.
+     */
+    @Scheduled(initialDelay = 10000, fixedDelayString = "${application.rate-limit.sync-millis:1000}")
+    public void sync() {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        double elapsedSeconds = Math.max(now - lastSync, 1) / 1e9;
+        lastSync = now;
+
+        HashMap<String, Double> localUsage = new HashMap<>();
+        for (Bucket bucket : buckets.values()) {
+            long consumed = bucket.drainConsumed();
+            if (consumed > 0) {
+                localUsage.put(bucket.key, consumed / elapsedSeconds);
+            } else if (bucket.isIdle(now)) {
+                // The metrics are removed under the lock of the key, before a new bucket of the key registers them
+                buckets.computeIfPresent(bucket.key, (key, current) -> {
+                    if (current != bucket || !current.isIdle(now)) {
+                        return current;
+                    }
+                    current.removeMetrics();
+                    return null;
+                });
+            }
+        }
+        try {
+            String localMember = hazelcastInstance.getCluster().getLocalMember().getUuid();
+            long ttl = 3L * applicationProperties.getRateLimit().getSyncMillis();
+            usage.set(localMember, localUsage, ttl, TimeUnit.MILLISECONDS);
+
+            Map<String, Double> othersUsage = new HashMap<>();
+            for (Map.Entry<String, HashMap<String, Double>> member : usage.entrySet()) {
+                if (!member.getKey().equals(localMember)) {
+                    member.getValue().forEach((key, rate) -> othersUsage.merge(key, rate, Double::sum));
+                }
+            }
+            int members = hazelcastInstance.getCluster().getMembers().size();
+            for (Bucket bucket : buckets.values()) {
+                bucket.adjust(othersUsage.getOrDefault(bucket.key, 0.0), members);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not sync the rate limits with the cluster, keeping the local rates: {}", e.getMessage());
+        }
+    }
+
+    private final class Bucket {
+
+        private final String key;
+
+        private final ApplicationProperties.RateLimit.Limit limit;
+
+        private final Meter allowed;
+
+        private final Meter rejected;
+
+        private double rate;
+
+        private double burst;
+
+        private double tokens;
+
+        private long lastRefill;
+
+        private long lastUsed;
+
+        private long consumed;
+
+        private Bucket(String key, ApplicationProperties.RateLimit.Limit limit) {
+            this.key = key;
+            this.limit = limit;
+            this.allowed = metricRegistry.meter(MetricRegistry.name(RateLimiter.class, key, "allowed"));
+            this.rejected = metricRegistry.meter(MetricRegistry.name(RateLimiter.class, key, "rejected"));
+            this.lastRefill = System.nanoTime();
+            this.lastUsed = lastRefill;
+            adjust(0, hazelcastInstance.getCluster().getMembers().size());
+            this.tokens = burst;
+        }
+
+        private synchronized long tryAcquire(long now) {
+            refill(now);
+            lastUsed = now;
+            if (tokens >= 1) {
+                tokens--;
+                consumed++;
+                allowed.mark();
+                return 0;
+            }
+            rejected.mark();
+            return Math.max(1, (long) Math.ceil((1 - tokens) / rate));
+        }
+
+        private synchronized long charge(long now, int charged) {
+            refill(now);
+            lastUsed = now;
+            tokens -= charged;
+            consumed += charged;
+            allowed.mark(charged);
+            return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / rate * 1000);
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(burst, tokens + (now - lastRefill) / 1e9 * rate);
+            lastRefill = now;
+        }
+
+        private synchronized long drainConsumed() {
+            long drained = consumed;
+            consumed = 0;
+            return drained;
+        }
+
+        private synchronized boolean isIdle(long now) {
+            return now - lastUsed > IDLE_NANOS;
+        }
+
+        /**
+         * Sets the local rate to what the other members left of the limit, or to an equal share of it.
+         */
+        private synchronized void adjust(double othersRate, int members) {
+            double share = limit.getRequestsPerSecond() / Math.max(members, 1);
+            rate = Math.max(limit.getRequestsPerSecond() - othersRate, share);
+            burst = Math.max(1, limit.getBurst() * rate / limit.getRequestsPerSecond());
+            tokens = Math.min(tokens, burst);
+        }
+
+        private void removeMetrics() {
+            metricRegistry.remove(MetricRegistry.name(RateLimiter.class, key, "allowed"));
+            metricRegistry.remove(MetricRegistry.name(RateLimiter.class, key, "rejected"));
+        }
+    }
+}
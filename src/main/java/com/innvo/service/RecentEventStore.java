@@ -0,0 +1,503 @@
+package com.innvo.service;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ITopic;
+import com.innvo.config.ApplicationProperties;
+import com.innvo.domain.Event;
+import com.innvo.repository.EventRepository;
+import com.innvo.web.rest.converter.SmileHttpMessageConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Off-heap, columnar store of the events which started within the retention horizon (one hour by default).
+ *
+ * <p>
+ * Events are kept in time buckets keyed by their start date. Each bucket holds its ids, start dates and
+ * sequence numbers in direct buffers, next to a direct buffer of Smile encoded events, so that the short
+ * time-window lookups of the dashboards are answered without a Hibernate session and without keeping
+ * thousands of entities on the heap. Buckets older than the retention horizon are dropped by a scheduled
+ * task, and ranges older than the horizon are left to the database.
+ * </p>
+ * <p>
+ * Changes are applied locally and broadcast to the other members of the Hazelcast cluster, so that every
+ * instance sees the events ingested by the others. The store is warmed up from the database of every shard
+ * at startup and does not answer queries until it is.
+ * </p>
+ * <p>
+ * Reads do not copy the payloads out of the buffers: only the latest row of each event is decoded, straight
+ * from its bucket, and {@link #writeBetween} transcodes the Smile payloads to JSON without building the events.
+ * </p>
+ */
+@Service
+public class RecentEventStore {
+
+    private static final String TOPIC_NAME = "recent-events";
+
+    private static final int WARM_UP_PAGE_SIZE = 500;
+
+    private final Logger log = LoggerFactory.getLogger(RecentEventStore.class);
+
+    @Inject
+    private ApplicationProperties applicationProperties;
+
+    @Inject
+    private SmileHttpMessageConverter smileHttpMessageConverter;
+
+    @Inject
+    private EventRepository eventRepository;
+
+    @Inject
+    private ShardService shardService;
+
+    @Inject
+    private HazelcastInstance hazelcastInstance;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    private final ConcurrentSkipListMap<Long, Bucket> buckets = new ConcurrentSkipListMap<>();
+
+    // Sequence number at which an event was updated or deleted, rows written before are hidden
+    private final ConcurrentHashMap<Long, Long> tombstones = new ConcurrentHashMap<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private boolean enabled;
+
+    private long bucketMillis;
+
+    private long retentionMillis;
+
+    private volatile boolean ready;
+
+    private ObjectWriter objectWriter;
+
+    private ObjectReader objectReader;
+
+    private JsonFactory smileFactory;
+
+    private ITopic<Change> topic;
+
+    private Meter hits;
+
+    private Meter misses;
+
+    @PostConstruct
+    public void init() {
+        ApplicationProperties.RecentEvents properties = applicationProperties.getRecentEvents();
+        enabled = properties.isEnabled();
+        if (!enabled) {
+            log.debug("Recent events store is disabled");
+            return;
+        }
+        log.debug("Configuring recent events store, keeping {} minutes in {} seconds buckets",
+            properties.getRetentionMinutes(), properties.getBucketSeconds());
+        bucketMillis = TimeUnit.SECONDS.toMillis(properties.getBucketSeconds());
+        retentionMillis = TimeUnit.MINUTES.toMillis(properties.getRetentionMinutes());
+        ObjectMapper objectMapper = smileHttpMessageConverter.getObjectMapper();
+        objectWriter = objectMapper.writerFor(Event.class);
+        objectReader = objectMapper.readerFor(Event.class);
+        smileFactory = objectMapper.getFactory();
+
+        hits = metricRegistry.meter(MetricRegistry.name(RecentEventStore.class, "hits"));
+        misses = metricRegistry.meter(MetricRegistry.name(RecentEventStore.class, "misses"));
+        metricRegistry.register(MetricRegistry.name(RecentEventStore.class, "rows"), (Gauge<Integer>) this::rows);
+        metricRegistry.register(MetricRegistry.name(RecentEventStore.class, "bytes"), (Gauge<Long>) this::bytes);
+
+        topic = hazelcastInstance.getTopic(TOPIC_NAME);
+        topic.addMessageListener(message -> {
+            if (!message.getPublishingMember().localMember()) {
+                apply(message.getMessageObject());
+            }
+        });
+    }
+
+    /**
+     * Adds a newly created event.
+     */
+    public void add(Event event) {
+        publish(event, false);
+    }
+
+    /**
+     * Replaces all previous versions of an updated event.
+     */
+    public void update(Event event) {
+        publish(event, true);
+    }
+
+    public void remove(Long id) {
+        if (enabled) {
+            Change change = new Change(id, 0L, null, true);
+            apply(change);
+            topic.publish(change);
+        }
+    }
+
+    private void publish(Event event, boolean replace) {
+        if (!enabled || event.getId() == null) {
+            return;
+        }
+        if (event.getStartdatetime() == null) {
+            if (replace) {
+                remove(event.getId());
+            }
+            return;
+        }
+        byte[] payload;
+        try {
+            payload = objectWriter.writeValueAsBytes(event);
+        } catch (JsonProcessingException e) {
+            log.warn("Could not encode event {}, recent events store is reset: {}", event.getId(), e.getMessage());
+            reset();
+            return;
+        }
+        Change change = new Change(event.getId(), event.getStartdatetime().toInstant().toEpochMilli(), payload, replace);
+        apply(change);
+        topic.publish(change);
+    }
+
+    private void apply(Change change) {
+        if (change.replace) {
+            tombstones.put(change.id, sequence.incrementAndGet());
+        }
+        if (change.payload != null && change.startMillis >= horizon()) {
+            bucket(change.startMillis).append(change.id, change.startMillis, sequence.incrementAndGet(), change.payload);
+        }
+    }
+
+    /**
+     * Finds the events which started in a time range, bounds included.
+     *
+     * @return the events sorted by start date, or an empty optional if the range is not covered by the store
+     */
+    public Optional<List<Event>> findBetween(ZonedDateTime from, ZonedDateTime to) {
+        return rowsBetween(from, to).map(rows -> {
+            List<Event> events = new ArrayList<>(rows.size());
+            for (Row row : rows) {
+                events.add(decode(row));
+            }
+            return events;
+        });
+    }
+
+    /**
+     * Writes the events which started in a time range, bounds included, as an array sorted by start date.
+     * The stored Smile payloads are transcoded to the generator, no event is built.
+     *
+     * @return false, with nothing written, if the range is not covered by the store
+     */
+    public boolean writeBetween(ZonedDateTime from, ZonedDateTime to, JsonGenerator generator) throws IOException {
+        Optional<List<Row>> rows = rowsBetween(from, to);
+        if (!rows.isPresent()) {
+            return false;
+        }
+        generator.writeStartArray();
+        for (Row row : rows.get()) {
+            try (JsonParser parser = smileFactory.createParser(row.payload())) {
+                parser.nextToken();
+                generator.copyCurrentStructure(parser);
+            }
+        }
+        generator.writeEndArray();
+        return true;
+    }
+
+    private Optional<List<Row>> rowsBetween(ZonedDateTime from, ZonedDateTime to) {
+        long fromMillis = from.toInstant().toEpochMilli();
+        long toMillis = to.toInstant().toEpochMilli();
+        if (!enabled || !ready || fromMillis < horizon()) {
+            if (enabled) {
+                misses.mark();
+            }
+            return Optional.empty();
+        }
+        Map<Long, Row> latest = new HashMap<>();
+        for (Bucket bucket : buckets.subMap(bucketIndex(fromMillis), true, bucketIndex(toMillis), true).values()) {
+            bucket.collect(fromMillis, toMillis, latest);
+        }
+        List<Row> rows = new ArrayList<>(latest.size());
+        for (Row row : latest.values()) {
+            Long removed = tombstones.get(row.id);
+            if (removed == null || removed < row.sequence) {
+                rows.add(row);
+            }
+        }
+        rows.sort(Comparator.comparingLong((Row row) -> row.startMillis).thenComparingLong(row -> row.id));
+        hits.mark();
+        return Optional.of(rows);
+    }
+
+    /**
+     * Warms the store up once the database is available, and drops the buckets older than the retention horizon.
+     */
+    @Scheduled(initialDelay = 10000, fixedDelay = 60000)
+    public void maintain() {
+        if (!enabled) {
+            return;
+        }
+        if (!ready) {
+            warmUp();
+        }
+        buckets.headMap(bucketIndex(horizon())).clear();
+        long oldestSequence = buckets.values().stream().mapToLong(Bucket::minSequence).min().orElse(Long.MAX_VALUE);
+        tombstones.values().removeIf(removed -> removed < oldestSequence);
+    }
+
+    private void warmUp() {
+        ZonedDateTime since = ZonedDateTime.ofInstant(Instant.ofEpochMilli(horizon()), ZoneId.systemDefault());
+        log.debug("Warming up recent events store with events started since {}", since);
+        try {
+            int loaded = 0;
+            // The events of a domain being moved are in two shards, and loaded twice: the last row of an id wins
+            for (String shard : shardService.getShards()) {
+                Pageable pageable = new PageRequest(0, WARM_UP_PAGE_SIZE, Sort.Direction.ASC, "id");
+                Slice<Event> slice;
+                do {
+                    Pageable page = pageable;
+                    slice = shardService.readInShard(shard, () -> eventRepository.findByStartdatetimeGreaterThanEqual(since, page));
+                    for (Event event : slice) {
+                        long startMillis = event.getStartdatetime().toInstant().toEpochMilli();
+                        // Sequence 0 lets any change received during the warm-up win over the loaded version
+                        bucket(startMillis).append(event.getId(), startMillis, 0L, objectWriter.writeValueAsBytes(event));
+                        loaded++;
+                    }
+                    pageable = slice.nextPageable();
+                } while (slice.hasNext());
+            }
+            ready = true;
+            log.info("Recent events store ready with {} events", loaded);
+        } catch (Exception e) {
+            log.warn("Could not warm up recent events store, will retry: {}", e.getMessage());
+        }
+    }
+
+    private void reset() {
+        ready = false;
+        buckets.clear();
+    }
+
+    private long horizon() {
+        return System.currentTimeMillis() - retentionMillis;
+    }
+
+    private long bucketIndex(long millis) {
+        return Math.floorDiv(millis, bucketMillis);
+    }
+
+    private Bucket bucket(long startMillis) {
+        return buckets.computeIfAbsent(bucketIndex(startMillis), index -> new Bucket());
+    }
+
+    private Event decode(Row row) {
+        try {
+            return objectReader.readValue(row.payload());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int rows() {
+        return buckets.values().stream().mapToInt(Bucket::rows).sum();
+    }
+
+    private long bytes() {
+        return buckets.values().stream().mapToLong(Bucket::bytes).sum();
+    }
+
+    /**
+     * A change broadcast to the other members of the cluster; a null payload removes the event.
+     */
+    private static final class Change implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long id;
+
+        private final long startMillis;
+
+        private final byte[] payload;
+
+        private final boolean replace;
+
+        private Change(long id, long startMillis, byte[] payload, boolean replace) {
+            this.id = id;
+            this.startMillis = startMillis;
+            this.payload = payload;
+            this.replace = replace;
+        }
+    }
+
+    /**
+     * The latest row of an event in a range, pointing at its payload in the buffer of its bucket.
+     */
+    private static final class Row {
+
+        private final long id;
+
+        private final long startMillis;
+
+        private final long sequence;
+
+        // A grown bucket copies its payloads to a new buffer, this one is left as it is
+        private final ByteBuffer payloads;
+
+        private final int offset;
+
+        private final int length;
+
+        private Row(long id, long startMillis, long sequence, ByteBuffer payloads, int offset, int length) {
+            this.id = id;
+            this.startMillis = startMillis;
+            this.sequence = sequence;
+            this.payloads = payloads;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        private ByteBufferBackedInputStream payload() {
+            ByteBuffer payload = payloads.duplicate();
+            payload.limit(offset + length);
+            payload.position(offset);
+            return new ByteBufferBackedInputStream(payload);
+        }
+    }
+
+    /**
+     * Rows of one time bucket, one direct buffer per column.
+     */
+    private static final class Bucket {
+
+        private static final int INITIAL_ROWS = 256;
+
+        private static final int INITIAL_PAYLOAD_BYTES = 64 * 1024;
+
+        private LongBuffer ids = longColumn(INITIAL_ROWS);
+
+        private LongBuffer starts = longColumn(INITIAL_ROWS);
+
+        private LongBuffer sequences = longColumn(INITIAL_ROWS);
+
+        private IntBuffer offsets = intColumn(INITIAL_ROWS);
+
+        private IntBuffer lengths = intColumn(INITIAL_ROWS);
+
+        private ByteBuffer payloads = ByteBuffer.allocateDirect(INITIAL_PAYLOAD_BYTES);
+
+        private int rows;
+
+        private long minSequence = Long.MAX_VALUE;
+
+        synchronized void append(long id, long startMillis, long sequence, byte[] payload) {
+            if (rows == ids.capacity()) {
+                int capacity = rows * 2;
+                ids = copy(ids, longColumn(capacity), rows);
+                starts = copy(starts, longColumn(capacity), rows);
+                sequences = copy(sequences, longColumn(capacity), rows);
+                offsets = copy(offsets, intColumn(capacity), rows);
+                lengths = copy(lengths, intColumn(capacity), rows);
+            }
+            if (payloads.remaining() < payload.length) {
+                ByteBuffer source = payloads.duplicate();
+                source.flip();
+                payloads = ByteBuffer.allocateDirect(Math.max(payloads.capacity() * 2, payloads.position() + payload.length));
+                payloads.put(source);
+            }
+            ids.put(rows, id);
+            starts.put(rows, startMillis);
+            sequences.put(rows, sequence);
+            offsets.put(rows, payloads.position());
+            lengths.put(rows, payload.length);
+            payloads.put(payload);
+            rows++;
+            minSequence = Math.min(minSequence, sequence);
+        }
+
+        synchronized void collect(long fromMillis, long toMillis, Map<Long, Row> latest) {
+            for (int row = 0; row < rows; row++) {
+                long start = starts.get(row);
+                if (start < fromMillis || start > toMillis) {
+                    continue;
+                }
+                long id = ids.get(row);
+                long sequence = sequences.get(row);
+                Row current = latest.get(id);
+                if (current != null && current.sequence > sequence) {
+                    continue;
+                }
+                latest.put(id, new Row(id, start, sequence, payloads, offsets.get(row), lengths.get(row)));
+            }
+        }
+
+        synchronized int rows() {
+            return rows;
+        }
+
+        synchronized long minSequence() {
+            return minSequence;
+        }
+
+        synchronized long bytes() {
+            return ids.capacity() * 24L + offsets.capacity() * 8L + payloads.capacity();
+        }
+
+        private static LongBuffer longColumn(int capacity) {
+            return ByteBuffer.allocateDirect(capacity * 8).asLongBuffer();
+        }
+
+        private static IntBuffer intColumn(int capacity) {
+            return ByteBuffer.allocateDirect(capacity * 4).asIntBuffer();
+        }
+
+        private static LongBuffer copy(LongBuffer column, LongBuffer target, int rows) {
+            LongBuffer source = column.duplicate();
+            source.position(0);
+            source.limit(rows);
+            target.put(source);
+            return target;
+        }
+
+        private static IntBuffer copy(IntBuffer column, IntBuffer target, int rows) {
+            IntBuffer source = column.duplicate();
+            source.position(0);
+            source.limit(rows);
+            target.put(source);
+            return target;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.innvo.service;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.innvo.config.ApplicationProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Caches the serialized JSON responses of the entities and of their pages in a Hazelcast map, both as is and
+ * gzipped, so that a hit is answered without any query nor serialization.
+ *
+ * <p>
+ * All the responses of an entity type, entities and pages, are keyed by the modification watermark of the type,
+ * like the search results of {@link SearchResultCache}. Writers touch the watermark once their change is
+ * committed, see {@link #invalidateAfterCommit}, which makes all the cached responses of the type unreachable on
+ * every member at once: a response read before the change and cached after it is left under the old watermark,
+ * where it expires. With replicas, a response is not cached until the last change is older than the maximum lag
+ * of the replicas, which may not have it yet, see {@link ModificationWatermarkService#isSettled(long)}.
+ * </p>
+ */
+@Service
+public class ResponseCache {
+
+    public static final String MAP_NAME = "response-bytes";
+
+    private final Logger log = LoggerFactory.getLogger(ResponseCache.class);
+
+    @Inject
+    private ApplicationProperties applicationProperties;
+
+    @Inject
+    private HazelcastInstance hazelcastInstance;
+
+    @Inject
+    private ModificationWatermarkService modificationWatermarkService;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    private boolean enabled;
+
+    private IMap<String, CachedResponse> responses;
+
+    private Meter hits;
+
+    private Meter misses;
+
+    private Meter invalidations;
+
+    @PostConstruct
+    public void init() {
+        enabled = applicationProperties.getResponseCache().isEnabled();
+        if (!enabled) {
+            log.debug("Response cache is disabled");
+            return;
+        }
+        responses = hazelcastInstance.getMap(MAP_NAME);
+        hits = metricRegistry.meter(MetricRegistry.name(ResponseCache.class, "hits"));
+        misses = metricRegistry.meter(MetricRegistry.name(ResponseCache.class, "misses"));
+        invalidations = metricRegistry.meter(MetricRegistry.name(ResponseCache.class, "invalidations"));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param entityName the entity type, as named by {@link ModificationWatermarkService}
+     * @return the watermark of the type, to read once before the response is started
+     */
+    public long watermark(String entityName) {
+        return modificationWatermarkService.get(entityName);
+    }
+
+    /**
+     * @param entityName the entity type, as named by {@link ModificationWatermarkService}
+     */
+    public String entityKey(String entityName, long watermark, Long id) {
+        return entityName + '@' + watermark + '#' + id;
+    }
+
+    /**
+     * @param entityName the entity type, as named by {@link ModificationWatermarkService}
+     * @param request the path and the normalized query of the page
+     */
+    public String pageKey(String entityName, long watermark, String request) {
+        return entityName + '@' + watermark + ':' + request;
+    }
+
+    /**
+     * @return the cached response, or null
+     */
+    public CachedResponse get(String key) {
+        CachedResponse response = responses.get(key);
+        (response != null ? hits : misses).mark();
+        return response;
+    }
+
+    /**
+     * Caches a response, unless the last change of its type may not have reached the replicas yet.
+     *
+     * @param watermark the watermark of the key, read before the response was started
+     */
+    public void put(String key, long watermark, CachedResponse response) {
+        if (modificationWatermarkService.isSettled(watermark)) {
+            responses.set(key, response);
+        }
+    }
+
+    /**
+     * Makes the cached responses of an entity type unreachable, on all the members, at the end of the current
+     * transaction if it commits, or at once without a transaction.
+     *
+     * @param entityName the entity type, as named by {@link ModificationWatermarkService}
+     */
+    public void invalidateAfterCommit(String entityName) {
+        if (!enabled) {
+            return;
+        }
+        EntityCache.afterCommit(() -> {
+            modificationWatermarkService.touch(entityName);
+            invalidations.mark();
+        });
+    }
+
+    /**
+     * A response of status 200, with its headers and its body, as is and gzipped.
+     */
+    public static final class CachedResponse implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String contentType;
+
+        private final LinkedHashMap<String, ArrayList<String>> headers;
+
+        private final byte[] body;
+
+        private final byte[] gzippedBody;
+
+        public CachedResponse(String contentType, Map<String, ? extends Collection<String>> headers, byte[] body) {
+            this.contentType = contentType;
+            this.headers = new LinkedHashMap<>();
+            headers.forEach((name, values) -> this.headers.put(name, new ArrayList<>(values)));
+            this.body = body;
+            this.gzippedBody = gzip(body);
+        }
+
+        private static byte[] gzip(byte[] body) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length / 4 + 32);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+                gzip.write(body);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return bytes.toByteArray();
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public Map<String, ? extends List<String>> getHeaders() {
+            return headers;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public byte[] getGzippedBody() {
+            return gzippedBody;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.innvo.service;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.innvo.config.ApplicationProperties;
+import com.innvo.config.metrics.SearchCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Caches the pages of search results in a Hazelcast map, shared by the members of the cluster.
+ *
+ * <p>
+ * Entries are keyed by the entity type, its generation, the normalized query and the page. The generation is
+ * the modification watermark of the entity type, which every write through the API moves forward: a change
+ * therefore makes all the cached results of the type unreachable at once, and they expire with the short time
+ * to live of the map. A search which overlaps a change is cached under the generation read before it, so it is
+ * never served after the change.
+ * </p>
+ */
+@Service
+public class SearchResultCache {
+
+    public static final String MAP_NAME = "search-results";
+
+    private final Logger log = LoggerFactory.getLogger(SearchResultCache.class);
+
+    @Inject
+    private ApplicationProperties applicationProperties;
+
+    @Inject
+    private HazelcastInstance hazelcastInstance;
+
+    @Inject
+    private ModificationWatermarkService modificationWatermarkService;
+
+    @Inject
+    private SearchCacheMetrics searchCacheMetrics;
+
+    private boolean enabled;
+
+    private IMap<String, CachedPage> results;
+
+    @PostConstruct
+    public void init() {
+        enabled = applicationProperties.getSearchCache().isEnabled();
+        if (!enabled) {
+            log.debug("Search result cache is disabled");
+            return;
+        }
+        results = hazelcastInstance.getMap(MAP_NAME);
+    }
+
+    /**
+     * Returns the cached page of results of a query, or runs the search and caches its page.
+     *
+     * @param entityName the entity type, as named by {@link ModificationWatermarkService}
+     * @param search the search to run on a miss, of which the content must be serializable
+     */
+    public <T> Page<T> get(String entityName, String query, Pageable pageable, Supplier<Page<T>> search) {
+        return get(entityName, query, null, pageable, search);
+    }
+
+    /**
+     * Returns the cached page of results of a query restricted to a domain, or runs the search and caches its page.
+     *
+     * @param entityName the entity type, as named by {@link ModificationWatermarkService}
+     * @param domain the domain which the search is restricted to, or null
+     * @param search the search to run on a miss, of which the content must be serializable
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Page<T> get(String entityName, String query, String domain, Pageable pageable, Supplier<Page<T>> search) {
+        if (!enabled) {
+            return search.get();
+        }
+        long start = System.nanoTime();
+        String key = key(entityName, modificationWatermarkService.get(entityName), query, domain, pageable);
+        CachedPage cached = results.get(key);
+        if (cached != null) {
+            searchCacheMetrics.hit(System.nanoTime() - start);
+            return new PageImpl<>((List<T>) cached.content, pageable, cached.total);
+        }
+        Page<T> page = search.get();
+        results.set(key, new CachedPage(new ArrayList<>(page.getContent()), page.getTotalElements()));
+        searchCacheMetrics.miss(System.nanoTime() - start);
+        return page;
+    }
+
+    private static String key(String entityName, long generation, String query, String domain, Pageable pageable) {
+        // The domain is prefixed with its length, so that it cannot be confused with the start of the query
+        return entityName + ':' + generation + ':' + pageable.getPageNumber() + ':' + pageable.getPageSize() + ':'
+            + pageable.getSort() + ':' + (domain != null ? domain.length() + ":" + domain : "") + ':' + normalize(query);
+    }
+
+    /**
+     * Trims the query and collapses its whitespace; case is kept, since exact-match fields are not analyzed.
+     */
+    static String normalize(String query) {
+        return query == null ? "" : query.trim().replaceAll("\\s+", " ");
+    }
+
+    private static final class CachedPage implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ArrayList<?> content;
+
+        private final long total;
+
+        private CachedPage(ArrayList<?> content, long total) {
+            this.content = content;
+            this.total = total;
+        }
+    }
+}
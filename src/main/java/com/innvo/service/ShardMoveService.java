@@ -0,0 +1,354 @@
+package com.innvo.service;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.innvo.config.ApplicationProperties;
+import com.innvo.config.jdbc.ShardContext;
+import com.innvo.domain.Alert;
+import com.innvo.domain.Event;
+import com.innvo.repository.AlertRepository;
+import com.innvo.repository.EventRepository;
+import com.innvo.web.rest.dto.ShardAssignmentDTO;
+import com.innvo.web.rest.dto.ShardMoveDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.sql.DataSource;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Moves a domain, with its events and alerts, from its shard to another one in the background, while the domain
+ * is still read and written.
+ *
+ * <p>
+ * The rows of the domain are copied to the target shard in chunks, in increasing id order, while the writes
+ * go on in the source shard. The writes to the domain are then frozen, rejected with a 503, and once the writes
+ * in flight are over, the rows changed meanwhile are copied again and those deleted meanwhile are deleted,
+ * comparing the ids and versions of both shards. The target shard is indexed, and the domain is switched to it
+ * and unfrozen: the freeze lasts for the grace period and the reconciliation, whatever the size of the domain.
+ * The rows and documents of the source shard are finally deleted in chunks. A move which fails before the switch
+ * leaves the domain in its shard, with a partial copy in the target shard which the next move overwrites.
+ * </p>
+ * <p>
+ * The progress of the moves is shared in a Hazelcast map, so that it can be queried from any member.
+ * </p>
+ */
+@Service
+public class ShardMoveService {
+
+    private static final String MOVES_MAP_NAME = "shard-moves";
+
+    private static final long MOVE_RETENTION_DAYS = 7;
+
+    private final Logger log = LoggerFactory.getLogger(ShardMoveService.class);
+
+    @Inject
+    private ApplicationProperties applicationProperties;
+
+    @Inject
+    private ShardService shardService;
+
+    @Inject
+    private HazelcastInstance hazelcastInstance;
+
+    @Inject
+    private PlatformTransactionManager transactionManager;
+
+    @Inject
+    private DataSource dataSource;
+
+    @Inject
+    private EventRepository eventRepository;
+
+    @Inject
+    private AlertRepository alertRepository;
+
+    @Inject
+    private ModificationWatermarkService modificationWatermarkService;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    @Inject
+    @Qualifier("taskExecutor")
+    private Executor taskExecutor;
+
+    private final AtomicInteger running = new AtomicInteger();
+
+    private IMap<String, ShardMoveDTO> moves;
+
+    private TransactionTemplate transactionTemplate;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private Meter copied;
+
+    private Meter reconciled;
+
+    @PostConstruct
+    public void init() {
+        moves = hazelcastInstance.getMap(MOVES_MAP_NAME);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        copied = metricRegistry.meter(MetricRegistry.name(ShardMoveService.class, "copied"));
+        reconciled = metricRegistry.meter(MetricRegistry.name(ShardMoveService.class, "reconciled"));
+        metricRegistry.register(MetricRegistry.name(ShardMoveService.class, "running"), (Gauge<Integer>) running::get);
+    }
+
+    /**
+     * Starts moving a domain to a shard.
+     *
+     * @return the move, to follow its progress with {@link #findMove(String)}
+     * @throws IllegalArgumentException if sharding is disabled, the shard does not exist, or is already the
+     * shard of the domain
+     * @throws IllegalStateException if the domain is already being moved
+     */
+    public ShardMoveDTO move(String domain, String shard) {
+        if (!shardService.isEnabled()) {
+            throw new IllegalArgumentException("Sharding is disabled");
+        }
+        if (!shardService.isShard(shard)) {
+            throw new IllegalArgumentException("Unknown shard " + shard);
+        }
+        IMap<String, ShardAssignmentDTO> assignments = shardService.getAssignmentMap();
+        assignments.lock(domain);
+        try {
+            ShardAssignmentDTO assignment = assignments.get(domain);
+            String from = assignment != null ? assignment.getShard() : ShardService.DEFAULT_SHARD;
+            if (assignment != null && assignment.getTarget() != null) {
+                throw new IllegalStateException("The domain " + domain + " is already being moved to " + assignment.getTarget());
+            }
+            if (from.equals(shard)) {
+                throw new IllegalArgumentException("The domain " + domain + " is already in shard " + shard);
+            }
+            ShardMoveDTO move = new ShardMoveDTO();
+            move.setId(UUID.randomUUID().toString());
+            move.setDomain(domain);
+            move.setFrom(from);
+            move.setTo(shard);
+            move.setState(ShardMoveDTO.State.RUNNING);
+            move.setPhase(ShardMoveDTO.Phase.COPYING);
+            move.setStartedAt(ZonedDateTime.now());
+            save(move);
+            shardService.assign(new ShardAssignmentDTO(domain, from, shard, false));
+            log.debug("Starting shard move {}", move);
+            taskExecutor.execute(() -> run(move));
+            return move;
+        } finally {
+            assignments.unlock(domain);
+        }
+    }
+
+    public Optional<ShardMoveDTO> findMove(String id) {
+        return Optional.ofNullable(moves.get(id));
+    }
+
+    public List<ShardMoveDTO> findAllMoves() {
+        List<ShardMoveDTO> result = new ArrayList<>(moves.values());
+        result.sort(Comparator.comparing(ShardMoveDTO::getStartedAt).reversed());
+        return result;
+    }
+
+    private void run(ShardMoveDTO move) {
+        running.incrementAndGet();
+        String domain = move.getDomain();
+        boolean switched = false;
+        try {
+            shardService.provision(move.getTo());
+            for (String table : new String[]{ShardService.EVENT, ShardService.ALERT}) {
+                copy(move, table);
+            }
+
+            shardService.assign(new ShardAssignmentDTO(domain, move.getFrom(), move.getTo(), true));
+            move.setPhase(ShardMoveDTO.Phase.FROZEN);
+            save(move);
+            // Lets the writes which started before the freeze, or which have not seen it yet, finish
+            Thread.sleep(applicationProperties.getSharding().getFreezeGraceMillis());
+            for (String table : new String[]{ShardService.EVENT, ShardService.ALERT}) {
+                reconcile(move, table);
+            }
+            reindex(move);
+
+            shardService.assign(new ShardAssignmentDTO(domain, move.getTo(), null, false));
+            switched = true;
+            modificationWatermarkService.touch(ModificationWatermarkService.EVENT);
+            modificationWatermarkService.touch(ModificationWatermarkService.ALERT);
+            move.setPhase(ShardMoveDTO.Phase.SWITCHED);
+            save(move);
+
+            shardService.deleteDomainFromIndex(ShardService.EVENT, move.getFrom(), domain);
+            shardService.deleteDomainFromIndex(ShardService.ALERT, move.getFrom(), domain);
+            move.setPhase(ShardMoveDTO.Phase.CLEANING);
+            save(move);
+            for (String table : new String[]{ShardService.EVENT, ShardService.ALERT}) {
+                cleanUp(move, table);
+            }
+            move.setState(ShardMoveDTO.State.COMPLETED);
+            log.info("Shard move {} moved domain {} from {} to {} with {} rows", move.getId(), domain,
+                move.getFrom(), move.getTo(), move.getCopied());
+        } catch (Exception e) {
+            log.error("Shard move {} of domain {} failed in phase {}", move.getId(), domain, move.getPhase(), e);
+            if (!switched) {
+                shardService.assign(new ShardAssignmentDTO(domain, move.getFrom(), null, false));
+            }
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            move.setState(ShardMoveDTO.State.FAILED);
+            move.setError(e.getMessage());
+        } finally {
+            move.setFinishedAt(ZonedDateTime.now());
+            save(move);
+            running.decrementAndGet();
+        }
+    }
+
+    private void copy(ShardMoveDTO move, String table) {
+        int batchSize = applicationProperties.getSharding().getCopyBatchSize();
+        long lastId = 0;
+        List<Map<String, Object>> rows;
+        do {
+            long afterId = lastId;
+            rows = ShardContext.call(move.getFrom(), () -> jdbcTemplate.queryForList(
+                "SELECT * FROM " + table + " WHERE domain = ? AND id > ? ORDER BY id LIMIT ?", move.getDomain(), afterId, batchSize));
+            if (!rows.isEmpty()) {
+                replace(move.getTo(), table, rows);
+                lastId = ((Number) rows.get(rows.size() - 1).get("id")).longValue();
+                copied.mark(rows.size());
+                move.setCopied(move.getCopied() + rows.size());
+                save(move);
+            }
+        } while (rows.size() == batchSize);
+    }
+
+    private void reconcile(ShardMoveDTO move, String table) {
+        Map<Long, Long> source = versions(move.getFrom(), table, move.getDomain());
+        Map<Long, Long> target = versions(move.getTo(), table, move.getDomain());
+        List<Long> changed = new ArrayList<>();
+        source.forEach((id, version) -> {
+            if (!version.equals(target.get(id))) {
+                changed.add(id);
+            }
+        });
+        List<Long> deleted = new ArrayList<>();
+        target.keySet().stream().filter(id -> !source.containsKey(id)).forEach(deleted::add);
+        int batchSize = applicationProperties.getSharding().getCopyBatchSize();
+        for (int from = 0; from < changed.size(); from += batchSize) {
+            List<Long> ids = changed.subList(from, Math.min(from + batchSize, changed.size()));
+            List<Map<String, Object>> rows = ShardContext.call(move.getFrom(), () -> jdbcTemplate.queryForList(
+                "SELECT * FROM " + table + " WHERE id IN (" + placeholders(ids.size()) + ")", ids.toArray()));
+            replace(move.getTo(), table, rows);
+        }
+        for (int from = 0; from < deleted.size(); from += batchSize) {
+            List<Long> ids = deleted.subList(from, Math.min(from + batchSize, deleted.size()));
+            ShardContext.run(move.getTo(), () -> jdbcTemplate.update(
+                "DELETE FROM " + table + " WHERE id IN (" + placeholders(ids.size()) + ")", ids.toArray()));
+        }
+        reconciled.mark(changed.size() + deleted.size());
+        move.setReconciled(move.getReconciled() + changed.size() + deleted.size());
+        save(move);
+    }
+
+    private Map<Long, Long> versions(String shard, String table, String domain) {
+        Map<Long, Long> versions = new HashMap<>();
+        ShardContext.run(shard, () -> jdbcTemplate.query("SELECT id, version FROM " + table + " WHERE domain = ?",
+            resultSet -> {
+                versions.put(resultSet.getLong(1), resultSet.getLong(2));
+            }, domain));
+        return versions;
+    }
+
+    /**
+     * Inserts the rows in a shard, in a transaction, in place of the rows of the same ids if any.
+     */
+    private void replace(String shard, String table, List<Map<String, Object>> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        List<String> columns = new ArrayList<>(rows.get(0).keySet());
+        String insert = "INSERT INTO " + table + " (" + String.join(", ", columns) + ") VALUES (" + placeholders(columns.size()) + ")";
+        Object[] ids = new Object[rows.size()];
+        List<Object[]> values = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            Map<String, Object> row = rows.get(i);
+            ids[i] = row.get("id");
+            Object[] rowValues = new Object[columns.size()];
+            for (int j = 0; j < rowValues.length; j++) {
+                rowValues[j] = row.get(columns.get(j));
+            }
+            values.add(rowValues);
+        }
+        ShardContext.run(shard, () -> transactionTemplate.execute(status -> {
+            jdbcTemplate.update("DELETE FROM " + table + " WHERE id IN (" + placeholders(ids.length) + ")", ids);
+            return jdbcTemplate.batchUpdate(insert, values);
+        }));
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    /**
+     * Indexes the domain in the indices of the target shard, before the searches of the domain go to them.
+     */
+    private void reindex(ShardMoveDTO move) {
+        int batchSize = applicationProperties.getSharding().getCopyBatchSize();
+        PageRequest firstPage = new PageRequest(0, batchSize, Sort.Direction.ASC, "id");
+        long lastId = 0;
+        Slice<Event> events;
+        do {
+            long afterId = lastId;
+            events = shardService.readInShard(move.getTo(),
+                () -> eventRepository.findByDomainAndIdGreaterThan(move.getDomain(), afterId, firstPage));
+            if (events.hasContent()) {
+                shardService.indexEvents(move.getTo(), events.getContent());
+                lastId = events.getContent().get(events.getNumberOfElements() - 1).getId();
+            }
+        } while (events.hasNext());
+        lastId = 0;
+        Slice<Alert> alerts;
+        do {
+            long afterId = lastId;
+            alerts = shardService.readInShard(move.getTo(),
+                () -> alertRepository.findByDomainAndIdGreaterThan(move.getDomain(), afterId, firstPage));
+            if (alerts.hasContent()) {
+                shardService.indexAlerts(move.getTo(), alerts.getContent());
+                lastId = alerts.getContent().get(alerts.getNumberOfElements() - 1).getId();
+            }
+        } while (alerts.hasNext());
+    }
+
+    private void cleanUp(ShardMoveDTO move, String table) {
+        int batchSize = applicationProperties.getSharding().getCopyBatchSize();
+        int deleted;
+        do {
+            deleted = ShardContext.call(move.getFrom(), () -> jdbcTemplate.update("DELETE FROM " + table
+                + " WHERE id IN (SELECT id FROM " + table + " WHERE domain = ? LIMIT ?)", move.getDomain(), batchSize));
+            move.setDeleted(move.getDeleted() + deleted);
+            save(move);
+        } while (deleted > 0);
+    }
+
+    private void save(ShardMoveDTO move) {
+        moves.set(move.getId(), move, MOVE_RETENTION_DAYS, TimeUnit.DAYS);
+    }
+}
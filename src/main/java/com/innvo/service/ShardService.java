@@ -0,0 +1,592 @@
+package com.innvo.service;
+
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.map.listener.EntryAddedListener;
+import com.hazelcast.map.listener.EntryRemovedListener;
+import com.hazelcast.map.listener.EntryUpdatedListener;
+import com.innvo.config.ApplicationProperties;
+import com.innvo.config.ElasticSearchConfiguration;
+import com.innvo.config.jdbc.ShardContext;
+import com.innvo.config.jdbc.ShardRoutingDataSource;
+import com.innvo.domain.Alert;
+import com.innvo.domain.Event;
+import com.innvo.repository.search.AlertSearchRepository;
+import com.innvo.repository.search.EventSearchRepository;
+import com.innvo.web.rest.dto.ShardAssignmentDTO;
+import com.innvo.web.rest.errors.ServiceUnavailableException;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.query.DeleteQuery;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Maps each domain to the shard holding its events and alerts, and routes the reads and writes to it.
+ *
+ * <p>
+ * A shard is a schema, see {@link ShardRoutingDataSource}, with its own event and alert indices, named after
+ * the shard. Domains are in the default shard, the public schema and the event and alert indices, unless they
+ * have been moved to another one with {@link ShardMoveService}: the assignments are shared in a Hazelcast map,
+ * of which each member keeps a local copy, so that routing a request needs no remote call. They are written
+ * through to the {@code domain_shard} table of the default shard, from which the map is loaded when the cluster
+ * starts, so that they outlive it.
+ * </p>
+ * <p>
+ * Ids are unique across the shards: the sequences of a shard start at its position in the configuration,
+ * shifted by {@link #ORDINAL_SHIFT} bits, so that the shard in which a row was created is known from its id,
+ * which is the first one searched for a row read by id. Ids stay below 2^53, which JavaScript clients can hold,
+ * hence at most {@link #MAX_SHARDS} shards.
+ * </p>
+ * <p>
+ * When sharding is disabled, everything goes to the default shard as before.
+ * </p>
+ */
+@Service
+public class ShardService {
+
+    public static final String MAP_NAME = "domain-shards";
+
+    public static final String DEFAULT_SHARD = ShardContext.DEFAULT_SHARD;
+
+    public static final String EVENT = "event";
+
+    public static final String ALERT = "alert";
+
+    private static final String ASSIGNMENT_TABLE = "domain_shard";
+
+    static final int ORDINAL_SHIFT = 48;
+
+    private static final int MAX_SHARDS = 31;
+
+    private final Logger log = LoggerFactory.getLogger(ShardService.class);
+
+    @Inject
+    private ApplicationProperties applicationProperties;
+
+    @Inject
+    private HazelcastInstance hazelcastInstance;
+
+    @Inject
+    private ElasticsearchTemplate elasticsearchTemplate;
+
+    @Inject
+    private Client client;
+
+    @Inject
+    private ElasticSearchConfiguration.CustomEntityMapper entityMapper;
+
+    @Inject
+    private EventSearchRepository eventSearchRepository;
+
+    @Inject
+    private AlertSearchRepository alertSearchRepository;
+
+    @Inject
+    private PlatformTransactionManager transactionManager;
+
+    @Inject
+    private DataSource dataSource;
+
+    private boolean enabled;
+
+    // The position of a shard is its ordinal, the default shard being the first
+    private final List<String> shards = new ArrayList<>();
+
+    private final Map<String, String> schemas = new ConcurrentHashMap<>();
+
+    private final Map<String, ShardAssignmentDTO> localAssignments = new ConcurrentHashMap<>();
+
+    private IMap<String, ShardAssignmentDTO> assignments;
+
+    private TransactionTemplate readOnlyTransactionTemplate;
+
+    private TransactionTemplate primaryTransactionTemplate;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void init() {
+        shards.add(DEFAULT_SHARD);
+        readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        readOnlyTransactionTemplate.setReadOnly(true);
+        // A read-write transaction of its own, which is never routed to a replica
+        primaryTransactionTemplate = new TransactionTemplate(transactionManager);
+        primaryTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        enabled = applicationProperties.getSharding().isEnabled();
+        if (!enabled) {
+            log.debug("Sharding is disabled");
+            return;
+        }
+        for (ApplicationProperties.Sharding.Shard shard : applicationProperties.getSharding().getShards()) {
+            ShardRoutingDataSource.checkIdentifier(shard.getName());
+            shards.add(shard.getName());
+            schemas.put(shard.getName(), shard.getSchema());
+        }
+        if (shards.size() > MAX_SHARDS + 1) {
+            throw new IllegalStateException("At most " + MAX_SHARDS + " shards can be configured");
+        }
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        assignments = hazelcastInstance.getMap(MAP_NAME);
+        // Registered before the copy, so that no change is missed
+        assignments.addEntryListener(new AssignmentListener(), true);
+        localAssignments.putAll(assignments);
+        try {
+            loadAssignments();
+        } catch (Exception e) {
+            log.warn("Could not load the shard assignments, will retry once the application is ready: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Loads the persisted assignments into the map, where they are missing because the whole cluster restarted.
+     * The moves which were running are not resumed: their domains stay in the shard they were moved from.
+     */
+    private void loadAssignments() {
+        List<ShardAssignmentDTO> persisted = ShardContext.call(DEFAULT_SHARD, () -> jdbcTemplate.query(
+            "SELECT domain, shard, target, frozen FROM " + ASSIGNMENT_TABLE,
+            (rs, rowNum) -> new ShardAssignmentDTO(rs.getString("domain"), rs.getString("shard"), rs.getString("target"), rs.getBoolean("frozen"))));
+        for (ShardAssignmentDTO assignment : persisted) {
+            String domain = assignment.getDomain();
+            if (assignment.getTarget() == null) {
+                ShardAssignmentDTO current = assignments.putIfAbsent(domain, assignment);
+                localAssignments.putIfAbsent(domain, current != null ? current : assignment);
+            } else if (!assignments.containsKey(domain)) {
+                log.warn("Shard move of domain {} to {} was interrupted, keeping it in {}", domain,
+                    assignment.getTarget(), assignment.getShard());
+                ShardAssignmentDTO interrupted = new ShardAssignmentDTO(domain, assignment.getShard(), null, false);
+                assign(interrupted);
+                localAssignments.put(domain, interrupted);
+            }
+        }
+        log.debug("Loaded {} shard assignments", persisted.size());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the shards, the default shard first
+     */
+    public List<String> getShards() {
+        return Collections.unmodifiableList(shards);
+    }
+
+    public boolean isShard(String shard) {
+        return shards.contains(shard);
+    }
+
+    public List<ShardAssignmentDTO> getAssignments() {
+        return enabled ? new ArrayList<>(assignments.values()) : Collections.emptyList();
+    }
+
+    /**
+     * @return the shard of the domain, which it may be moving from
+     */
+    public String shardOf(String domain) {
+        ShardAssignmentDTO assignment = assignmentOf(domain);
+        return assignment != null ? assignment.getShard() : DEFAULT_SHARD;
+    }
+
+    /**
+     * @return the shard of the domain, to write to it
+     * @throws ServiceUnavailableException if the writes to the domain are frozen while it is moved
+     */
+    public String writableShardOf(String domain) {
+        ShardAssignmentDTO assignment = assignmentOf(domain);
+        if (assignment == null) {
+            return DEFAULT_SHARD;
+        }
+        if (assignment.isFrozen()) {
+            throw new ServiceUnavailableException("The domain " + domain + " is being moved to another shard");
+        }
+        return assignment.getShard();
+    }
+
+    /**
+     * @return the shards, to write to all of them
+     * @throws ServiceUnavailableException if the writes to a domain are frozen while it is moved
+     */
+    public List<String> getWritableShards() {
+        if (enabled && localAssignments.values().stream().anyMatch(ShardAssignmentDTO::isFrozen)) {
+            throw new ServiceUnavailableException("A domain is being moved to another shard");
+        }
+        return getShards();
+    }
+
+    /**
+     * @param id the id of an entity
+     * @param domainFinder finds the domain of the entity of an id, in the current shard
+     * @return the shard of the domain of the entity, to write to it, the default shard if there is no such entity
+     * @throws ServiceUnavailableException if the writes to the domain are frozen while it is moved
+     */
+    public String writableShardOfId(Long id, Function<Long, String> domainFinder) {
+        if (!enabled) {
+            return DEFAULT_SHARD;
+        }
+        return writableShardOf(findInShards(id, domainFinder));
+    }
+
+    private ShardAssignmentDTO assignmentOf(String domain) {
+        return enabled && domain != null ? localAssignments.get(domain) : null;
+    }
+
+    /**
+     * Writes an assignment to the database, then shares it, so that a failed write leaves the map unchanged.
+     */
+    void assign(ShardAssignmentDTO assignment) {
+        if (DEFAULT_SHARD.equals(assignment.getShard()) && assignment.getTarget() == null) {
+            ShardContext.run(DEFAULT_SHARD, () ->
+                jdbcTemplate.update("DELETE FROM " + ASSIGNMENT_TABLE + " WHERE domain = ?", assignment.getDomain()));
+            assignments.delete(assignment.getDomain());
+        } else {
+            ShardContext.run(DEFAULT_SHARD, () -> {
+                // The writes of a domain are serialized by the lock of its map entry, see ShardMoveService
+                if (jdbcTemplate.update("UPDATE " + ASSIGNMENT_TABLE + " SET shard = ?, target = ?, frozen = ? WHERE domain = ?",
+                    assignment.getShard(), assignment.getTarget(), assignment.isFrozen(), assignment.getDomain()) == 0) {
+                    jdbcTemplate.update("INSERT INTO " + ASSIGNMENT_TABLE + " (domain, shard, target, frozen) VALUES (?, ?, ?, ?)",
+                        assignment.getDomain(), assignment.getShard(), assignment.getTarget(), assignment.isFrozen());
+                }
+            });
+            assignments.set(assignment.getDomain(), assignment);
+        }
+    }
+
+    IMap<String, ShardAssignmentDTO> getAssignmentMap() {
+        return assignments;
+    }
+
+    /**
+     * Runs the work with the connections of a shard; the work must start its transactions itself.
+     */
+    public <T> T inShard(String shard, Supplier<T> work) {
+        return ShardContext.call(shard, work);
+    }
+
+    public void runInShard(String shard, Runnable work) {
+        ShardContext.run(shard, work);
+    }
+
+    /**
+     * @return the shard of the current thread
+     */
+    public String currentShard() {
+        return ShardContext.current();
+    }
+
+    /**
+     * Runs the work in a read-only transaction of a shard.
+     */
+    public <T> T readInShard(String shard, Supplier<T> work) {
+        return ShardContext.call(shard, () -> readOnlyTransactionTemplate.execute(status -> work.get()));
+    }
+
+    /**
+     * Finds an entity by id in the shard encoded in the id, then in the other shards, as its domain may have
+     * been moved.
+     *
+     * @return the first result found, or null
+     */
+    public <T> T findInShards(Long id, Function<Long, T> finder) {
+        for (String shard : shardsOfId(id)) {
+            T result = readInShard(shard, () -> finder.apply(id));
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Same as {@link #findInShards}, but reads the committed rows of the primary database of each shard, in a new
+     * transaction, whatever the transaction of the caller: the rows of a lagging replica must not be cached.
+     *
+     * @return the first result found, or null
+     */
+    public <T> T findInShardsOnPrimary(Long id, Function<Long, T> finder) {
+        for (String shard : shardsOfId(id)) {
+            T result = ShardContext.call(shard, () -> primaryTransactionTemplate.execute(status -> finder.apply(id)));
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    private List<String> shardsOfId(Long id) {
+        if (!enabled) {
+            return Collections.singletonList(DEFAULT_SHARD);
+        }
+        List<String> result = new ArrayList<>(shards);
+        int ordinal = (int) (id >>> ORDINAL_SHIFT);
+        if (ordinal > 0 && ordinal < shards.size()) {
+            result.remove(ordinal);
+            result.add(0, shards.get(ordinal));
+        }
+        return result;
+    }
+
+    /**
+     * Reads the rows of all the shards, one shard after the other in their order.
+     *
+     * @param finder reads the rows of the current shard
+     */
+    public <T> List<T> readAllShards(Supplier<List<T>> finder) {
+        if (!enabled) {
+            return readInShard(DEFAULT_SHARD, finder);
+        }
+        List<T> result = new ArrayList<>();
+        for (String shard : shards) {
+            result.addAll(readInShard(shard, finder));
+        }
+        return result;
+    }
+
+    /**
+     * Reads a page of the rows of all the shards, the rows of each shard being sorted as requested, one shard
+     * after the other in their order. Each shard is counted, and the shards which overlap the page are queried
+     * once or twice, as the page may start anywhere in one of them.
+     *
+     * @param finder reads a page of the rows of the current shard
+     */
+    public <T> Page<T> readAcrossShards(Pageable pageable, Function<Pageable, Page<T>> finder) {
+        if (!enabled) {
+            return readInShard(DEFAULT_SHARD, () -> finder.apply(pageable));
+        }
+        int size = pageable.getPageSize();
+        long offset = pageable.getOffset();
+        List<T> content = new ArrayList<>(size);
+        long total = 0;
+        for (String shard : shards) {
+            Page<T> first = readInShard(shard, () -> finder.apply(new PageRequest(0, size, pageable.getSort())));
+            long start = Math.max(0, offset - total);
+            long end = Math.min(first.getTotalElements(), offset + size - total);
+            long position = start;
+            while (position < end) {
+                int page = (int) (position / size);
+                Page<T> rows = page == 0 ? first
+                    : readInShard(shard, () -> finder.apply(new PageRequest(page, size, pageable.getSort())));
+                int from = (int) (position - (long) page * size);
+                int to = (int) Math.min(rows.getContent().size(), end - (long) page * size);
+                if (from >= to) {
+                    // Rows deleted meanwhile
+                    break;
+                }
+                content.addAll(rows.getContent().subList(from, to));
+                position = (long) page * size + to;
+            }
+            total += first.getTotalElements();
+        }
+        return new PageImpl<>(content, pageable, total);
+    }
+
+    /**
+     * @return the index alias of the entity type in a shard
+     */
+    public static String indexOf(String type, String shard) {
+        return DEFAULT_SHARD.equals(shard) ? type : type + "_" + shard;
+    }
+
+    /**
+     * @return the index aliases of the entity type in all the shards
+     */
+    public List<String> indicesOf(String type) {
+        List<String> indices = new ArrayList<>(shards.size());
+        for (String shard : shards) {
+            indices.add(indexOf(type, shard));
+        }
+        return indices;
+    }
+
+    public void indexEvents(String shard, List<Event> events) {
+        bulkIndex(indexOf(EVENT, shard), EVENT, events, Event::getId);
+    }
+
+    public void indexAlerts(String shard, List<Alert> alerts) {
+        bulkIndex(indexOf(ALERT, shard), ALERT, alerts, Alert::getId);
+    }
+
+    public void indexEvent(String shard, Event event) {
+        bulkIndex(indexOf(EVENT, shard), EVENT, Collections.singletonList(event), Event::getId);
+    }
+
+    public void indexAlert(String shard, Alert alert) {
+        bulkIndex(indexOf(ALERT, shard), ALERT, Collections.singletonList(alert), Alert::getId);
+    }
+
+    /**
+     * Indexes the documents from their JSON bytes, without the intermediate strings of the template.
+     */
+    private <T> void bulkIndex(String index, String type, List<T> documents, Function<T, Long> id) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        BulkRequestBuilder bulkRequest = client.prepareBulk();
+        for (T document : documents) {
+            String documentId = id.apply(document).toString();
+            try {
+                bulkRequest.add(client.prepareIndex(index, type, documentId).setSource(entityMapper.mapToBytes(document)));
+            } catch (IOException e) {
+                throw new ElasticsearchException("Failed to map document " + documentId + " of " + index, e);
+            }
+        }
+        BulkResponse bulkResponse = bulkRequest.get();
+        if (bulkResponse.hasFailures()) {
+            throw new ElasticsearchException("Bulk indexing of " + index + " has failures: " + bulkResponse.buildFailureMessage());
+        }
+        elasticsearchTemplate.refresh(index, true);
+    }
+
+    public void deleteEvent(String shard, Long id) {
+        if (DEFAULT_SHARD.equals(shard)) {
+            eventSearchRepository.delete(id);
+        } else {
+            elasticsearchTemplate.delete(indexOf(EVENT, shard), EVENT, id.toString());
+        }
+    }
+
+    public void deleteAlert(String shard, Long id) {
+        if (DEFAULT_SHARD.equals(shard)) {
+            alertSearchRepository.delete(id);
+        } else {
+            elasticsearchTemplate.delete(indexOf(ALERT, shard), ALERT, id.toString());
+        }
+    }
+
+    /**
+     * Deletes the documents of a domain from the index of an entity type in a shard.
+     */
+    public void deleteDomainFromIndex(String type, String shard, String domain) {
+        DeleteQuery deleteQuery = new DeleteQuery();
+        deleteQuery.setIndex(indexOf(type, shard));
+        deleteQuery.setType(type);
+        deleteQuery.setQuery(QueryBuilders.termQuery("domain", domain));
+        elasticsearchTemplate.delete(deleteQuery);
+    }
+
+    /**
+     * Searches the events of the shard of a domain, or of all the shards without a domain.
+     *
+     * @param query the query, which must match the domain if any
+     */
+    public Page<Event> searchEvents(QueryBuilder query, String domain, Pageable pageable) {
+        return elasticsearchTemplate.queryForPage(new NativeSearchQueryBuilder().withQuery(query).withPageable(pageable)
+            .withIndices(searchedIndices(EVENT, domain)).withTypes(EVENT).build(), Event.class, entityMapper);
+    }
+
+    /**
+     * Searches the alerts of the shard of a domain, or of all the shards without a domain.
+     *
+     * @param query the query, which must match the domain if any
+     */
+    public Page<Alert> searchAlerts(QueryBuilder query, String domain, Pageable pageable) {
+        return elasticsearchTemplate.queryForPage(new NativeSearchQueryBuilder().withQuery(query).withPageable(pageable)
+            .withIndices(searchedIndices(ALERT, domain)).withTypes(ALERT).build(), Alert.class, entityMapper);
+    }
+
+    /**
+     * @return the index alias of the entity type in the shard of a domain, or in all the shards without a domain
+     */
+    public String[] searchedIndices(String type, String domain) {
+        if (domain != null) {
+            return new String[]{indexOf(type, shardOf(domain))};
+        }
+        List<String> indices = indicesOf(type);
+        return indices.toArray(new String[indices.size()]);
+    }
+
+    /**
+     * Loads the shard assignments again, in case the database was not migrated yet when the service was created,
+     * and creates the schemas of the shards at startup, see {@link #provision(String)}.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void provisionAll() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            loadAssignments();
+        } catch (Exception e) {
+            log.error("Could not load the shard assignments, moved domains are routed to the default shard", e);
+        }
+        for (String shard : shards.subList(1, shards.size())) {
+            try {
+                provision(shard);
+            } catch (Exception e) {
+                log.warn("Could not provision shard {}: {}", shard, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Creates the schema of a shard, with its event and alert tables like those of the public schema, and its
+     * sequences, if they do not exist. Later changes of the public tables must be applied to the shards as well.
+     */
+    public void provision(String shard) {
+        if (DEFAULT_SHARD.equals(shard)) {
+            return;
+        }
+        String schema = schemas.get(shard);
+        long start = (long) shards.indexOf(shard) << ORDINAL_SHIFT;
+        ShardContext.run(shard, () -> {
+            jdbcTemplate.execute("CREATE SCHEMA IF NOT EXISTS " + schema);
+            for (String table : new String[]{EVENT, ALERT}) {
+                jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + schema + "." + table
+                    + " (LIKE public." + table + " INCLUDING ALL)");
+                jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS " + schema + "." + table + "_sequence"
+                    + " START WITH " + start + " INCREMENT BY 50");
+            }
+        });
+        log.debug("Provisioned shard {} in schema {}", shard, schema);
+    }
+
+    private class AssignmentListener implements EntryAddedListener<String, ShardAssignmentDTO>,
+        EntryUpdatedListener<String, ShardAssignmentDTO>, EntryRemovedListener<String, ShardAssignmentDTO> {
+
+        @Override
+        public void entryAdded(EntryEvent<String, ShardAssignmentDTO> event) {
+            localAssignments.put(event.getKey(), event.getValue());
+        }
+
+        @Override
+        public void entryUpdated(EntryEvent<String, ShardAssignmentDTO> event) {
+            localAssignments.put(event.getKey(), event.getValue());
+        }
+
+        @Override
+        public void entryRemoved(EntryEvent<String, ShardAssignmentDTO> event) {
+            localAssignments.remove(event.getKey());
+        }
+    }
+}
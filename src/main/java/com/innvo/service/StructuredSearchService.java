@@ -0,0 +1,205 @@
+package com.innvo.service;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.innvo.web.rest.dto.SearchRequestDTO;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.index.query.BoolFilterBuilder;
+import org.elasticsearch.index.query.FilterBuilder;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.RangeFilterBuilder;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.inject.Inject;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs structured searches on the event and alert indices, and serves their hits as they are stored.
+ *
+ * <p>
+ * Exact and range criteria are filters rather than queries, so that Elasticsearch does not score them and
+ * caches their bitsets across searches. Results are sorted by start date then id, both descending, and the
+ * next page is requested with the sort values of the last hit: Elasticsearch 1.x has no search_after, so the
+ * cursor is applied as a range filter, which unlike from/size costs the same whatever the depth. Documents
+ * without a start date are sorted after all the others, by id, and are positioned by a cursor of which the start
+ * date is {@link #MISSING_START}.
+ * The domain, when given, is both a filter and the search preference, so that the searches of a domain hit
+ * the same shard copies and their warm caches, and selects the index of the shard of the domain; without a domain,
+ * the indices of all the shards are searched. The source of the hits is copied to the response without being
+ * mapped to entities.
+ * </p>
+ */
+@Service
+public class StructuredSearchService {
+
+    public static final String EVENT_INDEX = "event";
+
+    public static final String ALERT_INDEX = "alert";
+
+    /**
+     * The start date of the cursor of a document without one, the sort value Elasticsearch gives it when sorted last.
+     */
+    public static final long MISSING_START = Long.MIN_VALUE;
+
+    private static final String START_FIELD = "startdatetime";
+
+    private static final String ID_FIELD = "id";
+
+    private final Logger log = LoggerFactory.getLogger(StructuredSearchService.class);
+
+    @Inject
+    private Client client;
+
+    @Inject
+    private ShardService shardService;
+
+    @Inject
+    private ObjectMapper objectMapper;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    /**
+     * Searches the indices of an entity type, the type of their documents having the same name.
+     *
+     * @return the JSON response, with the took time, shard counts, total, hits and the cursor of the next page
+     * @throws IOException if the response cannot be written
+     */
+    public byte[] search(String index, SearchRequestDTO request) throws IOException {
+        BoolFilterBuilder filter = FilterBuilders.boolFilter();
+        for (Map.Entry<String, List<String>> term : request.getTerms().entrySet()) {
+            filter.must(FilterBuilders.termsFilter(term.getKey(), term.getValue()).cache(true));
+        }
+        for (Map.Entry<String, SearchRequestDTO.Range> range : request.getRanges().entrySet()) {
+            filter.must(toFilter(range.getKey(), range.getValue()));
+        }
+        if (request.getDomain() != null) {
+            filter.must(FilterBuilders.termFilter("domain", request.getDomain()).cache(true));
+        }
+        List<Long> searchAfter = request.getSearchAfter();
+        if (searchAfter != null) {
+            filter.must(toCursorFilter(searchAfter.get(0), searchAfter.get(1)));
+        }
+        QueryBuilder query = request.getQuery() != null
+            ? QueryBuilders.queryStringQuery(request.getQuery())
+            : QueryBuilders.matchAllQuery();
+
+        SearchRequestBuilder builder = client.prepareSearch(shardService.searchedIndices(index, request.getDomain()))
+            .setTypes(index)
+            .setQuery(QueryBuilders.filteredQuery(query, filter))
+            .setSize(request.getSize())
+            .addSort(SortBuilders.fieldSort(START_FIELD).order(SortOrder.DESC).missing("_last"))
+            .addSort(ID_FIELD, SortOrder.DESC);
+        if (!request.getIncludes().isEmpty()) {
+            builder.setFetchSource(request.getIncludes().toArray(new String[request.getIncludes().size()]), null);
+        }
+        if (request.getDomain() != null) {
+            builder.setPreference(request.getDomain());
+        }
+        SearchResponse response = builder.execute().actionGet();
+        record(index, response);
+        log.debug("Structured search on {} took {} ms for {} hits", index, response.getTookInMillis(), response.getHits().getTotalHits());
+        return toJson(response, request.getSize());
+    }
+
+    /**
+     * Selects the documents sorted after the cursor: the older start dates, the lower ids of the same start date,
+     * then the documents without a start date, which come last.
+     */
+    private static FilterBuilder toCursorFilter(long start, long id) {
+        FilterBuilder missingStart = FilterBuilders.missingFilter(START_FIELD);
+        // Not cached: every cursor is different
+        if (start == MISSING_START) {
+            return FilterBuilders.boolFilter()
+                .must(missingStart)
+                .must(FilterBuilders.rangeFilter(ID_FIELD).lt(id))
+                .cache(false);
+        }
+        return FilterBuilders.boolFilter()
+            .should(FilterBuilders.rangeFilter(START_FIELD).lt(start))
+            .should(FilterBuilders.boolFilter()
+                .must(FilterBuilders.termFilter(START_FIELD, start))
+                .must(FilterBuilders.rangeFilter(ID_FIELD).lt(id)))
+            .should(missingStart)
+            .cache(false);
+    }
+
+    private static RangeFilterBuilder toFilter(String field, SearchRequestDTO.Range range) {
+        RangeFilterBuilder filter = FilterBuilders.rangeFilter(field).cache(true);
+        if (range.getGt() != null) {
+            filter.gt(range.getGt());
+        }
+        if (range.getGte() != null) {
+            filter.gte(range.getGte());
+        }
+        if (range.getLt() != null) {
+            filter.lt(range.getLt());
+        }
+        if (range.getLte() != null) {
+            filter.lte(range.getLte());
+        }
+        return filter;
+    }
+
+    private void record(String index, SearchResponse response) {
+        Histogram took = metricRegistry.histogram(MetricRegistry.name(StructuredSearchService.class, index, "took"));
+        took.update(response.getTookInMillis());
+        Meter failedShards = metricRegistry.meter(MetricRegistry.name(StructuredSearchService.class, index, "failed-shards"));
+        if (response.getFailedShards() > 0) {
+            failedShards.mark(response.getFailedShards());
+        }
+    }
+
+    private byte[] toJson(SearchResponse response, int size) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeNumberField("took", response.getTookInMillis());
+            generator.writeObjectFieldStart("shards");
+            generator.writeNumberField("total", response.getTotalShards());
+            generator.writeNumberField("successful", response.getSuccessfulShards());
+            generator.writeNumberField("failed", response.getFailedShards());
+            generator.writeEndObject();
+            generator.writeNumberField("total", response.getHits().getTotalHits());
+            generator.writeArrayFieldStart("hits");
+            SearchHit last = null;
+            for (SearchHit hit : response.getHits()) {
+                generator.writeStartObject();
+                generator.writeStringField("id", hit.getId());
+                if (hit.sourceRef() != null) {
+                    generator.writeFieldName("source");
+                    generator.writeRawValue(hit.sourceAsString());
+                }
+                generator.writeEndObject();
+                last = hit;
+            }
+            generator.writeEndArray();
+            // The cursor of the next page, if this one is full
+            if (last != null && response.getHits().getHits().length == size) {
+                generator.writeArrayFieldStart("searchAfter");
+                Object[] sortValues = last.getSortValues();
+                generator.writeNumber(sortValues[0] != null ? ((Number) sortValues[0]).longValue() : MISSING_START);
+                generator.writeNumber(((Number) sortValues[1]).longValue());
+                generator.writeEndArray();
+            }
+            generator.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,233 @@
+package com.innvo.service.util;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Rows of long and string columns, stored column by column in a compact file format.
+ *
+ * <p>
+ * Long columns are delta encoded, then zigzag and varint encoded, so that sorted ids and dates take one or two
+ * bytes per row; {@link #NULL} stands for a null value. String columns are dictionary encoded, each row holding
+ * the varint code of its value in the dictionary of the column, 0 for null. The encoded columns are compressed
+ * with deflate. A segment is either being built with {@link #addRow(long[], String[])} or read back whole with
+ * {@link #readFrom(InputStream)}; it is not thread-safe.
+ * </p>
+ */
+public class ColumnarSegment {
+
+    public static final long NULL = Long.MIN_VALUE;
+
+    private static final int MAGIC = 0x41445347;
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final String[] longColumns;
+
+    private final String[] stringColumns;
+
+    private long[][] longs;
+
+    private String[][] strings;
+
+    private int size;
+
+    public ColumnarSegment(String[] longColumns, String[] stringColumns) {
+        this(longColumns, stringColumns, 1024);
+    }
+
+    private ColumnarSegment(String[] longColumns, String[] stringColumns, int capacity) {
+        this.longColumns = longColumns.clone();
+        this.stringColumns = stringColumns.clone();
+        this.longs = new long[longColumns.length][Math.max(capacity, 1)];
+        this.strings = new String[stringColumns.length][Math.max(capacity, 1)];
+    }
+
+    public void addRow(long[] longValues, String[] stringValues) {
+        if (longValues.length != longColumns.length || stringValues.length != stringColumns.length) {
+            throw new IllegalArgumentException("Row does not match the columns of the segment");
+        }
+        if (size == (longs.length > 0 ? longs[0].length : strings[0].length)) {
+            int capacity = size * 2;
+            for (int i = 0; i < longs.length; i++) {
+                longs[i] = Arrays.copyOf(longs[i], capacity);
+            }
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = Arrays.copyOf(strings[i], capacity);
+            }
+        }
+        for (int i = 0; i < longValues.length; i++) {
+            longs[i][size] = longValues[i];
+        }
+        for (int i = 0; i < stringValues.length; i++) {
+            strings[i][size] = stringValues[i];
+        }
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int longColumn(String name) {
+        return indexOf(longColumns, name);
+    }
+
+    public int stringColumn(String name) {
+        return indexOf(stringColumns, name);
+    }
+
+    private static int indexOf(String[] columns, String name) {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown column: " + name);
+    }
+
+    public long getLong(int column, int row) {
+        return longs[column][row];
+    }
+
+    public String getString(int column, int row) {
+        return strings[column][row];
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        header.writeInt(FORMAT_VERSION);
+        header.flush();
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            DeflaterOutputStream compressed = new DeflaterOutputStream(out, deflater, 65536);
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(compressed, 65536));
+            writeVarint(data, size);
+            writeVarint(data, longColumns.length);
+            for (String column : longColumns) {
+                writeString(data, column);
+            }
+            writeVarint(data, stringColumns.length);
+            for (String column : stringColumns) {
+                writeString(data, column);
+            }
+            for (long[] column : longs) {
+                long previous = 0;
+                for (int row = 0; row < size; row++) {
+                    // Wrapping subtraction, undone exactly by the wrapping addition of the reader
+                    long delta = column[row] - previous;
+                    writeVarint(data, (delta << 1) ^ (delta >> 63));
+                    previous = column[row];
+                }
+            }
+            for (String[] column : strings) {
+                Map<String, Integer> codes = new HashMap<>();
+                int[] rowCodes = new int[size];
+                for (int row = 0; row < size; row++) {
+                    String value = column[row];
+                    if (value != null) {
+                        Integer code = codes.get(value);
+                        if (code == null) {
+                            code = codes.size() + 1;
+                            codes.put(value, code);
+                        }
+                        rowCodes[row] = code;
+                    }
+                }
+                String[] dictionary = new String[codes.size()];
+                codes.forEach((value, code) -> dictionary[code - 1] = value);
+                writeVarint(data, dictionary.length);
+                for (String value : dictionary) {
+                    writeString(data, value);
+                }
+                for (int row = 0; row < size; row++) {
+                    writeVarint(data, rowCodes[row]);
+                }
+            }
+            data.flush();
+            compressed.finish();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public static ColumnarSegment readFrom(InputStream in) throws IOException {
+        DataInputStream header = new DataInputStream(in);
+        if (header.readInt() != MAGIC) {
+            throw new IOException("Not a columnar segment");
+        }
+        int version = header.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported columnar segment version " + version);
+        }
+        DataInputStream data = new DataInputStream(new BufferedInputStream(new InflaterInputStream(in), 65536));
+        int size = (int) readVarint(data);
+        String[] longColumns = new String[(int) readVarint(data)];
+        for (int i = 0; i < longColumns.length; i++) {
+            longColumns[i] = readString(data);
+        }
+        String[] stringColumns = new String[(int) readVarint(data)];
+        for (int i = 0; i < stringColumns.length; i++) {
+            stringColumns[i] = readString(data);
+        }
+        ColumnarSegment segment = new ColumnarSegment(longColumns, stringColumns, size);
+        for (long[] column : segment.longs) {
+            long previous = 0;
+            for (int row = 0; row < size; row++) {
+                long zigzag = readVarint(data);
+                previous += (zigzag >>> 1) ^ -(zigzag & 1);
+                column[row] = previous;
+            }
+        }
+        for (String[] column : segment.strings) {
+            String[] dictionary = new String[(int) readVarint(data) + 1];
+            for (int i = 1; i < dictionary.length; i++) {
+                dictionary[i] = readString(data);
+            }
+            for (int row = 0; row < size; row++) {
+                column[row] = dictionary[(int) readVarint(data)];
+            }
+        }
+        segment.size = size;
+        return segment;
+    }
+
+    private static void writeVarint(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarint(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[(int) readVarint(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,126 @@
+package com.innvo.service.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter of 64 bits hashes which forgets the hashes older than a time window.
+ *
+ * <p>
+ * Two generations of bits are kept: hashes are added to the current one and looked up in both, and the current
+ * generation becomes the previous one, dropping the oldest, once it is as old as the window. A hash is therefore
+ * remembered between one and two windows. Each generation is sized for the expected number of insertions per
+ * window and the requested false positive probability, which the two generations together can at most double.
+ * </p>
+ * <p>
+ * The filter is thread-safe and lock-free, except for the rotation.
+ * </p>
+ */
+public class RotatingBloomFilter {
+
+    private final long windowMillis;
+
+    private final int bits;
+
+    private final int hashFunctions;
+
+    private volatile Generation current;
+
+    private volatile Generation previous;
+
+    public RotatingBloomFilter(long expectedInsertions, double falsePositiveProbability, long windowMillis) {
+        if (expectedInsertions <= 0 || falsePositiveProbability <= 0 || falsePositiveProbability >= 1) {
+            throw new IllegalArgumentException("Invalid Bloom filter parameters");
+        }
+        long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+        // Rounded up to whole words, and capped to what an array of longs can address
+        this.bits = (int) Math.min((optimalBits + 63) & ~63L, Integer.MAX_VALUE & ~63);
+        this.hashFunctions = Math.max(1, (int) Math.round((double) bits / expectedInsertions * Math.log(2)));
+        this.windowMillis = windowMillis;
+        long now = System.currentTimeMillis();
+        this.current = new Generation(bits, now);
+        this.previous = new Generation(bits, now);
+    }
+
+    public boolean mightContain(long hash) {
+        rotateIfNeeded();
+        return current.mightContain(hash) || previous.mightContain(hash);
+    }
+
+    public void put(long hash) {
+        rotateIfNeeded();
+        current.put(hash);
+    }
+
+    public int bitsPerGeneration() {
+        return bits;
+    }
+
+    public int hashFunctions() {
+        return hashFunctions;
+    }
+
+    private void rotateIfNeeded() {
+        long now = System.currentTimeMillis();
+        if (now - current.createdAt >= windowMillis) {
+            synchronized (this) {
+                if (now - current.createdAt >= windowMillis) {
+                    // Readers see either the old pair, or the new pair, or the old current twice; never lose it
+                    previous = current;
+                    current = new Generation(bits, now);
+                }
+            }
+        }
+    }
+
+    /**
+     * 64 bits mix function of MurmurHash3, used to derive the second hash of the double hashing scheme.
+     */
+    public static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private final class Generation {
+
+        private final AtomicLongArray words;
+
+        private final long createdAt;
+
+        private Generation(int bits, long createdAt) {
+            this.words = new AtomicLongArray(bits >>> 6);
+            this.createdAt = createdAt;
+        }
+
+        private boolean mightContain(long hash) {
+            long combined = hash;
+            long increment = mix(hash);
+            for (int i = 0; i < hashFunctions; i++) {
+                int bit = (int) ((combined & Long.MAX_VALUE) % bits);
+                if ((words.get(bit >>> 6) & (1L << bit)) == 0) {
+                    return false;
+                }
+                combined += increment;
+            }
+            return true;
+        }
+
+        private void put(long hash) {
+            long combined = hash;
+            long increment = mix(hash);
+            for (int i = 0; i < hashFunctions; i++) {
+                int bit = (int) ((combined & Long.MAX_VALUE) % bits);
+                int index = bit >>> 6;
+                long mask = 1L << bit;
+                long word;
+                do {
+                    word = words.get(index);
+                } while ((word & mask) == 0 && !words.compareAndSet(index, word, word | mask));
+                combined += increment;
+            }
+        }
+    }
+}
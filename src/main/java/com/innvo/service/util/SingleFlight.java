@@ -0,0 +1,68 @@
+package com.innvo.service.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Collapses the concurrent computations of a same key into one: the first caller of a key computes the value,
+ * and the callers which arrive while it is computed wait for it and get the same value, or the same exception.
+ * A caller arriving once the computation is over starts a new one, so that nothing is cached.
+ *
+ * <p>
+ * The keys must implement equals and hashCode. The map of the computations in flight is thread-safe and
+ * lock-free; only the waiting callers block.
+ * </p>
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Computes the value of the key, or waits for the computation in flight of the key.
+     *
+     * @param loader computes the value, in the calling thread, if no computation of the key is in flight
+     * @return the computed value
+     */
+    public V call(K key, Supplier<V> loader) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            V value = loader.get();
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    private static <V> V await(CompletableFuture<V> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of keys being computed
+     */
+    public int inFlight() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,241 @@
+package com.innvo.service.util;
+
+import java.util.Arrays;
+
+/**
+ * In-memory index from a timestamp (epoch millis) to an entity id, built on primitive arrays only.
+ *
+ * <p>
+ * New entries go to a small unsorted buffer. When the buffer is full it is sorted into an immutable run, and runs
+ * of the same size are merged, log-structured merge style, so that the index is made of a logarithmic number of
+ * sorted runs and a range lookup is one binary search per run. Each entry costs 16 bytes, without any object or
+ * boxing per entry.
+ * </p>
+ * <p>
+ * Entries are never removed: an entity whose timestamp changed stays indexed under its old timestamp too, so
+ * callers must check that the entities they load still match the requested range.
+ * </p>
+ */
+public class TimeIndex {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private static final long[] EMPTY = new long[0];
+
+    private final Object lock = new Object();
+
+    private final long[] bufferTimes;
+
+    private final long[] bufferIds;
+
+    private int buffered;
+
+    // Copy-on-write, oldest and biggest run first
+    private volatile Run[] runs = new Run[0];
+
+    public TimeIndex() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    public TimeIndex(int bufferSize) {
+        this.bufferTimes = new long[bufferSize];
+        this.bufferIds = new long[bufferSize];
+    }
+
+    public void add(long time, long id) {
+        synchronized (lock) {
+            bufferTimes[buffered] = time;
+            bufferIds[buffered] = id;
+            buffered++;
+            if (buffered == bufferTimes.length) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * @return the ids indexed with a timestamp between from and to, bounds included, in no particular order
+     */
+    public long[] findIds(long from, long to) {
+        if (from > to) {
+            return EMPTY;
+        }
+        Run[] snapshot = runs;
+        int[] lows = new int[snapshot.length];
+        int[] highs = new int[snapshot.length];
+        int count = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            lows[i] = snapshot[i].lowerBound(from);
+            highs[i] = snapshot[i].upperBound(to);
+            count += highs[i] - lows[i];
+        }
+        long[] buffer;
+        int bufferCount = 0;
+        synchronized (lock) {
+            buffer = new long[buffered];
+            for (int i = 0; i < buffered; i++) {
+                if (bufferTimes[i] >= from && bufferTimes[i] <= to) {
+                    buffer[bufferCount++] = bufferIds[i];
+                }
+            }
+        }
+        long[] ids = new long[count + bufferCount];
+        int position = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            int length = highs[i] - lows[i];
+            System.arraycopy(snapshot[i].ids, lows[i], ids, position, length);
+            position += length;
+        }
+        System.arraycopy(buffer, 0, ids, position, bufferCount);
+        return ids;
+    }
+
+    public long size() {
+        long size = 0;
+        for (Run run : runs) {
+            size += run.times.length;
+        }
+        synchronized (lock) {
+            return size + buffered;
+        }
+    }
+
+    public int runCount() {
+        return runs.length;
+    }
+
+    /**
+     * @return the bytes used by the indexed entries and the buffer, not counting array headers
+     */
+    public long memoryBytes() {
+        long bytes = bufferTimes.length * 16L;
+        for (Run run : runs) {
+            bytes += run.times.length * 16L;
+        }
+        return bytes;
+    }
+
+    private void flush() {
+        long[] times = Arrays.copyOf(bufferTimes, buffered);
+        long[] ids = Arrays.copyOf(bufferIds, buffered);
+        buffered = 0;
+        sort(times, ids);
+        Run run = new Run(times, ids);
+
+        Run[] current = runs;
+        int count = current.length;
+        while (count > 0 && current[count - 1].times.length <= run.times.length) {
+            run = merge(current[count - 1], run);
+            count--;
+        }
+        Run[] updated = Arrays.copyOf(current, count + 1);
+        updated[count] = run;
+        runs = updated;
+    }
+
+    private static Run merge(Run older, Run newer) {
+        int size = older.times.length + newer.times.length;
+        long[] times = new long[size];
+        long[] ids = new long[size];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < size; k++) {
+            if (j >= newer.times.length || (i < older.times.length && older.times[i] <= newer.times[j])) {
+                times[k] = older.times[i];
+                ids[k] = older.ids[i++];
+            } else {
+                times[k] = newer.times[j];
+                ids[k] = newer.ids[j++];
+            }
+        }
+        return new Run(times, ids);
+    }
+
+    /**
+     * Sorts both arrays by time, with a stable merge sort; already sorted input, the common case for
+     * events ingested as they happen, is detected in a single pass.
+     */
+    static void sort(long[] times, long[] ids) {
+        boolean sorted = true;
+        for (int i = 1; i < times.length && sorted; i++) {
+            sorted = times[i - 1] <= times[i];
+        }
+        if (!sorted) {
+            mergeSort(times.clone(), ids.clone(), times, ids, 0, times.length);
+        }
+    }
+
+    private static void mergeSort(long[] srcTimes, long[] srcIds, long[] destTimes, long[] destIds, int low, int high) {
+        if (high - low < INSERTION_SORT_THRESHOLD) {
+            for (int i = low + 1; i < high; i++) {
+                long time = destTimes[i];
+                long id = destIds[i];
+                int j = i - 1;
+                while (j >= low && destTimes[j] > time) {
+                    destTimes[j + 1] = destTimes[j];
+                    destIds[j + 1] = destIds[j];
+                    j--;
+                }
+                destTimes[j + 1] = time;
+                destIds[j + 1] = id;
+            }
+            return;
+        }
+        int mid = (low + high) >>> 1;
+        mergeSort(destTimes, destIds, srcTimes, srcIds, low, mid);
+        mergeSort(destTimes, destIds, srcTimes, srcIds, mid, high);
+        for (int i = low, p = low, q = mid; i < high; i++) {
+            if (q >= high || (p < mid && srcTimes[p] <= srcTimes[q])) {
+                destTimes[i] = srcTimes[p];
+                destIds[i] = srcIds[p++];
+            } else {
+                destTimes[i] = srcTimes[q];
+                destIds[i] = srcIds[q++];
+            }
+        }
+    }
+
+    private static final class Run {
+
+        private final long[] times;
+
+        private final long[] ids;
+
+        private Run(long[] times, long[] ids) {
+            this.times = times;
+            this.ids = ids;
+        }
+
+        // First index whose time is >= time
+        private int lowerBound(long time) {
+            int low = 0;
+            int high = times.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (times[mid] < time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        // First index whose time is > time
+        private int upperBound(long time) {
+            int low = 0;
+            int high = times.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (times[mid] <= time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
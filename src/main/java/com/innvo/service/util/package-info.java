@@ -0,0 +1,4 @@
+/**
+ * Data structures used by the service layer.
+ */
+package com.innvo.service.util;
@@ -0,0 +1,189 @@
+package com.innvo.web.filter;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.innvo.config.ApplicationProperties;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This filter limits the number of concurrent API requests, answering 503 (Service Unavailable) right away to
+ * those over the limit, so that the accepted requests keep their latency instead of all queuing for the
+ * database connections.
+ *
+ * <p>
+ * Reads (GET and HEAD) and writes have separate limits, which adapt to the observed latency: a limit grows
+ * while the latency of the recent requests stays within 1.5 times its long-term average, shrinks in proportion
+ * when it rises above, and is cut by 10% for every server error. Asynchronous requests, such as the live stream,
+ * hold their slot until the request thread returns only, and are not sampled.
+ * </p>
+ */
+public class ConcurrencyLimitingFilter implements Filter {
+
+    private final AdaptiveLimit readLimit;
+
+    private final AdaptiveLimit writeLimit;
+
+    private final Meter readRejected;
+
+    private final Meter writeRejected;
+
+    public ConcurrencyLimitingFilter(ApplicationProperties.ConcurrencyLimit properties, MetricRegistry metricRegistry) {
+        this.readLimit = new AdaptiveLimit(properties.getRead());
+        this.writeLimit = new AdaptiveLimit(properties.getWrite());
+        this.readRejected = register(metricRegistry, "read", readLimit);
+        this.writeRejected = register(metricRegistry, "write", writeLimit);
+    }
+
+    private static Meter register(MetricRegistry metricRegistry, String name, AdaptiveLimit limit) {
+        metricRegistry.register(MetricRegistry.name(ConcurrencyLimitingFilter.class, name, "limit"),
+            (Gauge<Integer>) () -> limit.limit);
+        metricRegistry.register(MetricRegistry.name(ConcurrencyLimitingFilter.class, name, "inflight"),
+            (Gauge<Integer>) limit.inflight::get);
+        return metricRegistry.meter(MetricRegistry.name(ConcurrencyLimitingFilter.class, name, "rejected"));
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        // Nothing to initialize
+    }
+
+    @Override
+    public void destroy() {
+        // Nothing to destroy
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+        throws IOException, ServletException {
+
+        String method = ((HttpServletRequest) request).getMethod();
+        boolean read = "GET".equals(method) || "HEAD".equals(method);
+        AdaptiveLimit limit = read ? readLimit : writeLimit;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+
+        int inflight = limit.tryAcquire();
+        if (inflight == 0) {
+            (read ? readRejected : writeRejected).mark();
+            httpResponse.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            httpResponse.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            return;
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            chain.doFilter(request, response);
+            failed = isServerError(httpResponse.getStatus());
+        } finally {
+            if (request.isAsyncStarted()) {
+                limit.release();
+            } else {
+                limit.release(System.nanoTime() - start, inflight, failed);
+            }
+        }
+    }
+
+    /**
+     * 503 is left out, as it is what this filter and the disabled features answer.
+     */
+    private static boolean isServerError(int status) {
+        return status >= 500 && status != HttpStatus.SERVICE_UNAVAILABLE.value()
+            && status != HttpStatus.NOT_IMPLEMENTED.value();
+    }
+
+    /**
+     * A concurrency limit following the gradient of the request latency, with a multiplicative decrease on errors.
+     */
+    static final class AdaptiveLimit {
+
+        // Exponential moving averages over about 10 and 600 samples
+        private static final double SHORT_SMOOTHING = 2.0 / 11;
+
+        private static final double LONG_SMOOTHING = 2.0 / 601;
+
+        private static final double TOLERANCE = 1.5;
+
+        private static final double SMOOTHING = 0.2;
+
+        private static final double BACKOFF_RATIO = 0.9;
+
+        private final int minLimit;
+
+        private final int maxLimit;
+
+        private final AtomicInteger inflight = new AtomicInteger();
+
+        private volatile int limit;
+
+        private double estimatedLimit;
+
+        private double shortRtt;
+
+        private double longRtt;
+
+        AdaptiveLimit(ApplicationProperties.ConcurrencyLimit.Limit properties) {
+            this.minLimit = properties.getMinLimit();
+            this.maxLimit = properties.getMaxLimit();
+            this.estimatedLimit = properties.getInitialLimit();
+            this.limit = properties.getInitialLimit();
+        }
+
+        /**
+         * @return the number of requests in flight including this one, or 0 if it is over the limit
+         */
+        int tryAcquire() {
+            int current = inflight.incrementAndGet();
+            if (current > limit) {
+                inflight.decrementAndGet();
+                return 0;
+            }
+            return current;
+        }
+
+        void release() {
+            inflight.decrementAndGet();
+        }
+
+        void release(long rttNanos, int inflightAtStart, boolean failed) {
+            inflight.decrementAndGet();
+            update(rttNanos, inflightAtStart, failed);
+        }
+
+        private synchronized void update(long rttNanos, int inflightAtStart, boolean failed) {
+            if (failed) {
+                setEstimatedLimit(estimatedLimit * BACKOFF_RATIO);
+                return;
+            }
+            if (longRtt == 0) {
+                shortRtt = rttNanos;
+                longRtt = rttNanos;
+                return;
+            }
+            shortRtt += (rttNanos - shortRtt) * SHORT_SMOOTHING;
+            longRtt += (rttNanos - longRtt) * LONG_SMOOTHING;
+            // After an overload the long average lags far behind, pull it down so that the limit may grow again
+            if (longRtt > 2 * shortRtt) {
+                longRtt *= 0.95;
+            }
+            // A limit which is not used tells nothing about the latency it would cause
+            if (inflightAtStart < estimatedLimit / 2) {
+                return;
+            }
+            double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / shortRtt));
+            double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+            setEstimatedLimit(estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING);
+        }
+
+        private void setEstimatedLimit(double estimatedLimit) {
+            this.estimatedLimit = Math.max(minLimit, Math.min(maxLimit, estimatedLimit));
+            this.limit = (int) this.estimatedLimit;
+        }
+    }
+}
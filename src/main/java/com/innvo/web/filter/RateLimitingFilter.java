@@ -0,0 +1,73 @@
+package com.innvo.web.filter;
+
+import com.innvo.service.RateLimiter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * This filter limits the rate of the ingest and search requests of each authenticated subject, answering 429
+ * (Too Many Requests) with a Retry-After header past the limit. It must run after the JWT filter.
+ * <p>
+ * Each request costs one token; the bulk endpoints charge their events on top of it, see
+ * {@link RateLimiter#charge(String, RateLimiter.EndpointClass, int)}.
+ */
+public class RateLimitingFilter implements Filter {
+
+    private final RateLimiter rateLimiter;
+
+    public RateLimitingFilter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        // Nothing to initialize
+    }
+
+    @Override
+    public void destroy() {
+        // Nothing to destroy
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+        throws IOException, ServletException {
+
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        RateLimiter.EndpointClass endpointClass = classify(httpRequest);
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (endpointClass != null && authentication != null && authentication.isAuthenticated()) {
+            long retryAfter = rateLimiter.tryAcquire(authentication.getName(), endpointClass);
+            if (retryAfter > 0) {
+                HttpServletResponse httpResponse = (HttpServletResponse) response;
+                httpResponse.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+                httpResponse.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter));
+                return;
+            }
+        }
+        chain.doFilter(request, response);
+    }
+
+    /**
+     * @return the class of the endpoint, or null if its requests are not limited
+     */
+    private static RateLimiter.EndpointClass classify(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (path.startsWith("/api/_search/")) {
+            return RateLimiter.EndpointClass.SEARCH;
+        }
+        String method = request.getMethod();
+        if (("POST".equals(method) || "PUT".equals(method) || "PATCH".equals(method))
+            && (path.startsWith("/api/events") || path.startsWith("/api/alerts"))) {
+            return RateLimiter.EndpointClass.INGEST;
+        }
+        return null;
+    }
+}
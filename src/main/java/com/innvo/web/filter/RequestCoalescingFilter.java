@@ -0,0 +1,213 @@
+package com.innvo.web.filter;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.innvo.config.ApplicationProperties;
+import com.innvo.security.SecurityUtils;
+import com.innvo.service.util.SingleFlight;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.PathMatcher;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * This filter collapses the identical GET requests which arrive while the first of them is being answered:
+ * the first request runs, its response is buffered, and the others are answered with a copy of its status,
+ * headers and bytes instead of running the same queries again.
+ *
+ * <p>
+ * Requests are identical when they come from the same user, with the same path, the same query parameters in any
+ * order, and the same Accept and conditional headers: a user is never answered with the response of another,
+ * whose authorities may differ. Only the configured paths are coalesced, and this filter must run after the
+ * authorization of the request, which sets the user. A request which fails with a server error is not shared:
+ * the waiting requests then run on their own.
+ * </p>
+ */
+public class RequestCoalescingFilter implements Filter {
+
+    private static final Set<String> NOT_REPLAYED_HEADERS = new HashSet<>(Arrays.asList(
+        HttpHeaders.CONTENT_LENGTH.toLowerCase(Locale.ROOT), HttpHeaders.SET_COOKIE.toLowerCase(Locale.ROOT)));
+
+    private final PathMatcher pathMatcher = new AntPathMatcher();
+
+    private final List<String> paths;
+
+    private final SingleFlight<String, CapturedResponse> flights = new SingleFlight<>();
+
+    private final Meter requests;
+
+    private final Meter coalesced;
+
+    public RequestCoalescingFilter(ApplicationProperties.RequestCoalescing properties, MetricRegistry metricRegistry) {
+        this.paths = properties.getPaths();
+        this.requests = metricRegistry.meter(MetricRegistry.name(RequestCoalescingFilter.class, "requests"));
+        this.coalesced = metricRegistry.meter(MetricRegistry.name(RequestCoalescingFilter.class, "coalesced"));
+        metricRegistry.register(MetricRegistry.name(RequestCoalescingFilter.class, "inflight"),
+            (Gauge<Integer>) flights::inFlight);
+        metricRegistry.register(MetricRegistry.name(RequestCoalescingFilter.class, "coalesced-ratio"), new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(coalesced.getFiveMinuteRate(), requests.getFiveMinuteRate());
+            }
+        });
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        // Nothing to initialize
+    }
+
+    @Override
+    public void destroy() {
+        // Nothing to destroy
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+        throws IOException, ServletException {
+
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        if (!"GET".equals(httpRequest.getMethod()) || !isCoalesced(path(httpRequest))) {
+            chain.doFilter(request, response);
+            return;
+        }
+        requests.mark();
+        boolean[] leader = new boolean[1];
+        CapturedResponse captured;
+        try {
+            captured = flights.call(key(httpRequest), () -> {
+                leader[0] = true;
+                return run(httpRequest, httpResponse, chain);
+            });
+        } catch (RuntimeException e) {
+            if (!leader[0]) {
+                captured = null;
+            } else if (e instanceof ChainException) {
+                throw ((ChainException) e).unwrap();
+            } else {
+                throw e;
+            }
+        }
+        if (leader[0]) {
+            return;
+        }
+        if (captured == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        coalesced.mark();
+        captured.replay(httpResponse);
+    }
+
+    private boolean isCoalesced(String path) {
+        for (String pattern : paths) {
+            if (pathMatcher.match(pattern, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    /**
+     * The user, the path, the query parameters sorted by name, and the headers which change the response.
+     */
+    private static String key(HttpServletRequest request) {
+        StringBuilder key = new StringBuilder().append(SecurityUtils.getCurrentUserLogin())
+            .append('\n').append(path(request)).append('?');
+        new TreeMap<>(request.getParameterMap()).forEach((name, values) -> {
+            for (String value : values) {
+                key.append(name).append('=').append(value).append('&');
+            }
+        });
+        return key.append('\n').append(request.getHeader(HttpHeaders.ACCEPT))
+            .append('\n').append(request.getHeader(HttpHeaders.IF_NONE_MATCH))
+            .append('\n').append(request.getHeader(HttpHeaders.IF_MODIFIED_SINCE))
+            .toString();
+    }
+
+    /**
+     * Runs the request, then sends its buffered response.
+     *
+     * @return the response to share, or null if it is a server error
+     */
+    private static CapturedResponse run(HttpServletRequest request, HttpServletResponse response, FilterChain chain) {
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        try {
+            chain.doFilter(request, wrapper);
+            CapturedResponse captured = wrapper.getStatus() < 500 && !request.isAsyncStarted()
+                ? new CapturedResponse(wrapper)
+                : null;
+            wrapper.copyBodyToResponse();
+            return captured;
+        } catch (IOException | ServletException e) {
+            throw new ChainException(e);
+        }
+    }
+
+    private static final class CapturedResponse {
+
+        private final int status;
+
+        private final String contentType;
+
+        private final Map<String, Collection<String>> headers = new LinkedHashMap<>();
+
+        private final byte[] body;
+
+        private CapturedResponse(ContentCachingResponseWrapper response) {
+            this.status = response.getStatus();
+            this.contentType = response.getContentType();
+            for (String name : response.getHeaderNames()) {
+                Collection<String> values = response.getHeaders(name);
+                if (!values.isEmpty() && !NOT_REPLAYED_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                    headers.put(name, new ArrayList<>(values));
+                }
+            }
+            this.body = response.getContentAsByteArray();
+        }
+
+        private void replay(HttpServletResponse response) throws IOException {
+            response.setStatus(status);
+            headers.forEach((name, values) -> {
+                Iterator<String> iterator = values.iterator();
+                response.setHeader(name, iterator.next());
+                iterator.forEachRemaining(value -> response.addHeader(name, value));
+            });
+            if (contentType != null) {
+                response.setContentType(contentType);
+            }
+            response.setContentLength(body.length);
+            response.getOutputStream().write(body);
+        }
+    }
+
+    /**
+     * Carries the checked exceptions of the first request out of the single flight.
+     */
+    private static final class ChainException extends RuntimeException {
+
+        private ChainException(Exception cause) {
+            super(cause);
+        }
+
+        private ServletException unwrap() throws IOException {
+            if (getCause() instanceof IOException) {
+                throw (IOException) getCause();
+            }
+            return (ServletException) getCause();
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.innvo.web.filter;
+
+import com.innvo.service.ModificationWatermarkService;
+import com.innvo.service.ResponseCache;
+import com.innvo.web.rest.converter.SmileHttpMessageConverter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.PathMatcher;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * This filter answers the GET requests of the events, the alerts and their pages from the {@link ResponseCache},
+ * with the gzipped bytes when the client accepts them, and caches the JSON responses of status 200 it lets through.
+ *
+ * <p>
+ * Only the requests which accept JSON and do not ask for Smile are cached, as the entities may also be answered
+ * in Smile. The responses of the cached paths vary on Accept-Encoding, whether they were cached or not. A request with the ETag of the cached response in its If-None-Match header is answered 304 (Not
+ * Modified); a request with If-Modified-Since only goes through. This filter must run after the authorization of
+ * the request.
+ * </p>
+ */
+public class ResponseCachingFilter implements Filter {
+
+    private static final String ENCODING_GZIP = "gzip";
+
+    private static final Set<String> NOT_CACHED_HEADERS = new HashSet<>(Arrays.asList(
+        HttpHeaders.CONTENT_LENGTH.toLowerCase(Locale.ROOT), HttpHeaders.CONTENT_TYPE.toLowerCase(Locale.ROOT),
+        HttpHeaders.SET_COOKIE.toLowerCase(Locale.ROOT)));
+
+    private static final Map<String, String> ENTITY_PATHS = new LinkedHashMap<>();
+
+    private static final Map<String, String> PAGE_PATHS = new LinkedHashMap<>();
+
+    static {
+        ENTITY_PATHS.put("/api/events/{id:[0-9]+}", ModificationWatermarkService.EVENT);
+        ENTITY_PATHS.put("/api/alerts/{id:[0-9]+}", ModificationWatermarkService.ALERT);
+        PAGE_PATHS.put("/api/events", ModificationWatermarkService.EVENT);
+        PAGE_PATHS.put("/api/alerts", ModificationWatermarkService.ALERT);
+    }
+
+    private final PathMatcher pathMatcher = new AntPathMatcher();
+
+    private final ResponseCache responseCache;
+
+    private final int maxBytes;
+
+    public ResponseCachingFilter(ResponseCache responseCache, int maxBytes) {
+        this.responseCache = responseCache;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        // Nothing to initialize
+    }
+
+    @Override
+    public void destroy() {
+        // Nothing to destroy
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+        throws IOException, ServletException {
+
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        String path = httpRequest.getRequestURI().substring(httpRequest.getContextPath().length());
+        String entityName = isCacheable(httpRequest) ? entityNameOf(path, httpRequest.getQueryString()) : null;
+        if (entityName == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        long watermark = responseCache.watermark(entityName);
+        String key = key(httpRequest, path, entityName, watermark);
+        ResponseCache.CachedResponse cached = responseCache.get(key);
+        if (cached != null) {
+            send(cached, httpRequest, httpResponse);
+            return;
+        }
+        // The response is cached, and may then be answered gzipped
+        varyOnEncoding(httpResponse);
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(httpResponse);
+        chain.doFilter(request, wrapper);
+        if (wrapper.getStatus() == HttpServletResponse.SC_OK && !request.isAsyncStarted()
+            && isJson(wrapper.getContentType()) && wrapper.getContentSize() <= maxBytes) {
+            responseCache.put(key, watermark, capture(wrapper));
+        }
+        wrapper.copyBodyToResponse();
+    }
+
+    private static boolean isCacheable(HttpServletRequest request) {
+        if (!"GET".equals(request.getMethod())
+            || (request.getHeader(HttpHeaders.IF_MODIFIED_SINCE) != null && request.getHeader(HttpHeaders.IF_NONE_MATCH) == null)) {
+            return false;
+        }
+        Enumeration<String> accepts = request.getHeaders(HttpHeaders.ACCEPT);
+        if (!accepts.hasMoreElements()) {
+            return true;
+        }
+        boolean json = false;
+        while (accepts.hasMoreElements()) {
+            for (MediaType mediaType : MediaType.parseMediaTypes(accepts.nextElement())) {
+                if (SmileHttpMessageConverter.APPLICATION_SMILE.includes(mediaType)) {
+                    return false;
+                }
+                json |= MediaType.APPLICATION_JSON.isCompatibleWith(mediaType) && mediaType.getQualityValue() > 0;
+            }
+        }
+        return json;
+    }
+
+    /**
+     * @return the entity type of the responses of the path, or null if the path is not cached
+     */
+    private String entityNameOf(String path, String queryString) {
+        for (Map.Entry<String, String> entry : ENTITY_PATHS.entrySet()) {
+            if (pathMatcher.match(entry.getKey(), path)) {
+                return queryString == null ? entry.getValue() : null;
+            }
+        }
+        return PAGE_PATHS.get(path);
+    }
+
+    /**
+     * @return the key of the response in the cache
+     */
+    private String key(HttpServletRequest request, String path, String entityName, long watermark) {
+        for (String pattern : ENTITY_PATHS.keySet()) {
+            if (pathMatcher.match(pattern, path)) {
+                Long id = Long.valueOf(pathMatcher.extractUriTemplateVariables(pattern, path).get("id"));
+                return responseCache.entityKey(entityName, watermark, id);
+            }
+        }
+        StringBuilder page = new StringBuilder(path).append('?');
+        new TreeMap<>(request.getParameterMap()).forEach((name, values) -> {
+            for (String value : values) {
+                page.append(name).append('=').append(value).append('&');
+            }
+        });
+        return responseCache.pageKey(entityName, watermark, page.toString());
+    }
+
+    private static boolean isJson(String contentType) {
+        return contentType != null && MediaType.APPLICATION_JSON.isCompatibleWith(MediaType.parseMediaType(contentType));
+    }
+
+    private static ResponseCache.CachedResponse capture(ContentCachingResponseWrapper response) {
+        Map<String, Collection<String>> headers = new LinkedHashMap<>();
+        for (String name : response.getHeaderNames()) {
+            Collection<String> values = response.getHeaders(name);
+            if (!values.isEmpty() && !NOT_CACHED_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                headers.put(name, values);
+            }
+        }
+        return new ResponseCache.CachedResponse(response.getContentType(), headers, response.getContentAsByteArray());
+    }
+
+    private static void send(ResponseCache.CachedResponse cached, HttpServletRequest request,
+                             HttpServletResponse response) throws IOException {
+        cached.getHeaders().forEach((name, values) -> {
+            response.setHeader(name, values.get(0));
+            values.stream().skip(1).forEach(value -> response.addHeader(name, value));
+        });
+        varyOnEncoding(response);
+        List<String> eTags = cached.getHeaders().get(HttpHeaders.ETAG);
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && eTags != null && ifNoneMatch.equals(eTags.get(0))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(cached.getContentType());
+        byte[] body = cached.getBody();
+        if (acceptsGzip(request)) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, ENCODING_GZIP);
+            body = cached.getGzippedBody();
+        }
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    private static void varyOnEncoding(HttpServletResponse response) {
+        for (String vary : response.getHeaders(HttpHeaders.VARY)) {
+            if (vary.toLowerCase(Locale.ROOT).contains(HttpHeaders.ACCEPT_ENCODING.toLowerCase(Locale.ROOT))) {
+                return;
+            }
+        }
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    }
+
+    /**
+     * @return whether the Accept-Encoding headers of the request give gzip, or else the wildcard, a non-zero quality
+     */
+    private static boolean acceptsGzip(HttpServletRequest request) {
+        Boolean wildcard = null;
+        Enumeration<String> headers = request.getHeaders(HttpHeaders.ACCEPT_ENCODING);
+        while (headers != null && headers.hasMoreElements()) {
+            for (String coding : headers.nextElement().split(",")) {
+                String[] parameters = coding.split(";");
+                String name = parameters[0].trim().toLowerCase(Locale.ROOT);
+                boolean accepted = quality(parameters) > 0;
+                if (ENCODING_GZIP.equals(name)) {
+                    return accepted;
+                }
+                if ("*".equals(name)) {
+                    wildcard = accepted;
+                }
+            }
+        }
+        return wildcard != null && wildcard;
+    }
+
+    private static double quality(String[] parameters) {
+        for (int i = 1; i < parameters.length; i++) {
+            String parameter = parameters[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,43 @@
+package com.innvo.web.filter;
+
+import com.innvo.config.jdbc.StatementRecorder;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+
+/**
+ * This filter counts the statements run by each request, so that those repeating a statement are reported as
+ * likely N+1 selects.
+ */
+public class StatementCountingFilter implements Filter {
+
+    private final StatementRecorder statementRecorder;
+
+    public StatementCountingFilter(StatementRecorder statementRecorder) {
+        this.statementRecorder = statementRecorder;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        // Nothing to initialize
+    }
+
+    @Override
+    public void destroy() {
+        // Nothing to destroy
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+        throws IOException, ServletException {
+
+        statementRecorder.beginRequest();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            HttpServletRequest httpRequest = (HttpServletRequest) request;
+            statementRecorder.endRequest(httpRequest.getMethod() + " " + httpRequest.getRequestURI());
+        }
+    }
+}
@@ -1,16 +1,31 @@
 package com.innvo.web.rest;
 
 import com.codahale.metrics.annotation.Timed;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.innvo.domain.Alert;
 import com.innvo.repository.AlertRepository;
-import com.innvo.repository.search.AlertSearchRepository;
+import com.innvo.security.AuthoritiesConstants;
+import com.innvo.service.AlertService;
+import com.innvo.service.LiveStreamService;
+import com.innvo.service.ModificationWatermarkService;
+import com.innvo.service.SearchResultCache;
+import com.innvo.service.ShardService;
+import com.innvo.web.rest.converter.SmileHttpMessageConverter;
+import com.innvo.web.rest.dto.AlertStatusTransitionDTO;
+import com.innvo.web.rest.errors.CustomParameterizedException;
+import com.innvo.web.rest.errors.PreconditionFailedException;
+import com.innvo.web.rest.util.ETagUtil;
 import com.innvo.web.rest.util.HeaderUtil;
+import com.innvo.web.rest.util.MergePatchUtil;
 import com.innvo.web.rest.util.PaginationUtil;
 
 
+import org.elasticsearch.index.query.QueryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpHeaders;
@@ -18,19 +33,23 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.jms.core.JmsMessagingTemplate;
+import org.springframework.security.access.annotation.Secured;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import javax.inject.Inject;
-import javax.jms.JMSException;
 import javax.jms.Topic;
-import javax.naming.*;
 import javax.validation.Valid;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
+import static org.elasticsearch.index.query.FilterBuilders.termFilter;
 import static org.elasticsearch.index.query.QueryBuilders.*;
 
 /**
@@ -54,7 +73,22 @@ public class AlertResource {
     private AlertRepository alertRepository;
     
     @Inject
-    private AlertSearchRepository alertSearchRepository;
+    private ShardService shardService;
+
+    @Inject
+    private LiveStreamService liveStreamService;
+
+    @Inject
+    private ModificationWatermarkService modificationWatermarkService;
+
+    @Inject
+    private SearchResultCache searchResultCache;
+
+    @Inject
+    private AlertService alertService;
+
+    @Inject
+    private ObjectMapper objectMapper;
     
     /**
      * POST  /alerts : Create a new alert.
@@ -65,15 +99,18 @@ public class AlertResource {
      */
     @RequestMapping(value = "/alerts",
         method = RequestMethod.POST,
-        produces = MediaType.APPLICATION_JSON_VALUE)
+        produces = {MediaType.APPLICATION_JSON_VALUE, SmileHttpMessageConverter.APPLICATION_SMILE_VALUE})
     @Timed
     public ResponseEntity<Alert> createAlert(@Valid @RequestBody Alert alert) throws URISyntaxException {
         log.debug("REST request to save Alert : {}", alert);
         if (alert.getId() != null) {
             return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("alert", "idexists", "A new alert cannot already have an ID")).body(null);
         }
-        Alert result = alertRepository.save(alert);
-        alertSearchRepository.save(result);
+        String shard = shardService.writableShardOf(alert.getDomain());
+        Alert result = shardService.inShard(shard, () -> alertService.save(alert));
+        shardService.indexAlert(shard, result);
+        liveStreamService.publish(result);
+        modificationWatermarkService.touch(ModificationWatermarkService.ALERT);
         return ResponseEntity.created(new URI("/api/alerts/" + result.getId()))
             .headers(HeaderUtil.createEntityCreationAlert("alert", result.getId().toString()))
             .body(result);
@@ -81,44 +118,195 @@ public class AlertResource {
 
     /**
      * PUT  /alerts : Updates an existing alert.
+     * <p>
+     * The update is rejected when the version of the alert, or else the ETag of the If-Match header, is not the
+     * current one. One of them is required, so that an update cannot overwrite a change it has not seen.
      *
      * @param alert the alert to update
+     * @param ifMatch the expected ETag of the alert, required if it has no version
      * @return the ResponseEntity with status 200 (OK) and with body the updated alert,
-     * or with status 400 (Bad Request) if the alert is not valid,
-     * or with status 500 (Internal Server Error) if the alert couldnt be updated
+     * or with status 400 (Bad Request) if the alert is not valid, or its new domain is in another shard,
+     * or with status 404 (Not Found) if the alert does not exist,
+     * or with status 409 (Conflict) if the alert has been updated meanwhile,
+     * or with status 412 (Precondition Failed) if the ETag does not match,
+     * or with status 428 (Precondition Required) if the alert has no version and there is no If-Match header,
+     * or with status 500 (Internal Server Error) if the alert couldnt be updated,
+     * or with status 503 (Service Unavailable) if its domain is being moved to another shard
      * @throws URISyntaxException if the Location URI syntax is incorrect
      */
     @RequestMapping(value = "/alerts",
         method = RequestMethod.PUT,
-        produces = MediaType.APPLICATION_JSON_VALUE)
+        produces = {MediaType.APPLICATION_JSON_VALUE, SmileHttpMessageConverter.APPLICATION_SMILE_VALUE})
     @Timed
-    public ResponseEntity<Alert> updateAlert(@Valid @RequestBody Alert alert) throws URISyntaxException {
+    public ResponseEntity<Alert> updateAlert(@Valid @RequestBody Alert alert,
+                                             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) throws URISyntaxException {
         log.debug("REST request to update Alert : {}", alert);
         if (alert.getId() == null) {
             return createAlert(alert);
         }
-        Alert result = alertRepository.save(alert);
-        alertSearchRepository.save(result);
+        String shard = shardService.writableShardOfId(alert.getId(), alertRepository::findDomainById);
+        if (!shard.equals(shardService.writableShardOf(alert.getDomain()))) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("alert", "domainshard", "An alert cannot be moved to a domain of another shard")).body(null);
+        }
+        if (alert.getVersion() == null) {
+            if (ifMatch == null) {
+                return ResponseEntity.status(HttpStatus.PRECONDITION_REQUIRED)
+                    .headers(HeaderUtil.createFailureAlert("alert", "versionrequired", "An update needs the version of the alert, or an If-Match header")).body(null);
+            }
+            Long version = shardService.inShard(shard, () -> alertRepository.findVersionById(alert.getId()));
+            if (version == null) {
+                return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            }
+            alert.setVersion(version);
+        }
+        if (ifMatch != null && !ifMatch.equals(ETagUtil.entityTag("alert", alert.getId(), alert.getVersion()))) {
+            return new ResponseEntity<>(HttpStatus.PRECONDITION_FAILED);
+        }
+        Alert result = shardService.inShard(shard, () -> alertService.save(alert));
+        return updatedAlert(shard, result);
+    }
+
+    /**
+     * PATCH  /alerts/:id : Partially updates an existing alert with a JSON Merge Patch.
+     * <p>
+     * The alert is loaded, patched and written in one transaction, in which only the changed columns are updated.
+     * The patch is rejected if it holds a version, or if the If-Match header holds an ETag, which is not the
+     * current one.
+     *
+     * @param id the id of the alert to update
+     * @param patch the JSON Merge Patch
+     * @param ifMatch the expected ETag of the alert, if any
+     * @return the ResponseEntity with status 200 (OK) and with body the updated alert,
+     * or with status 400 (Bad Request) if the patch or the patched alert is not valid, or its new domain is in another shard,
+     * or with status 404 (Not Found) if the alert does not exist,
+     * or with status 409 (Conflict) if the alert has been updated meanwhile,
+     * or with status 412 (Precondition Failed) if the ETag does not match,
+     * or with status 503 (Service Unavailable) if its domain is being moved to another shard
+     * @throws IOException if the patch cannot be applied to an alert
+     */
+    @RequestMapping(value = "/alerts/{id}",
+        method = RequestMethod.PATCH,
+        consumes = {MergePatchUtil.APPLICATION_MERGE_PATCH_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE},
+        produces = {MediaType.APPLICATION_JSON_VALUE, SmileHttpMessageConverter.APPLICATION_SMILE_VALUE})
+    @Timed
+    public ResponseEntity<Alert> patchAlert(@PathVariable Long id, @RequestBody JsonNode patch,
+                                            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) throws IOException {
+        log.debug("REST request to patch Alert {} : {}", id, patch);
+        if (!MergePatchUtil.isValid(patch, id)) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("alert", "idinvalid", "A patch cannot change the ID")).body(null);
+        }
+        String shard = shardService.writableShardOfId(id, alertRepository::findDomainById);
+        Alert result;
+        try {
+            result = shardService.inShard(shard, () -> alertService.patch(id, alert -> apply(shard, alert, patch, ifMatch)));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (result == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        return updatedAlert(shard, result);
+    }
+
+    /**
+     * Applies a patch to an alert loaded in the current transaction, throwing to roll it back if it cannot be applied.
+     */
+    private void apply(String shard, Alert alert, JsonNode patch, String ifMatch) {
+        if (ifMatch != null && !ifMatch.equals(ETagUtil.entityTag("alert", alert.getId(), alert.getVersion()))) {
+            throw new PreconditionFailedException("The alert has been updated meanwhile");
+        }
+        // The version of a loaded entity is not checked against the one set by the patch
+        if (patch.has("version") && !(patch.get("version").canConvertToLong() && patch.get("version").asLong() == alert.getVersion())) {
+            throw new OptimisticLockingFailureException("The alert has been updated meanwhile");
+        }
+        try {
+            if (!MergePatchUtil.apply(objectMapper, alert, patch).isEmpty()) {
+                throw new CustomParameterizedException("The patched alert is not valid");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (!shard.equals(shardService.writableShardOf(alert.getDomain()))) {
+            throw new CustomParameterizedException("An alert cannot be moved to a domain of another shard");
+        }
+    }
+
+    private ResponseEntity<Alert> updatedAlert(String shard, Alert result) {
+        shardService.indexAlert(shard, result);
+        modificationWatermarkService.touch(ModificationWatermarkService.ALERT);
         return ResponseEntity.ok()
-            .headers(HeaderUtil.createEntityUpdateAlert("alert", alert.getId().toString()))
+            .headers(HeaderUtil.createEntityUpdateAlert("alert", result.getId().toString()))
             .body(result);
     }
 
+    /**
+     * POST  /alerts/status-transitions : Changes the status of all the alerts matching the given criteria,
+     * with one UPDATE statement in the shard of the domain, or in each shard without a domain. As it changes
+     * any number of alerts, it is reserved to the administrators, and needs at least one criterion.
+     *
+     * @param transition the criteria of the alerts to change, and their new status
+     * @return the ResponseEntity with status 200 (OK) and with body the transition with the number of changed alerts,
+     * or with status 400 (Bad Request) if the transition is not valid or has no criteria,
+     * or with status 403 (Forbidden) for other users,
+     * or with status 503 (Service Unavailable) if a domain to change is being moved to another shard
+     */
+    @RequestMapping(value = "/alerts/status-transitions",
+        method = RequestMethod.POST,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    @Secured(AuthoritiesConstants.ADMIN)
+    public ResponseEntity<AlertStatusTransitionDTO> transitionAlertStatus(@Valid @RequestBody AlertStatusTransitionDTO transition) {
+        log.debug("REST request to change the status of Alerts : {}", transition);
+        if (transition.getStatus() == null && transition.getCategory() == null && transition.getDomain() == null) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("alert", "nocriteria", "A status transition needs a status, a category or a domain")).body(null);
+        }
+        List<String> shards = transition.getDomain() != null
+            ? Collections.singletonList(shardService.writableShardOf(transition.getDomain()))
+            : shardService.getWritableShards();
+        int updated = 0;
+        for (String shard : shards) {
+            updated += shardService.inShard(shard, () -> alertService.transitionStatus(
+                transition.getStatus(), transition.getCategory(), transition.getDomain(), transition.getNewStatus()));
+        }
+        transition.setUpdated(updated);
+        modificationWatermarkService.touch(ModificationWatermarkService.ALERT);
+        return ResponseEntity.ok()
+            .headers(HeaderUtil.createAlert("adapEventApp.alert.statusChanged", String.valueOf(transition.getUpdated())))
+            .body(transition);
+    }
+
     /**
      * GET  /alerts : get all the alerts.
+     * <p>
+     * Pages are validated with the modification watermark of the alerts, so that a client which already has
+     * a page gets a 304 without any database query while no alert has changed. Pages are read from the replicas,
+     * and sent without validators while the last change may not have reached them. With a domain, only the shard
+     * of the domain is queried; without, the pages go through the shards one after the other.
      *
+     * @param domain the domain of the alerts, if any
      * @param pageable the pagination information
-     * @return the ResponseEntity with status 200 (OK) and the list of alerts in body
+     * @param webRequest the request, to check its If-None-Match and If-Modified-Since headers
+     * @return the ResponseEntity with status 200 (OK) and the list of alerts in body, or with status 304 (Not Modified)
      * @throws URISyntaxException if there is an error to generate the pagination HTTP headers
      */
     @RequestMapping(value = "/alerts",
         method = RequestMethod.GET,
         produces = MediaType.APPLICATION_JSON_VALUE)
     @Timed
-    public ResponseEntity<List<Alert>> getAllAlerts(Pageable pageable)
+    public ResponseEntity<List<Alert>> getAllAlerts(@RequestParam(required = false) String domain, Pageable pageable,
+                                                    WebRequest webRequest)
         throws URISyntaxException {
         log.debug("REST request to get a page of Alerts");
-        Page<Alert> page = alertRepository.findAll(pageable); 
+        // Read before the query: a change made meanwhile makes the next request fetch the page again
+        long watermark = modificationWatermarkService.get(ModificationWatermarkService.ALERT);
+        // Until the replicas have the last change, the page read from them may be older than the watermark
+        if (modificationWatermarkService.isSettled(watermark)
+            && webRequest.checkNotModified(ETagUtil.listTag("alert", watermark), watermark)) {
+            return null;
+        }
+        Page<Alert> page = domain != null
+            ? shardService.readInShard(shardService.shardOf(domain), () -> alertRepository.findByDomain(domain, pageable))
+            : shardService.readAcrossShards(pageable, alertRepository::findAll);
         HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(page, "/api/alerts");
         return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
     }
@@ -127,15 +315,21 @@ public class AlertResource {
      * GET  /alerts/:id : get the "id" alert.
      *
      * @param id the id of the alert to retrieve
-     * @return the ResponseEntity with status 200 (OK) and with body the alert, or with status 404 (Not Found)
+     * @param webRequest the request, to check its If-None-Match header
+     * @return the ResponseEntity with status 200 (OK) and with body the alert, or with status 304 (Not Modified),
+     * or with status 404 (Not Found)
      */
     @RequestMapping(value = "/alerts/{id}",
         method = RequestMethod.GET,
-        produces = MediaType.APPLICATION_JSON_VALUE)
+        produces = {MediaType.APPLICATION_JSON_VALUE, SmileHttpMessageConverter.APPLICATION_SMILE_VALUE})
     @Timed
-    public ResponseEntity<Alert> getAlert(@PathVariable Long id) {
+    public ResponseEntity<Alert> getAlert(@PathVariable Long id, WebRequest webRequest) {
         log.debug("REST request to get Alert : {}", id);
-        Alert alert = alertRepository.findOne(id);
+        Alert alert = alertService.findOne(id);
+        // Only the ETag: the modification date is set by the clients, and may not change with the alert
+        if (alert != null && webRequest.checkNotModified(ETagUtil.entityTag("alert", id, alert.getVersion()))) {
+            return null;
+        }
         return Optional.ofNullable(alert)
             .map(result -> new ResponseEntity<>(
                 result,
@@ -147,7 +341,8 @@ public class AlertResource {
      * DELETE  /alerts/:id : delete the "id" alert.
      *
      * @param id the id of the alert to delete
-     * @return the ResponseEntity with status 200 (OK)
+     * @return the ResponseEntity with status 200 (OK),
+     * or with status 503 (Service Unavailable) if its domain is being moved to another shard
      */
     @RequestMapping(value = "/alerts/{id}",
         method = RequestMethod.DELETE,
@@ -155,8 +350,10 @@ public class AlertResource {
     @Timed
     public ResponseEntity<Void> deleteAlert(@PathVariable Long id) {
         log.debug("REST request to delete Alert : {}", id);
-        alertRepository.delete(id);
-        alertSearchRepository.delete(id);
+        String shard = shardService.writableShardOfId(id, alertRepository::findDomainById);
+        shardService.runInShard(shard, () -> alertService.delete(id));
+        shardService.deleteAlert(shard, id);
+        modificationWatermarkService.touch(ModificationWatermarkService.ALERT);
         return ResponseEntity.ok().headers(HeaderUtil.createEntityDeletionAlert("alert", id.toString())).build();
     }
 
@@ -165,41 +362,43 @@ public class AlertResource {
      * to the query.
      *
      * @param query the query of the alert search
+     * @param domain the domain of the alerts, if any, to search the shard of the domain only
      * @return the result of the search
      */
     @RequestMapping(value = "/_search/alerts",
         method = RequestMethod.GET,
         produces = MediaType.APPLICATION_JSON_VALUE)
     @Timed
-    public ResponseEntity<List<Alert>> searchAlerts(@RequestParam String query, Pageable pageable)
+    public ResponseEntity<List<Alert>> searchAlerts(@RequestParam String query, @RequestParam(required = false) String domain,
+                                                    Pageable pageable)
         throws URISyntaxException {
         log.debug("REST request to search for a page of Alerts for query {}", query);
-        Page<Alert> page = alertSearchRepository.search(queryStringQuery(query), pageable);
+        QueryBuilder search = domain == null ? queryStringQuery(query)
+            : filteredQuery(queryStringQuery(query), termFilter("domain", domain));
+        Page<Alert> page = searchResultCache.get(ModificationWatermarkService.ALERT, query, domain, pageable,
+            () -> shardService.searchAlerts(search, domain, pageable));
         HttpHeaders headers = PaginationUtil.generateSearchPaginationHttpHeaders(query, page, "/api/_search/alerts");
         return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
     }
     
     /**
-     * POST  /alerts : Create a new alert.
+     * POST  /alerttojms : Send an alert to the JMS topic of the alerts, as text, without saving it.
+     * <p>
+     * The message is the toString of the alert without its class name, as the consumers of the topic expect. The
+     * live stream is fed with JSON alerts from another topic, see {@link LiveStreamService#onAlertMessage(String)}.
      *
-     * @param alert the alert to create
-     * @return the ResponseEntity with status 201 (Created) and with body the new alert, or with status 400 (Bad Request) if the alert has already an ID
-     * @throws URISyntaxException if the Location URI syntax is incorrect
-     * @throws JMSException 
-     * @throws NamingException 
+     * @param alert the alert to send
+     * @return the ResponseEntity with status 200 (OK) and no body
      */
     @RequestMapping(value = "/alerttojms",
         method = RequestMethod.POST,
         produces = MediaType.APPLICATION_JSON_VALUE)
     @Timed
-    
-	public ResponseEntity<Alert> alertJms(@Valid @RequestBody Alert alert)
-			throws URISyntaxException, JMSException, NamingException {
-		log.debug("REST request to alertJms Alert : {}", alert);
-		String alertMessage = alert.toString();
-		String modifiedMsg = alertMessage.replace("Alert", "");
-		this.jmsMessagingTemplate.convertAndSend(this.topic, modifiedMsg);
-		return null;
-	}
-
+    public ResponseEntity<Alert> alertJms(@Valid @RequestBody Alert alert) {
+        log.debug("REST request to alertJms Alert : {}", alert);
+        String alertMessage = alert.toString();
+        String modifiedMsg = alertMessage.replace("Alert", "");
+        jmsMessagingTemplate.convertAndSend(topic, modifiedMsg);
+        return ResponseEntity.ok().build();
+    }
 }
@@ -1,36 +1,85 @@
 package com.innvo.web.rest;
 
 import com.codahale.metrics.annotation.Timed;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.innvo.domain.Event;
 import com.innvo.repository.EventRepository;
-import com.innvo.repository.search.EventSearchRepository;
+import com.innvo.security.AuthoritiesConstants;
+import com.innvo.security.SecurityUtils;
+import com.innvo.service.BulkLoadService;
+import com.innvo.service.EventColdStorage;
+import com.innvo.service.EventDeduplicator;
+import com.innvo.service.EventService;
+import com.innvo.service.EventTimeIndex;
+import com.innvo.service.LiveStreamService;
+import com.innvo.service.ModificationWatermarkService;
+import com.innvo.service.RateLimiter;
+import com.innvo.service.RecentEventStore;
+import com.innvo.service.SearchResultCache;
+import com.innvo.service.ShardService;
+import com.innvo.web.rest.converter.FramedStreamCodec;
+import com.innvo.web.rest.converter.SmileHttpMessageConverter;
+import com.innvo.web.rest.dto.BulkResultDTO;
+import com.innvo.web.rest.errors.CustomParameterizedException;
+import com.innvo.web.rest.errors.PreconditionFailedException;
+import com.innvo.web.rest.util.ETagUtil;
 import com.innvo.web.rest.util.HeaderUtil;
+import com.innvo.web.rest.util.MergePatchUtil;
 import com.innvo.web.rest.util.PaginationUtil;
+import org.elasticsearch.index.query.QueryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.annotation.Secured;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.inject.Inject;
+import javax.servlet.http.HttpServletResponse;
+import javax.validation.ConstraintViolation;
 import javax.validation.Valid;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.sql.SQLException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
 
+import static org.elasticsearch.index.query.FilterBuilders.termFilter;
 import static org.elasticsearch.index.query.QueryBuilders.*;
 
 /**
@@ -43,76 +92,568 @@ public class EventResource {
     private final Logger log = LoggerFactory.getLogger(EventResource.class);
     
     public static final String DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss'Z'";
-        
+
+    private static final int BULK_BATCH_SIZE = 500;
+
+    // The SQL state of the unique violations, the same in PostgreSQL and H2
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    // The events of the bulk requests are not bound to a @Valid parameter
+    private static final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
     @Inject
     private EventRepository eventRepository;
+
+    @Inject
+    private EventService eventService;
         
     @Inject
-    private EventSearchRepository eventSearchRepository;
-    
+    private FramedStreamCodec framedStreamCodec;
+
+    @Inject
+    private RecentEventStore recentEventStore;
+
+    @Inject
+    private EventTimeIndex eventTimeIndex;
+
+    @Inject
+    private EventColdStorage eventColdStorage;
+
+    @Inject
+    private BulkLoadService bulkLoadService;
+
+    @Inject
+    private EventDeduplicator eventDeduplicator;
+
+    @Inject
+    private LiveStreamService liveStreamService;
+
+    @Inject
+    private ModificationWatermarkService modificationWatermarkService;
+
+    @Inject
+    private SearchResultCache searchResultCache;
+
+    @Inject
+    private ShardService shardService;
+
+    @Inject
+    private RateLimiter rateLimiter;
+
+    @Inject
+    private ObjectMapper objectMapper;
+
     /**
      * POST  /events : Create a new event.
      *
      * @param event the event to create
-     * @return the ResponseEntity with status 201 (Created) and with body the new event, or with status 400 (Bad Request) if the event has already an ID
+     * @return the ResponseEntity with status 201 (Created) and with body the new event, or with status 400 (Bad Request) if the event has already an ID,
+     * or with status 409 (Conflict) if the event is a duplicate of an existing event
      * @throws URISyntaxException if the Location URI syntax is incorrect
      */
     @RequestMapping(value = "/events",
         method = RequestMethod.POST,
-        produces = MediaType.APPLICATION_JSON_VALUE)
+        produces = {MediaType.APPLICATION_JSON_VALUE, SmileHttpMessageConverter.APPLICATION_SMILE_VALUE})
     @Timed
     public ResponseEntity<Event> createEvent(@Valid @RequestBody Event event) throws URISyntaxException {
         log.debug("REST request to save Event : {}", event);
         if (event.getId() != null) {
             return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("event", "idexists", "A new event cannot already have an ID")).body(null);
         }
-        Event result = eventRepository.save(event);
-        eventSearchRepository.save(result);
+        String shard = shardService.writableShardOf(event.getDomain());
+        List<Event> created = shardService.inShard(shard, () -> insertUnique(Collections.singletonList(event)));
+        if (created.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .headers(HeaderUtil.createFailureAlert("event", "duplicate", "The event is a duplicate of an existing event")).body(null);
+        }
+        Event result = created.get(0);
+        eventDeduplicator.added(created);
+        shardService.indexEvent(shard, result);
+        recentEventStore.add(result);
+        eventTimeIndex.add(result);
+        liveStreamService.publish(result);
+        modificationWatermarkService.touch(ModificationWatermarkService.EVENT);
         return ResponseEntity.created(new URI("/api/events/" + result.getId()))
             .headers(HeaderUtil.createEntityCreationAlert("event", result.getId().toString()))
             .body(result);
     }
 
+    /**
+     * POST  /events/bulk : Create a batch of new events, skipping duplicates.
+     *
+     * @param events the events to create, as a JSON or Smile array
+     * @return the ResponseEntity with status 201 (Created) and with body the number of created and duplicate events,
+     * or with status 400 (Bad Request) if one of the events has already an ID, or is not valid, in which case none
+     * of them is created and the error names the index of the first invalid one
+     */
+    @RequestMapping(value = "/events/bulk",
+        method = RequestMethod.POST,
+        consumes = {MediaType.APPLICATION_JSON_VALUE, SmileHttpMessageConverter.APPLICATION_SMILE_VALUE},
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public ResponseEntity<BulkResultDTO> createEvents(@RequestBody List<Event> events) {
+        log.debug("REST request to save {} Events", events.size());
+        if (events.stream().anyMatch(event -> event.getId() != null)) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("event", "idexists", "A new event cannot already have an ID")).body(null);
+        }
+        for (int i = 0; i < events.size(); i++) {
+            String violations = violationsOf(events.get(i));
+            if (violations != null) {
+                throw new CustomParameterizedException("The event " + i + " is not valid: " + violations, String.valueOf(i));
+            }
+        }
+        chargeEvents(events.size());
+        long created = 0;
+        for (int from = 0; from < events.size(); from += BULK_BATCH_SIZE) {
+            created += saveEvents(events.subList(from, Math.min(from + BULK_BATCH_SIZE, events.size())));
+        }
+        return ResponseEntity.status(HttpStatus.CREATED)
+            .headers(HeaderUtil.createAlert("adapEventApp.event.bulkCreated", String.valueOf(created)))
+            .body(new BulkResultDTO(created, events.size() - created));
+    }
+
+    /**
+     * POST  /events/bulk : Create new events from a framed stream, see {@link FramedStreamCodec}.
+     * <p>
+     * Events are saved in batches while the stream is read, skipping duplicates. IDs found in the frames are ignored,
+     * so that an export can be imported again. The stream stops at the first invalid frame: the frames before it are
+     * saved, and the error names its index, from which the import can be resumed. It also stops after a batch which
+     * puts the user over the ingest rate limit: the frames read are saved, and the import can be resumed after them,
+     * their number being the sum of the created and duplicate events, once the Retry-After delay has elapsed.
+     *
+     * @param body the framed stream of events
+     * @return the ResponseEntity with status 201 (Created) and with body the number of created and duplicate events,
+     * or with status 400 (Bad Request) if a frame is not a valid event, or with status 429 (Too Many Requests) and
+     * the same body if the stream was stopped by the rate limit
+     * @throws IOException if the stream is not a valid framed stream of events
+     */
+    @RequestMapping(value = "/events/bulk",
+        method = RequestMethod.POST,
+        consumes = FramedStreamCodec.APPLICATION_FRAMES_VALUE,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public ResponseEntity<BulkResultDTO> createEventsFromFrames(InputStream body) throws IOException {
+        log.debug("REST request to save a framed stream of Events");
+        FramedStreamCodec.FrameReader<Event> reader = framedStreamCodec.reader(body, Event.class);
+        List<Event> batch = new ArrayList<>(BULK_BATCH_SIZE);
+        long received = 0;
+        long created = 0;
+        long retryAfter = 0;
+        Event event;
+        while ((event = reader.next()) != null) {
+            event.setId(null);
+            event.setVersion(null);
+            String violations = violationsOf(event);
+            if (violations != null) {
+                created += saveEvents(batch);
+                throw invalidFrame(received, created, violations);
+            }
+            batch.add(event);
+            received++;
+            if (batch.size() == BULK_BATCH_SIZE) {
+                created += saveEvents(batch);
+                retryAfter = paceEvents(batch.size());
+                batch.clear();
+                if (retryAfter > 0) {
+                    break;
+                }
+            }
+        }
+        if (retryAfter > 0) {
+            return tooManyEvents(retryAfter, new BulkResultDTO(created, received - created));
+        }
+        created += saveEvents(batch);
+        chargeEvents(batch.size());
+        return ResponseEntity.status(HttpStatus.CREATED)
+            .headers(HeaderUtil.createAlert("adapEventApp.event.bulkCreated", String.valueOf(created)))
+            .body(new BulkResultDTO(created, received - created));
+    }
+
+    /**
+     * POST  /events/bulk-load : Create new events from a large framed stream, see {@link FramedStreamCodec}.
+     * <p>
+     * Same as POST /events/bulk with a framed stream, but the event index is neither refreshed nor replicated
+     * until the stream is over, and events are indexed with concurrent bulk requests. The index settings are
+     * restored whether the load succeeds or not, and its segments are then merged in the background, so new
+     * events are only searchable after the load. As this changes the shared index, it is reserved to the
+     * administrators.
+     *
+     * @param body the framed stream of events
+     * @return the ResponseEntity with status 201 (Created) and with body the number of created and duplicate events,
+     * or with status 207 (Multi-Status) and the same body if some of the created events could not be indexed, their
+     * number being reported as unindexed, or with status 400 (Bad Request) if a frame is not a valid event, or with
+     * status 403 (Forbidden) for other users, or with status 409 (Conflict) if a load is already running, or with
+     * status 429 (Too Many Requests) if the stream was stopped by the rate limit, as for POST /events/bulk
+     * @throws IOException if the stream is not a valid framed stream of events
+     */
+    @RequestMapping(value = "/events/bulk-load",
+        method = RequestMethod.POST,
+        consumes = FramedStreamCodec.APPLICATION_FRAMES_VALUE,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    @Secured(AuthoritiesConstants.ADMIN)
+    public ResponseEntity<BulkResultDTO> bulkLoadEvents(InputStream body) throws IOException {
+        log.debug("REST request to bulk-load a framed stream of Events");
+        BulkLoadService.Session session;
+        try {
+            session = bulkLoadService.open(BulkLoadService.EVENT_INDEX);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .headers(HeaderUtil.createFailureAlert("event", "bulkloadrunning", e.getMessage())).body(null);
+        }
+        long received = 0;
+        long created = 0;
+        long retryAfter = 0;
+        try {
+            BiConsumer<String, List<Event>> indexer = (shard, result) -> {
+                if (!ShardService.DEFAULT_SHARD.equals(shard)) {
+                    // Only the event index of the default shard is tuned for the load
+                    shardService.indexEvents(shard, result);
+                    return;
+                }
+                for (Event event : result) {
+                    try {
+                        session.index(event.getId(), event);
+                    } catch (JsonProcessingException e) {
+                        throw new IllegalArgumentException("Could not index event " + event.getId(), e);
+                    }
+                }
+            };
+            FramedStreamCodec.FrameReader<Event> reader = framedStreamCodec.reader(body, Event.class);
+            List<Event> batch = new ArrayList<>(BULK_BATCH_SIZE);
+            Event event;
+            while ((event = reader.next()) != null) {
+                event.setId(null);
+                event.setVersion(null);
+                String violations = violationsOf(event);
+                if (violations != null) {
+                    created += saveEvents(batch, indexer);
+                    throw invalidFrame(received, created, violations);
+                }
+                batch.add(event);
+                received++;
+                if (batch.size() == BULK_BATCH_SIZE) {
+                    created += saveEvents(batch, indexer);
+                    retryAfter = paceEvents(batch.size());
+                    batch.clear();
+                    if (retryAfter > 0) {
+                        break;
+                    }
+                }
+            }
+            created += saveEvents(batch, indexer);
+            chargeEvents(batch.size());
+        } finally {
+            session.close();
+            // The events only become searchable now
+            modificationWatermarkService.touch(ModificationWatermarkService.EVENT);
+        }
+        // Complete once the session is closed, which waits for the requests in flight
+        long unindexed = session.getFailures();
+        if (retryAfter > 0) {
+            return tooManyEvents(retryAfter, new BulkResultDTO(created, received - created, unindexed));
+        }
+        if (unindexed > 0) {
+            return ResponseEntity.status(HttpStatus.MULTI_STATUS)
+                .headers(HeaderUtil.createFailureAlert("event", "bulkloadunindexed",
+                    unindexed + " of the created events could not be indexed"))
+                .body(new BulkResultDTO(created, received - created, unindexed));
+        }
+        return ResponseEntity.status(HttpStatus.CREATED)
+            .headers(HeaderUtil.createAlert("adapEventApp.event.bulkCreated", String.valueOf(created)))
+            .body(new BulkResultDTO(created, received - created));
+    }
+
+    /**
+     * @return the constraint violations of the event, or null if it is valid
+     */
+    private static String violationsOf(Event event) {
+        Set<ConstraintViolation<Event>> violations = validator.validate(event);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+            .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+            .sorted()
+            .collect(Collectors.joining(", "));
+    }
+
+    private static CustomParameterizedException invalidFrame(long index, long created, String violations) {
+        return new CustomParameterizedException("The frame " + index + " is not valid: " + violations
+            + ", the events of the frames before it have been created", String.valueOf(index), String.valueOf(created));
+    }
+
+    private int saveEvents(List<Event> events) {
+        return saveEvents(events, shardService::indexEvents);
+    }
+
+    private int saveEvents(List<Event> events, BiConsumer<String, List<Event>> indexer) {
+        // Checked for all the events first, so that a frozen domain rejects the whole batch
+        Map<String, List<Event>> shards = new LinkedHashMap<>();
+        for (Event event : events) {
+            shards.computeIfAbsent(shardService.writableShardOf(event.getDomain()), shard -> new ArrayList<>()).add(event);
+        }
+        int created = 0;
+        for (Map.Entry<String, List<Event>> entry : shards.entrySet()) {
+            List<Event> result = shardService.inShard(entry.getKey(), () -> insertUnique(entry.getValue()));
+            if (result.isEmpty()) {
+                continue;
+            }
+            eventDeduplicator.added(result);
+            indexer.accept(entry.getKey(), result);
+            result.forEach(recentEventStore::add);
+            eventTimeIndex.add(result);
+            result.forEach(liveStreamService::publish);
+            created += result.size();
+        }
+        if (created > 0) {
+            modificationWatermarkService.touch(ModificationWatermarkService.EVENT);
+        }
+        return created;
+    }
+
+    /**
+     * Charges the events of a bulk request to the ingest rate limit of the current user, on top of the token taken
+     * for the request itself.
+     *
+     * @param events the number of events received
+     * @return 0, or else the number of milliseconds until the bucket of the user is out of debt
+     */
+    private long chargeEvents(int events) {
+        String login = SecurityUtils.getCurrentUserLogin();
+        return login == null ? 0 : rateLimiter.charge(login, RateLimiter.EndpointClass.INGEST, events);
+    }
+
+    /**
+     * Charges the events of a batch of a stream, which is not read any further while the bucket of the user is in
+     * debt: the client sends the rest of it later, rather than holding a request thread.
+     *
+     * @param events the number of events received
+     * @return 0, or else the number of seconds after which the rest of the stream may be sent
+     */
+    private long paceEvents(int events) {
+        long wait = chargeEvents(events);
+        return wait > 0 ? TimeUnit.MILLISECONDS.toSeconds(wait + 999) : 0;
+    }
+
+    private static ResponseEntity<BulkResultDTO> tooManyEvents(long retryAfter, BulkResultDTO result) {
+        long read = result.getCreated() + result.getDuplicates();
+        HttpHeaders headers = HeaderUtil.createFailureAlert("event", "ratelimited",
+            "The stream was stopped by the rate limit, resume it after its first " + read + " frames");
+        headers.set(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter));
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).headers(headers).body(result);
+    }
+
+    /**
+     * Inserts the events which are not duplicates in the shard of the current thread. A unique violation of their
+     * fingerprints means that a concurrent request inserted one of them first: they are then checked again against
+     * the committed events, and the others inserted one by one, dropping those which still violate a fingerprint,
+     * inserted meanwhile or of another event with the same hash.
+     *
+     * @return the inserted events
+     */
+    private List<Event> insertUnique(List<Event> events) {
+        List<Event> unique = eventDeduplicator.filter(events);
+        if (unique.isEmpty()) {
+            return unique;
+        }
+        try {
+            return eventService.insertAll(unique);
+        } catch (RuntimeException e) {
+            if (!isUniqueViolation(e)) {
+                throw e;
+            }
+            log.debug("Concurrent duplicate events, checking them again: {}", e.getMessage());
+            // Rolled back, they are new events again
+            for (Event event : unique) {
+                event.setId(null);
+                event.setVersion(null);
+            }
+            unique = eventDeduplicator.filterExactly(unique);
+            List<Event> inserted = new ArrayList<>(unique.size());
+            for (Event event : unique) {
+                try {
+                    inserted.addAll(eventService.insertAll(Collections.singletonList(event)));
+                } catch (RuntimeException conflict) {
+                    if (!isUniqueViolation(conflict)) {
+                        throw conflict;
+                    }
+                    log.warn("Dropped event {} of fingerprint {}: {}", event.getName(), event.getFingerprint(), conflict.getMessage());
+                }
+            }
+            return inserted;
+        }
+    }
+
+    private static boolean isUniqueViolation(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            for (SQLException sql = cause instanceof SQLException ? (SQLException) cause : null; sql != null; sql = sql.getNextException()) {
+                if (UNIQUE_VIOLATION.equals(sql.getSQLState())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * PUT  /events : Updates an existing event.
+     * <p>
+     * The update is rejected when the version of the event, or else the ETag of the If-Match header, is not the
+     * current one. One of them is required, so that an update cannot overwrite a change it has not seen.
      *
      * @param event the event to update
+     * @param ifMatch the expected ETag of the event, required if it has no version
      * @return the ResponseEntity with status 200 (OK) and with body the updated event,
-     * or with status 400 (Bad Request) if the event is not valid,
-     * or with status 500 (Internal Server Error) if the event couldnt be updated
+     * or with status 400 (Bad Request) if the event is not valid, or its new domain is in another shard,
+     * or with status 404 (Not Found) if the event does not exist,
+     * or with status 409 (Conflict) if the event has been updated meanwhile,
+     * or with status 412 (Precondition Failed) if the ETag does not match,
+     * or with status 428 (Precondition Required) if the event has no version and there is no If-Match header,
+     * or with status 500 (Internal Server Error) if the event couldnt be updated,
+     * or with status 503 (Service Unavailable) if its domain is being moved to another shard
      * @throws URISyntaxException if the Location URI syntax is incorrect
      */
     @RequestMapping(value = "/events",
         method = RequestMethod.PUT,
-        produces = MediaType.APPLICATION_JSON_VALUE)
+        produces = {MediaType.APPLICATION_JSON_VALUE, SmileHttpMessageConverter.APPLICATION_SMILE_VALUE})
     @Timed
-    public ResponseEntity<Event> updateEvent(@Valid @RequestBody Event event) throws URISyntaxException {
+    public ResponseEntity<Event> updateEvent(@Valid @RequestBody Event event,
+                                             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) throws URISyntaxException {
         log.debug("REST request to update Event : {}", event);
         if (event.getId() == null) {
             return createEvent(event);
         }
-        Event result = eventRepository.save(event);
-        eventSearchRepository.save(result);
+        String shard = shardService.writableShardOfId(event.getId(), eventRepository::findDomainById);
+        if (!shard.equals(shardService.writableShardOf(event.getDomain()))) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("event", "domainshard", "An event cannot be moved to a domain of another shard")).body(null);
+        }
+        if (event.getVersion() == null) {
+            if (ifMatch == null) {
+                return ResponseEntity.status(HttpStatus.PRECONDITION_REQUIRED)
+                    .headers(HeaderUtil.createFailureAlert("event", "versionrequired", "An update needs the version of the event, or an If-Match header")).body(null);
+            }
+            Long version = shardService.inShard(shard, () -> eventRepository.findVersionById(event.getId()));
+            if (version == null) {
+                return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            }
+            event.setVersion(version);
+        }
+        if (ifMatch != null && !ifMatch.equals(ETagUtil.entityTag("event", event.getId(), event.getVersion()))) {
+            return new ResponseEntity<>(HttpStatus.PRECONDITION_FAILED);
+        }
+        Event result = shardService.inShard(shard, () -> eventService.save(event));
+        return updatedEvent(shard, result);
+    }
+
+    /**
+     * PATCH  /events/:id : Partially updates an existing event with a JSON Merge Patch.
+     * <p>
+     * The event is loaded, patched and written in one transaction, in which only the changed columns are updated.
+     * The patch is rejected if it holds a version, or if the If-Match header holds an ETag, which is not the
+     * current one.
+     *
+     * @param id the id of the event to update
+     * @param patch the JSON Merge Patch
+     * @param ifMatch the expected ETag of the event, if any
+     * @return the ResponseEntity with status 200 (OK) and with body the updated event,
+     * or with status 400 (Bad Request) if the patch or the patched event is not valid, or its new domain is in another shard,
+     * or with status 404 (Not Found) if the event does not exist,
+     * or with status 409 (Conflict) if the event has been updated meanwhile,
+     * or with status 412 (Precondition Failed) if the ETag does not match,
+     * or with status 503 (Service Unavailable) if its domain is being moved to another shard
+     * @throws IOException if the patch cannot be applied to an event
+     */
+    @RequestMapping(value = "/events/{id}",
+        method = RequestMethod.PATCH,
+        consumes = {MergePatchUtil.APPLICATION_MERGE_PATCH_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE},
+        produces = {MediaType.APPLICATION_JSON_VALUE, SmileHttpMessageConverter.APPLICATION_SMILE_VALUE})
+    @Timed
+    public ResponseEntity<Event> patchEvent(@PathVariable Long id, @RequestBody JsonNode patch,
+                                            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) throws IOException {
+        log.debug("REST request to patch Event {} : {}", id, patch);
+        if (!MergePatchUtil.isValid(patch, id)) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("event", "idinvalid", "A patch cannot change the ID")).body(null);
+        }
+        String shard = shardService.writableShardOfId(id, eventRepository::findDomainById);
+        Event result;
+        try {
+            result = shardService.inShard(shard, () -> eventService.patch(id, event -> apply(shard, event, patch, ifMatch)));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (result == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        return updatedEvent(shard, result);
+    }
+
+    /**
+     * Applies a patch to an event loaded in the current transaction, throwing to roll it back if it cannot be applied.
+     */
+    private void apply(String shard, Event event, JsonNode patch, String ifMatch) {
+        if (ifMatch != null && !ifMatch.equals(ETagUtil.entityTag("event", event.getId(), event.getVersion()))) {
+            throw new PreconditionFailedException("The event has been updated meanwhile");
+        }
+        // The version of a loaded entity is not checked against the one set by the patch
+        if (patch.has("version") && !(patch.get("version").canConvertToLong() && patch.get("version").asLong() == event.getVersion())) {
+            throw new OptimisticLockingFailureException("The event has been updated meanwhile");
+        }
+        try {
+            if (!MergePatchUtil.apply(objectMapper, event, patch).isEmpty()) {
+                throw new CustomParameterizedException("The patched event is not valid");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (!shard.equals(shardService.writableShardOf(event.getDomain()))) {
+            throw new CustomParameterizedException("An event cannot be moved to a domain of another shard");
+        }
+    }
+
+    private ResponseEntity<Event> updatedEvent(String shard, Event result) {
+        eventDeduplicator.added(Collections.singletonList(result));
+        shardService.indexEvent(shard, result);
+        recentEventStore.update(result);
+        eventTimeIndex.add(result);
+        modificationWatermarkService.touch(ModificationWatermarkService.EVENT);
         return ResponseEntity.ok()
-            .headers(HeaderUtil.createEntityUpdateAlert("event", event.getId().toString()))
+            .headers(HeaderUtil.createEntityUpdateAlert("event", result.getId().toString()))
             .body(result);
     }
 
     /**
      * GET  /events : get all the events.
+     * <p>
+     * Pages are validated with the modification watermark of the events, so that a client which already has
+     * a page gets a 304 without any database query while no event has changed. Pages are read from the replicas,
+     * and sent without validators while the last change may not have reached them. With a domain, only the shard
+     * of the domain is queried; without, the pages go through the shards one after the other.
      *
+     * @param domain the domain of the events, if any
      * @param pageable the pagination information
-     * @return the ResponseEntity with status 200 (OK) and the list of events in body
+     * @param webRequest the request, to check its If-None-Match and If-Modified-Since headers
+     * @return the ResponseEntity with status 200 (OK) and the list of events in body, or with status 304 (Not Modified)
      * @throws URISyntaxException if there is an error to generate the pagination HTTP headers
      */
     @RequestMapping(value = "/events",
         method = RequestMethod.GET,
         produces = MediaType.APPLICATION_JSON_VALUE)
     @Timed
-    public ResponseEntity<List<Event>> getAllEvents(Pageable pageable)
+    public ResponseEntity<List<Event>> getAllEvents(@RequestParam(required = false) String domain, Pageable pageable,
+                                                    WebRequest webRequest)
         throws URISyntaxException {
         log.debug("REST request to get a page of Events");
-        Page<Event> page = eventRepository.findAll(pageable); 
+        // Read before the query: a change made meanwhile makes the next request fetch the page again
+        long watermark = modificationWatermarkService.get(ModificationWatermarkService.EVENT);
+        // Until the replicas have the last change, the page read from them may be older than the watermark
+        if (modificationWatermarkService.isSettled(watermark)
+            && webRequest.checkNotModified(ETagUtil.listTag("event", watermark), watermark)) {
+            return null;
+        }
+        Page<Event> page = domain != null
+            ? shardService.readInShard(shardService.shardOf(domain), () -> eventRepository.findByDomain(domain, pageable))
+            : shardService.readAcrossShards(pageable, eventRepository::findAll);
         HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(page, "/api/events");
         return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
     }
@@ -121,15 +662,21 @@ public class EventResource {
      * GET  /events/:id : get the "id" event.
      *
      * @param id the id of the event to retrieve
-     * @return the ResponseEntity with status 200 (OK) and with body the event, or with status 404 (Not Found)
+     * @param webRequest the request, to check its If-None-Match header
+     * @return the ResponseEntity with status 200 (OK) and with body the event, or with status 304 (Not Modified),
+     * or with status 404 (Not Found)
      */
     @RequestMapping(value = "/events/{id}",
         method = RequestMethod.GET,
-        produces = MediaType.APPLICATION_JSON_VALUE)
+        produces = {MediaType.APPLICATION_JSON_VALUE, SmileHttpMessageConverter.APPLICATION_SMILE_VALUE})
     @Timed
-    public ResponseEntity<Event> getEvent(@PathVariable Long id) {
+    public ResponseEntity<Event> getEvent(@PathVariable Long id, WebRequest webRequest) {
         log.debug("REST request to get Event : {}", id);
-        Event event = eventRepository.findOne(id);
+        Event event = eventService.findOne(id);
+        // Only the ETag: the modification date is set by the clients, and may not change with the event
+        if (event != null && webRequest.checkNotModified(ETagUtil.entityTag("event", id, event.getVersion()))) {
+            return null;
+        }
         return Optional.ofNullable(event)
             .map(result -> new ResponseEntity<>(
                 result,
@@ -137,11 +684,76 @@ public class EventResource {
             .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
     }
 
+    /**
+     * GET  /events/export : export the events which started in a time range, as JSON or Smile, including
+     * the archived events when the range predates the live retention.
+     *
+     * @param from the start of the time range
+     * @param to the end of the time range
+     * @return the ResponseEntity with status 200 (OK) and the list of events in body
+     */
+    @RequestMapping(value = "/events/export",
+        method = RequestMethod.GET,
+        produces = {MediaType.APPLICATION_JSON_VALUE, SmileHttpMessageConverter.APPLICATION_SMILE_VALUE})
+    @Timed
+    public ResponseEntity<List<Event>> exportEvents(
+        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) ZonedDateTime from,
+        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) ZonedDateTime to) {
+        log.debug("REST request to export Events from {} to {}", from, to);
+        List<Event> events = shardService.readAllShards(() -> eventRepository.findEventDates(from, to));
+        return new ResponseEntity<>(eventColdStorage.withArchived(from, to, events), HttpStatus.OK);
+    }
+
+    /**
+     * GET  /events/export : export the events which started in a time range, as a framed stream.
+     * <p>
+     * Events are read from the database one page at a time, one shard after the other, while the response is
+     * written, after the archived events of the range, if any.
+     *
+     * @param from the start of the time range
+     * @param to the end of the time range
+     * @param response the HTTP response
+     * @return the framed stream of events
+     */
+    @RequestMapping(value = "/events/export",
+        method = RequestMethod.GET,
+        produces = FramedStreamCodec.APPLICATION_FRAMES_VALUE)
+    @Timed
+    public StreamingResponseBody exportEventFrames(
+        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) ZonedDateTime from,
+        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) ZonedDateTime to,
+        HttpServletResponse response) {
+        log.debug("REST request to export a framed stream of Events from {} to {}", from, to);
+        response.setContentType(FramedStreamCodec.APPLICATION_FRAMES_VALUE);
+        return out -> {
+            try (FramedStreamCodec.FrameWriter<Event> writer = framedStreamCodec.writer(out, Event.class)) {
+                if (eventColdStorage.isArchived(from)) {
+                    for (Event event : eventColdStorage.findBetween(from, to)) {
+                        writer.write(event);
+                    }
+                }
+                for (String shard : shardService.getShards()) {
+                    Pageable pageable = new PageRequest(0, BULK_BATCH_SIZE, Sort.Direction.ASC, "id");
+                    Slice<Event> slice;
+                    do {
+                        Pageable page = pageable;
+                        slice = shardService.readInShard(shard, () -> eventRepository.findByStartdatetimeBetween(from, to, page));
+                        for (Event event : slice) {
+                            writer.write(event);
+                        }
+                        pageable = slice.nextPageable();
+                    } while (slice.hasNext());
+                }
+            }
+        };
+    }
+
     /**
      * DELETE  /events/:id : delete the "id" event.
      *
      * @param id the id of the event to delete
-     * @return the ResponseEntity with status 200 (OK)
+     * @return the ResponseEntity with status 200 (OK),
+     * or with status 503 (Service Unavailable) if its domain is being moved to another shard
      */
     @RequestMapping(value = "/events/{id}",
         method = RequestMethod.DELETE,
@@ -149,8 +761,11 @@ public class EventResource {
     @Timed
     public ResponseEntity<Void> deleteEvent(@PathVariable Long id) {
         log.debug("REST request to delete Event : {}", id);
-        eventRepository.delete(id);
-        eventSearchRepository.delete(id);
+        String shard = shardService.writableShardOfId(id, eventRepository::findDomainById);
+        shardService.runInShard(shard, () -> eventService.delete(id));
+        shardService.deleteEvent(shard, id);
+        recentEventStore.remove(id);
+        modificationWatermarkService.touch(ModificationWatermarkService.EVENT);
         return ResponseEntity.ok().headers(HeaderUtil.createEntityDeletionAlert("event", id.toString())).build();
     }
 
@@ -159,16 +774,21 @@ public class EventResource {
      * to the query.
      *
      * @param query the query of the event search
+     * @param domain the domain of the events, if any, to search the shard of the domain only
      * @return the result of the search
      */
     @RequestMapping(value = "/_search/events",
         method = RequestMethod.GET,
         produces = MediaType.APPLICATION_JSON_VALUE)
     @Timed
-    public ResponseEntity<List<Event>> searchEvents(@RequestParam String query, Pageable pageable)
+    public ResponseEntity<List<Event>> searchEvents(@RequestParam String query, @RequestParam(required = false) String domain,
+                                                    Pageable pageable)
         throws URISyntaxException {
         log.debug("REST request to search for a page of Events for query {}", query);
-        Page<Event> page = eventSearchRepository.search(queryStringQuery(query), pageable);
+        QueryBuilder search = domain == null ? queryStringQuery(query)
+            : filteredQuery(queryStringQuery(query), termFilter("domain", domain));
+        Page<Event> page = searchResultCache.get(ModificationWatermarkService.EVENT, query, domain, pageable,
+            () -> shardService.searchEvents(search, domain, pageable));
         HttpHeaders headers = PaginationUtil.generateSearchPaginationHttpHeaders(query, page, "/api/_search/events");
         return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
     }
@@ -184,7 +804,7 @@ public class EventResource {
         method = RequestMethod.GET,
         produces = MediaType.APPLICATION_JSON_VALUE)
     @Timed
-	public List<Event> getEvents(@PathVariable String startDateTime) throws ParseException {
+	public void getEvents(@PathVariable String startDateTime, HttpServletResponse response) throws ParseException, IOException {
 
 		ZonedDateTime stringDate = ZonedDateTime.parse(startDateTime);
 		Date stringToDate = Date.from(stringDate.toInstant());
@@ -216,9 +836,20 @@ public class EventResource {
 		
 		log.debug("StartDateTime :" + startdateTime);
 		log.debug("EndDateTime :" + enddateTime);
-		List<Event> events = eventRepository.findEventDates(enddateTime, startdateTime);
-		log.debug("Result :" + events);
-		return events;
+		response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+			// Recent events are transcoded from the store, without building them
+			if (!eventColdStorage.isArchived(enddateTime) && recentEventStore.writeBetween(enddateTime, startdateTime, generator)) {
+				return;
+			}
+			List<Event> events = eventColdStorage.isArchived(enddateTime)
+				? eventColdStorage.withArchived(enddateTime, startdateTime,
+					shardService.readAllShards(() -> eventRepository.findEventDates(enddateTime, startdateTime)))
+				: eventTimeIndex.findBetween(enddateTime, startdateTime)
+					.orElseGet(() -> shardService.readAllShards(() -> eventRepository.findEventDates(enddateTime, startdateTime)));
+			log.debug("Result :" + events);
+			objectMapper.writeValue(generator, events);
+		}
 
 	}
 
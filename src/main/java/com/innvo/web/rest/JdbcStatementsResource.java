@@ -0,0 +1,58 @@
+package com.innvo.web.rest;
+
+import com.codahale.metrics.annotation.Timed;
+import com.innvo.config.jdbc.StatementRecorder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * Controller for viewing the slow and repeated JDBC statements, when the statements are instrumented.
+ */
+@RestController
+@RequestMapping("/management/jhipster")
+public class JdbcStatementsResource {
+
+    @Autowired(required = false)
+    private StatementRecorder statementRecorder;
+
+    /**
+     * GET  /jdbc/slow-queries : get the latest slow statements, with their bind parameters.
+     *
+     * @return the ResponseEntity with status 200 (OK) and the slow statements in body, latest first,
+     * or with status 404 (Not Found) if the statements are not instrumented
+     */
+    @RequestMapping(value = "/jdbc/slow-queries",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public ResponseEntity<List<StatementRecorder.SlowQuery>> getSlowQueries() {
+        if (statementRecorder == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(statementRecorder.getSlowQueries(), HttpStatus.OK);
+    }
+
+    /**
+     * GET  /jdbc/repeated-statements : get the latest statements repeated within a request, likely N+1 selects.
+     *
+     * @return the ResponseEntity with status 200 (OK) and the repeated statements in body, latest first,
+     * or with status 404 (Not Found) if the statements are not instrumented
+     */
+    @RequestMapping(value = "/jdbc/repeated-statements",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public ResponseEntity<List<StatementRecorder.RepeatedStatement>> getRepeatedStatements() {
+        if (statementRecorder == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(statementRecorder.getRepeatedStatements(), HttpStatus.OK);
+    }
+}
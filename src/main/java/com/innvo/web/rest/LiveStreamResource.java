@@ -0,0 +1,54 @@
+package com.innvo.web.rest;
+
+import com.codahale.metrics.annotation.Timed;
+import com.innvo.service.LiveStreamService;
+import com.innvo.web.rest.errors.ServiceUnavailableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.inject.Inject;
+import java.util.Set;
+
+/**
+ * REST controller streaming new events and alerts as they are created.
+ */
+@RestController
+@RequestMapping("/api")
+public class LiveStreamResource {
+
+    private final Logger log = LoggerFactory.getLogger(LiveStreamResource.class);
+
+    @Inject
+    private LiveStreamService liveStreamService;
+
+    /**
+     * GET  /stream : Server-Sent Events stream of new events and alerts.
+     * <p>
+     * Each SSE event is named after the item type, "event" or "alert", and holds the JSON of the item.
+     * Comments are sent as heartbeats. A client which cannot keep up is disconnected, and should reconnect
+     * and query the items it missed.
+     *
+     * @param types the item types to receive, all if not set
+     * @param category the category of the items to receive, all if not set
+     * @param domain the domain of the items to receive, all if not set
+     * @param recordtype the name or id of the record type of the events to receive, all if not set; alerts have no record type
+     * @return the stream, or status 503 (Service Unavailable) if the stream is disabled or has too many subscribers
+     */
+    @RequestMapping(value = "/stream",
+        method = RequestMethod.GET,
+        produces = "text/event-stream")
+    @Timed
+    public SseEmitter stream(@RequestParam(required = false) Set<String> types,
+                             @RequestParam(required = false) String category,
+                             @RequestParam(required = false) String domain,
+                             @RequestParam(required = false) String recordtype) {
+        log.debug("REST request to stream new items of types {}, category {}, domain {}, recordtype {}", types, category, domain, recordtype);
+        return liveStreamService.subscribe(types, category, domain, recordtype)
+            .orElseThrow(() -> new ServiceUnavailableException("Live stream is not available"));
+    }
+}
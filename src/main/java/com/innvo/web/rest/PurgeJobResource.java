@@ -0,0 +1,121 @@
+package com.innvo.web.rest;
+
+import com.codahale.metrics.annotation.Timed;
+import com.innvo.security.AuthoritiesConstants;
+import com.innvo.service.PurgeService;
+import com.innvo.web.rest.dto.PurgeJobDTO;
+import com.innvo.web.rest.dto.PurgeRequestDTO;
+import com.innvo.web.rest.util.HeaderUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.annotation.Secured;
+import org.springframework.web.bind.annotation.*;
+
+import javax.inject.Inject;
+import javax.validation.Valid;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * REST controller for the bulk deletes of events and alerts, which run in the background and are reserved to
+ * the administrators.
+ */
+@RestController
+@RequestMapping("/api")
+public class PurgeJobResource {
+
+    private final Logger log = LoggerFactory.getLogger(PurgeJobResource.class);
+
+    @Inject
+    private PurgeService purgeService;
+
+    /**
+     * POST  /events/purge : Starts deleting the events matching the criteria, optionally moving them to the archive table.
+     *
+     * @param request the criteria of the events to delete
+     * @return the ResponseEntity with status 202 (Accepted) and with body the new job,
+     * or with status 400 (Bad Request) if no criterion is set
+     * or with status 503 (Service Unavailable) if a domain is being moved to another shard
+     * @throws URISyntaxException if the Location URI syntax is incorrect
+     */
+    @RequestMapping(value = "/events/purge",
+        method = RequestMethod.POST,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    @Secured(AuthoritiesConstants.ADMIN)
+    public ResponseEntity<PurgeJobDTO> purgeEvents(@Valid @RequestBody PurgeRequestDTO request) throws URISyntaxException {
+        log.debug("REST request to purge Events : {}", request);
+        if (!request.hasCriteria()) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("event", "nocriteria", "At least one criterion is required")).body(null);
+        }
+        return accepted(purgeService.purgeEvents(request));
+    }
+
+    /**
+     * POST  /alerts/purge : Starts deleting the alerts matching the criteria, optionally moving them to the archive table.
+     *
+     * @param request the criteria of the alerts to delete, without record type
+     * @return the ResponseEntity with status 202 (Accepted) and with body the new job,
+     * or with status 400 (Bad Request) if no criterion or a record type is set
+     * or with status 503 (Service Unavailable) if a domain is being moved to another shard
+     * @throws URISyntaxException if the Location URI syntax is incorrect
+     */
+    @RequestMapping(value = "/alerts/purge",
+        method = RequestMethod.POST,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    @Secured(AuthoritiesConstants.ADMIN)
+    public ResponseEntity<PurgeJobDTO> purgeAlerts(@Valid @RequestBody PurgeRequestDTO request) throws URISyntaxException {
+        log.debug("REST request to purge Alerts : {}", request);
+        if (!request.hasCriteria()) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("alert", "nocriteria", "At least one criterion is required")).body(null);
+        }
+        if (request.getRecordtypeId() != null) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("alert", "norecordtype", "Alerts have no record type")).body(null);
+        }
+        return accepted(purgeService.purgeAlerts(request));
+    }
+
+    private ResponseEntity<PurgeJobDTO> accepted(PurgeJobDTO job) throws URISyntaxException {
+        return ResponseEntity.accepted()
+            .location(new URI("/api/purge-jobs/" + job.getId()))
+            .body(job);
+    }
+
+    /**
+     * GET  /purge-jobs : get the purge jobs of the last days, most recent first.
+     *
+     * @return the ResponseEntity with status 200 (OK) and the list of jobs in body
+     */
+    @RequestMapping(value = "/purge-jobs",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public List<PurgeJobDTO> getAllPurgeJobs() {
+        log.debug("REST request to get all purge jobs");
+        return purgeService.findAllJobs();
+    }
+
+    /**
+     * GET  /purge-jobs/:id : get the progress of the "id" purge job.
+     *
+     * @param id the id of the job to retrieve
+     * @return the ResponseEntity with status 200 (OK) and with body the job, or with status 404 (Not Found)
+     */
+    @RequestMapping(value = "/purge-jobs/{id}",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public ResponseEntity<PurgeJobDTO> getPurgeJob(@PathVariable String id) {
+        log.debug("REST request to get purge job : {}", id);
+        Optional<PurgeJobDTO> job = purgeService.findJob(id);
+        return job
+            .map(result -> new ResponseEntity<>(result, HttpStatus.OK))
+            .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+}
@@ -0,0 +1,130 @@
+package com.innvo.web.rest;
+
+import com.codahale.metrics.annotation.Timed;
+import com.innvo.security.AuthoritiesConstants;
+import com.innvo.service.ShardMoveService;
+import com.innvo.service.ShardService;
+import com.innvo.web.rest.dto.ShardAssignmentDTO;
+import com.innvo.web.rest.dto.ShardMoveDTO;
+import com.innvo.web.rest.dto.ShardMoveRequestDTO;
+import com.innvo.web.rest.util.HeaderUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.annotation.Secured;
+import org.springframework.web.bind.annotation.*;
+
+import javax.inject.Inject;
+import javax.validation.Valid;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * REST controller for the shards of the domains, and the moves of domains between shards, which run in the background.
+ */
+@RestController
+@RequestMapping("/api")
+public class ShardResource {
+
+    private final Logger log = LoggerFactory.getLogger(ShardResource.class);
+
+    @Inject
+    private ShardService shardService;
+
+    @Inject
+    private ShardMoveService shardMoveService;
+
+    /**
+     * GET  /shards : get the shards, the default shard first.
+     *
+     * @return the ResponseEntity with status 200 (OK) and the list of shard names in body
+     */
+    @RequestMapping(value = "/shards",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public List<String> getAllShards() {
+        log.debug("REST request to get all shards");
+        return shardService.getShards();
+    }
+
+    /**
+     * GET  /shards/assignments : get the domains which are not in the default shard, or are being moved.
+     *
+     * @return the ResponseEntity with status 200 (OK) and the list of assignments in body
+     */
+    @RequestMapping(value = "/shards/assignments",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public List<ShardAssignmentDTO> getAllShardAssignments() {
+        log.debug("REST request to get all shard assignments");
+        return shardService.getAssignments();
+    }
+
+    /**
+     * POST  /shards/moves : Starts moving a domain, with its events and alerts, to another shard.
+     *
+     * @param request the domain and its new shard
+     * @return the ResponseEntity with status 202 (Accepted) and with body the new move,
+     * or with status 400 (Bad Request) if sharding is disabled, the shard does not exist or is that of the domain,
+     * or with status 409 (Conflict) if the domain is already being moved
+     * @throws URISyntaxException if the Location URI syntax is incorrect
+     */
+    @RequestMapping(value = "/shards/moves",
+        method = RequestMethod.POST,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    @Secured(AuthoritiesConstants.ADMIN)
+    public ResponseEntity<ShardMoveDTO> moveDomain(@Valid @RequestBody ShardMoveRequestDTO request) throws URISyntaxException {
+        log.debug("REST request to move a domain : {}", request);
+        ShardMoveDTO move;
+        try {
+            move = shardMoveService.move(request.getDomain(), request.getShard());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("shardMove", "invalid", e.getMessage())).body(null);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .headers(HeaderUtil.createFailureAlert("shardMove", "moverunning", e.getMessage())).body(null);
+        }
+        return ResponseEntity.accepted()
+            .location(new URI("/api/shards/moves/" + move.getId()))
+            .body(move);
+    }
+
+    /**
+     * GET  /shards/moves : get the moves of the last days, most recent first.
+     *
+     * @return the ResponseEntity with status 200 (OK) and the list of moves in body
+     */
+    @RequestMapping(value = "/shards/moves",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public List<ShardMoveDTO> getAllShardMoves() {
+        log.debug("REST request to get all shard moves");
+        return shardMoveService.findAllMoves();
+    }
+
+    /**
+     * GET  /shards/moves/:id : get the progress of the "id" move.
+     *
+     * @param id the id of the move to retrieve
+     * @return the ResponseEntity with status 200 (OK) and with body the move, or with status 404 (Not Found)
+     */
+    @RequestMapping(value = "/shards/moves/{id}",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public ResponseEntity<ShardMoveDTO> getShardMove(@PathVariable String id) {
+        log.debug("REST request to get shard move : {}", id);
+        Optional<ShardMoveDTO> move = shardMoveService.findMove(id);
+        return move
+            .map(result -> new ResponseEntity<>(result, HttpStatus.OK))
+            .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+}
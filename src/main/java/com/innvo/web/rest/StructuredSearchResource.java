@@ -0,0 +1,70 @@
+package com.innvo.web.rest;
+
+import com.codahale.metrics.annotation.Timed;
+import com.innvo.service.StructuredSearchService;
+import com.innvo.web.rest.dto.SearchRequestDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.inject.Inject;
+import javax.validation.Valid;
+import java.io.IOException;
+
+/**
+ * REST controller for the structured searches of events and alerts, returning the Elasticsearch hits as stored.
+ */
+@RestController
+@RequestMapping("/api")
+public class StructuredSearchResource {
+
+    private final Logger log = LoggerFactory.getLogger(StructuredSearchResource.class);
+
+    @Inject
+    private StructuredSearchService structuredSearchService;
+
+    /**
+     * POST  /_search/events : search for the events matching the filters, newest first and those without a start date last.
+     * <p>
+     * The next page is requested by sending the "searchAfter" values of the response with the same criteria.
+     *
+     * @param request the query, filters, source fields and cursor of the search
+     * @return the ResponseEntity with status 200 (OK) and with body the took time, shard counts, total and hits
+     * @throws IOException if the response cannot be written
+     */
+    @RequestMapping(value = "/_search/events",
+        method = RequestMethod.POST,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public ResponseEntity<byte[]> searchEvents(@Valid @RequestBody SearchRequestDTO request) throws IOException {
+        log.debug("REST request for a structured search of Events : {}", request);
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(structuredSearchService.search(StructuredSearchService.EVENT_INDEX, request));
+    }
+
+    /**
+     * POST  /_search/alerts : search for the alerts matching the filters, newest first and those without a start date last.
+     * <p>
+     * The next page is requested by sending the "searchAfter" values of the response with the same criteria.
+     *
+     * @param request the query, filters, source fields and cursor of the search
+     * @return the ResponseEntity with status 200 (OK) and with body the took time, shard counts, total and hits
+     * @throws IOException if the response cannot be written
+     */
+    @RequestMapping(value = "/_search/alerts",
+        method = RequestMethod.POST,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public ResponseEntity<byte[]> searchAlerts(@Valid @RequestBody SearchRequestDTO request) throws IOException {
+        log.debug("REST request for a structured search of Alerts : {}", request);
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(structuredSearchService.search(StructuredSearchService.ALERT_INDEX, request));
+    }
+}
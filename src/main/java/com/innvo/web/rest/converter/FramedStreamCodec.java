@@ -0,0 +1,139 @@
+package com.innvo.web.rest.converter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.fasterxml.jackson.dataformat.smile.SmileParser;
+import org.springframework.http.MediaType;
+import org.springframework.util.Assert;
+
+import java.io.*;
+
+/**
+ * Length-prefixed framing of Smile encoded entities, used to stream large batches of events
+ * without holding the whole batch in memory on either side.
+ *
+ * <pre>
+ * stream  := header frame* trailer
+ * header  := magic (int32, "ADFR") schema version (int16) entity type (modified UTF-8)
+ * frame   := length (int32, &gt; 0) Smile document of that length, without Smile header
+ * trailer := length 0
+ * </pre>
+ *
+ * <p>
+ * The header is checked when reading, so a stream of alerts is never decoded as events and an
+ * incompatible schema version is rejected up front rather than half way through an import.
+ * </p>
+ */
+public class FramedStreamCodec {
+
+    public static final String APPLICATION_FRAMES_VALUE = "application/x-adap-frames";
+
+    public static final MediaType APPLICATION_FRAMES = MediaType.valueOf(APPLICATION_FRAMES_VALUE);
+
+    public static final int MAGIC = 0x41444652;
+
+    public static final short SCHEMA_VERSION = 1;
+
+    public static final int MAX_FRAME_SIZE = 1024 * 1024;
+
+    private final ObjectMapper objectMapper;
+
+    public FramedStreamCodec(ObjectMapper smileObjectMapper) {
+        Assert.isInstanceOf(SmileFactory.class, smileObjectMapper.getFactory(), "SmileFactory required");
+        this.objectMapper = smileObjectMapper.copy();
+        SmileFactory smileFactory = (SmileFactory) this.objectMapper.getFactory();
+        // The 4 bytes Smile header would be repeated in every frame, the stream header replaces it
+        smileFactory.configure(SmileGenerator.Feature.WRITE_HEADER, false);
+        smileFactory.configure(SmileParser.Feature.REQUIRE_HEADER, false);
+    }
+
+    public <T> FrameWriter<T> writer(OutputStream out, Class<T> type) throws IOException {
+        return new FrameWriter<>(out, type);
+    }
+
+    public <T> FrameReader<T> reader(InputStream in, Class<T> type) throws IOException {
+        return new FrameReader<>(in, type);
+    }
+
+    /**
+     * Writes entities as frames; closing the writer ends the stream but leaves the target open.
+     */
+    public final class FrameWriter<T> implements Closeable {
+
+        private final DataOutputStream out;
+
+        private final ObjectWriter objectWriter;
+
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(512);
+
+        private FrameWriter(OutputStream out, Class<T> type) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(out));
+            this.objectWriter = objectMapper.writerFor(type);
+            this.out.writeInt(MAGIC);
+            this.out.writeShort(SCHEMA_VERSION);
+            this.out.writeUTF(type.getSimpleName());
+        }
+
+        public void write(T value) throws IOException {
+            buffer.reset();
+            objectWriter.writeValue(buffer, value);
+            out.writeInt(buffer.size());
+            buffer.writeTo(out);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.writeInt(0);
+            out.flush();
+        }
+    }
+
+    /**
+     * Reads entities from frames, one at a time.
+     */
+    public final class FrameReader<T> {
+
+        private final DataInputStream in;
+
+        private final ObjectReader objectReader;
+
+        private byte[] buffer = new byte[512];
+
+        private FrameReader(InputStream in, Class<T> type) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(in));
+            this.objectReader = objectMapper.readerFor(type);
+            if (this.in.readInt() != MAGIC) {
+                throw new IOException("Not a framed stream");
+            }
+            short version = this.in.readShort();
+            if (version != SCHEMA_VERSION) {
+                throw new IOException("Unsupported frame schema version " + version);
+            }
+            String typeName = this.in.readUTF();
+            if (!type.getSimpleName().equals(typeName)) {
+                throw new IOException("Expected frames of " + type.getSimpleName() + " but stream contains " + typeName);
+            }
+        }
+
+        /**
+         * @return the next entity, or null once the trailer has been read
+         */
+        public T next() throws IOException {
+            int length = in.readInt();
+            if (length == 0) {
+                return null;
+            }
+            if (length < 0 || length > MAX_FRAME_SIZE) {
+                throw new IOException("Invalid frame length " + length);
+            }
+            if (buffer.length < length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            in.readFully(buffer, 0, length);
+            return objectReader.readValue(buffer, 0, length);
+        }
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * HTTP message converters and wire formats for the REST API.
+ */
+package com.innvo.web.rest.converter;
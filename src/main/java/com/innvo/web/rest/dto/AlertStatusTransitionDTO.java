@@ -0,0 +1,76 @@
+package com.innvo.web.rest.dto;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+
+/**
+ * A status change applied to all the alerts matching the status, category and domain, at least one of which is set.
+ */
+public class AlertStatusTransitionDTO {
+
+    @Size(max = 25)
+    private String status;
+
+    @Size(max = 50)
+    private String category;
+
+    @Size(max = 25)
+    private String domain;
+
+    @NotNull
+    @Size(max = 25)
+    private String newStatus;
+
+    private int updated;
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public void setCategory(String category) {
+        this.category = category;
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    public void setDomain(String domain) {
+        this.domain = domain;
+    }
+
+    public String getNewStatus() {
+        return newStatus;
+    }
+
+    public void setNewStatus(String newStatus) {
+        this.newStatus = newStatus;
+    }
+
+    public int getUpdated() {
+        return updated;
+    }
+
+    public void setUpdated(int updated) {
+        this.updated = updated;
+    }
+
+    @Override
+    public String toString() {
+        return "AlertStatusTransitionDTO{" +
+            "status='" + status + "'" +
+            ", category='" + category + "'" +
+            ", domain='" + domain + "'" +
+            ", newStatus='" + newStatus + "'" +
+            ", updated=" + updated +
+            '}';
+    }
+}
@@ -0,0 +1,62 @@
+package com.innvo.web.rest.dto;
+
+/**
+ * Outcome of a bulk ingestion request.
+ */
+public class BulkResultDTO {
+
+    private long created;
+
+    private long duplicates;
+
+    private long unindexed;
+
+    public BulkResultDTO() {
+    }
+
+    public BulkResultDTO(long created, long duplicates) {
+        this(created, duplicates, 0);
+    }
+
+    public BulkResultDTO(long created, long duplicates, long unindexed) {
+        this.created = created;
+        this.duplicates = duplicates;
+        this.unindexed = unindexed;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public void setCreated(long created) {
+        this.created = created;
+    }
+
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    public void setDuplicates(long duplicates) {
+        this.duplicates = duplicates;
+    }
+
+    /**
+     * @return the number of created events which Elasticsearch failed to index, and which are not searchable
+     */
+    public long getUnindexed() {
+        return unindexed;
+    }
+
+    public void setUnindexed(long unindexed) {
+        this.unindexed = unindexed;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkResultDTO{" +
+            "created=" + created +
+            ", duplicates=" + duplicates +
+            ", unindexed=" + unindexed +
+            '}';
+    }
+}
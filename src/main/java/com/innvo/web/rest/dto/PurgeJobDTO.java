@@ -0,0 +1,132 @@
+package com.innvo.web.rest.dto;
+
+import java.io.Serializable;
+import java.time.ZonedDateTime;
+
+/**
+ * The progress of a bulk delete running in the background, shared by the members of the cluster.
+ */
+public class PurgeJobDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum State {
+        RUNNING, COMPLETED, FAILED
+    }
+
+    private String id;
+
+    private String entity;
+
+    private PurgeRequestDTO request;
+
+    private State state;
+
+    private long deleted;
+
+    private long archived;
+
+    private int chunks;
+
+    private ZonedDateTime startedAt;
+
+    private ZonedDateTime finishedAt;
+
+    private String error;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getEntity() {
+        return entity;
+    }
+
+    public void setEntity(String entity) {
+        this.entity = entity;
+    }
+
+    public PurgeRequestDTO getRequest() {
+        return request;
+    }
+
+    public void setRequest(PurgeRequestDTO request) {
+        this.request = request;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public void setState(State state) {
+        this.state = state;
+    }
+
+    public long getDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(long deleted) {
+        this.deleted = deleted;
+    }
+
+    public long getArchived() {
+        return archived;
+    }
+
+    public void setArchived(long archived) {
+        this.archived = archived;
+    }
+
+    public int getChunks() {
+        return chunks;
+    }
+
+    public void setChunks(int chunks) {
+        this.chunks = chunks;
+    }
+
+    public ZonedDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(ZonedDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public ZonedDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(ZonedDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    @Override
+    public String toString() {
+        return "PurgeJobDTO{" +
+            "id='" + id + "'" +
+            ", entity='" + entity + "'" +
+            ", request=" + request +
+            ", state=" + state +
+            ", deleted=" + deleted +
+            ", archived=" + archived +
+            ", chunks=" + chunks +
+            ", startedAt=" + startedAt +
+            ", finishedAt=" + finishedAt +
+            ", error='" + error + "'" +
+            '}';
+    }
+}
@@ -0,0 +1,93 @@
+package com.innvo.web.rest.dto;
+
+import javax.validation.constraints.Size;
+import java.io.Serializable;
+import java.time.ZonedDateTime;
+
+/**
+ * The criteria of a bulk delete of events or alerts, and whether the deleted rows are moved to the archive table.
+ * <p>
+ * At least one criterion must be set, so that a request cannot delete everything by mistake.
+ */
+public class PurgeRequestDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private ZonedDateTime from;
+
+    private ZonedDateTime to;
+
+    @Size(max = 25)
+    private String domain;
+
+    private Long recordtypeId;
+
+    @Size(max = 25)
+    private String status;
+
+    private boolean archive;
+
+    public ZonedDateTime getFrom() {
+        return from;
+    }
+
+    public void setFrom(ZonedDateTime from) {
+        this.from = from;
+    }
+
+    public ZonedDateTime getTo() {
+        return to;
+    }
+
+    public void setTo(ZonedDateTime to) {
+        this.to = to;
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    public void setDomain(String domain) {
+        this.domain = domain;
+    }
+
+    public Long getRecordtypeId() {
+        return recordtypeId;
+    }
+
+    public void setRecordtypeId(Long recordtypeId) {
+        this.recordtypeId = recordtypeId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public boolean isArchive() {
+        return archive;
+    }
+
+    public void setArchive(boolean archive) {
+        this.archive = archive;
+    }
+
+    public boolean hasCriteria() {
+        return from != null || to != null || domain != null || recordtypeId != null || status != null;
+    }
+
+    @Override
+    public String toString() {
+        return "PurgeRequestDTO{" +
+            "from=" + from +
+            ", to=" + to +
+            ", domain='" + domain + "'" +
+            ", recordtypeId=" + recordtypeId +
+            ", status='" + status + "'" +
+            ", archive=" + archive +
+            '}';
+    }
+}
@@ -0,0 +1,172 @@
+package com.innvo.web.rest.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import javax.validation.constraints.AssertTrue;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.Size;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A structured search of events or alerts: an optional full-text query, exact filters, and a page after a cursor.
+ */
+public class SearchRequestDTO {
+
+    private String query;
+
+    private Map<String, List<String>> terms = new LinkedHashMap<>();
+
+    private Map<String, Range> ranges = new LinkedHashMap<>();
+
+    @Size(max = 25)
+    private String domain;
+
+    private List<String> includes = new ArrayList<>();
+
+    @Size(min = 2, max = 2)
+    private List<Long> searchAfter;
+
+    @Min(1)
+    @Max(1000)
+    private int size = 20;
+
+    public String getQuery() {
+        return query;
+    }
+
+    public void setQuery(String query) {
+        this.query = query;
+    }
+
+    public Map<String, List<String>> getTerms() {
+        return terms;
+    }
+
+    public void setTerms(Map<String, List<String>> terms) {
+        // Sent as null, no filter
+        this.terms = terms != null ? terms : new LinkedHashMap<>();
+    }
+
+    public Map<String, Range> getRanges() {
+        return ranges;
+    }
+
+    public void setRanges(Map<String, Range> ranges) {
+        this.ranges = ranges != null ? ranges : new LinkedHashMap<>();
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    public void setDomain(String domain) {
+        this.domain = domain;
+    }
+
+    public List<String> getIncludes() {
+        return includes;
+    }
+
+    public void setIncludes(List<String> includes) {
+        // Sent as null, the whole source
+        this.includes = includes != null ? includes : new ArrayList<>();
+    }
+
+    public List<Long> getSearchAfter() {
+        return searchAfter;
+    }
+
+    public void setSearchAfter(List<Long> searchAfter) {
+        this.searchAfter = searchAfter;
+    }
+
+    /**
+     * The start date and id of a cursor are both required, the start date of a hit without one being sent as a number.
+     */
+    @JsonIgnore
+    @AssertTrue(message = "searchAfter must not contain null values")
+    public boolean isSearchAfterComplete() {
+        return searchAfter == null || !searchAfter.contains(null);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchRequestDTO{" +
+            "query='" + query + "'" +
+            ", terms=" + terms +
+            ", ranges=" + ranges +
+            ", domain='" + domain + "'" +
+            ", includes=" + includes +
+            ", searchAfter=" + searchAfter +
+            ", size=" + size +
+            '}';
+    }
+
+    /**
+     * Bounds of a range filter, dates in ISO 8601 format or Elasticsearch date math.
+     */
+    public static class Range {
+
+        private String gt;
+
+        private String gte;
+
+        private String lt;
+
+        private String lte;
+
+        public String getGt() {
+            return gt;
+        }
+
+        public void setGt(String gt) {
+            this.gt = gt;
+        }
+
+        public String getGte() {
+            return gte;
+        }
+
+        public void setGte(String gte) {
+            this.gte = gte;
+        }
+
+        public String getLt() {
+            return lt;
+        }
+
+        public void setLt(String lt) {
+            this.lt = lt;
+        }
+
+        public String getLte() {
+            return lte;
+        }
+
+        public void setLte(String lte) {
+            this.lte = lte;
+        }
+
+        @Override
+        public String toString() {
+            return "Range{" +
+                "gt='" + gt + "'" +
+                ", gte='" + gte + "'" +
+                ", lt='" + lt + "'" +
+                ", lte='" + lte + "'" +
+                '}';
+        }
+    }
+}
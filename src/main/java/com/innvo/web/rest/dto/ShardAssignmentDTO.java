@@ -0,0 +1,72 @@
+package com.innvo.web.rest.dto;
+
+import java.io.Serializable;
+
+/**
+ * The shard of a domain, shared by the members of the cluster. While the domain is being moved, the target shard
+ * is set, and the writes to the domain are rejected while it is frozen.
+ */
+public class ShardAssignmentDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String domain;
+
+    private String shard;
+
+    private String target;
+
+    private boolean frozen;
+
+    public ShardAssignmentDTO() {
+    }
+
+    public ShardAssignmentDTO(String domain, String shard, String target, boolean frozen) {
+        this.domain = domain;
+        this.shard = shard;
+        this.target = target;
+        this.frozen = frozen;
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    public void setDomain(String domain) {
+        this.domain = domain;
+    }
+
+    public String getShard() {
+        return shard;
+    }
+
+    public void setShard(String shard) {
+        this.shard = shard;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public void setTarget(String target) {
+        this.target = target;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    public void setFrozen(boolean frozen) {
+        this.frozen = frozen;
+    }
+
+    @Override
+    public String toString() {
+        return "ShardAssignmentDTO{" +
+            "domain='" + domain + "'" +
+            ", shard='" + shard + "'" +
+            ", target='" + target + "'" +
+            ", frozen=" + frozen +
+            '}';
+    }
+}
@@ -0,0 +1,158 @@
+package com.innvo.web.rest.dto;
+
+import java.io.Serializable;
+import java.time.ZonedDateTime;
+
+/**
+ * The progress of a domain move between shards running in the background, shared by the members of the cluster.
+ */
+public class ShardMoveDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum State {
+        RUNNING, COMPLETED, FAILED
+    }
+
+    public enum Phase {
+        COPYING, FROZEN, SWITCHED, CLEANING
+    }
+
+    private String id;
+
+    private String domain;
+
+    private String from;
+
+    private String to;
+
+    private State state;
+
+    private Phase phase;
+
+    private long copied;
+
+    private long reconciled;
+
+    private long deleted;
+
+    private ZonedDateTime startedAt;
+
+    private ZonedDateTime finishedAt;
+
+    private String error;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    public void setDomain(String domain) {
+        this.domain = domain;
+    }
+
+    public String getFrom() {
+        return from;
+    }
+
+    public void setFrom(String from) {
+        this.from = from;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public void setTo(String to) {
+        this.to = to;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public void setState(State state) {
+        this.state = state;
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    public void setPhase(Phase phase) {
+        this.phase = phase;
+    }
+
+    public long getCopied() {
+        return copied;
+    }
+
+    public void setCopied(long copied) {
+        this.copied = copied;
+    }
+
+    public long getReconciled() {
+        return reconciled;
+    }
+
+    public void setReconciled(long reconciled) {
+        this.reconciled = reconciled;
+    }
+
+    public long getDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(long deleted) {
+        this.deleted = deleted;
+    }
+
+    public ZonedDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(ZonedDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public ZonedDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(ZonedDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    @Override
+    public String toString() {
+        return "ShardMoveDTO{" +
+            "id='" + id + "'" +
+            ", domain='" + domain + "'" +
+            ", from='" + from + "'" +
+            ", to='" + to + "'" +
+            ", state=" + state +
+            ", phase=" + phase +
+            ", copied=" + copied +
+            ", reconciled=" + reconciled +
+            ", deleted=" + deleted +
+            ", startedAt=" + startedAt +
+            ", finishedAt=" + finishedAt +
+            ", error='" + error + "'" +
+            '}';
+    }
+}
@@ -0,0 +1,44 @@
+package com.innvo.web.rest.dto;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.io.Serializable;
+
+/**
+ * The domain to move, with its events and alerts, and the shard to move it to.
+ */
+public class ShardMoveRequestDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @NotNull
+    @Size(max = 25)
+    private String domain;
+
+    @NotNull
+    private String shard;
+
+    public String getDomain() {
+        return domain;
+    }
+
+    public void setDomain(String domain) {
+        this.domain = domain;
+    }
+
+    public String getShard() {
+        return shard;
+    }
+
+    public void setShard(String shard) {
+        this.shard = shard;
+    }
+
+    @Override
+    public String toString() {
+        return "ShardMoveRequestDTO{" +
+            "domain='" + domain + "'" +
+            ", shard='" + shard + "'" +
+            '}';
+    }
+}
@@ -0,0 +1,17 @@
+package com.innvo.web.rest.errors;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when the If-Match header of a request does not match the current ETag of the entity; translated to a 412.
+ */
+@ResponseStatus(value = HttpStatus.PRECONDITION_FAILED, reason = "Precondition failed")
+public class PreconditionFailedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public PreconditionFailedException(String message) {
+        super(message);
+    }
+}
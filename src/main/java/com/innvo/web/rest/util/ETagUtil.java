@@ -0,0 +1,24 @@
+package com.innvo.web.rest.util;
+
+/**
+ * Utility class for the validators of conditional requests.
+ */
+public final class ETagUtil {
+
+    private ETagUtil() {
+    }
+
+    /**
+     * @return the ETag of one entity, from its optimistic locking version
+     */
+    public static String entityTag(String entityName, Long id, Long version) {
+        return "\"" + entityName + "-" + id + "-" + version + "\"";
+    }
+
+    /**
+     * @return the ETag of the lists of an entity, from its modification watermark
+     */
+    public static String listTag(String entityName, long watermark) {
+        return "\"" + entityName + "-list-" + watermark + "\"";
+    }
+}
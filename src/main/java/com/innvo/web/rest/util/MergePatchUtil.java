@@ -0,0 +1,41 @@
+package com.innvo.web.rest.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Utility class for JSON Merge Patch (RFC 7396) requests.
+ */
+public final class MergePatchUtil {
+
+    public static final String APPLICATION_MERGE_PATCH_JSON_VALUE = "application/merge-patch+json";
+
+    private static final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+    private MergePatchUtil() {
+    }
+
+    /**
+     * @return true if the patch is an object which does not change the id of the entity
+     */
+    public static boolean isValid(JsonNode patch, Long id) {
+        return patch.isObject() && (!patch.has("id") || (patch.get("id").canConvertToLong() && patch.get("id").asLong() == id));
+    }
+
+    /**
+     * Applies a patch to an entity: the members of the patch replace the properties of the same name, and null
+     * members clear them. Related entities are replaced as a whole.
+     *
+     * @return the constraint violations of the patched entity
+     */
+    public static <T> Set<ConstraintViolation<T>> apply(ObjectMapper objectMapper, T entity, JsonNode patch) throws IOException {
+        objectMapper.readerForUpdating(entity).readValue(patch);
+        return validator.validate(entity);
+    }
+}
@@ -0,0 +1,132 @@
+package com.innvo.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+import com.innvo.config.ElasticSearchConfiguration.CustomEntityMapper;
+import com.innvo.domain.Alert;
+import com.innvo.domain.Event;
+import com.innvo.domain.util.FixedIsoZonedDateTimeDeserializer;
+import com.innvo.domain.util.FixedIsoZonedDateTimeSerializer;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+
+import static com.innvo.config.JacksonConfiguration.ISO_FIXED_FORMAT;
+
+/**
+ * Compares the round trips of a batch of events and of alerts through the Elasticsearch entity mapper: with the
+ * reflective accessors and intermediate strings, as before, and with Afterburner and the document bytes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class EntityMappingBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private CustomEntityMapper reflectionMapper;
+
+    private CustomEntityMapper afterburnerMapper;
+
+    private Event[] events;
+
+    private Alert[] alerts;
+
+    @Setup
+    public void setup() {
+        reflectionMapper = new CustomEntityMapper(objectMapper());
+        afterburnerMapper = new CustomEntityMapper(objectMapper().registerModule(new AfterburnerModule()));
+
+        ZonedDateTime start = ZonedDateTime.of(2016, 7, 1, 0, 0, 0, 0, ZoneId.systemDefault());
+        events = new Event[BATCH_SIZE];
+        alerts = new Alert[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            Event event = new Event();
+            event.setId(1000L + i);
+            event.setVersion(0L);
+            event.setName("sample_log_event_" + i);
+            event.setDescription("GET /api/assets/" + i + " HTTP/1.1");
+            event.setCategory("LOG");
+            event.setSubcategory("ACCESS");
+            event.setType("HTTP");
+            event.setSubtype("GET");
+            event.setStartdatetime(start.plusSeconds(i));
+            event.setEnddatetime(start.plusSeconds(i).plusNanos(250_000_000L));
+            event.setStatus("Active");
+            event.setLastmodifiedby("echasin");
+            event.setLastmodifieddatetime(start.plusMinutes(i));
+            event.setDomain("DEMO");
+            events[i] = event;
+
+            Alert alert = new Alert();
+            alert.setId(1000L + i);
+            alert.setVersion(0L);
+            alert.setAsset_id(100L + i % 10);
+            alert.setName("sample_alert_" + i);
+            alert.setDescription("Repeated failed logins on asset " + i % 10);
+            alert.setCategory("SECURITY");
+            alert.setSubcategory("AUTHENTICATION");
+            alert.setType("LOGIN");
+            alert.setSubtype("FAILURE");
+            alert.setStartdatetime(start.plusSeconds(i));
+            alert.setEnddatetime(start.plusSeconds(i + 60));
+            alert.setStatus("Open");
+            alert.setLastmodifiedby("echasin");
+            alert.setLastmodifieddatetime(start.plusMinutes(i));
+            alert.setDomain("DEMO");
+            alerts[i] = alert;
+        }
+    }
+
+    private static ObjectMapper objectMapper() {
+        JavaTimeModule module = new JavaTimeModule();
+        module.addSerializer(ZonedDateTime.class, new FixedIsoZonedDateTimeSerializer(ISO_FIXED_FORMAT));
+        module.addDeserializer(ZonedDateTime.class, new FixedIsoZonedDateTimeDeserializer());
+        return new ObjectMapper().registerModule(module).disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+
+    @Benchmark
+    public void eventsThroughStrings(Blackhole blackhole) throws IOException {
+        for (Event event : events) {
+            blackhole.consume(reflectionMapper.mapToObject(reflectionMapper.mapToString(event), Event.class));
+        }
+    }
+
+    @Benchmark
+    public void eventsThroughBytes(Blackhole blackhole) throws IOException {
+        for (Event event : events) {
+            blackhole.consume(afterburnerMapper.mapToObject(new BytesArray(afterburnerMapper.mapToBytes(event)), Event.class));
+        }
+    }
+
+    @Benchmark
+    public void alertsThroughStrings(Blackhole blackhole) throws IOException {
+        for (Alert alert : alerts) {
+            blackhole.consume(reflectionMapper.mapToObject(reflectionMapper.mapToString(alert), Alert.class));
+        }
+    }
+
+    @Benchmark
+    public void alertsThroughBytes(Blackhole blackhole) throws IOException {
+        for (Alert alert : alerts) {
+            blackhole.consume(afterburnerMapper.mapToObject(new BytesArray(afterburnerMapper.mapToBytes(alert)), Alert.class));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(EntityMappingBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,141 @@
+package com.innvo.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Event inserts as Hibernate issues them, in rows per second: one id from the sequence and one statement per row,
+ * as before, against ids allocated 50 at a time with the pooled-lo optimizer and statements sent in JDBC batches
+ * of 50. Runs on an in-memory H2 database, or on PostgreSQL with
+ * -p url=jdbc:postgresql://localhost:5432/adap_event -p username=adap_event -p password=...
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(EventInsertBenchmark.ROWS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class EventInsertBenchmark {
+
+    static final int ROWS = 1000;
+
+    private static final int BATCH_SIZE = 50;
+
+    private static final String INSERT = "INSERT INTO benchmark_event (id, version, name, category, domain, startdatetime)"
+        + " VALUES (?, ?, ?, ?, ?, ?)";
+
+    @Param({"jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1"})
+    private String url;
+
+    @Param({"sa"})
+    private String username;
+
+    @Param({""})
+    private String password;
+
+    private Connection connection;
+
+    private long row;
+
+    @Setup
+    public void setup() throws SQLException {
+        connection = DriverManager.getConnection(url, username, password);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS benchmark_event");
+            statement.execute("DROP SEQUENCE IF EXISTS benchmark_single_sequence");
+            statement.execute("DROP SEQUENCE IF EXISTS benchmark_pooled_sequence");
+            statement.execute("CREATE TABLE benchmark_event (id BIGINT PRIMARY KEY, version BIGINT NOT NULL,"
+                + " name VARCHAR(100), category VARCHAR(50), domain VARCHAR(25), startdatetime TIMESTAMP)");
+            statement.execute("CREATE SEQUENCE benchmark_single_sequence START WITH 1 INCREMENT BY 1");
+            statement.execute("CREATE SEQUENCE benchmark_pooled_sequence START WITH 1 INCREMENT BY " + BATCH_SIZE);
+        }
+        connection.setAutoCommit(false);
+    }
+
+    @TearDown(Level.Iteration)
+    public void truncate() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DELETE FROM benchmark_event");
+        }
+        connection.commit();
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE benchmark_event");
+            statement.execute("DROP SEQUENCE benchmark_single_sequence");
+            statement.execute("DROP SEQUENCE benchmark_pooled_sequence");
+        }
+        connection.commit();
+        connection.close();
+    }
+
+    @Benchmark
+    public void rowByRow() throws SQLException {
+        try (PreparedStatement nextval = connection.prepareStatement("SELECT nextval('benchmark_single_sequence')");
+             PreparedStatement insert = connection.prepareStatement(INSERT)) {
+            for (int i = 0; i < ROWS; i++) {
+                bind(insert, nextValue(nextval));
+                insert.executeUpdate();
+            }
+        }
+        connection.commit();
+    }
+
+    @Benchmark
+    public void pooledLoBatched() throws SQLException {
+        try (PreparedStatement nextval = connection.prepareStatement("SELECT nextval('benchmark_pooled_sequence')");
+             PreparedStatement insert = connection.prepareStatement(INSERT)) {
+            long next = 0;
+            long limit = 0;
+            for (int i = 0; i < ROWS; i++) {
+                if (next == limit) {
+                    // pooled-lo: the sequence value is the lowest id of the allocated block
+                    next = nextValue(nextval);
+                    limit = next + BATCH_SIZE;
+                }
+                bind(insert, next++);
+                insert.addBatch();
+                if ((i + 1) % BATCH_SIZE == 0) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+        connection.commit();
+    }
+
+    private static long nextValue(PreparedStatement nextval) throws SQLException {
+        try (ResultSet resultSet = nextval.executeQuery()) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private void bind(PreparedStatement insert, long id) throws SQLException {
+        row++;
+        insert.setLong(1, id);
+        insert.setLong(2, 0);
+        insert.setString(3, "Event " + row);
+        insert.setString(4, "category" + (row % 10));
+        insert.setString(5, "domain" + (row % 5));
+        insert.setTimestamp(6, new Timestamp(1467331200000L + row * 100));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(EventInsertBenchmark.class.getSimpleName()).build()).run();
+    }
+}
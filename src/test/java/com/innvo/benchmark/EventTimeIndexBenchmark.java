@@ -0,0 +1,82 @@
+package com.innvo.benchmark;
+
+import com.innvo.service.util.TimeIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Range lookups and inserts on a time index of 10 million events, one every 100 ms with some out of order
+ * arrivals. Heap used by the index is printed once per fork.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class EventTimeIndexBenchmark {
+
+    private static final long START = 1467331200000L;
+
+    private static final long INTERVAL_MILLIS = 100L;
+
+    private static final long WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(6);
+
+    @Param({"10000000"})
+    private int events;
+
+    private TimeIndex index;
+
+    private Random random;
+
+    private long end;
+
+    @Setup
+    public void setup() {
+        random = new Random(42);
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long before = runtime.totalMemory() - runtime.freeMemory();
+        index = new TimeIndex();
+        for (long id = 1; id <= events; id++) {
+            long time = START + id * INTERVAL_MILLIS;
+            if (random.nextInt(100) == 0) {
+                time -= random.nextInt(60000);
+            }
+            index.add(time, id);
+        }
+        end = START + events * INTERVAL_MILLIS;
+        System.gc();
+        long after = runtime.totalMemory() - runtime.freeMemory();
+        System.out.printf("%nTime index of %d events: %d runs, %d bytes of entries, %d bytes of heap%n",
+            events, index.runCount(), index.memoryBytes(), after - before);
+    }
+
+    @Benchmark
+    public long[] findSixMinutes() {
+        long from = START + (long) (random.nextDouble() * (end - START - WINDOW_MILLIS));
+        return index.findIds(from, from + WINDOW_MILLIS);
+    }
+
+    @Benchmark
+    public long[] findOneSecond() {
+        long from = START + (long) (random.nextDouble() * (end - START - 1000));
+        return index.findIds(from, from + 1000);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void add() {
+        end += INTERVAL_MILLIS;
+        index.add(end, events + end);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(EventTimeIndexBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,133 @@
+package com.innvo.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.datatype.jsr310.ser.ZonedDateTimeSerializer;
+import com.innvo.domain.Event;
+import com.innvo.web.rest.converter.FramedStreamCodec;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+
+import static com.innvo.config.JacksonConfiguration.ISO_FIXED_FORMAT;
+
+/**
+ * Compares JSON, Smile and the framed Smile stream for a batch of events: encoding and parsing time,
+ * and bytes on the wire (printed once per fork).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class EventWireFormatBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private ObjectMapper jsonMapper;
+
+    private ObjectMapper smileMapper;
+
+    private FramedStreamCodec framedStreamCodec;
+
+    private Event[] events;
+
+    private byte[] json;
+
+    private byte[] smile;
+
+    private byte[] frames;
+
+    @Setup
+    public void setup() throws IOException {
+        jsonMapper = configure(new ObjectMapper());
+        smileMapper = configure(new ObjectMapper(new SmileFactory()));
+        framedStreamCodec = new FramedStreamCodec(smileMapper);
+
+        ZonedDateTime start = ZonedDateTime.of(2016, 7, 1, 0, 0, 0, 0, ZoneId.of("UTC"));
+        events = new Event[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            Event event = new Event();
+            event.setId(1000L + i);
+            event.setName("sample_log_event_" + i);
+            event.setDescription("GET /pentaho/api/repos/sample_" + i + " HTTP/1.1 200");
+            event.setCategory("LOG");
+            event.setType("HTTP");
+            event.setStartdatetime(start.plusSeconds(i));
+            event.setStatus("Active");
+            event.setLastmodifiedby("echasin");
+            event.setLastmodifieddatetime(start);
+            event.setDomain("DEMO");
+            events[i] = event;
+        }
+        json = jsonMapper.writeValueAsBytes(events);
+        smile = smileMapper.writeValueAsBytes(events);
+        frames = writeFrames();
+        System.out.printf("%nBytes for %d events: json=%d smile=%d frames=%d%n",
+            BATCH_SIZE, json.length, smile.length, frames.length);
+    }
+
+    private static ObjectMapper configure(ObjectMapper objectMapper) {
+        JavaTimeModule module = new JavaTimeModule();
+        module.addSerializer(ZonedDateTime.class, new ZonedDateTimeSerializer(ISO_FIXED_FORMAT));
+        objectMapper.registerModule(module);
+        objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        return objectMapper;
+    }
+
+    @Benchmark
+    public byte[] writeJson() throws IOException {
+        return jsonMapper.writeValueAsBytes(events);
+    }
+
+    @Benchmark
+    public byte[] writeSmile() throws IOException {
+        return smileMapper.writeValueAsBytes(events);
+    }
+
+    @Benchmark
+    public byte[] writeFrames() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(smile.length + BATCH_SIZE * 4);
+        try (FramedStreamCodec.FrameWriter<Event> writer = framedStreamCodec.writer(out, Event.class)) {
+            for (Event event : events) {
+                writer.write(event);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public Event[] readJson() throws IOException {
+        return jsonMapper.readValue(json, Event[].class);
+    }
+
+    @Benchmark
+    public Event[] readSmile() throws IOException {
+        return smileMapper.readValue(smile, Event[].class);
+    }
+
+    @Benchmark
+    public void readFrames(Blackhole blackhole) throws IOException {
+        FramedStreamCodec.FrameReader<Event> reader = framedStreamCodec.reader(new ByteArrayInputStream(frames), Event.class);
+        Event event;
+        while ((event = reader.next()) != null) {
+            blackhole.consume(event);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(EventWireFormatBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,152 @@
+package com.innvo.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.datatype.jsr310.ser.ZonedDateTimeSerializer;
+import com.innvo.domain.Event;
+import com.innvo.domain.util.FixedIsoZonedDateTimeDeserializer;
+import com.innvo.domain.util.FixedIsoZonedDateTimeSerializer;
+import com.innvo.domain.util.JSR310DateConverters.DateToZonedDateTimeConverter;
+import com.innvo.domain.util.JSR310DateConverters.ZonedDateTimeToDateConverter;
+import com.innvo.domain.util.JSR310PersistenceConverters.ZonedDateTimeConverter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static com.innvo.config.JacksonConfiguration.ISO_FIXED_FORMAT;
+
+/**
+ * Compares the conversions of the three dates of a bulk load of events, to and from the Timestamp bound by
+ * Hibernate and to and from JSON: through a Date and the java.time formatter, as before, and with the direct
+ * converter and the fixed format writer and parser.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ZonedDateTimeCodecBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final ZonedDateTimeConverter converter = new ZonedDateTimeConverter();
+
+    private ObjectMapper formatterMapper;
+
+    private ObjectMapper fixedMapper;
+
+    private Event[] events;
+
+    private Timestamp[] timestamps;
+
+    private byte[] json;
+
+    @Setup
+    public void setup() throws IOException {
+        JavaTimeModule formatterModule = new JavaTimeModule();
+        formatterModule.addSerializer(ZonedDateTime.class, new ZonedDateTimeSerializer(ISO_FIXED_FORMAT));
+        formatterMapper = new ObjectMapper().registerModule(formatterModule)
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        JavaTimeModule fixedModule = new JavaTimeModule();
+        fixedModule.addSerializer(ZonedDateTime.class, new FixedIsoZonedDateTimeSerializer(ISO_FIXED_FORMAT));
+        fixedModule.addDeserializer(ZonedDateTime.class, new FixedIsoZonedDateTimeDeserializer());
+        fixedMapper = new ObjectMapper().registerModule(fixedModule)
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+        ZonedDateTime start = ZonedDateTime.of(2016, 7, 1, 0, 0, 0, 0, ZoneId.systemDefault());
+        events = new Event[BATCH_SIZE];
+        timestamps = new Timestamp[BATCH_SIZE * 3];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            Event event = new Event();
+            event.setId(1000L + i);
+            event.setName("sample_log_event_" + i);
+            event.setCategory("LOG");
+            event.setType("HTTP");
+            event.setStartdatetime(start.plusNanos(i * 1_000_123_000L));
+            event.setEnddatetime(start.plusNanos(i * 1_000_123_000L + 250_000_000L));
+            event.setStatus("Active");
+            event.setLastmodifiedby("echasin");
+            event.setLastmodifieddatetime(start.plusMinutes(i));
+            event.setDomain("DEMO");
+            events[i] = event;
+            timestamps[3 * i] = converter.convertToDatabaseColumn(event.getStartdatetime());
+            timestamps[3 * i + 1] = converter.convertToDatabaseColumn(event.getEnddatetime());
+            timestamps[3 * i + 2] = converter.convertToDatabaseColumn(event.getLastmodifieddatetime());
+        }
+        json = formatterMapper.writeValueAsBytes(events);
+    }
+
+    /**
+     * The former converter returned a Date, which Hibernate then copied into a Timestamp.
+     */
+    @Benchmark
+    public void toColumnThroughDate(Blackhole blackhole) {
+        for (Event event : events) {
+            blackhole.consume(toTimestamp(ZonedDateTimeToDateConverter.INSTANCE.convert(event.getStartdatetime())));
+            blackhole.consume(toTimestamp(ZonedDateTimeToDateConverter.INSTANCE.convert(event.getEnddatetime())));
+            blackhole.consume(toTimestamp(ZonedDateTimeToDateConverter.INSTANCE.convert(event.getLastmodifieddatetime())));
+        }
+    }
+
+    private static Timestamp toTimestamp(Date date) {
+        return new Timestamp(date.getTime());
+    }
+
+    @Benchmark
+    public void toColumnDirect(Blackhole blackhole) {
+        for (Event event : events) {
+            blackhole.consume(converter.convertToDatabaseColumn(event.getStartdatetime()));
+            blackhole.consume(converter.convertToDatabaseColumn(event.getEnddatetime()));
+            blackhole.consume(converter.convertToDatabaseColumn(event.getLastmodifieddatetime()));
+        }
+    }
+
+    @Benchmark
+    public void fromColumnThroughDate(Blackhole blackhole) {
+        for (Timestamp timestamp : timestamps) {
+            blackhole.consume(DateToZonedDateTimeConverter.INSTANCE.convert(timestamp));
+        }
+    }
+
+    @Benchmark
+    public void fromColumnDirect(Blackhole blackhole) {
+        for (Timestamp timestamp : timestamps) {
+            blackhole.consume(converter.convertToEntityAttribute(timestamp));
+        }
+    }
+
+    @Benchmark
+    public byte[] writeJsonFormatter() throws IOException {
+        return formatterMapper.writeValueAsBytes(events);
+    }
+
+    @Benchmark
+    public byte[] writeJsonFixed() throws IOException {
+        return fixedMapper.writeValueAsBytes(events);
+    }
+
+    @Benchmark
+    public Event[] readJsonFormatter() throws IOException {
+        return formatterMapper.readValue(json, Event[].class);
+    }
+
+    @Benchmark
+    public Event[] readJsonFixed() throws IOException {
+        return fixedMapper.readValue(json, Event[].class);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ZonedDateTimeCodecBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * JMH micro-benchmarks, run with the main method of each benchmark class.
+ */
+package com.innvo.benchmark;
@@ -0,0 +1,114 @@
+package com.innvo.config.jdbc;
+
+import com.codahale.metrics.MetricRegistry;
+import com.innvo.config.ApplicationProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the routing of the read-only transactions to a replica, and of the others, or of all of them
+ * while the replica lags too much, to the primary.
+ *
+ * @see ReplicaRoutingDataSource
+ */
+public class ReplicaRoutingDataSourceTest {
+
+    private DriverManagerDataSource primary;
+
+    private String replicaUrl;
+
+    private ApplicationProperties.Replicas properties;
+
+    private MetricRegistry metricRegistry;
+
+    private ReplicaRoutingDataSource routingDataSource;
+
+    @Before
+    public void setup() {
+        primary = database("jdbc:h2:mem:primary-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "primary");
+        replicaUrl = "jdbc:h2:mem:replica-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+        database(replicaUrl, "replica");
+
+        ApplicationProperties.Replicas.Pool pool = new ApplicationProperties.Replicas.Pool();
+        pool.setUrl(replicaUrl);
+        pool.setUsername("sa");
+        pool.setPassword("");
+        pool.setMaximumPoolSize(2);
+        properties = new ApplicationProperties.Replicas();
+        properties.setEnabled(true);
+        properties.setMaxLagSeconds(5);
+        properties.setLagCheckMillis(60000);
+        properties.setPools(Collections.singletonList(pool));
+        metricRegistry = new MetricRegistry();
+    }
+
+    @After
+    public void tearDown() {
+        if (routingDataSource != null) {
+            routingDataSource.close();
+        }
+    }
+
+    @Test
+    public void routeTheReadOnlyTransactionsToTheReplica() {
+        properties.setLagQuery("SELECT 0");
+
+        assertThat(databaseRead(true)).isEqualTo("replica");
+        assertThat(databaseRead(false)).isEqualTo("primary");
+        assertThat(meter("replica-1", "connections")).isEqualTo(1);
+    }
+
+    @Test
+    public void fallBackToThePrimaryWhileTheReplicaLags() {
+        properties.setLagQuery("SELECT 10");
+
+        assertThat(databaseRead(true)).isEqualTo("primary");
+        assertThat(metricRegistry.meter(MetricRegistry.name(ReplicaRoutingDataSource.class, "fallbacks")).getCount()).isEqualTo(1);
+        assertThat(metricRegistry.getGauges().get(MetricRegistry.name(ReplicaRoutingDataSource.class, "replica-1", "lag-seconds"))
+            .getValue()).isEqualTo(10.0);
+    }
+
+    @Test
+    public void fallBackToThePrimaryWhenTheLagCannotBeMeasured() {
+        properties.setLagQuery("SELECT lag FROM missing_table");
+
+        assertThat(databaseRead(true)).isEqualTo("primary");
+    }
+
+    /**
+     * @return the name of the database read in a transaction, through the lazy proxy used by the application
+     */
+    private String databaseRead(boolean readOnly) {
+        if (routingDataSource == null) {
+            routingDataSource = new ReplicaRoutingDataSource(primary, properties, metricRegistry);
+        }
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        transactionTemplate.setReadOnly(readOnly);
+        return transactionTemplate.execute(status ->
+            new JdbcTemplate(dataSource).queryForObject("SELECT name FROM database_name", String.class));
+    }
+
+    private long meter(String pool, String name) {
+        return metricRegistry.meter(MetricRegistry.name(ReplicaRoutingDataSource.class, pool, name)).getCount();
+    }
+
+    private static DriverManagerDataSource database(String url, String name) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(url, "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE database_name (name VARCHAR(25))");
+        jdbcTemplate.update("INSERT INTO database_name (name) VALUES (?)", name);
+        return dataSource;
+    }
+}
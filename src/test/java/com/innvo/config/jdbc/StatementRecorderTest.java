@@ -0,0 +1,143 @@
+package com.innvo.config.jdbc;
+
+import com.codahale.metrics.MetricRegistry;
+import com.innvo.config.ApplicationProperties;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the shapes of the statements, their literals and lists folded into placeholders, and for the
+ * executions counted and timed by shape, the slow queries and the statements repeated within a request.
+ *
+ * @see StatementRecorder
+ */
+public class StatementRecorderTest {
+
+    private static final String SELECT_BY_ID = "select event0_.id, event0_.name from event event0_ where event0_.id=?";
+
+    private MetricRegistry metricRegistry;
+
+    private ApplicationProperties.JdbcInstrumentation properties;
+
+    @Before
+    public void setup() {
+        metricRegistry = new MetricRegistry();
+        properties = new ApplicationProperties.JdbcInstrumentation();
+        properties.setSlowQueryMillis(100);
+        properties.setSlowQueryBufferSize(2);
+        properties.setRepeatedStatementThreshold(3);
+    }
+
+    @Test
+    public void foldTheLiterals() {
+        assertThat(StatementRecorder.normalize("select * from event where name = 'it''s' and domain='DEMO'"))
+            .isEqualTo("select * from event where name = ? and domain=?");
+        assertThat(StatementRecorder.normalize("select * from event where id = 42 and score > -1.5 limit 10"))
+            .isEqualTo("select * from event where id = ? and score > ? limit ?");
+        // Not the digits of the identifiers
+        assertThat(StatementRecorder.normalize("select event0_.id from event event0_ where event0_.version=1"))
+            .isEqualTo("select event0_.id from event event0_ where event0_.version=?");
+    }
+
+    @Test
+    public void foldTheInLists() {
+        assertThat(StatementRecorder.normalize("select * from event where id in (1, 2, 3)"))
+            .isEqualTo("select * from event where id in (?)");
+        assertThat(StatementRecorder.normalize("select * from event where id in (?,?,?,?) and status in ( 'A' , 'B' )"))
+            .isEqualTo("select * from event where id in (?) and status in (?)");
+        assertThat(StatementRecorder.normalize("select * from event where id in (?)"))
+            .isEqualTo("select * from event where id in (?)");
+    }
+
+    @Test
+    public void foldTheWhitespace() {
+        assertThat(StatementRecorder.normalize("  select *\n  from event\twhere id = 1 "))
+            .isEqualTo("select * from event where id = ?");
+    }
+
+    @Test
+    public void giveTheSameShapeToTheStatementsOfDifferentLiterals() {
+        StatementRecorder recorder = new StatementRecorder(metricRegistry, properties);
+
+        assertThat(recorder.shape("select * from event where id in (1, 2)"))
+            .isEqualTo(recorder.shape("select * from event where id in (3, 4, 5, 6)"));
+    }
+
+    @Test
+    public void countAndTimeTheExecutionsByShape() {
+        StatementRecorder recorder = new StatementRecorder(metricRegistry, properties);
+        String shape = recorder.shape("select * from event where id = 1");
+
+        recorder.executed(shape, null, TimeUnit.MILLISECONDS.toNanos(10));
+        recorder.executed(recorder.shape("select * from event where id = 2"), null, TimeUnit.MILLISECONDS.toNanos(30));
+        recorder.executed(recorder.shape("select * from alert where id = 2"), null, TimeUnit.MILLISECONDS.toNanos(5));
+        recorder.fetched(shape, 1, TimeUnit.MILLISECONDS.toNanos(1));
+        recorder.fetched(shape, 3, TimeUnit.MILLISECONDS.toNanos(2));
+
+        assertThat(metricRegistry.timer(metric(shape, "execution")).getCount()).isEqualTo(2);
+        assertThat(metricRegistry.timer(metric(shape, "execution")).getSnapshot().getMax())
+            .isEqualTo(TimeUnit.MILLISECONDS.toNanos(30));
+        assertThat(metricRegistry.timer(metric("select * from alert where id = ?", "execution")).getCount()).isEqualTo(1);
+        assertThat(metricRegistry.histogram(metric(shape, "rows")).getSnapshot().getMax()).isEqualTo(3);
+        assertThat(metricRegistry.timer(metric(shape, "fetch")).getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void keepTheLatestSlowQueries() {
+        StatementRecorder recorder = new StatementRecorder(metricRegistry, properties);
+        Map<Integer, Object> parameters = new LinkedHashMap<>();
+        parameters.put(1, 42L);
+        parameters.put(2, null);
+
+        recorder.executed(SELECT_BY_ID, parameters, TimeUnit.MILLISECONDS.toNanos(150));
+        recorder.executed("select 1", null, TimeUnit.MILLISECONDS.toNanos(50));
+        recorder.executed("select 2", null, TimeUnit.MILLISECONDS.toNanos(100));
+        recorder.executed("select 3", null, TimeUnit.MILLISECONDS.toNanos(200));
+
+        // Bounded by the size of the buffer
+        assertThat(recorder.getSlowQueries()).extracting(StatementRecorder.SlowQuery::getSql)
+            .containsExactly("select 3", "select 2");
+
+        recorder = new StatementRecorder(metricRegistry, properties);
+        recorder.executed(SELECT_BY_ID, parameters, TimeUnit.MILLISECONDS.toNanos(150));
+        StatementRecorder.SlowQuery slowQuery = recorder.getSlowQueries().get(0);
+        assertThat(slowQuery.getMillis()).isEqualTo(150);
+        assertThat(slowQuery.getParameters()).containsExactly("1=Long:42", "2=null");
+    }
+
+    @Test
+    public void reportTheStatementsRepeatedWithinARequest() {
+        StatementRecorder recorder = new StatementRecorder(metricRegistry, properties);
+
+        recorder.beginRequest();
+        for (int i = 0; i < 3; i++) {
+            recorder.executed(SELECT_BY_ID, null, 0);
+        }
+        recorder.executed("select * from alert", null, 0);
+        recorder.endRequest("GET /api/events");
+
+        assertThat(recorder.getRepeatedStatements()).hasSize(1);
+        StatementRecorder.RepeatedStatement repeated = recorder.getRepeatedStatements().get(0);
+        assertThat(repeated.getRequest()).isEqualTo("GET /api/events");
+        assertThat(repeated.getSql()).isEqualTo(SELECT_BY_ID);
+        assertThat(repeated.getCount()).isEqualTo(3);
+        assertThat(metricRegistry.meter(MetricRegistry.name(StatementRecorder.class, "repeated-statements")).getCount()).isEqualTo(1);
+
+        // Not counted outside of a request
+        for (int i = 0; i < 3; i++) {
+            recorder.executed(SELECT_BY_ID, null, 0);
+        }
+        recorder.endRequest("GET /api/events");
+        assertThat(recorder.getRepeatedStatements()).hasSize(1);
+    }
+
+    private static String metric(String shape, String name) {
+        return MetricRegistry.name(StatementRecorder.class, shape, name);
+    }
+}
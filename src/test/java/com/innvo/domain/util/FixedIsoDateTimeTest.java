@@ -0,0 +1,178 @@
+package com.innvo.domain.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Random;
+
+import static com.innvo.config.JacksonConfiguration.ISO_FIXED_FORMAT;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test class for the fixed format of the dates of the API, against the formatter it replaces, and for the
+ * serializer and deserializer which use it.
+ *
+ * @see FixedIsoDateTime
+ * @see FixedIsoZonedDateTimeSerializer
+ * @see FixedIsoZonedDateTimeDeserializer
+ */
+public class FixedIsoDateTimeTest {
+
+    private static final ZonedDateTime MIN = ZonedDateTime.of(1, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    private static final ZonedDateTime MAX = ZonedDateTime.of(9999, 12, 31, 23, 59, 59, 999_000_000, ZoneOffset.UTC);
+
+    private final ObjectMapper objectMapper = objectMapper();
+
+    @Test
+    public void writeAndParseLikeTheFormatter() {
+        Random random = new Random(42);
+        long min = MIN.toEpochSecond();
+        long max = MAX.toEpochSecond();
+        for (int i = 0; i < 100000; i++) {
+            long epochSecond = min + (long) (random.nextDouble() * (max - min));
+            Instant instant = Instant.ofEpochSecond(epochSecond, random.nextInt(1_000_000_000));
+            assertRoundTrip(ZonedDateTime.ofInstant(instant, ZoneOffset.UTC));
+        }
+    }
+
+    @Test
+    public void writeAndParseLeapDays() {
+        for (int year : new int[]{4, 1600, 1904, 1968, 2000, 2016, 2400, 9996}) {
+            assertRoundTrip(ZonedDateTime.of(year, 2, 29, 12, 0, 0, 0, ZoneOffset.UTC));
+            assertRoundTrip(ZonedDateTime.of(year, 3, 1, 0, 0, 0, 0, ZoneOffset.UTC));
+            assertRoundTrip(ZonedDateTime.of(year, 12, 31, 23, 59, 59, 999_000_000, ZoneOffset.UTC));
+        }
+        assertThat(FixedIsoDateTime.parse("1900-02-29T00:00:00.000Z")).isNull();
+        assertThat(FixedIsoDateTime.parse("2100-02-29T00:00:00.000Z")).isNull();
+        assertThat(FixedIsoDateTime.parse("2015-02-29T00:00:00.000Z")).isNull();
+        assertThat(FixedIsoDateTime.parse("2016-02-30T00:00:00.000Z")).isNull();
+    }
+
+    @Test
+    public void writeAndParseTheLimitsOfTheFormat() {
+        assertRoundTrip(MIN);
+        assertRoundTrip(MAX);
+        char[] buffer = new char[FixedIsoDateTime.LENGTH];
+        assertThat(FixedIsoDateTime.write(MIN.minusNanos(1), buffer, 0)).isEqualTo(-1);
+        assertThat(FixedIsoDateTime.write(MAX.plusNanos(1_000_000), buffer, 0)).isEqualTo(-1);
+        assertThat(FixedIsoDateTime.write(ZonedDateTime.of(-1, 6, 1, 0, 0, 0, 0, ZoneOffset.UTC), buffer, 0)).isEqualTo(-1);
+        assertThat(FixedIsoDateTime.parse("0000-12-31T23:59:59.999Z")).isNull();
+    }
+
+    @Test
+    public void writeAndParseInstantsBeforeTheEpoch() {
+        assertRoundTrip(ZonedDateTime.of(1969, 12, 31, 23, 59, 59, 999_000_000, ZoneOffset.UTC));
+        assertRoundTrip(ZonedDateTime.of(1970, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC));
+        assertRoundTrip(ZonedDateTime.of(1900, 1, 1, 0, 0, 0, 1_000_000, ZoneOffset.UTC));
+        assertRoundTrip(ZonedDateTime.of(1582, 10, 10, 6, 30, 0, 0, ZoneOffset.UTC));
+        assertRoundTrip(ZonedDateTime.of(100, 3, 1, 0, 0, 0, 0, ZoneOffset.UTC));
+    }
+
+    @Test
+    public void writeInUtcTruncatedToTheMillisecond() {
+        ZonedDateTime dateTime = ZonedDateTime.of(2016, 7, 1, 2, 30, 15, 123_999_999, ZoneId.of("Europe/Paris"));
+
+        assertThat(write(dateTime)).isEqualTo("2016-07-01T00:30:15.123Z");
+    }
+
+    @Test
+    public void writeAtAnOffset() {
+        char[] buffer = new char[FixedIsoDateTime.LENGTH + 3];
+
+        assertThat(FixedIsoDateTime.write(MAX, buffer, 2)).isEqualTo(FixedIsoDateTime.LENGTH);
+
+        assertThat(new String(buffer, 2, FixedIsoDateTime.LENGTH)).isEqualTo("9999-12-31T23:59:59.999Z");
+    }
+
+    @Test
+    public void rejectMalformedText() {
+        String[] malformed = {
+            "", "2016-07-01", "2016-07-01T00:00:00Z", "2016-07-01T00:00:00.000", "2016-07-01T00:00:00.000+00:00",
+            "2016-07-01T00:00:00.0000Z", "2016/07/01T00:00:00.000Z", "2016-07-01 00:00:00.000Z",
+            "2016-07-01T00:00:00,000Z", "2016-07-01T00:00:00.000z", "2016-07-01T00-00-00.000Z",
+            "2O16-07-01T00:00:00.000Z", "2016-07-01T00:00:00.0a0Z", "+016-07-01T00:00:00.000Z", "2016-7-01T00:00:00.000Z ",
+            "2016-00-01T00:00:00.000Z", "2016-13-01T00:00:00.000Z", "2016-07-00T00:00:00.000Z", "2016-07-32T00:00:00.000Z",
+            "2016-06-31T00:00:00.000Z", "2016-07-01T24:00:00.000Z", "2016-07-01T00:60:00.000Z", "2016-07-01T00:00:60.000Z"
+        };
+        for (String text : malformed) {
+            assertThat(FixedIsoDateTime.parseInstant(text)).as(text).isNull();
+        }
+    }
+
+    @Test
+    public void serializeLikeTheFormatter() throws IOException {
+        for (ZonedDateTime dateTime : new ZonedDateTime[]{MIN, MAX, ZonedDateTime.of(1969, 12, 31, 23, 59, 59, 0, ZoneOffset.UTC),
+            ZonedDateTime.of(2016, 2, 29, 12, 0, 0, 0, ZoneId.of("America/New_York"))}) {
+            assertThat(objectMapper.writeValueAsString(dateTime)).isEqualTo("\"" + ISO_FIXED_FORMAT.format(dateTime) + "\"");
+        }
+    }
+
+    @Test
+    public void serializeYearsOutOfTheFormatWithTheFormatter() throws IOException {
+        ZonedDateTime dateTime = ZonedDateTime.of(10000, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+        String json = objectMapper.writeValueAsString(dateTime);
+
+        assertThat(json).isEqualTo("\"" + ISO_FIXED_FORMAT.format(dateTime) + "\"");
+        assertThat(objectMapper.readValue(json, ZonedDateTime.class).toInstant()).isEqualTo(dateTime.toInstant());
+    }
+
+    @Test
+    public void deserializeTheFixedFormat() throws IOException {
+        ZonedDateTime dateTime = objectMapper.readValue("\"1969-12-31T23:59:59.999Z\"", ZonedDateTime.class);
+
+        assertThat(dateTime.toInstant()).isEqualTo(Instant.ofEpochMilli(-1));
+    }
+
+    @Test
+    public void deserializeOtherFormsWithTheFallback() throws IOException {
+        assertThat(objectMapper.readValue("\"2016-07-01T02:00:00+02:00\"", ZonedDateTime.class).toInstant())
+            .isEqualTo(Instant.parse("2016-07-01T00:00:00Z"));
+        assertThat(objectMapper.readValue("\"2016-07-01T00:00:00Z\"", ZonedDateTime.class).toInstant())
+            .isEqualTo(Instant.parse("2016-07-01T00:00:00Z"));
+        assertThat(objectMapper.readValue("\"2016-07-01T00:00:00.123456Z\"", ZonedDateTime.class).toInstant())
+            .isEqualTo(Instant.parse("2016-07-01T00:00:00.123456Z"));
+        assertThat(objectMapper.readValue("1467331200.000000000", ZonedDateTime.class).toInstant())
+            .isEqualTo(Instant.parse("2016-07-01T00:00:00Z"));
+    }
+
+    @Test
+    public void rejectMalformedTextInTheFallback() {
+        // Of the length of the format, so that it goes through the fixed parser first
+        assertThatThrownBy(() -> objectMapper.readValue("\"2016-13-01T00:00:00.000Z\"", ZonedDateTime.class))
+            .isInstanceOfAny(IOException.class, DateTimeException.class);
+        assertThatThrownBy(() -> objectMapper.readValue("\"2016-02-30T00:00:00.000Z\"", ZonedDateTime.class))
+            .isInstanceOfAny(IOException.class, DateTimeException.class);
+    }
+
+    private void assertRoundTrip(ZonedDateTime dateTime) {
+        String text = write(dateTime);
+        assertThat(text).isEqualTo(ISO_FIXED_FORMAT.format(dateTime));
+        Instant truncated = Instant.ofEpochSecond(dateTime.toEpochSecond(), dateTime.getNano() / 1_000_000 * 1_000_000L);
+        assertThat(FixedIsoDateTime.parseInstant(text)).as(text).isEqualTo(truncated);
+        assertThat(FixedIsoDateTime.parse(text)).isEqualTo(ZonedDateTime.ofInstant(truncated, ZoneOffset.UTC));
+    }
+
+    private static String write(ZonedDateTime dateTime) {
+        char[] buffer = new char[FixedIsoDateTime.LENGTH];
+        assertThat(FixedIsoDateTime.write(dateTime, buffer, 0)).isEqualTo(FixedIsoDateTime.LENGTH);
+        return new String(buffer);
+    }
+
+    private static ObjectMapper objectMapper() {
+        JavaTimeModule module = new JavaTimeModule();
+        module.addSerializer(ZonedDateTime.class, new FixedIsoZonedDateTimeSerializer(ISO_FIXED_FORMAT));
+        module.addDeserializer(ZonedDateTime.class, new FixedIsoZonedDateTimeDeserializer());
+        return new ObjectMapper().registerModule(module).disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+}
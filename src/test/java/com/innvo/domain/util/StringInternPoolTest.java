@@ -0,0 +1,88 @@
+package com.innvo.domain.util;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the canonical instances of the pool, its bound and eviction, and the saving it measures.
+ *
+ * @see StringInternPool
+ */
+public class StringInternPoolTest {
+
+    @Test
+    public void returnTheFirstInstanceOfAValue() {
+        StringInternPool pool = new StringInternPool(100);
+        String first = new String("Active");
+
+        assertThat(pool.intern(first)).isSameAs(first);
+        assertThat(pool.intern(new String("Active"))).isSameAs(first);
+        assertThat(pool.intern(null)).isNull();
+        assertThat(pool.hits()).isEqualTo(1);
+        assertThat(pool.misses()).isEqualTo(1);
+    }
+
+    @Test
+    public void neverGrowPastTheMaximumSize() {
+        StringInternPool pool = new StringInternPool(100);
+
+        for (int i = 0; i < 10000; i++) {
+            pool.intern("value " + i);
+            assertThat(pool.size()).isLessThanOrEqualTo(100);
+        }
+    }
+
+    @Test
+    public void keepTheValuesInUseAcrossGenerations() {
+        StringInternPool pool = new StringInternPool(100);
+        String active = new String("Active");
+        pool.intern(active);
+
+        // A burst of high-cardinality values, with the low-cardinality one still in use
+        for (int i = 0; i < 1000; i++) {
+            pool.intern("value " + i);
+            if (i % 10 == 0) {
+                assertThat(pool.intern(new String("Active"))).isSameAs(active);
+            }
+        }
+
+        assertThat(pool.intern(new String("Active"))).isSameAs(active);
+    }
+
+    @Test
+    public void evictTheValuesNotUsedForAGeneration() {
+        StringInternPool pool = new StringInternPool(100);
+        String closed = new String("Closed");
+        pool.intern(closed);
+
+        for (int i = 0; i < 100; i++) {
+            pool.intern("value " + i);
+        }
+
+        // Another instance becomes the canonical one
+        String again = new String("Closed");
+        assertThat(pool.intern(again)).isSameAs(again);
+    }
+
+    @Test
+    public void measureTheBytesOfTheReplacedDuplicates() {
+        StringInternPool pool = new StringInternPool(100);
+
+        for (int i = 0; i < 1000; i++) {
+            pool.intern(new String("Active"));
+            pool.intern(new String("DEMO"));
+        }
+
+        assertThat(pool.hits()).isEqualTo(1998);
+        // 24 bytes of String, and a char[] of 16 + 12 then 16 + 8 bytes aligned to 32 and 24
+        assertThat(StringInternPool.retainedBytes("Active")).isEqualTo(56);
+        assertThat(StringInternPool.retainedBytes("DEMO")).isEqualTo(48);
+        assertThat(pool.savedBytes()).isEqualTo(999 * 56 + 999 * 48);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectAPoolTooSmallForTwoGenerations() {
+        new StringInternPool(1);
+    }
+}
@@ -0,0 +1,139 @@
+package com.innvo.service;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.innvo.AdapEventApp;
+import com.innvo.domain.Event;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.IntegrationTest;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import javax.inject.Inject;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the restoration of the indices left in bulk-load mode by a crashed member, and for the documents
+ * rejected by Elasticsearch during a session.
+ *
+ * @see BulkLoadService#restoreAbandonedSessions()
+ * @see BulkLoadService.Session#getFailures()
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = AdapEventApp.class)
+@WebAppConfiguration
+@IntegrationTest
+public class BulkLoadServiceIntTest {
+
+    private static final String DEAD_MEMBER = "dead-member";
+
+    private static final String PROBE_FIELD = "bulkLoadProbe";
+
+    @Inject
+    private BulkLoadService bulkLoadService;
+
+    @Inject
+    private Client client;
+
+    @Inject
+    private ElasticsearchTemplate elasticsearchTemplate;
+
+    @Inject
+    private HazelcastInstance hazelcastInstance;
+
+    private IMap<String, BulkLoadService.SavedSettings> sessions;
+
+    @Before
+    public void initTest() {
+        if (!elasticsearchTemplate.indexExists(Event.class)) {
+            elasticsearchTemplate.createIndex(Event.class);
+        }
+        sessions = hazelcastInstance.getMap(BulkLoadService.SESSIONS_MAP_NAME);
+        // The settings of an index during a bulk-load session
+        updateSettings("-1", "0");
+    }
+
+    @After
+    public void tearDown() {
+        sessions.remove(BulkLoadService.EVENT_INDEX);
+        updateSettings("1s", "1");
+    }
+
+    @Test
+    public void restoreSessionOfDeadMember() {
+        sessions.put(BulkLoadService.EVENT_INDEX, new BulkLoadService.SavedSettings(DEAD_MEMBER, "2s", "1"));
+
+        bulkLoadService.restoreAbandonedSessions();
+
+        Settings settings = currentSettings();
+        assertThat(settings.get("index.refresh_interval")).isEqualTo("2s");
+        assertThat(settings.get("index.number_of_replicas")).isEqualTo("1");
+        assertThat(sessions.containsKey(BulkLoadService.EVENT_INDEX)).isFalse();
+    }
+
+    @Test
+    public void restoreLostSessionFromIndexDefinition() {
+        // The saved settings were lost with the cluster
+        bulkLoadService.restoreAbandonedSessions();
+
+        Settings settings = currentSettings();
+        assertThat(settings.get("index.refresh_interval")).isEqualTo("1s");
+        assertThat(settings.get("index.number_of_replicas")).isEqualTo("1");
+    }
+
+    @Test
+    public void keepSessionOfLiveMember() {
+        String localMember = hazelcastInstance.getCluster().getLocalMember().getUuid();
+        sessions.put(BulkLoadService.EVENT_INDEX, new BulkLoadService.SavedSettings(localMember, "2s", "1"));
+
+        bulkLoadService.restoreAbandonedSessions();
+
+        Settings settings = currentSettings();
+        assertThat(settings.get("index.refresh_interval")).isEqualTo("-1");
+        assertThat(settings.get("index.number_of_replicas")).isEqualTo("0");
+        assertThat(sessions.containsKey(BulkLoadService.EVENT_INDEX)).isTrue();
+    }
+
+    @Test
+    public void countTheDocumentsRejectedDuringASession() throws Exception {
+        // Mapped as a number by a first document
+        client.prepareIndex(BulkLoadService.EVENT_INDEX, BulkLoadService.EVENT_INDEX, "-1")
+            .setSource(Collections.singletonMap(PROBE_FIELD, 1)).setRefresh(true).get();
+        try {
+            BulkLoadService.Session session = bulkLoadService.open(BulkLoadService.EVENT_INDEX);
+            session.index(-2L, Collections.singletonMap(PROBE_FIELD, 2));
+            session.index(-3L, Collections.singletonMap(PROBE_FIELD, "not a number"));
+            session.close();
+
+            assertThat(session.getFailures()).isEqualTo(1);
+            assertThat(client.prepareGet(BulkLoadService.EVENT_INDEX, BulkLoadService.EVENT_INDEX, "-2").get().isExists()).isTrue();
+        } finally {
+            client.prepareDelete(BulkLoadService.EVENT_INDEX, BulkLoadService.EVENT_INDEX, "-1").get();
+            client.prepareDelete(BulkLoadService.EVENT_INDEX, BulkLoadService.EVENT_INDEX, "-2").get();
+        }
+    }
+
+    private void updateSettings(String refreshInterval, String numberOfReplicas) {
+        client.admin().indices().prepareUpdateSettings(BulkLoadService.EVENT_INDEX)
+            .setSettings(ImmutableSettings.settingsBuilder()
+                .put("index.refresh_interval", refreshInterval)
+                .put("index.number_of_replicas", numberOfReplicas)
+                .build())
+            .get();
+    }
+
+    private Settings currentSettings() {
+        return client.admin().indices().prepareGetSettings(BulkLoadService.EVENT_INDEX).get()
+            .getIndexToSettings().valuesIt().next();
+    }
+}
@@ -0,0 +1,250 @@
+package com.innvo.service;
+
+import com.codahale.metrics.MetricRegistry;
+import com.innvo.config.ApplicationProperties;
+import com.innvo.config.metrics.EntityCacheMetrics;
+import com.innvo.domain.Event;
+import com.innvo.repository.EventRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for the cache of the events by id: the hits, the evictions of the saved, patched and deleted events
+ * once committed only, and the loads concurrent with an eviction, which are not cached.
+ *
+ * @see EntityCache
+ * @see EventService#findOne(Long)
+ */
+public class EntityCacheTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final AtomicReference<Event> row = new AtomicReference<>();
+
+    private EmbeddedDatabase database;
+
+    private TransactionTemplate transactionTemplate;
+
+    private MetricRegistry metricRegistry;
+
+    private EventRepository eventRepository;
+
+    private EventService eventService;
+
+    @Before
+    public void setup() {
+        database = new EmbeddedDatabaseBuilder().generateUniqueName(true).setType(EmbeddedDatabaseType.H2).build();
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(database));
+        metricRegistry = new MetricRegistry();
+        row.set(event("first"));
+        eventRepository = eventRepository();
+        eventService = eventService();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        database.shutdown();
+    }
+
+    @Test
+    public void answerTheSecondReadFromTheCache() {
+        assertThat(eventService.findOne(1L).getName()).isEqualTo("first");
+        assertThat(eventService.findOne(1L).getName()).isEqualTo("first");
+
+        verify(eventRepository, times(1)).findOne(1L);
+        assertThat(meter("hits")).isEqualTo(1);
+        assertThat(meter("misses")).isEqualTo(1);
+    }
+
+    @Test
+    public void evictASavedEventOnceCommitted() {
+        eventService.findOne(1L);
+
+        transactionTemplate.execute(status -> {
+            Event event = event("saved");
+            row.set(event);
+            eventService.save(event);
+            // Read by another thread before the commit
+            assertThat(readElsewhere().getName()).isEqualTo("first");
+            return null;
+        });
+
+        assertThat(eventService.findOne(1L).getName()).isEqualTo("saved");
+    }
+
+    @Test
+    public void evictAPatchedEventOnceCommitted() {
+        eventService.findOne(1L);
+
+        transactionTemplate.execute(status -> {
+            eventService.patch(1L, event -> {
+                event.setName("patched");
+                row.set(copy(event));
+            });
+            assertThat(readElsewhere().getName()).isEqualTo("first");
+            return null;
+        });
+
+        assertThat(eventService.findOne(1L).getName()).isEqualTo("patched");
+    }
+
+    @Test
+    public void evictADeletedEventOnceCommitted() {
+        eventService.findOne(1L);
+
+        transactionTemplate.execute(status -> {
+            row.set(null);
+            eventService.delete(1L);
+            assertThat(readElsewhere()).isNotNull();
+            return null;
+        });
+
+        assertThat(eventService.findOne(1L)).isNull();
+        assertThat(meter("evictions")).isEqualTo(1);
+    }
+
+    @Test
+    public void keepTheEventsOfARolledBackWrite() {
+        eventService.findOne(1L);
+
+        transactionTemplate.execute(status -> {
+            eventService.save(event("rolled back"));
+            status.setRollbackOnly();
+            return null;
+        });
+
+        assertThat(eventService.findOne(1L).getName()).isEqualTo("first");
+        verify(eventRepository, times(1)).findOne(1L);
+        assertThat(meter("evictions")).isZero();
+    }
+
+    @Test
+    public void bypassTheCacheWithinAReadWriteTransaction() {
+        eventService.findOne(1L);
+
+        transactionTemplate.execute(status -> {
+            row.set(event("uncommitted"));
+            assertThat(eventService.findOne(1L).getName()).isEqualTo("uncommitted");
+            return null;
+        });
+
+        assertThat(eventService.findOne(1L).getName()).isEqualTo("first");
+    }
+
+    @Test
+    public void neverCacheALoadConcurrentWithAnEviction() throws Exception {
+        ConcurrentMapCache cache = new ConcurrentMapCache("events");
+        EntityCache<String> entityCache = new EntityCache<>(cache, new EntityCacheMetrics());
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch evicted = new CountDownLatch(1);
+
+        // The row is read before the write, and returned after its commit evicted the entity
+        Future<String> read = executor.submit(() -> entityCache.get(1L, () -> {
+            loading.countDown();
+            await(evicted);
+            return "stale";
+        }));
+        await(loading);
+        entityCache.evict(Collections.singletonList(1L));
+        evicted.countDown();
+
+        assertThat(read.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isEqualTo("stale");
+        assertThat(cache.get(1L)).isNull();
+        assertThat(entityCache.get(1L, () -> "fresh")).isEqualTo("fresh");
+        assertThat(entityCache.get(1L, () -> "not loaded")).isEqualTo("fresh");
+    }
+
+    private Event readElsewhere() {
+        try {
+            return executor.submit(() -> eventService.findOne(1L)).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private long meter(String name) {
+        return metricRegistry.meter(MetricRegistry.name("entity.cache", EventService.CACHE_NAME, name)).getCount();
+    }
+
+    /**
+     * A repository of one row, which is its committed state as far as the cache can tell.
+     */
+    private EventRepository eventRepository() {
+        EventRepository eventRepository = mock(EventRepository.class);
+        when(eventRepository.findOne(1L)).thenAnswer(invocation -> copy(row.get()));
+        when(eventRepository.save(any(Event.class))).thenAnswer(invocation -> invocation.getArguments()[0]);
+        return eventRepository;
+    }
+
+    @SuppressWarnings("unchecked")
+    private EventService eventService() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getEntityCache().setEnabled(true);
+        ShardService shardService = mock(ShardService.class);
+        when(shardService.findInShards(anyLong(), any())).thenAnswer(invocation ->
+            ((Function<Long, Event>) invocation.getArguments()[1]).apply((Long) invocation.getArguments()[0]));
+        when(shardService.findInShardsOnPrimary(anyLong(), any())).thenAnswer(invocation ->
+            ((Function<Long, Event>) invocation.getArguments()[1]).apply((Long) invocation.getArguments()[0]));
+
+        EventService eventService = new EventService();
+        ReflectionTestUtils.setField(eventService, "eventRepository", eventRepository);
+        ReflectionTestUtils.setField(eventService, "shardService", shardService);
+        ReflectionTestUtils.setField(eventService, "applicationProperties", applicationProperties);
+        ReflectionTestUtils.setField(eventService, "cacheManager", new ConcurrentMapCacheManager(EventService.CACHE_NAME));
+        ReflectionTestUtils.setField(eventService, "responseCache", mock(ResponseCache.class));
+        ReflectionTestUtils.setField(eventService, "eventDeduplicator", mock(EventDeduplicator.class));
+        ReflectionTestUtils.setField(eventService, "metricRegistry", metricRegistry);
+        eventService.init();
+        return eventService;
+    }
+
+    private static Event copy(Event event) {
+        return event == null ? null : event(event.getName());
+    }
+
+    private static Event event(String name) {
+        Event event = new Event();
+        event.setId(1L);
+        event.setName(name);
+        event.setStatus("Active");
+        event.setDomain("DEMO");
+        return event;
+    }
+}
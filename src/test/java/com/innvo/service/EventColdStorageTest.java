@@ -0,0 +1,148 @@
+package com.innvo.service;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.innvo.config.ApplicationProperties;
+import com.innvo.domain.Event;
+import com.innvo.service.util.ColumnarSegment;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the reads of the archived events: the time range boundaries, the segments read, and the events
+ * archived again after a failed delete.
+ *
+ * @see EventColdStorage
+ */
+public class EventColdStorageTest {
+
+    private static final long START = 1467331200000L;
+
+    private static final String[] LONG_COLUMNS = {
+        "id", "version", "startdatetime", "enddatetime", "lastmodifieddatetime", "recordtype_id"};
+
+    private static final String[] STRING_COLUMNS = {
+        "name", "description", "category", "subcategory", "subtype", "type", "status", "lastmodifiedby", "domain"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private EventColdStorage eventColdStorage;
+
+    @Before
+    public void setup() throws IOException {
+        List<EventColdStorage.Segment> segments = new ArrayList<>();
+        segments.add(segment("first.seg", new long[]{1, 2, 3}, new long[]{START, START + 1000, START + 2000}, "archived"));
+        // Event 2 archived again, as it could not be deleted after the first segment was written
+        segments.add(segment("second.seg", new long[]{2, 4, 5}, new long[]{START + 1000, START + 3000, START + 4000}, "again"));
+        segments.add(segment("third.seg", new long[]{6}, new long[]{START + 100000}, "archived"));
+        objectMapper.writeValue(new File(folder.getRoot(), "manifest.json"), segments);
+
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getColdStorage().setEnabled(true);
+        applicationProperties.getColdStorage().setDirectory(folder.getRoot().getAbsolutePath());
+        eventColdStorage = new EventColdStorage();
+        ReflectionTestUtils.setField(eventColdStorage, "applicationProperties", applicationProperties);
+        ReflectionTestUtils.setField(eventColdStorage, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(eventColdStorage, "metricRegistry", metricRegistry);
+        eventColdStorage.init();
+    }
+
+    @Test
+    public void findBetweenIncludesBothBounds() {
+        List<Event> events = eventColdStorage.findBetween(date(START + 1000), date(START + 3000));
+
+        assertThat(events).extracting(Event::getId).containsExactly(2L, 3L, 4L);
+    }
+
+    @Test
+    public void findBetweenExcludesEventsOutsideTheRange() {
+        assertThat(eventColdStorage.findBetween(date(START + 1), date(START + 999))).isEmpty();
+        assertThat(eventColdStorage.findBetween(date(START - 1000), date(START - 1))).isEmpty();
+        assertThat(eventColdStorage.findBetween(date(START + 4001), date(START + 99999))).isEmpty();
+        assertThat(eventColdStorage.findBetween(date(START), date(START))).extracting(Event::getId).containsExactly(1L);
+    }
+
+    @Test
+    public void findEventArchivedTwiceOnce() {
+        List<Event> events = eventColdStorage.findBetween(date(START), date(START + 100000));
+
+        assertThat(events).extracting(Event::getId).containsExactly(1L, 2L, 3L, 4L, 5L, 6L);
+        // From the last segment holding it
+        assertThat(events.get(1).getName()).isEqualTo("again");
+        assertThat(events.get(1).getStartdatetime().toInstant()).isEqualTo(Instant.ofEpochMilli(START + 1000));
+    }
+
+    @Test
+    public void readOnlyTheSegmentsOverlappingTheRange() {
+        eventColdStorage.findBetween(date(START + 3000), date(START + 4000));
+
+        assertThat(metricRegistry.meter(MetricRegistry.name(EventColdStorage.class, "segment-reads")).getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void addLiveEventsNotArchived() {
+        Event archivedAndLive = new Event();
+        archivedAndLive.setId(5L);
+        Event live = new Event();
+        live.setId(7L);
+
+        List<Event> events = eventColdStorage.withArchived(date(START + 4000), date(START + 5000), Arrays.asList(archivedAndLive, live));
+
+        assertThat(events).extracting(Event::getId).containsExactly(5L, 7L);
+        assertThat(events.get(0)).isNotSameAs(archivedAndLive);
+    }
+
+    @Test
+    public void isArchivedUpToTheLastArchivedEvent() {
+        assertThat(eventColdStorage.isArchived(date(START + 100000))).isTrue();
+        assertThat(eventColdStorage.isArchived(date(START + 100001))).isFalse();
+        assertThat(eventColdStorage.withArchived(date(START + 100001), date(START + 200000), Collections.emptyList())).isEmpty();
+    }
+
+    private EventColdStorage.Segment segment(String file, long[] ids, long[] starts, String name) throws IOException {
+        ColumnarSegment data = new ColumnarSegment(LONG_COLUMNS, STRING_COLUMNS);
+        for (int i = 0; i < ids.length; i++) {
+            data.addRow(new long[]{ids[i], 0L, starts[i], ColumnarSegment.NULL, starts[i], ColumnarSegment.NULL},
+                new String[]{name, null, "LOG", null, null, "HTTP", "Active", "system", "DEMO"});
+        }
+        File segmentFile = new File(folder.getRoot(), file);
+        try (OutputStream out = new FileOutputStream(segmentFile)) {
+            data.writeTo(out);
+        }
+        EventColdStorage.Segment segment = new EventColdStorage.Segment();
+        segment.setFile(file);
+        segment.setMinTime(starts[0]);
+        segment.setMaxTime(starts[starts.length - 1]);
+        segment.setMinId(Arrays.stream(ids).min().getAsLong());
+        segment.setMaxId(Arrays.stream(ids).max().getAsLong());
+        segment.setRows(ids.length);
+        segment.setBytes(segmentFile.length());
+        return segment;
+    }
+
+    private static ZonedDateTime date(long millis) {
+        return ZonedDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+    }
+}
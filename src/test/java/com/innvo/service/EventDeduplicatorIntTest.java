@@ -0,0 +1,214 @@
+package com.innvo.service;
+
+import com.codahale.metrics.MetricRegistry;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ITopic;
+import com.innvo.AdapEventApp;
+import com.innvo.config.ApplicationProperties;
+import com.innvo.domain.Event;
+import com.innvo.repository.EventRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.IntegrationTest;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for the deduplication of the ingested events, against the events of the same batch, of the filter
+ * and of the database within the window, and for the fingerprints of the updated events.
+ *
+ * @see EventDeduplicator
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = AdapEventApp.class)
+@WebAppConfiguration
+@IntegrationTest
+@Transactional
+public class EventDeduplicatorIntTest {
+
+    private static final ZonedDateTime START = ZonedDateTime.ofInstant(Instant.ofEpochMilli(1467331200000L), ZoneOffset.UTC);
+
+    @Inject
+    private EventRepository eventRepository;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private MetricRegistry metricRegistry;
+
+    private ITopic<long[]> topic;
+
+    private EventDeduplicator eventDeduplicator;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getDeduplication().setEnabled(true);
+        applicationProperties.getDeduplication().setExpectedEvents(1000);
+        metricRegistry = new MetricRegistry();
+        topic = mock(ITopic.class);
+        HazelcastInstance hazelcastInstance = mock(HazelcastInstance.class);
+        when(hazelcastInstance.<long[]>getTopic(anyString())).thenReturn(topic);
+
+        eventDeduplicator = new EventDeduplicator();
+        ReflectionTestUtils.setField(eventDeduplicator, "applicationProperties", applicationProperties);
+        ReflectionTestUtils.setField(eventDeduplicator, "eventRepository", eventRepository);
+        ReflectionTestUtils.setField(eventDeduplicator, "hazelcastInstance", hazelcastInstance);
+        ReflectionTestUtils.setField(eventDeduplicator, "metricRegistry", metricRegistry);
+        ReflectionTestUtils.setField(eventDeduplicator, "entityManager", entityManager);
+        eventDeduplicator.init();
+    }
+
+    @Test
+    public void dropDuplicatesWithinABatch() {
+        Event first = event("first");
+        // The same instant in another zone
+        Event sameAsFirst = event("first");
+        sameAsFirst.setStartdatetime(START.withZoneSameInstant(ZoneId.of("Europe/Paris")));
+        Event second = event("second");
+
+        List<Event> unique = eventDeduplicator.filter(Arrays.asList(first, sameAsFirst, second));
+
+        assertThat(unique).containsExactly(first, second);
+        assertThat(first.getFingerprint()).isNotNull().isNotEqualTo(second.getFingerprint());
+        assertThat(sameAsFirst.getFingerprint()).isNull();
+    }
+
+    @Test
+    public void checkEveryEventAgainstTheDatabaseUntilReady() {
+        eventRepository.saveAndFlush(event("saved"));
+
+        List<Event> unique = eventDeduplicator.filter(Arrays.asList(event("saved"), event("new")));
+
+        assertThat(unique).extracting(Event::getName).containsExactly("new");
+        assertThat(meter("exact-checks")).isEqualTo(2);
+        assertThat(meter("duplicates")).isEqualTo(1);
+    }
+
+    @Test
+    public void checkOnlyTheHitsOnceReady() {
+        ReflectionTestUtils.setField(eventDeduplicator, "ready", true);
+        List<Event> first = eventDeduplicator.filter(Collections.singletonList(event("added")));
+        assertThat(meter("exact-checks")).isZero();
+
+        eventDeduplicator.added(first);
+        // Not saved: a hit of the filter which the database does not confirm
+        List<Event> second = eventDeduplicator.filter(Collections.singletonList(event("added")));
+
+        assertThat(second).hasSize(1);
+        assertThat(meter("exact-checks")).isEqualTo(1);
+        assertThat(meter("false-positives")).isEqualTo(1);
+    }
+
+    @Test
+    public void publishTheAddedFingerprints() {
+        List<Event> unique = eventDeduplicator.filter(Arrays.asList(event("first"), event("second")));
+
+        eventDeduplicator.added(unique);
+
+        verify(topic).publish(new long[]{unique.get(0).getFingerprint(), unique.get(1).getFingerprint()});
+    }
+
+    @Test
+    public void filterExactlyWhatTheFilterMissed() {
+        ReflectionTestUtils.setField(eventDeduplicator, "ready", true);
+        // Committed by a concurrent request, not yet added to the filter
+        eventRepository.saveAndFlush(event("concurrent"));
+
+        assertThat(eventDeduplicator.filter(Collections.singletonList(event("concurrent")))).hasSize(1);
+        assertThat(eventDeduplicator.filterExactly(Collections.singletonList(event("concurrent")))).isEmpty();
+    }
+
+    @Test
+    public void ignoreTheEventsModifiedBeforeTheWindow() {
+        Event old = event("old");
+        old.setLastmodifieddatetime(ZonedDateTime.now().minusDays(2));
+        eventRepository.saveAndFlush(old);
+
+        assertThat(eventDeduplicator.filterExactly(Collections.singletonList(event("old")))).hasSize(1);
+    }
+
+    @Test
+    public void fingerprintTheChangedProperties() {
+        Event event = event("first");
+        eventDeduplicator.filter(Collections.singletonList(event));
+        Long ingested = event.getFingerprint();
+        assertThat(event.getFingerprintWindow()).isNotNull();
+
+        event.setName("second");
+        eventDeduplicator.fingerprint(event);
+
+        Event second = event("second");
+        eventDeduplicator.filter(Collections.singletonList(second));
+        assertThat(event.getFingerprint()).isNotEqualTo(ingested).isEqualTo(second.getFingerprint());
+        assertThat(event.getFingerprintWindow()).isNull();
+    }
+
+    @Test
+    public void acceptTheSameFingerprintInAnotherWindow() {
+        Event first = event("first");
+        Event second = event("first");
+        eventDeduplicator.filter(Collections.singletonList(first));
+        eventDeduplicator.filter(Collections.singletonList(second));
+        second.setFingerprintWindow(first.getFingerprintWindow() + 1);
+        Event updated = event("first");
+        eventDeduplicator.fingerprint(updated);
+
+        eventRepository.saveAndFlush(first);
+        eventRepository.saveAndFlush(second);
+        eventRepository.saveAndFlush(updated);
+
+        assertThat(updated.getFingerprint()).isEqualTo(first.getFingerprint());
+    }
+
+    @Test(expected = DataIntegrityViolationException.class)
+    public void rejectTwoEventsOfTheSameFingerprintInAWindow() {
+        Event first = event("first");
+        Event second = event("first");
+        eventDeduplicator.filter(Collections.singletonList(first));
+        eventDeduplicator.filter(Collections.singletonList(second));
+        assertThat(second.getFingerprint()).isEqualTo(first.getFingerprint());
+
+        eventRepository.saveAndFlush(first);
+        eventRepository.saveAndFlush(second);
+    }
+
+    private long meter(String name) {
+        return metricRegistry.meter(MetricRegistry.name(EventDeduplicator.class, name)).getCount();
+    }
+
+    private static Event event(String name) {
+        Event event = new Event();
+        event.setName(name);
+        event.setDescription("description");
+        event.setStartdatetime(START);
+        event.setStatus("Active");
+        event.setLastmodifiedby("system");
+        event.setLastmodifieddatetime(ZonedDateTime.now());
+        event.setDomain("DEMO");
+        return event;
+    }
+}
@@ -0,0 +1,191 @@
+package com.innvo.service;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ITopic;
+import com.hazelcast.core.Member;
+import com.hazelcast.core.Message;
+import com.hazelcast.core.MessageListener;
+import com.innvo.config.ApplicationProperties;
+import com.innvo.domain.Alert;
+import com.innvo.domain.Event;
+import com.innvo.domain.Recordtype;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for the fan-out of the live stream: the items broadcast over the cluster and handed to the matching
+ * subscribers only, the alerts of the JSON topic, and the limit of subscribers.
+ *
+ * @see LiveStreamService
+ */
+public class LiveStreamServiceTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private ApplicationProperties applicationProperties;
+
+    private ObjectMapper objectMapper;
+
+    private MetricRegistry metricRegistry;
+
+    private ITopic<Object> topic;
+
+    private LiveStreamService liveStreamService;
+
+    @Before
+    public void setup() {
+        applicationProperties = new ApplicationProperties();
+        applicationProperties.getLiveStream().setEnabled(true);
+        objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        metricRegistry = new MetricRegistry();
+        topic = topic();
+    }
+
+    @After
+    public void tearDown() {
+        if (liveStreamService != null) {
+            liveStreamService.destroy();
+        }
+    }
+
+    @Test
+    public void fanOutToTheMatchingSubscribers() throws Exception {
+        liveStreamService = liveStreamService();
+        SseEmitter alerts = subscribe(Collections.singleton(LiveStreamService.TYPE_ALERT), null, null);
+        SseEmitter fire = subscribe(null, "Fire", null);
+        SseEmitter sensors = subscribe(null, null, "7");
+
+        liveStreamService.publish(event("first", "Fire"));
+        liveStreamService.publish(alert("second", "Flood"));
+        liveStreamService.publish(alert("third", "Fire"));
+        liveStreamService.publish(event("fourth", "Fire"));
+
+        // Each subscriber receives its items in order, so the last one it matches is received after the others
+        assertThat(awaitSent(alerts, "third")).contains("second").doesNotContain("first").doesNotContain("fourth");
+        assertThat(awaitSent(fire, "fourth")).contains("first", "third").doesNotContain("second");
+        assertThat(awaitSent(sensors, "fourth")).contains("first").doesNotContain("second").doesNotContain("third");
+        assertThat(awaitSent(alerts, "third")).contains("event:alert").doesNotContain("event:event");
+        assertThat(metricRegistry.meter(MetricRegistry.name(LiveStreamService.class, "published")).getCount()).isEqualTo(4);
+    }
+
+    @Test
+    public void deliverTheAlertsOfTheJsonTopic() throws Exception {
+        liveStreamService = liveStreamService();
+        SseEmitter emitter = subscribe(null, null, null);
+
+        liveStreamService.onAlertMessage("name=ignored, category=Fire");
+        liveStreamService.onAlertMessage(objectMapper.writeValueAsString(alert("received", "Fire")));
+
+        assertThat(awaitSent(emitter, "received")).contains("event:alert").doesNotContain("ignored");
+        assertThat(metricRegistry.meter(MetricRegistry.name(LiveStreamService.class, "received")).getCount()).isEqualTo(1);
+        // Received by every member from the topic, so not broadcast again
+        assertThat(metricRegistry.meter(MetricRegistry.name(LiveStreamService.class, "published")).getCount()).isZero();
+    }
+
+    @Test
+    public void rejectSubscribersOverTheLimit() {
+        applicationProperties.getLiveStream().setMaxSubscribers(1);
+        liveStreamService = liveStreamService();
+
+        assertThat(liveStreamService.subscribe(null, null, null, null)).isPresent();
+        assertThat(liveStreamService.subscribe(null, null, null, null)).isEmpty();
+    }
+
+    private SseEmitter subscribe(Collection<String> types, String category, String recordtype) {
+        return liveStreamService.subscribe(types == null ? null : new HashSet<>(types), category, null, recordtype).get();
+    }
+
+    /**
+     * Waits for the writer threads to send an item to an emitter, which is not bound to a response and keeps what
+     * is sent to it.
+     *
+     * @return all that was sent to the emitter
+     */
+    private static String awaitSent(SseEmitter emitter, String expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        String sent = sent(emitter);
+        while (!sent.contains(expected) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            sent = sent(emitter);
+        }
+        return sent;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String sent(SseEmitter emitter) {
+        StringBuilder sent = new StringBuilder();
+        synchronized (emitter) {
+            for (ResponseBodyEmitter.DataWithMediaType data : (Collection<ResponseBodyEmitter.DataWithMediaType>)
+                ReflectionTestUtils.getField(emitter, "earlySendAttempts")) {
+                sent.append(data.getData());
+            }
+        }
+        return sent.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ITopic<Object> topic() {
+        return mock(ITopic.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private LiveStreamService liveStreamService() {
+        HazelcastInstance hazelcastInstance = mock(HazelcastInstance.class);
+        when(hazelcastInstance.getTopic(any())).thenReturn((ITopic) topic);
+        LiveStreamService liveStreamService = new LiveStreamService();
+        ReflectionTestUtils.setField(liveStreamService, "applicationProperties", applicationProperties);
+        ReflectionTestUtils.setField(liveStreamService, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(liveStreamService, "hazelcastInstance", hazelcastInstance);
+        ReflectionTestUtils.setField(liveStreamService, "metricRegistry", metricRegistry);
+        liveStreamService.init();
+
+        // The cluster of a single member: every item published is received back
+        ArgumentCaptor<MessageListener> listener = ArgumentCaptor.forClass(MessageListener.class);
+        verify(topic).addMessageListener(listener.capture());
+        Member member = mock(Member.class);
+        doAnswer(invocation -> {
+            listener.getValue().onMessage(new Message<>("live-stream", invocation.getArguments()[0], 0L, member));
+            return null;
+        }).when(topic).publish(any());
+        return liveStreamService;
+    }
+
+    private static Event event(String name, String category) {
+        Recordtype recordtype = new Recordtype();
+        recordtype.setId(7L);
+        recordtype.setName("Sensor");
+        Event event = new Event();
+        event.setName(name);
+        event.setCategory(category);
+        event.setDomain("DEMO");
+        event.setRecordtype(recordtype);
+        return event;
+    }
+
+    private static Alert alert(String name, String category) {
+        Alert alert = new Alert();
+        alert.setName(name);
+        alert.setCategory(category);
+        alert.setDomain("DEMO");
+        return alert;
+    }
+}
@@ -0,0 +1,110 @@
+package com.innvo.service;
+
+import com.codahale.metrics.MetricRegistry;
+import com.hazelcast.core.Cluster;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.Member;
+import com.innvo.config.ApplicationProperties;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for the token buckets of a single member.
+ *
+ * @see RateLimiter
+ */
+public class RateLimiterTest {
+
+    private static final String SUBJECT = "user";
+
+    private ApplicationProperties applicationProperties;
+
+    private MetricRegistry metricRegistry;
+
+    @Before
+    public void setup() {
+        applicationProperties = new ApplicationProperties();
+        applicationProperties.getRateLimit().setEnabled(true);
+        applicationProperties.getRateLimit().getIngest().setRequestsPerSecond(1);
+        applicationProperties.getRateLimit().getIngest().setBurst(3);
+        metricRegistry = new MetricRegistry();
+    }
+
+    @Test
+    public void allowTheBurstThenReject() {
+        RateLimiter rateLimiter = rateLimiter();
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(rateLimiter.tryAcquire(SUBJECT, RateLimiter.EndpointClass.INGEST)).isZero();
+        }
+
+        assertThat(rateLimiter.tryAcquire(SUBJECT, RateLimiter.EndpointClass.INGEST)).isEqualTo(1);
+        assertThat(meter("rejected")).isEqualTo(1);
+        // Another subject, and another class of endpoints, have their own buckets
+        assertThat(rateLimiter.tryAcquire("other", RateLimiter.EndpointClass.INGEST)).isZero();
+        assertThat(rateLimiter.tryAcquire(SUBJECT, RateLimiter.EndpointClass.SEARCH)).isZero();
+    }
+
+    @Test
+    public void chargeBulkRequestsForEachItem() {
+        RateLimiter rateLimiter = rateLimiter();
+        assertThat(rateLimiter.tryAcquire(SUBJECT, RateLimiter.EndpointClass.INGEST)).isZero();
+
+        // The two tokens left, and ten more
+        long wait = rateLimiter.charge(SUBJECT, RateLimiter.EndpointClass.INGEST, 12);
+
+        assertThat(wait).isBetween(9000L, 10000L);
+        assertThat(meter("allowed")).isEqualTo(13);
+        // In debt: rejected until it is repaid, and one more token refilled
+        assertThat(rateLimiter.tryAcquire(SUBJECT, RateLimiter.EndpointClass.INGEST)).isBetween(10L, 11L);
+    }
+
+    @Test
+    public void chargeWithinTheTokensLeft() {
+        RateLimiter rateLimiter = rateLimiter();
+
+        assertThat(rateLimiter.charge(SUBJECT, RateLimiter.EndpointClass.INGEST, 2)).isZero();
+        assertThat(rateLimiter.tryAcquire(SUBJECT, RateLimiter.EndpointClass.INGEST)).isZero();
+        assertThat(rateLimiter.tryAcquire(SUBJECT, RateLimiter.EndpointClass.INGEST)).isEqualTo(1);
+    }
+
+    @Test
+    public void allowEverythingWhenDisabled() {
+        applicationProperties.getRateLimit().setEnabled(false);
+        RateLimiter rateLimiter = rateLimiter();
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(rateLimiter.tryAcquire(SUBJECT, RateLimiter.EndpointClass.INGEST)).isZero();
+        }
+        assertThat(rateLimiter.charge(SUBJECT, RateLimiter.EndpointClass.INGEST, 1000)).isZero();
+    }
+
+    private long meter(String name) {
+        return metricRegistry.meter(MetricRegistry.name(RateLimiter.class, "ingest." + SUBJECT, name)).getCount();
+    }
+
+    @SuppressWarnings("unchecked")
+    private RateLimiter rateLimiter() {
+        Cluster cluster = mock(Cluster.class);
+        when(cluster.getMembers()).thenReturn(Collections.singleton(mock(Member.class)));
+        HazelcastInstance hazelcastInstance = mock(HazelcastInstance.class);
+        when(hazelcastInstance.getCluster()).thenReturn(cluster);
+        when(hazelcastInstance.getMap(anyString())).thenReturn(mock(IMap.class));
+
+        RateLimiter rateLimiter = new RateLimiter();
+        ReflectionTestUtils.setField(rateLimiter, "applicationProperties", applicationProperties);
+        ReflectionTestUtils.setField(rateLimiter, "hazelcastInstance", hazelcastInstance);
+        ReflectionTestUtils.setField(rateLimiter, "metricRegistry", metricRegistry);
+        rateLimiter.init();
+        return rateLimiter;
+    }
+}
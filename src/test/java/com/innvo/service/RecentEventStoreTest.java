@@ -0,0 +1,291 @@
+package com.innvo.service;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ITopic;
+import com.hazelcast.core.Member;
+import com.hazelcast.core.Message;
+import com.hazelcast.core.MessageListener;
+import com.innvo.config.ApplicationProperties;
+import com.innvo.domain.Event;
+import com.innvo.repository.EventRepository;
+import com.innvo.web.rest.converter.SmileHttpMessageConverter;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for the reads of the recent events: the rows hidden by the tombstones of updated and removed events,
+ * the growth of the buckets and their drop past the horizon, the warm-up from the shards, and the changes replayed
+ * from another member.
+ *
+ * @see RecentEventStore
+ */
+public class RecentEventStoreTest {
+
+    // Well within the retention horizon, whatever the time the test runs
+    private static final long START = System.currentTimeMillis() / 1000 * 1000 - 600000;
+
+    private ApplicationProperties applicationProperties;
+
+    private ObjectMapper smileObjectMapper;
+
+    private MetricRegistry metricRegistry;
+
+    private ITopic<Object> topic;
+
+    private RecentEventStore recentEventStore;
+
+    @Before
+    public void setup() {
+        applicationProperties = new ApplicationProperties();
+        applicationProperties.getRecentEvents().setEnabled(true);
+        smileObjectMapper = objectMapper(new ObjectMapper(new SmileFactory()));
+        metricRegistry = new MetricRegistry();
+        topic = topic();
+        recentEventStore = recentEventStore(metricRegistry, topic);
+    }
+
+    @Test
+    public void findTheEventsOfTheRangeSortedByStart() {
+        recentEventStore.add(event(3L, "third", START + 2000));
+        recentEventStore.add(event(1L, "first", START));
+        recentEventStore.add(event(2L, "second", START + 1000));
+        recentEventStore.add(event(4L, "fourth", START + 3000));
+
+        assertThat(recentEventStore.findBetween(date(START), date(START + 2000)).get())
+            .extracting(Event::getName).containsExactly("first", "second", "third");
+        assertThat(recentEventStore.findBetween(date(START + 1), date(START + 999)).get()).isEmpty();
+    }
+
+    @Test
+    public void hideTheRowsOfAnUpdatedEvent() {
+        recentEventStore.add(event(1L, "created", START));
+        // Moved to another bucket, the old row is left where it was
+        recentEventStore.update(event(1L, "updated", START + 120000));
+
+        assertThat(recentEventStore.findBetween(date(START), date(START)).get()).isEmpty();
+        assertThat(recentEventStore.findBetween(date(START), date(START + 120000)).get())
+            .extracting(Event::getName).containsExactly("updated");
+        assertThat(rows()).isEqualTo(2);
+    }
+
+    @Test
+    public void hideARemovedEventUntilAddedAgain() {
+        recentEventStore.add(event(1L, "created", START));
+        recentEventStore.remove(1L);
+
+        assertThat(recentEventStore.findBetween(date(START), date(START)).get()).isEmpty();
+
+        recentEventStore.add(event(1L, "again", START));
+
+        assertThat(recentEventStore.findBetween(date(START), date(START)).get())
+            .extracting(Event::getName).containsExactly("again");
+    }
+
+    @Test
+    public void growTheBucketsPastTheirInitialCapacity() {
+        String description = String.join("", Collections.nCopies(50, "description "));
+        for (long id = 1; id <= 1000; id++) {
+            Event event = event(id, "event " + id, START + id);
+            event.setDescription(description);
+            recentEventStore.add(event);
+        }
+
+        List<Event> events = recentEventStore.findBetween(date(START), date(START + 1000)).get();
+
+        assertThat(events).hasSize(1000);
+        // Each payload read from where it was copied when the buffers grew
+        for (int i = 0; i < events.size(); i++) {
+            assertThat(events.get(i).getName()).isEqualTo("event " + (i + 1));
+            assertThat(events.get(i).getDescription()).isEqualTo(description);
+        }
+        assertThat((Long) metricRegistry.getGauges().get(MetricRegistry.name(RecentEventStore.class, "bytes")).getValue())
+            .isGreaterThan(600 * 1000L);
+    }
+
+    @Test
+    public void dropTheBucketsWhichLeftTheHorizon() {
+        recentEventStore.add(event(1L, "created", START));
+        recentEventStore.update(event(1L, "updated", START));
+        recentEventStore.add(event(2L, "recent", System.currentTimeMillis()));
+
+        // Five minutes of retention: the first bucket left the horizon
+        ReflectionTestUtils.setField(recentEventStore, "retentionMillis", 300000L);
+        recentEventStore.maintain();
+
+        assertThat(rows()).isEqualTo(1);
+        assertThat(recentEventStore.findBetween(date(START), date(START + 1000))).isEmpty();
+        assertThat(recentEventStore.findBetween(date(System.currentTimeMillis() - 1000), date(System.currentTimeMillis())).get())
+            .extracting(Event::getName).containsExactly("recent");
+        // The tombstone of the dropped rows goes with them
+        assertThat((Map<?, ?>) ReflectionTestUtils.getField(recentEventStore, "tombstones")).isEmpty();
+    }
+
+    @Test
+    public void missTheRangesNotCovered() throws IOException {
+        RecentEventStore warmingUp = recentEventStore(new MetricRegistry(), topic());
+        ReflectionTestUtils.setField(warmingUp, "ready", false);
+        StringWriter json = new StringWriter();
+
+        assertThat(warmingUp.findBetween(date(START), date(START + 1000))).isEmpty();
+        try (JsonGenerator generator = new ObjectMapper().getFactory().createGenerator(json)) {
+            assertThat(warmingUp.writeBetween(date(START), date(START + 1000), generator)).isFalse();
+        }
+        assertThat(json.toString()).isEmpty();
+        assertThat(recentEventStore.findBetween(date(START - 3600000), date(START))).isEmpty();
+    }
+
+    @Test
+    public void writeTheEventsAsJsonWithoutDecodingThem() throws IOException {
+        recentEventStore.add(event(2L, "second", START + 1000));
+        recentEventStore.add(event(1L, "first", START));
+        recentEventStore.update(event(2L, "updated", START + 1000));
+        ObjectMapper jsonObjectMapper = objectMapper(new ObjectMapper());
+        StringWriter json = new StringWriter();
+
+        try (JsonGenerator generator = jsonObjectMapper.getFactory().createGenerator(json)) {
+            assertThat(recentEventStore.writeBetween(date(START), date(START + 1000), generator)).isTrue();
+        }
+
+        assertThat(json.toString()).isEqualTo(jsonObjectMapper.writeValueAsString(
+            recentEventStore.findBetween(date(START), date(START + 1000)).get()));
+        assertThat(json.toString()).contains("\"updated\"").doesNotContain("\"second\"");
+    }
+
+    @Test
+    public void warmUpFromEveryShard() {
+        EventRepository eventRepository = mock(EventRepository.class);
+        // The second event is being moved from the default shard to s1, and has been updated meanwhile
+        when(eventRepository.findByStartdatetimeGreaterThanEqual(any(), any())).thenReturn(
+            new SliceImpl<>(Arrays.asList(event(1L, "default", START), event(2L, "copied", START + 1000))),
+            new SliceImpl<>(Arrays.asList(event(2L, "moved", START + 1000), event(3L, "s1", START + 2000))));
+
+        RecentEventStore warmedUp = recentEventStore(new MetricRegistry(), topic(), eventRepository,
+            ShardService.DEFAULT_SHARD, "s1");
+
+        assertThat(warmedUp.findBetween(date(START), date(START + 2000)).get())
+            .extracting(Event::getName).containsExactly("default", "moved", "s1");
+    }
+
+    @Test
+    public void replayTheChangesOfAnotherMember() {
+        ITopic<Object> otherTopic = topic();
+        RecentEventStore other = recentEventStore(new MetricRegistry(), otherTopic);
+        other.add(event(1L, "created", START));
+        other.add(event(2L, "removed", START + 1000));
+        other.update(event(1L, "updated", START));
+        other.remove(2L);
+
+        replay(otherTopic, topic, false);
+
+        assertThat(recentEventStore.findBetween(date(START), date(START + 1000)).get())
+            .extracting(Event::getName).containsExactly("updated");
+    }
+
+    @Test
+    public void ignoreTheChangesPublishedByThisMember() {
+        recentEventStore.add(event(1L, "created", START));
+
+        // Already applied when published
+        replay(topic, topic, true);
+
+        assertThat(rows()).isEqualTo(1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void replay(ITopic<Object> from, ITopic<Object> to, boolean local) {
+        ArgumentCaptor<Object> changes = ArgumentCaptor.forClass(Object.class);
+        verify(from, atLeastOnce()).publish(changes.capture());
+        ArgumentCaptor<MessageListener> listener = ArgumentCaptor.forClass(MessageListener.class);
+        verify(to).addMessageListener(listener.capture());
+        Member member = mock(Member.class);
+        when(member.localMember()).thenReturn(local);
+        for (Object change : changes.getAllValues()) {
+            listener.getValue().onMessage(new Message<>("recent-events", change, 0L, member));
+        }
+    }
+
+    private int rows() {
+        return (Integer) metricRegistry.getGauges().get(MetricRegistry.name(RecentEventStore.class, "rows")).getValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ITopic<Object> topic() {
+        return mock(ITopic.class);
+    }
+
+    private RecentEventStore recentEventStore(MetricRegistry metricRegistry, ITopic<Object> topic) {
+        EventRepository eventRepository = mock(EventRepository.class);
+        when(eventRepository.findByStartdatetimeGreaterThanEqual(any(), any()))
+            .thenReturn(new SliceImpl<>(Collections.emptyList()));
+        return recentEventStore(metricRegistry, topic, eventRepository, ShardService.DEFAULT_SHARD);
+    }
+
+    @SuppressWarnings("unchecked")
+    private RecentEventStore recentEventStore(MetricRegistry metricRegistry, ITopic<Object> topic,
+                                              EventRepository eventRepository, String... shards) {
+        HazelcastInstance hazelcastInstance = mock(HazelcastInstance.class);
+        when(hazelcastInstance.<Object>getTopic(anyString())).thenReturn(topic);
+        ShardService shardService = mock(ShardService.class);
+        when(shardService.getShards()).thenReturn(Arrays.asList(shards));
+        when(shardService.readInShard(anyString(), any())).thenAnswer(invocation ->
+            ((Supplier<Object>) invocation.getArguments()[1]).get());
+
+        RecentEventStore recentEventStore = new RecentEventStore();
+        ReflectionTestUtils.setField(recentEventStore, "applicationProperties", applicationProperties);
+        ReflectionTestUtils.setField(recentEventStore, "smileHttpMessageConverter", new SmileHttpMessageConverter(smileObjectMapper));
+        ReflectionTestUtils.setField(recentEventStore, "eventRepository", eventRepository);
+        ReflectionTestUtils.setField(recentEventStore, "shardService", shardService);
+        ReflectionTestUtils.setField(recentEventStore, "hazelcastInstance", hazelcastInstance);
+        ReflectionTestUtils.setField(recentEventStore, "metricRegistry", metricRegistry);
+        recentEventStore.init();
+        // Warmed up from an empty database
+        recentEventStore.maintain();
+        return recentEventStore;
+    }
+
+    private static ObjectMapper objectMapper(ObjectMapper objectMapper) {
+        return objectMapper.registerModule(new JavaTimeModule()).disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+
+    private static Event event(Long id, String name, long startMillis) {
+        Event event = new Event();
+        event.setId(id);
+        event.setName(name);
+        event.setStartdatetime(date(startMillis));
+        event.setStatus("Active");
+        event.setDomain("DEMO");
+        return event;
+    }
+
+    private static ZonedDateTime date(long millis) {
+        return ZonedDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,155 @@
+package com.innvo.service;
+
+import com.codahale.metrics.Meter;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.innvo.config.ApplicationProperties;
+import com.innvo.config.metrics.SearchCacheMetrics;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for the pages of search results cached by query and page: the hits, the whole type made unreachable
+ * when its watermark moves, and the keys told apart by each part of the query and of the pageable.
+ *
+ * @see SearchResultCache
+ */
+public class SearchResultCacheTest {
+
+    private final Map<String, Object> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong watermark = new AtomicLong();
+
+    private final AtomicInteger searches = new AtomicInteger();
+
+    private SearchCacheMetrics searchCacheMetrics;
+
+    private SearchResultCache searchResultCache;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getSearchCache().setEnabled(true);
+
+        // A map of the cluster kept in memory
+        IMap<String, Object> results = mock(IMap.class);
+        when(results.get(any())).thenAnswer(invocation -> entries.get(invocation.getArguments()[0]));
+        doAnswer(invocation -> entries.put((String) invocation.getArguments()[0], invocation.getArguments()[1]))
+            .when(results).set(anyString(), any());
+        HazelcastInstance hazelcastInstance = mock(HazelcastInstance.class);
+        when(hazelcastInstance.getMap(SearchResultCache.MAP_NAME)).thenReturn((IMap) results);
+
+        ModificationWatermarkService modificationWatermarkService = mock(ModificationWatermarkService.class);
+        when(modificationWatermarkService.get(ModificationWatermarkService.EVENT)).thenAnswer(invocation -> watermark.get());
+
+        searchCacheMetrics = new SearchCacheMetrics();
+        searchResultCache = new SearchResultCache();
+        ReflectionTestUtils.setField(searchResultCache, "applicationProperties", applicationProperties);
+        ReflectionTestUtils.setField(searchResultCache, "hazelcastInstance", hazelcastInstance);
+        ReflectionTestUtils.setField(searchResultCache, "modificationWatermarkService", modificationWatermarkService);
+        ReflectionTestUtils.setField(searchResultCache, "searchCacheMetrics", searchCacheMetrics);
+        searchResultCache.init();
+    }
+
+    @Test
+    public void answerTheSecondSearchFromTheCache() {
+        Pageable pageable = new PageRequest(1, 2);
+
+        Page<String> first = search("name:fire", pageable);
+        Page<String> second = search("name:fire", pageable);
+
+        assertThat(searches.get()).isEqualTo(1);
+        assertThat(second.getContent()).isEqualTo(first.getContent()).containsExactly("result 1");
+        assertThat(second.getTotalElements()).isEqualTo(10);
+        assertThat(second.getNumber()).isEqualTo(1);
+        assertThat(meter("hits")).isEqualTo(1);
+        assertThat(meter("misses")).isEqualTo(1);
+    }
+
+    @Test
+    public void answerTheQueriesOfTheSameShapeFromTheCache() {
+        search("name:fire AND status:Active", new PageRequest(0, 20));
+        search("  name:fire   AND\tstatus:Active ", new PageRequest(0, 20));
+
+        assertThat(searches.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void searchAgainOnceTheWatermarkMoves() {
+        search("name:fire", new PageRequest(0, 20));
+
+        // A write through the API
+        watermark.incrementAndGet();
+
+        assertThat(search("name:fire", new PageRequest(0, 20)).getContent()).containsExactly("result 2");
+        assertThat(searches.get()).isEqualTo(2);
+        assertThat(search("name:fire", new PageRequest(0, 20)).getContent()).containsExactly("result 2");
+        assertThat(searches.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void keyTheResultsByQueryAndPageable() {
+        search("name:fire", new PageRequest(0, 20));
+
+        search("name:flood", new PageRequest(0, 20));
+        search("Name:fire", new PageRequest(0, 20));
+        search("name:fire", new PageRequest(1, 20));
+        search("name:fire", new PageRequest(0, 10));
+        search("name:fire", new PageRequest(0, 20, new Sort(Sort.Direction.ASC, "name")));
+        search("name:fire", new PageRequest(0, 20, new Sort(Sort.Direction.DESC, "name")));
+        searchResultCache.get(ModificationWatermarkService.EVENT, "name:fire", "DEMO", new PageRequest(0, 20), this::page);
+        // Not confused with a query starting with the domain
+        searchResultCache.get(ModificationWatermarkService.EVENT, "DEMO:name:fire", null, new PageRequest(0, 20), this::page);
+        assertThat(searches.get()).isEqualTo(9);
+
+        search("name:fire", new PageRequest(0, 20, new Sort(Sort.Direction.ASC, "name")));
+        searchResultCache.get(ModificationWatermarkService.EVENT, "name:fire", "DEMO", new PageRequest(0, 20), this::page);
+        assertThat(searches.get()).isEqualTo(9);
+    }
+
+    @Test
+    public void searchEveryTimeWhenDisabled() {
+        ReflectionTestUtils.setField(searchResultCache, "enabled", false);
+
+        search("name:fire", new PageRequest(0, 20));
+        search("name:fire", new PageRequest(0, 20));
+
+        assertThat(searches.get()).isEqualTo(2);
+        assertThat(entries).isEmpty();
+    }
+
+    private Page<String> search(String query, Pageable pageable) {
+        return searchResultCache.get(ModificationWatermarkService.EVENT, query, pageable, this::page);
+    }
+
+    /**
+     * A page of ten results, of which the content tells the searches apart.
+     */
+    private Page<String> page() {
+        return new PageImpl<>(Collections.singletonList("result " + searches.incrementAndGet()), new PageRequest(0, 1), 10);
+    }
+
+    private long meter(String name) {
+        return ((Meter) searchCacheMetrics.getMetrics().get(name)).getCount();
+    }
+}
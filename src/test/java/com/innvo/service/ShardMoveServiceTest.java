@@ -0,0 +1,242 @@
+package com.innvo.service;
+
+import com.codahale.metrics.MetricRegistry;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.innvo.config.ApplicationProperties;
+import com.innvo.config.jdbc.ShardContext;
+import com.innvo.repository.AlertRepository;
+import com.innvo.repository.EventRepository;
+import com.innvo.web.rest.dto.ShardAssignmentDTO;
+import com.innvo.web.rest.dto.ShardMoveDTO;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for the moves of a domain between shards: the copy, the freeze, the reconciliation of the writes
+ * made during the copy, the switch and the clean up of the source shard.
+ *
+ * <p>
+ * The shards are schemas of an in-memory H2 database, the connections of a shard using its schema, and the
+ * moves run on the test thread.
+ * </p>
+ *
+ * @see ShardMoveService
+ */
+public class ShardMoveServiceTest {
+
+    private static final String MOVED_DOMAIN = "MOVED";
+
+    private static final String OTHER_DOMAIN = "OTHER";
+
+    private static final String TARGET_SHARD = "s1";
+
+    private ApplicationProperties applicationProperties;
+
+    private ShardService shardService;
+
+    private EventRepository eventRepository;
+
+    private JdbcTemplate publicSchema;
+
+    private ShardMoveService shardMoveService;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        JdbcDataSource database = new JdbcDataSource();
+        database.setURL("jdbc:h2:mem:shardmove;DB_CLOSE_DELAY=-1");
+        publicSchema = new JdbcTemplate(database);
+        publicSchema.execute("CREATE SCHEMA shard_s1");
+        for (String schema : new String[]{"public", "shard_s1"}) {
+            for (String table : new String[]{ShardService.EVENT, ShardService.ALERT}) {
+                publicSchema.execute("CREATE TABLE " + schema + "." + table
+                    + " (id BIGINT PRIMARY KEY, name VARCHAR(255), domain VARCHAR(255), version BIGINT)");
+            }
+        }
+        for (long id = 1; id <= 5; id++) {
+            insert(ShardService.EVENT, id, MOVED_DOMAIN);
+        }
+        insert(ShardService.EVENT, 6, OTHER_DOMAIN);
+        insert(ShardService.ALERT, 1, MOVED_DOMAIN);
+        insert(ShardService.ALERT, 2, MOVED_DOMAIN);
+        DataSource shards = new SchemaRoutingDataSource(database);
+
+        applicationProperties = new ApplicationProperties();
+        applicationProperties.getSharding().setEnabled(true);
+        // Smaller than the domain, so that it is copied and cleaned up in several chunks
+        applicationProperties.getSharding().setCopyBatchSize(2);
+        applicationProperties.getSharding().setFreezeGraceMillis(0);
+
+        shardService = mock(ShardService.class);
+        when(shardService.isEnabled()).thenReturn(true);
+        when(shardService.isShard(TARGET_SHARD)).thenReturn(true);
+        when(shardService.getAssignmentMap()).thenReturn(mock(IMap.class));
+        when(shardService.readInShard(any(), any())).thenAnswer(invocation ->
+            ShardContext.call((String) invocation.getArguments()[0], (Supplier<?>) invocation.getArguments()[1]));
+        eventRepository = mock(EventRepository.class);
+        when(eventRepository.findByDomainAndIdGreaterThan(any(), any(), any())).thenReturn(new SliceImpl<>(Collections.emptyList()));
+        AlertRepository alertRepository = mock(AlertRepository.class);
+        when(alertRepository.findByDomainAndIdGreaterThan(any(), any(), any())).thenReturn(new SliceImpl<>(Collections.emptyList()));
+        HazelcastInstance hazelcastInstance = mock(HazelcastInstance.class);
+        when(hazelcastInstance.getMap(any())).thenReturn(mock(IMap.class));
+
+        shardMoveService = new ShardMoveService();
+        ReflectionTestUtils.setField(shardMoveService, "applicationProperties", applicationProperties);
+        ReflectionTestUtils.setField(shardMoveService, "shardService", shardService);
+        ReflectionTestUtils.setField(shardMoveService, "hazelcastInstance", hazelcastInstance);
+        ReflectionTestUtils.setField(shardMoveService, "transactionManager", new DataSourceTransactionManager(shards));
+        ReflectionTestUtils.setField(shardMoveService, "dataSource", shards);
+        ReflectionTestUtils.setField(shardMoveService, "eventRepository", eventRepository);
+        ReflectionTestUtils.setField(shardMoveService, "alertRepository", alertRepository);
+        ReflectionTestUtils.setField(shardMoveService, "modificationWatermarkService", mock(ModificationWatermarkService.class));
+        ReflectionTestUtils.setField(shardMoveService, "metricRegistry", new MetricRegistry());
+        ReflectionTestUtils.setField(shardMoveService, "taskExecutor", (Executor) Runnable::run);
+        shardMoveService.init();
+    }
+
+    @After
+    public void tearDown() {
+        publicSchema.execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    public void moveDomainWithTheWritesMadeDuringTheCopy() {
+        // The writes which went to the source shard while it was copied, seen once the domain is frozen
+        doAnswer(invocation -> {
+            if (((ShardAssignmentDTO) invocation.getArguments()[0]).isFrozen()) {
+                publicSchema.update("UPDATE event SET name = 'changed', version = 1 WHERE id = 2");
+                publicSchema.update("DELETE FROM event WHERE id = 3");
+                insert(ShardService.EVENT, 7, MOVED_DOMAIN);
+            }
+            return null;
+        }).when(shardService).assign(any());
+
+        ShardMoveDTO move = shardMoveService.move(MOVED_DOMAIN, TARGET_SHARD);
+
+        assertThat(move.getState()).isEqualTo(ShardMoveDTO.State.COMPLETED);
+        assertThat(move.getCopied()).isEqualTo(7);
+        assertThat(move.getReconciled()).isEqualTo(3);
+        assertThat(move.getDeleted()).isEqualTo(7);
+
+        assertThat(ids("shard_s1.event", MOVED_DOMAIN)).containsExactly(1L, 2L, 4L, 5L, 7L);
+        assertThat(ids("shard_s1.alert", MOVED_DOMAIN)).containsExactly(1L, 2L);
+        assertThat(publicSchema.queryForObject("SELECT name FROM shard_s1.event WHERE id = 2", String.class)).isEqualTo("changed");
+        assertThat(ids("public.event", MOVED_DOMAIN)).isEmpty();
+        assertThat(ids("public.alert", MOVED_DOMAIN)).isEmpty();
+        assertThat(ids("public.event", OTHER_DOMAIN)).containsExactly(6L);
+        assertThat(ids("shard_s1.event", OTHER_DOMAIN)).isEmpty();
+
+        List<ShardAssignmentDTO> assignments = assignments(3);
+        assertAssignment(assignments.get(0), ShardService.DEFAULT_SHARD, TARGET_SHARD, false);
+        assertAssignment(assignments.get(1), ShardService.DEFAULT_SHARD, TARGET_SHARD, true);
+        assertAssignment(assignments.get(2), TARGET_SHARD, null, false);
+        verify(shardService).provision(TARGET_SHARD);
+        verify(shardService).deleteDomainFromIndex(ShardService.EVENT, ShardService.DEFAULT_SHARD, MOVED_DOMAIN);
+        verify(shardService).deleteDomainFromIndex(ShardService.ALERT, ShardService.DEFAULT_SHARD, MOVED_DOMAIN);
+    }
+
+    @Test
+    public void overwritePartialCopyOfAFailedMove() {
+        insert("shard_s1." + ShardService.EVENT, 4, MOVED_DOMAIN);
+        insert("shard_s1." + ShardService.EVENT, 9, MOVED_DOMAIN);
+
+        ShardMoveDTO move = shardMoveService.move(MOVED_DOMAIN, TARGET_SHARD);
+
+        assertThat(move.getState()).isEqualTo(ShardMoveDTO.State.COMPLETED);
+        // The row left by the failed move, and deleted from the source since, is deleted
+        assertThat(ids("shard_s1.event", MOVED_DOMAIN)).containsExactly(1L, 2L, 3L, 4L, 5L);
+    }
+
+    @Test
+    public void keepDomainInSourceShardWhenMoveFailsBeforeSwitch() {
+        when(eventRepository.findByDomainAndIdGreaterThan(any(), any(), any())).thenThrow(new IllegalStateException("Indexing failed"));
+
+        ShardMoveDTO move = shardMoveService.move(MOVED_DOMAIN, TARGET_SHARD);
+
+        assertThat(move.getState()).isEqualTo(ShardMoveDTO.State.FAILED);
+        assertThat(move.getPhase()).isEqualTo(ShardMoveDTO.Phase.FROZEN);
+        assertThat(move.getError()).isEqualTo("Indexing failed");
+        assertThat(ids("public.event", MOVED_DOMAIN)).containsExactly(1L, 2L, 3L, 4L, 5L);
+        assertThat(ids("public.alert", MOVED_DOMAIN)).containsExactly(1L, 2L);
+        // Unfrozen in its shard
+        List<ShardAssignmentDTO> assignments = assignments(3);
+        assertAssignment(assignments.get(2), ShardService.DEFAULT_SHARD, null, false);
+        verify(shardService, never()).deleteDomainFromIndex(any(), any(), any());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectMoveToTheShardOfTheDomain() {
+        when(shardService.isShard(ShardService.DEFAULT_SHARD)).thenReturn(true);
+
+        shardMoveService.move(MOVED_DOMAIN, ShardService.DEFAULT_SHARD);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectMoveToUnknownShard() {
+        shardMoveService.move(MOVED_DOMAIN, "s9");
+    }
+
+    private void insert(String table, long id, String domain) {
+        publicSchema.update("INSERT INTO " + table + " (id, name, domain, version) VALUES (?, ?, ?, 0)",
+            id, domain.toLowerCase() + "_" + id, domain);
+    }
+
+    private List<Long> ids(String table, String domain) {
+        return publicSchema.queryForList("SELECT id FROM " + table + " WHERE domain = ? ORDER BY id", Long.class, domain);
+    }
+
+    private List<ShardAssignmentDTO> assignments(int count) {
+        ArgumentCaptor<ShardAssignmentDTO> captor = ArgumentCaptor.forClass(ShardAssignmentDTO.class);
+        verify(shardService, times(count)).assign(captor.capture());
+        return captor.getAllValues();
+    }
+
+    private static void assertAssignment(ShardAssignmentDTO assignment, String shard, String target, boolean frozen) {
+        assertThat(assignment.getDomain()).isEqualTo(MOVED_DOMAIN);
+        assertThat(assignment.getShard()).isEqualTo(shard);
+        assertThat(assignment.getTarget()).isEqualTo(target);
+        assertThat(assignment.isFrozen()).isEqualTo(frozen);
+    }
+
+    /**
+     * Fetches the connections of the current shard in its schema, as the search path of the shard pools does.
+     */
+    private static class SchemaRoutingDataSource extends DelegatingDataSource {
+
+        SchemaRoutingDataSource(DataSource database) {
+            super(database);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            Connection connection = super.getConnection();
+            String shard = ShardContext.current();
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET SCHEMA " + (ShardService.DEFAULT_SHARD.equals(shard) ? "public" : "shard_" + shard));
+            }
+            return connection;
+        }
+    }
+}
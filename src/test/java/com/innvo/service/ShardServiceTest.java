@@ -0,0 +1,269 @@
+package com.innvo.service;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.innvo.config.ApplicationProperties;
+import com.innvo.config.jdbc.ShardContext;
+import com.innvo.web.rest.dto.ShardAssignmentDTO;
+import com.innvo.web.rest.errors.ServiceUnavailableException;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for the routing of the reads, writes and searches to the shards, and for the persistence of the
+ * assignments of the domains.
+ *
+ * @see ShardService
+ */
+public class ShardServiceTest {
+
+    private static final String MOVED_DOMAIN = "MOVED";
+
+    private static final String FROZEN_DOMAIN = "FROZEN";
+
+    private Map<String, ShardAssignmentDTO> assignments;
+
+    private ApplicationProperties applicationProperties;
+
+    private DataSource dataSource;
+
+    @Before
+    public void setup() {
+        applicationProperties = new ApplicationProperties();
+        applicationProperties.getSharding().setEnabled(true);
+        applicationProperties.getSharding().setShards(Arrays.asList(shard("s1"), shard("s2")));
+        assignments = new HashMap<>();
+        dataSource = mock(DataSource.class);
+    }
+
+    @Test
+    public void routeEverythingToTheDefaultShardWhenDisabled() {
+        applicationProperties.getSharding().setEnabled(false);
+        ShardService shardService = shardService();
+
+        assertThat(shardService.getShards()).containsExactly(ShardService.DEFAULT_SHARD);
+        assertThat(shardService.searchedIndices(ShardService.EVENT, MOVED_DOMAIN)).containsExactly("event");
+        assertThat(shardService.searchedIndices(ShardService.ALERT, null)).containsExactly("alert");
+        assertThat(shardService.writableShardOf(MOVED_DOMAIN)).isEqualTo(ShardService.DEFAULT_SHARD);
+        assertThat(shardsRead(shardService, 2L << ShardService.ORDINAL_SHIFT)).containsExactly(ShardService.DEFAULT_SHARD);
+    }
+
+    @Test
+    public void searchTheShardOfTheDomainOrAllShards() {
+        assignments.put(MOVED_DOMAIN, new ShardAssignmentDTO(MOVED_DOMAIN, "s2", null, false));
+        ShardService shardService = shardService();
+
+        assertThat(shardService.searchedIndices(ShardService.EVENT, MOVED_DOMAIN)).containsExactly("event_s2");
+        assertThat(shardService.searchedIndices(ShardService.EVENT, "OTHER")).containsExactly("event");
+        assertThat(shardService.searchedIndices(ShardService.ALERT, null)).containsExactly("alert", "alert_s1", "alert_s2");
+        assertThat(ShardService.indexOf(ShardService.EVENT, ShardService.DEFAULT_SHARD)).isEqualTo("event");
+    }
+
+    @Test
+    public void searchTheSourceShardUntilTheSwitch() {
+        assignments.put(MOVED_DOMAIN, new ShardAssignmentDTO(MOVED_DOMAIN, "s1", "s2", false));
+        ShardService shardService = shardService();
+
+        assertThat(shardService.shardOf(MOVED_DOMAIN)).isEqualTo("s1");
+        assertThat(shardService.searchedIndices(ShardService.EVENT, MOVED_DOMAIN)).containsExactly("event_s1");
+        assertThat(shardService.writableShardOf(MOVED_DOMAIN)).isEqualTo("s1");
+    }
+
+    @Test(expected = ServiceUnavailableException.class)
+    public void rejectWritesToFrozenDomain() {
+        assignments.put(FROZEN_DOMAIN, new ShardAssignmentDTO(FROZEN_DOMAIN, "s1", "s2", true));
+
+        shardService().writableShardOf(FROZEN_DOMAIN);
+    }
+
+    @Test(expected = ServiceUnavailableException.class)
+    public void rejectWritesToAllShardsWhileADomainIsFrozen() {
+        assignments.put(FROZEN_DOMAIN, new ShardAssignmentDTO(FROZEN_DOMAIN, "s1", "s2", true));
+
+        shardService().getWritableShards();
+    }
+
+    @Test
+    public void loadThePersistedAssignments() {
+        EmbeddedDatabase database = assignmentDatabase();
+        try {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+            jdbcTemplate.update("INSERT INTO domain_shard (domain, shard, target, frozen) VALUES ('MOVED', 's2', NULL, FALSE)");
+            // Interrupted by the restart of the cluster
+            jdbcTemplate.update("INSERT INTO domain_shard (domain, shard, target, frozen) VALUES ('FROZEN', 's1', 's2', TRUE)");
+            dataSource = database;
+
+            ShardService shardService = shardService();
+
+            assertThat(shardService.searchedIndices(ShardService.EVENT, MOVED_DOMAIN)).containsExactly("event_s2");
+            assertThat(shardService.writableShardOf(FROZEN_DOMAIN)).isEqualTo("s1");
+            assertThat(jdbcTemplate.queryForObject("SELECT target FROM domain_shard WHERE domain = 'FROZEN'", String.class)).isNull();
+        } finally {
+            database.shutdown();
+        }
+    }
+
+    @Test
+    public void writeTheAssignmentsThrough() {
+        EmbeddedDatabase database = assignmentDatabase();
+        try {
+            dataSource = database;
+            ShardService shardService = shardService();
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+
+            shardService.assign(new ShardAssignmentDTO(MOVED_DOMAIN, ShardService.DEFAULT_SHARD, "s1", false));
+            shardService.assign(new ShardAssignmentDTO(MOVED_DOMAIN, "s1", null, false));
+            assertThat(jdbcTemplate.queryForList("SELECT shard FROM domain_shard WHERE domain = 'MOVED'", String.class))
+                .containsExactly("s1");
+
+            // Back to the default shard
+            shardService.assign(new ShardAssignmentDTO(MOVED_DOMAIN, ShardService.DEFAULT_SHARD, null, false));
+            assertThat(jdbcTemplate.queryForList("SELECT shard FROM domain_shard", String.class)).isEmpty();
+        } finally {
+            database.shutdown();
+        }
+    }
+
+    @Test
+    public void findByIdInTheShardOfTheIdFirst() {
+        ShardService shardService = shardService();
+
+        assertThat(shardsRead(shardService, (2L << ShardService.ORDINAL_SHIFT) + 5))
+            .containsExactly("s2", ShardService.DEFAULT_SHARD, "s1");
+        assertThat(shardsRead(shardService, 5L)).containsExactly(ShardService.DEFAULT_SHARD, "s1", "s2");
+        // An ordinal beyond the configured shards, from a removed shard
+        assertThat(shardsRead(shardService, 7L << ShardService.ORDINAL_SHIFT))
+            .containsExactly(ShardService.DEFAULT_SHARD, "s1", "s2");
+    }
+
+    @Test
+    public void findByIdStopsAtTheFirstShardFound() {
+        ShardService shardService = shardService();
+        List<String> read = new ArrayList<>();
+
+        String found = shardService.findInShards(5L, id -> {
+            read.add(ShardContext.current());
+            return "s1".equals(ShardContext.current()) ? "found" : null;
+        });
+
+        assertThat(found).isEqualTo("found");
+        assertThat(read).containsExactly(ShardService.DEFAULT_SHARD, "s1");
+    }
+
+    @Test
+    public void readAllShardsInOrder() {
+        Map<String, List<Integer>> rows = rows();
+        ShardService shardService = shardService();
+
+        assertThat(shardService.readAllShards(() -> rows.get(ShardContext.current())))
+            .containsExactly(1, 2, 3, 21, 22, 23, 24);
+    }
+
+    @Test
+    public void readPagesAcrossShards() {
+        Map<String, List<Integer>> rows = rows();
+        ShardService shardService = shardService();
+
+        List<List<Integer>> pages = new ArrayList<>();
+        for (int page = 0; page < 4; page++) {
+            Page<Integer> result = shardService.readAcrossShards(new PageRequest(page, 2),
+                pageable -> page(rows.get(ShardContext.current()), pageable));
+            assertThat(result.getTotalElements()).isEqualTo(7);
+            pages.add(result.getContent());
+        }
+
+        assertThat(pages).containsExactly(Arrays.asList(1, 2), Arrays.asList(3, 21), Arrays.asList(22, 23),
+            Collections.singletonList(24));
+    }
+
+    @Test
+    public void readPageStartingInsideAShard() {
+        Map<String, List<Integer>> rows = rows();
+        ShardService shardService = shardService();
+
+        // The page starts at the second row of the last shard, and spans two of its pages of 2
+        List<Pageable> read = new ArrayList<>();
+        Page<Integer> result = shardService.readAcrossShards(new PageRequest(2, 2), pageable -> {
+            read.add(pageable);
+            return page(rows.get(ShardContext.current()), pageable);
+        });
+
+        assertThat(result.getContent()).containsExactly(22, 23);
+        // The first page of each shard, for its count, then the second page of the last shard
+        assertThat(read).extracting(Pageable::getPageNumber).containsExactly(0, 0, 0, 1);
+        assertThat(result.getTotalElements()).isEqualTo(7);
+    }
+
+    /**
+     * @return the rows of each shard, the shard s1 having none
+     */
+    private static Map<String, List<Integer>> rows() {
+        Map<String, List<Integer>> rows = new HashMap<>();
+        rows.put(ShardService.DEFAULT_SHARD, Arrays.asList(1, 2, 3));
+        rows.put("s1", Collections.emptyList());
+        rows.put("s2", Arrays.asList(21, 22, 23, 24));
+        return rows;
+    }
+
+    private static Page<Integer> page(List<Integer> rows, Pageable pageable) {
+        int from = Math.min(pageable.getOffset(), rows.size());
+        int to = Math.min(from + pageable.getPageSize(), rows.size());
+        return new PageImpl<>(rows.subList(from, to), pageable, rows.size());
+    }
+
+    private static List<String> shardsRead(ShardService shardService, long id) {
+        List<String> read = new ArrayList<>();
+        shardService.findInShards(id, ignored -> {
+            read.add(ShardContext.current());
+            return null;
+        });
+        return read;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ShardService shardService() {
+        IMap<String, ShardAssignmentDTO> map = mock(IMap.class);
+        when(map.entrySet()).thenReturn(assignments.entrySet());
+        HazelcastInstance hazelcastInstance = mock(HazelcastInstance.class);
+        when(hazelcastInstance.<String, ShardAssignmentDTO>getMap(ShardService.MAP_NAME)).thenReturn(map);
+
+        ShardService shardService = new ShardService();
+        ReflectionTestUtils.setField(shardService, "applicationProperties", applicationProperties);
+        ReflectionTestUtils.setField(shardService, "hazelcastInstance", hazelcastInstance);
+        ReflectionTestUtils.setField(shardService, "transactionManager", mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(shardService, "dataSource", dataSource);
+        shardService.init();
+        return shardService;
+    }
+
+    private static EmbeddedDatabase assignmentDatabase() {
+        EmbeddedDatabase database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+        new JdbcTemplate(database).execute("CREATE TABLE domain_shard (domain VARCHAR(25) PRIMARY KEY,"
+            + " shard VARCHAR(50) NOT NULL, target VARCHAR(50), frozen BOOLEAN NOT NULL)");
+        return database;
+    }
+
+    private static ApplicationProperties.Sharding.Shard shard(String name) {
+        ApplicationProperties.Sharding.Shard shard = new ApplicationProperties.Sharding.Shard();
+        shard.setName(name);
+        shard.setSchema("shard_" + name);
+        return shard;
+    }
+}
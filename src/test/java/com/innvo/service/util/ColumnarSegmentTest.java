@@ -0,0 +1,122 @@
+package com.innvo.service.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the round trips of the rows through the columnar segment format.
+ *
+ * @see ColumnarSegment
+ */
+public class ColumnarSegmentTest {
+
+    private static final String[] LONG_COLUMNS = {"id", "startdatetime"};
+
+    private static final String[] STRING_COLUMNS = {"name", "status"};
+
+    @Test
+    public void roundTripRows() throws IOException {
+        ColumnarSegment segment = new ColumnarSegment(LONG_COLUMNS, STRING_COLUMNS);
+        // More rows than the initial capacity
+        for (int row = 0; row < 3000; row++) {
+            segment.addRow(new long[]{1000L + row, 1467331200000L + row * 1000L}, new String[]{"event_" + row, "Active"});
+        }
+
+        ColumnarSegment read = roundTrip(segment);
+
+        assertThat(read.size()).isEqualTo(3000);
+        int id = read.longColumn("id");
+        int start = read.longColumn("startdatetime");
+        int name = read.stringColumn("name");
+        int status = read.stringColumn("status");
+        for (int row = 0; row < 3000; row++) {
+            assertThat(read.getLong(id, row)).isEqualTo(1000L + row);
+            assertThat(read.getLong(start, row)).isEqualTo(1467331200000L + row * 1000L);
+            assertThat(read.getString(name, row)).isEqualTo("event_" + row);
+            assertThat(read.getString(status, row)).isEqualTo("Active");
+        }
+    }
+
+    @Test
+    public void roundTripNulls() throws IOException {
+        ColumnarSegment segment = new ColumnarSegment(LONG_COLUMNS, STRING_COLUMNS);
+        segment.addRow(new long[]{1L, ColumnarSegment.NULL}, new String[]{null, "Active"});
+        segment.addRow(new long[]{2L, 1467331200000L}, new String[]{"event", null});
+        segment.addRow(new long[]{3L, ColumnarSegment.NULL}, new String[]{null, null});
+
+        ColumnarSegment read = roundTrip(segment);
+
+        int start = read.longColumn("startdatetime");
+        assertThat(read.getLong(start, 0)).isEqualTo(ColumnarSegment.NULL);
+        assertThat(read.getLong(start, 1)).isEqualTo(1467331200000L);
+        assertThat(read.getLong(start, 2)).isEqualTo(ColumnarSegment.NULL);
+        assertThat(read.getString(read.stringColumn("name"), 0)).isNull();
+        assertThat(read.getString(read.stringColumn("name"), 1)).isEqualTo("event");
+        assertThat(read.getString(read.stringColumn("status"), 1)).isNull();
+        assertThat(read.getString(read.stringColumn("status"), 2)).isNull();
+    }
+
+    @Test
+    public void roundTripWrappingDeltas() throws IOException {
+        long[] values = {Long.MAX_VALUE, ColumnarSegment.NULL, Long.MAX_VALUE, -1L, 0L, ColumnarSegment.NULL + 1, Long.MAX_VALUE};
+        ColumnarSegment segment = new ColumnarSegment(LONG_COLUMNS, STRING_COLUMNS);
+        for (long value : values) {
+            segment.addRow(new long[]{value, -value}, new String[]{null, null});
+        }
+
+        ColumnarSegment read = roundTrip(segment);
+
+        for (int row = 0; row < values.length; row++) {
+            assertThat(read.getLong(read.longColumn("id"), row)).isEqualTo(values[row]);
+            assertThat(read.getLong(read.longColumn("startdatetime"), row)).isEqualTo(-values[row]);
+        }
+    }
+
+    @Test
+    public void roundTripDictionary() throws IOException {
+        String[] statuses = {"Active", "Closed", "Active", "", "Überprüft", "Closed", "Active"};
+        ColumnarSegment segment = new ColumnarSegment(LONG_COLUMNS, STRING_COLUMNS);
+        for (int row = 0; row < statuses.length; row++) {
+            segment.addRow(new long[]{row, row}, new String[]{"event", statuses[row]});
+        }
+
+        ColumnarSegment read = roundTrip(segment);
+
+        for (int row = 0; row < statuses.length; row++) {
+            assertThat(read.getString(read.stringColumn("status"), row)).isEqualTo(statuses[row]);
+            assertThat(read.getString(read.stringColumn("name"), row)).isEqualTo("event");
+        }
+        // The repeated values are read as one string
+        assertThat(read.getString(read.stringColumn("status"), 0)).isSameAs(read.getString(read.stringColumn("status"), 6));
+    }
+
+    @Test
+    public void roundTripEmptySegment() throws IOException {
+        ColumnarSegment read = roundTrip(new ColumnarSegment(LONG_COLUMNS, STRING_COLUMNS));
+
+        assertThat(read.size()).isZero();
+        assertThat(read.longColumn("startdatetime")).isEqualTo(1);
+        assertThat(read.stringColumn("status")).isEqualTo(1);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectOtherFiles() throws IOException {
+        ColumnarSegment.readFrom(new ByteArrayInputStream("{\"not\": \"a segment\"}".getBytes("UTF-8")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectRowNotMatchingColumns() {
+        new ColumnarSegment(LONG_COLUMNS, STRING_COLUMNS).addRow(new long[]{1L}, new String[]{"event", "Active"});
+    }
+
+    private static ColumnarSegment roundTrip(ColumnarSegment segment) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        segment.writeTo(out);
+        return ColumnarSegment.readFrom(new ByteArrayInputStream(out.toByteArray()));
+    }
+}
@@ -0,0 +1,102 @@
+package com.innvo.service.util;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the false positives of the Bloom filter and the rotation of its generations.
+ *
+ * @see RotatingBloomFilter
+ */
+public class RotatingBloomFilterTest {
+
+    private static final int INSERTIONS = 10000;
+
+    private static final long WINDOW_MILLIS = 200;
+
+    @Test
+    public void neverMissAnInsertedHash() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(INSERTIONS, 0.01, 60000);
+        for (int i = 0; i < INSERTIONS; i++) {
+            filter.put(RotatingBloomFilter.mix(i));
+        }
+
+        for (int i = 0; i < INSERTIONS; i++) {
+            assertThat(filter.mightContain(RotatingBloomFilter.mix(i))).as("hash %s", i).isTrue();
+        }
+    }
+
+    @Test
+    public void boundTheFalsePositives() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(INSERTIONS, 0.01, 60000);
+        for (int i = 0; i < INSERTIONS; i++) {
+            filter.put(RotatingBloomFilter.mix(i));
+        }
+
+        int falsePositives = 0;
+        int lookups = 100000;
+        for (int i = INSERTIONS; i < INSERTIONS + lookups; i++) {
+            if (filter.mightContain(RotatingBloomFilter.mix(i))) {
+                falsePositives++;
+            }
+        }
+
+        // Twice the requested probability, the bound of the two generations, with room for the variance
+        assertThat((double) falsePositives / lookups).isLessThan(0.02);
+    }
+
+    @Test
+    public void sizeForTheExpectedInsertions() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(INSERTIONS, 0.01, 60000);
+
+        // About 9.6 bits and 7 hash functions per insertion for 1%
+        assertThat(filter.bitsPerGeneration()).isBetween(95000, 96000);
+        assertThat(filter.bitsPerGeneration() % 64).isZero();
+        assertThat(filter.hashFunctions()).isEqualTo(7);
+    }
+
+    @Test
+    public void rememberHashesBetweenOneAndTwoWindows() throws InterruptedException {
+        RotatingBloomFilter filter = new RotatingBloomFilter(INSERTIONS, 0.01, WINDOW_MILLIS);
+        long hash = RotatingBloomFilter.mix(42);
+        filter.put(hash);
+
+        Thread.sleep(WINDOW_MILLIS + WINDOW_MILLIS / 4);
+        // Rotated once: in the previous generation
+        assertThat(filter.mightContain(hash)).isTrue();
+
+        Thread.sleep(WINDOW_MILLIS + WINDOW_MILLIS / 4);
+        // Rotated twice: dropped with the oldest generation
+        assertThat(filter.mightContain(hash)).isFalse();
+    }
+
+    @Test
+    public void keepHashesAddedAfterARotation() throws InterruptedException {
+        RotatingBloomFilter filter = new RotatingBloomFilter(INSERTIONS, 0.01, WINDOW_MILLIS);
+        long old = RotatingBloomFilter.mix(1);
+        long recent = RotatingBloomFilter.mix(2);
+        filter.put(old);
+
+        Thread.sleep(WINDOW_MILLIS + WINDOW_MILLIS / 4);
+        filter.put(recent);
+
+        assertThat(filter.mightContain(old)).isTrue();
+        assertThat(filter.mightContain(recent)).isTrue();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectNoExpectedInsertions() {
+        new RotatingBloomFilter(0, 0.01, 60000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectProbabilityOfOne() {
+        new RotatingBloomFilter(INSERTIONS, 1, 60000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectProbabilityOfZero() {
+        new RotatingBloomFilter(INSERTIONS, 0, 60000);
+    }
+}
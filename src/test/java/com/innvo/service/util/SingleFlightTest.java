@@ -0,0 +1,137 @@
+package com.innvo.service.util;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * Test class for the computations collapsed by key: one computation shared by the concurrent callers, with its
+ * value or its exception, and a new one for the callers arriving after it.
+ *
+ * @see SingleFlight
+ */
+public class SingleFlightTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final SingleFlight<String, String> flights = new SingleFlight<>();
+
+    private final AtomicInteger computations = new AtomicInteger();
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shareOneComputationBetweenConcurrentCallers() throws Exception {
+        List<Future<String>> callers = new ArrayList<>();
+        callers.add(call("key", () -> "value " + computations.incrementAndGet()));
+        awaitFollowers("key", 0);
+        for (int i = 0; i < 3; i++) {
+            callers.add(call("key", () -> "value " + computations.incrementAndGet()));
+        }
+        awaitFollowers("key", 3);
+        release.countDown();
+
+        for (Future<String> caller : callers) {
+            assertThat(caller.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isEqualTo("value 1");
+        }
+        assertThat(computations.get()).isEqualTo(1);
+        assertThat(flights.inFlight()).isZero();
+    }
+
+    @Test
+    public void throwTheExceptionOfTheComputationToAllTheCallers() throws Exception {
+        List<Future<String>> callers = new ArrayList<>();
+        callers.add(call("key", () -> {
+            throw new IllegalStateException("failed " + computations.incrementAndGet());
+        }));
+        awaitFollowers("key", 0);
+        for (int i = 0; i < 3; i++) {
+            callers.add(call("key", () -> "value " + computations.incrementAndGet()));
+        }
+        awaitFollowers("key", 3);
+        release.countDown();
+
+        for (Future<String> caller : callers) {
+            try {
+                caller.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                fail("The exception of the computation should be thrown");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(IllegalStateException.class).hasMessage("failed 1");
+            }
+        }
+        assertThat(computations.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void computeAgainOnceTheComputationIsOver() {
+        assertThat(flights.call("key", () -> "value " + computations.incrementAndGet())).isEqualTo("value 1");
+        assertThat(flights.call("key", () -> "value " + computations.incrementAndGet())).isEqualTo("value 2");
+        assertThat(flights.call("other", () -> "value " + computations.incrementAndGet())).isEqualTo("value 3");
+    }
+
+    @Test
+    public void computeTheKeysIndependently() throws Exception {
+        Future<String> first = call("first", () -> "first");
+        awaitFollowers("first", 0);
+
+        // Not held by the computation in flight of another key
+        assertThat(flights.call("second", () -> "second")).isEqualTo("second");
+
+        release.countDown();
+        assertThat(first.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isEqualTo("first");
+    }
+
+    /**
+     * Calls the key in another thread, the computation waiting for the release.
+     */
+    private Future<String> call(String key, Supplier<String> loader) {
+        return executor.submit(() -> flights.call(key, () -> {
+            try {
+                release.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return loader.get();
+        }));
+    }
+
+    /**
+     * Waits for the computation of the key to be in flight, with the given number of callers waiting for it.
+     */
+    @SuppressWarnings("unchecked")
+    private void awaitFollowers(String key, int followers) throws InterruptedException {
+        Map<String, CompletableFuture<String>> inFlight = (Map<String, CompletableFuture<String>>)
+            ReflectionTestUtils.getField(flights, "inFlight");
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        CompletableFuture<String> flight = inFlight.get(key);
+        while ((flight == null || flight.getNumberOfDependents() < followers) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            flight = inFlight.get(key);
+        }
+        assertThat(flight).isNotNull();
+        assertThat(flight.getNumberOfDependents()).isEqualTo(followers);
+    }
+}
@@ -0,0 +1,115 @@
+package com.innvo.service.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the range lookups of the time index, across its buffer and its merged runs.
+ *
+ * @see TimeIndex
+ */
+public class TimeIndexTest {
+
+    private static final long START = 1467331200000L;
+
+    @Test
+    public void findIdsBetweenBothBoundsIncluded() {
+        TimeIndex index = new TimeIndex(4);
+        for (long id = 1; id <= 6; id++) {
+            index.add(START + id * 1000, id);
+        }
+
+        // Two entries still buffered, four in a run
+        assertThat(index.runCount()).isEqualTo(1);
+        assertThat(sorted(index.findIds(START + 2000, START + 5000))).containsExactly(2L, 3L, 4L, 5L);
+        assertThat(sorted(index.findIds(START + 4000, START + 4000))).containsExactly(4L);
+        assertThat(index.findIds(START + 4001, START + 4999)).isEmpty();
+        assertThat(index.findIds(START + 5000, START + 2000)).isEmpty();
+    }
+
+    @Test
+    public void mergeRunsOfTheSameSize() {
+        TimeIndex index = new TimeIndex(4);
+        for (long id = 1; id <= 12; id++) {
+            index.add(START + id, id);
+        }
+        // Merged into a run of 8, then a run of 4
+        assertThat(index.runCount()).isEqualTo(2);
+
+        for (long id = 13; id <= 16; id++) {
+            index.add(START + id, id);
+        }
+
+        assertThat(index.runCount()).isEqualTo(1);
+        assertThat(index.size()).isEqualTo(16);
+        assertThat(index.memoryBytes()).isEqualTo((4 + 16) * 16L);
+        assertThat(sorted(index.findIds(START, START + 16))).containsExactly(LongStream.rangeClosed(1, 16).boxed().toArray(Long[]::new));
+    }
+
+    @Test
+    public void mergeEntriesAddedOutOfOrder() {
+        Random random = new Random(42);
+        TimeIndex index = new TimeIndex(8);
+        long[] times = new long[1000];
+        for (int id = 0; id < times.length; id++) {
+            times[id] = START + random.nextInt(500);
+            index.add(times[id], id);
+        }
+
+        for (int i = 0; i < 100; i++) {
+            long from = START + random.nextInt(500);
+            long to = from + random.nextInt(100);
+            long[] expected = LongStream.range(0, times.length)
+                .filter(id -> times[(int) id] >= from && times[(int) id] <= to).toArray();
+            assertThat(sorted(index.findIds(from, to))).as("from %s to %s", from, to).containsExactly(box(expected));
+        }
+    }
+
+    @Test
+    public void findEveryIdOfADuplicateTimestamp() {
+        TimeIndex index = new TimeIndex(4);
+        for (long id = 1; id <= 10; id++) {
+            index.add(START, id);
+        }
+        index.add(START - 1, 11);
+        index.add(START + 1, 12);
+
+        assertThat(sorted(index.findIds(START, START))).containsExactly(LongStream.rangeClosed(1, 10).boxed().toArray(Long[]::new));
+        assertThat(sorted(index.findIds(START - 1, START - 1))).containsExactly(11L);
+        assertThat(index.findIds(START - 1, START + 1)).hasSize(12);
+    }
+
+    @Test
+    public void sortDuplicateTimestampsStably() {
+        long[] times = new long[100];
+        long[] ids = new long[100];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = START + (times.length - i) / 10;
+            ids[i] = i;
+        }
+
+        TimeIndex.sort(times, ids);
+
+        for (int i = 1; i < times.length; i++) {
+            assertThat(times[i - 1]).isLessThanOrEqualTo(times[i]);
+            if (times[i - 1] == times[i]) {
+                assertThat(ids[i - 1]).isLessThan(ids[i]);
+            }
+        }
+    }
+
+    private static Long[] sorted(long[] ids) {
+        long[] copy = ids.clone();
+        Arrays.sort(copy);
+        return box(copy);
+    }
+
+    private static Long[] box(long[] values) {
+        return Arrays.stream(values).boxed().toArray(Long[]::new);
+    }
+}
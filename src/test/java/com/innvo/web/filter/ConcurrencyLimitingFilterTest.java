@@ -0,0 +1,147 @@
+package com.innvo.web.filter;
+
+import com.codahale.metrics.MetricRegistry;
+import com.innvo.config.ApplicationProperties;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.servlet.FilterChain;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the adaptive concurrency limits: growth under a stable latency, shrink on a rising latency,
+ * backoff on server errors and the bounds of the limits.
+ *
+ * @see ConcurrencyLimitingFilter
+ */
+public class ConcurrencyLimitingFilterTest {
+
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    public void rejectOverTheLimit() {
+        ConcurrencyLimitingFilter.AdaptiveLimit limit = adaptiveLimit();
+        for (int i = 1; i <= 20; i++) {
+            assertThat(limit.tryAcquire()).isEqualTo(i);
+        }
+
+        assertThat(limit.tryAcquire()).isZero();
+
+        limit.release();
+        assertThat(limit.tryAcquire()).isEqualTo(20);
+    }
+
+    @Test
+    public void growUnderAStableLatency() {
+        ConcurrencyLimitingFilter.AdaptiveLimit limit = adaptiveLimit();
+
+        sample(limit, RTT, 11);
+
+        assertThat(limit(limit)).isBetween(25, 35);
+    }
+
+    @Test
+    public void growWithinTheToleratedLatency() {
+        ConcurrencyLimitingFilter.AdaptiveLimit limit = adaptiveLimit();
+        sample(limit, RTT, 1);
+
+        // Up to 1.5 times the long-term average
+        sample(limit, RTT * 14 / 10, 10);
+
+        assertThat(limit(limit)).isGreaterThan(20);
+    }
+
+    @Test
+    public void keepALimitWhichIsNotUsed() {
+        ConcurrencyLimitingFilter.AdaptiveLimit limit = adaptiveLimit();
+        sample(limit, RTT, 1);
+
+        for (int i = 0; i < 100; i++) {
+            limit.release(RTT, 1, false);
+        }
+
+        assertThat(limit(limit)).isEqualTo(20);
+    }
+
+    @Test
+    public void shrinkOnALatencyGradient() {
+        ConcurrencyLimitingFilter.AdaptiveLimit limit = adaptiveLimit();
+        sample(limit, RTT, 300);
+        assertThat(limit(limit)).isEqualTo(100);
+
+        // Four times the latency
+        sample(limit, RTT * 4, 5);
+        int shrinking = limit(limit);
+        sample(limit, RTT * 4, 15);
+
+        assertThat(shrinking).isLessThan(100);
+        assertThat(limit(limit)).isLessThan(shrinking).isLessThan(50);
+    }
+
+    @Test
+    public void backOffOnServerErrors() {
+        ConcurrencyLimitingFilter.AdaptiveLimit limit = adaptiveLimit();
+
+        limit.release(RTT, 20, true);
+        assertThat(limit(limit)).isEqualTo(18);
+        limit.release(RTT, 20, true);
+        assertThat(limit(limit)).isEqualTo(16);
+    }
+
+    @Test
+    public void clampToTheMinAndMaxLimits() {
+        ConcurrencyLimitingFilter.AdaptiveLimit limit = adaptiveLimit();
+
+        for (int i = 0; i < 50; i++) {
+            limit.release(RTT, 20, true);
+        }
+        assertThat(limit(limit)).isEqualTo(4);
+
+        sample(limit, RTT, 1000);
+        assertThat(limit(limit)).isEqualTo(100);
+    }
+
+    @Test
+    public void backOffOnTheServerErrorsOfTheFilteredRequests() throws Exception {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        ConcurrencyLimitingFilter filter = new ConcurrencyLimitingFilter(new ApplicationProperties.ConcurrencyLimit(), metricRegistry);
+
+        filter.doFilter(new MockHttpServletRequest("POST", "/api/events"), new MockHttpServletResponse(),
+            status(HttpStatus.INTERNAL_SERVER_ERROR));
+        assertThat(gauge(metricRegistry, "write")).isEqualTo(18);
+
+        // Answered by the disabled features or by this filter
+        filter.doFilter(new MockHttpServletRequest("POST", "/api/events"), new MockHttpServletResponse(),
+            status(HttpStatus.SERVICE_UNAVAILABLE));
+        assertThat(gauge(metricRegistry, "write")).isEqualTo(18);
+        assertThat(gauge(metricRegistry, "read")).isEqualTo(50);
+    }
+
+    private static FilterChain status(HttpStatus status) {
+        return (request, response) -> ((MockHttpServletResponse) response).setStatus(status.value());
+    }
+
+    private static int gauge(MetricRegistry metricRegistry, String name) {
+        return (Integer) metricRegistry.getGauges().get(MetricRegistry.name(ConcurrencyLimitingFilter.class, name, "limit")).getValue();
+    }
+
+    // Requests sent as fast as the limit lets them
+    private static void sample(ConcurrencyLimitingFilter.AdaptiveLimit limit, long rttNanos, int samples) {
+        for (int i = 0; i < samples; i++) {
+            limit.release(rttNanos, limit(limit), false);
+        }
+    }
+
+    private static int limit(ConcurrencyLimitingFilter.AdaptiveLimit limit) {
+        return (Integer) ReflectionTestUtils.getField(limit, "limit");
+    }
+
+    private static ConcurrencyLimitingFilter.AdaptiveLimit adaptiveLimit() {
+        return new ConcurrencyLimitingFilter.AdaptiveLimit(new ApplicationProperties.ConcurrencyLimit.Limit(20, 4, 100));
+    }
+}
@@ -0,0 +1,254 @@
+package com.innvo.web.filter;
+
+import com.codahale.metrics.MetricRegistry;
+import com.innvo.config.ApplicationProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * Test class for the identical GET requests in flight answered with the response of the first one: its status,
+ * headers and body, the followers running on their own when it fails, and the requests never coalesced.
+ *
+ * @see RequestCoalescingFilter
+ */
+public class RequestCoalescingFilterTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private MetricRegistry metricRegistry;
+
+    private RequestCoalescingFilter filter;
+
+    private CountingChain chain;
+
+    @Before
+    public void setup() {
+        metricRegistry = new MetricRegistry();
+        filter = new RequestCoalescingFilter(new ApplicationProperties.RequestCoalescing(), metricRegistry);
+        chain = new CountingChain();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void answerTheFollowersWithTheResponseOfTheLeader() throws Exception {
+        List<Future<MockHttpServletResponse>> requests = new ArrayList<>();
+        requests.add(perform("GET", "/api/events/1", "user"));
+        awaitFollowers(0);
+        for (int i = 0; i < 3; i++) {
+            requests.add(perform("GET", "/api/events/1", "user"));
+        }
+        awaitFollowers(3);
+        chain.release.countDown();
+
+        for (Future<MockHttpServletResponse> request : requests) {
+            MockHttpServletResponse response = request.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_ACCEPTED);
+            assertThat(response.getContentType()).isEqualTo(MediaType.APPLICATION_JSON_VALUE);
+            assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo("\"event-1\"");
+            assertThat(response.getContentAsString()).isEqualTo("{\"execution\":1}");
+        }
+        assertThat(chain.executions.get()).isEqualTo(1);
+        assertThat(meter("requests")).isEqualTo(4);
+        assertThat(meter("coalesced")).isEqualTo(3);
+    }
+
+    @Test
+    public void runTheFollowersOnTheirOwnAfterAServerError() throws Exception {
+        chain.serverErrorOn = 1;
+        Future<MockHttpServletResponse> leader = perform("GET", "/api/events/1", "user");
+        awaitFollowers(0);
+        List<Future<MockHttpServletResponse>> followers = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            followers.add(perform("GET", "/api/events/1", "user"));
+        }
+        awaitFollowers(2);
+        chain.release.countDown();
+
+        assertThat(leader.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).getStatus()).isEqualTo(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        for (Future<MockHttpServletResponse> follower : followers) {
+            assertThat(follower.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).getStatus()).isEqualTo(HttpServletResponse.SC_ACCEPTED);
+        }
+        assertThat(chain.executions.get()).isEqualTo(3);
+        assertThat(meter("coalesced")).isZero();
+    }
+
+    @Test
+    public void runTheFollowersOnTheirOwnAfterAnException() throws Exception {
+        chain.exceptionOn = 1;
+        Future<MockHttpServletResponse> leader = perform("GET", "/api/events/1", "user");
+        awaitFollowers(0);
+        List<Future<MockHttpServletResponse>> followers = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            followers.add(perform("GET", "/api/events/1", "user"));
+        }
+        awaitFollowers(2);
+        chain.release.countDown();
+
+        try {
+            leader.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            fail("The exception of the chain should be thrown to the leader");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(ServletException.class).hasMessage("failed");
+        }
+        for (Future<MockHttpServletResponse> follower : followers) {
+            assertThat(follower.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).getStatus()).isEqualTo(HttpServletResponse.SC_ACCEPTED);
+        }
+        assertThat(chain.executions.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void neverCoalesceOtherMethods() throws Exception {
+        Future<MockHttpServletResponse> leader = perform("GET", "/api/events/1", "user");
+        awaitFollowers(0);
+
+        // Not held by the GET in flight
+        MockHttpServletResponse put = perform("PUT", "/api/events/1", "user").get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        assertThat(put.getContentAsString()).isEqualTo("{\"execution\":2}");
+        chain.release.countDown();
+        assertThat(leader.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).getContentAsString()).isEqualTo("{\"execution\":1}");
+        assertThat(meter("requests")).isEqualTo(1);
+    }
+
+    @Test
+    public void neverCoalesceTheRequestsOfAnotherUser() throws Exception {
+        Future<MockHttpServletResponse> first = perform("GET", "/api/events/1", "user");
+        awaitFollowers(0);
+        Future<MockHttpServletResponse> second = perform("GET", "/api/events/1", "admin");
+        awaitExecutions(2);
+        chain.release.countDown();
+
+        assertThat(first.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).getContentAsString()).isEqualTo("{\"execution\":1}");
+        assertThat(second.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).getContentAsString()).isEqualTo("{\"execution\":2}");
+        assertThat(meter("coalesced")).isZero();
+    }
+
+    @Test
+    public void neverCoalesceThePathsNotConfigured() throws Exception {
+        Future<MockHttpServletResponse> first = perform("GET", "/api/events", "user");
+        awaitExecutions(1);
+        Future<MockHttpServletResponse> second = perform("GET", "/api/events", "user");
+        awaitExecutions(2);
+        chain.release.countDown();
+
+        assertThat(first.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).getStatus()).isEqualTo(HttpServletResponse.SC_ACCEPTED);
+        assertThat(second.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).getStatus()).isEqualTo(HttpServletResponse.SC_ACCEPTED);
+        assertThat(meter("requests")).isZero();
+    }
+
+    /**
+     * Sends a request through the filter in another thread, as the given user.
+     */
+    private Future<MockHttpServletResponse> perform(String method, String uri, String login) {
+        return executor.submit(() -> {
+            SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(login, "password"));
+            try {
+                MockHttpServletResponse response = new MockHttpServletResponse();
+                filter.doFilter(new MockHttpServletRequest(method, uri), response, chain);
+                return response;
+            } finally {
+                SecurityContextHolder.clearContext();
+            }
+        });
+    }
+
+    /**
+     * Waits for the only request in flight to run, with the given number of identical requests waiting for it.
+     */
+    @SuppressWarnings("unchecked")
+    private void awaitFollowers(int followers) throws InterruptedException {
+        Map<String, CompletableFuture<?>> inFlight = (Map<String, CompletableFuture<?>>)
+            ReflectionTestUtils.getField(ReflectionTestUtils.getField(filter, "flights"), "inFlight");
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while ((inFlight.size() != 1 || inFlight.values().iterator().next().getNumberOfDependents() < followers)
+            && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(inFlight).hasSize(1);
+        assertThat(inFlight.values().iterator().next().getNumberOfDependents()).isEqualTo(followers);
+    }
+
+    private void awaitExecutions(int executions) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (chain.executions.get() < executions && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(chain.executions.get()).isEqualTo(executions);
+    }
+
+    private long meter(String name) {
+        return metricRegistry.meter(MetricRegistry.name(RequestCoalescingFilter.class, name)).getCount();
+    }
+
+    /**
+     * Answers with the number of its execution, the GET requests once released.
+     */
+    private static final class CountingChain implements FilterChain {
+
+        private final AtomicInteger executions = new AtomicInteger();
+
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        private volatile int serverErrorOn;
+
+        private volatile int exceptionOn;
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+            int execution = executions.incrementAndGet();
+            if ("GET".equals(((HttpServletRequest) request).getMethod())) {
+                try {
+                    release.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ServletException(e);
+                }
+            }
+            if (execution == exceptionOn) {
+                throw new ServletException("failed");
+            }
+            HttpServletResponse httpResponse = (HttpServletResponse) response;
+            httpResponse.setStatus(execution == serverErrorOn ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : HttpServletResponse.SC_ACCEPTED);
+            httpResponse.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            httpResponse.setHeader(HttpHeaders.ETAG, "\"event-1\"");
+            httpResponse.getOutputStream().write(("{\"execution\":" + execution + "}").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
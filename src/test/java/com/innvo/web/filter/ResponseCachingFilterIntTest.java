@@ -0,0 +1,248 @@
+package com.innvo.web.filter;
+
+import com.codahale.metrics.MetricRegistry;
+import com.hazelcast.core.HazelcastInstance;
+import com.innvo.AdapEventApp;
+import com.innvo.config.ApplicationProperties;
+import com.innvo.service.ModificationWatermarkService;
+import com.innvo.service.ResponseCache;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.IntegrationTest;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.inject.Inject;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Test class for the responses answered from the ResponseCache: the hits, the 304 on a matching ETag, the gzipped
+ * bodies, the invalidation by a committed write, and the responses not cached until the replicas have the last change.
+ *
+ * @see ResponseCachingFilter
+ * @see ResponseCache
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = AdapEventApp.class)
+@WebAppConfiguration
+@IntegrationTest
+public class ResponseCachingFilterIntTest {
+
+    @Inject
+    private HazelcastInstance hazelcastInstance;
+
+    @Inject
+    private ModificationWatermarkService modificationWatermarkService;
+
+    @Inject
+    private PlatformTransactionManager transactionManager;
+
+    private MetricRegistry metricRegistry;
+
+    private ResponseCache responseCache;
+
+    private CountingResource countingResource;
+
+    private MockMvc restMockMvc;
+
+    @Before
+    public void setup() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getResponseCache().setEnabled(true);
+        metricRegistry = new MetricRegistry();
+        responseCache = new ResponseCache();
+        ReflectionTestUtils.setField(responseCache, "applicationProperties", applicationProperties);
+        ReflectionTestUtils.setField(responseCache, "hazelcastInstance", hazelcastInstance);
+        ReflectionTestUtils.setField(responseCache, "modificationWatermarkService", modificationWatermarkService);
+        ReflectionTestUtils.setField(responseCache, "metricRegistry", metricRegistry);
+        responseCache.init();
+        countingResource = new CountingResource();
+        this.restMockMvc = MockMvcBuilders.standaloneSetup(countingResource)
+            .addFilters(new ResponseCachingFilter(responseCache, 65536)).build();
+        // The responses cached by the other tests are left under the previous watermark
+        modificationWatermarkService.touch(ModificationWatermarkService.EVENT);
+    }
+
+    @Test
+    public void answerTheSecondRequestFromTheCache() throws Exception {
+        restMockMvc.perform(get("/api/events/{id}", 1L))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.VARY, containsString(HttpHeaders.ACCEPT_ENCODING)))
+            .andExpect(jsonPath("$.calls").value(1));
+
+        restMockMvc.perform(get("/api/events/{id}", 1L))
+            .andExpect(status().isOk())
+            .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+            .andExpect(header().string(HttpHeaders.ETAG, "\"event-1\""))
+            .andExpect(header().string(HttpHeaders.VARY, containsString(HttpHeaders.ACCEPT_ENCODING)))
+            .andExpect(jsonPath("$.calls").value(1));
+
+        assertThat(countingResource.calls.get()).isEqualTo(1);
+        assertThat(meter("hits")).isEqualTo(1);
+        assertThat(meter("misses")).isEqualTo(1);
+    }
+
+    @Test
+    public void answerAPageWhateverTheOrderOfItsParameters() throws Exception {
+        restMockMvc.perform(get("/api/events?page=0&size=20"))
+            .andExpect(status().isOk());
+        restMockMvc.perform(get("/api/events?size=20&page=0"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.calls").value(1));
+        restMockMvc.perform(get("/api/events?size=20&page=1"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.calls").value(2));
+    }
+
+    @Test
+    public void answerNotModifiedOnAMatchingETag() throws Exception {
+        restMockMvc.perform(get("/api/events/{id}", 1L));
+
+        restMockMvc.perform(get("/api/events/{id}", 1L).header(HttpHeaders.IF_NONE_MATCH, "\"event-1\""))
+            .andExpect(status().isNotModified())
+            .andExpect(header().string(HttpHeaders.ETAG, "\"event-1\""))
+            .andExpect(content().string(""));
+        restMockMvc.perform(get("/api/events/{id}", 1L).header(HttpHeaders.IF_NONE_MATCH, "\"event-0\""))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.calls").value(1));
+
+        assertThat(countingResource.calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void answerGzippedOnlyWhenAccepted() throws Exception {
+        byte[] body = restMockMvc.perform(get("/api/events/{id}", 1L))
+            .andReturn().getResponse().getContentAsByteArray();
+
+        byte[] gzipped = restMockMvc.perform(get("/api/events/{id}", 1L).header(HttpHeaders.ACCEPT_ENCODING, "deflate, gzip"))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+            .andReturn().getResponse().getContentAsByteArray();
+        assertThat(gunzip(gzipped)).isEqualTo(body);
+
+        // Refused, even with the wildcard accepted
+        restMockMvc.perform(get("/api/events/{id}", 1L).header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0, *"))
+            .andExpect(status().isOk())
+            .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+            .andExpect(content().bytes(body));
+        restMockMvc.perform(get("/api/events/{id}", 1L).header(HttpHeaders.ACCEPT_ENCODING, "identity"))
+            .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING));
+
+        assertThat(countingResource.calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void invalidateTheResponsesOnACommittedWrite() throws Exception {
+        restMockMvc.perform(get("/api/events/{id}", 1L));
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        // A write rolled back leaves the cached responses reachable
+        transactionTemplate.execute(status -> {
+            responseCache.invalidateAfterCommit(ModificationWatermarkService.EVENT);
+            status.setRollbackOnly();
+            return null;
+        });
+        restMockMvc.perform(get("/api/events/{id}", 1L))
+            .andExpect(jsonPath("$.calls").value(1));
+
+        long watermark = modificationWatermarkService.get(ModificationWatermarkService.EVENT);
+        transactionTemplate.execute(status -> {
+            responseCache.invalidateAfterCommit(ModificationWatermarkService.EVENT);
+            return null;
+        });
+        assertThat(modificationWatermarkService.get(ModificationWatermarkService.EVENT)).isGreaterThan(watermark);
+
+        restMockMvc.perform(get("/api/events/{id}", 1L))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.calls").value(2));
+        assertThat(meter("invalidations")).isEqualTo(1);
+    }
+
+    @Test
+    public void cacheNothingUntilTheReplicasSettle() throws Exception {
+        // The last change may not have reached the replicas yet
+        ReflectionTestUtils.setField(modificationWatermarkService, "settleMillis", Long.MAX_VALUE);
+        try {
+            restMockMvc.perform(get("/api/events/{id}", 1L))
+                .andExpect(jsonPath("$.calls").value(1));
+            restMockMvc.perform(get("/api/events/{id}", 1L))
+                .andExpect(jsonPath("$.calls").value(2));
+        } finally {
+            ReflectionTestUtils.setField(modificationWatermarkService, "settleMillis", 0L);
+        }
+
+        restMockMvc.perform(get("/api/events/{id}", 1L))
+            .andExpect(jsonPath("$.calls").value(3));
+        restMockMvc.perform(get("/api/events/{id}", 1L))
+            .andExpect(jsonPath("$.calls").value(3));
+    }
+
+    private long meter(String name) {
+        return metricRegistry.meter(MetricRegistry.name(ResponseCache.class, name)).getCount();
+    }
+
+    private static byte[] gunzip(byte[] gzipped) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Answers the cached paths with the number of requests which reached it.
+     */
+    @RestController
+    static class CountingResource {
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @RequestMapping(value = "/api/events/{id}", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+        public ResponseEntity<Map<String, Object>> getEvent(@PathVariable Long id) {
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("id", id);
+            body.put("calls", calls.incrementAndGet());
+            return ResponseEntity.ok().eTag("\"event-" + id + "\"").body(body);
+        }
+
+        @RequestMapping(value = "/api/events", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+        public ResponseEntity<Map<String, Object>> getAllEvents() {
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("calls", calls.incrementAndGet());
+            return ResponseEntity.ok().body(body);
+        }
+    }
+}
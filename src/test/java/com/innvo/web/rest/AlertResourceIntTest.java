@@ -1,9 +1,18 @@
 package com.innvo.web.rest;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.innvo.AdapEventApp;
 import com.innvo.domain.Alert;
 import com.innvo.repository.AlertRepository;
 import com.innvo.repository.search.AlertSearchRepository;
+import com.innvo.service.AlertService;
+import com.innvo.service.LiveStreamService;
+import com.innvo.service.ModificationWatermarkService;
+import com.innvo.service.SearchResultCache;
+import com.innvo.service.ShardService;
+import com.innvo.web.rest.dto.AlertStatusTransitionDTO;
+import com.innvo.web.rest.errors.ExceptionTranslator;
+import com.innvo.web.rest.util.ETagUtil;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -12,6 +21,8 @@ import static org.hamcrest.Matchers.hasItem;
 import org.mockito.MockitoAnnotations;
 import org.springframework.boot.test.IntegrationTest;
 import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.data.web.PageableHandlerMethodArgumentResolver;
@@ -24,6 +35,8 @@ import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
@@ -85,6 +98,30 @@ public class AlertResourceIntTest {
     @Inject
     private AlertSearchRepository alertSearchRepository;
 
+    @Inject
+    private LiveStreamService liveStreamService;
+
+    @Inject
+    private ModificationWatermarkService modificationWatermarkService;
+
+    @Inject
+    private SearchResultCache searchResultCache;
+
+    @Inject
+    private ShardService shardService;
+
+    @Inject
+    private AlertService alertService;
+
+    @Inject
+    private ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Inject
+    private ExceptionTranslator exceptionTranslator;
+
     @Inject
     private MappingJackson2HttpMessageConverter jacksonMessageConverter;
 
@@ -99,10 +136,16 @@ public class AlertResourceIntTest {
     public void setup() {
         MockitoAnnotations.initMocks(this);
         AlertResource alertResource = new AlertResource();
-        ReflectionTestUtils.setField(alertResource, "alertSearchRepository", alertSearchRepository);
         ReflectionTestUtils.setField(alertResource, "alertRepository", alertRepository);
+        ReflectionTestUtils.setField(alertResource, "liveStreamService", liveStreamService);
+        ReflectionTestUtils.setField(alertResource, "modificationWatermarkService", modificationWatermarkService);
+        ReflectionTestUtils.setField(alertResource, "searchResultCache", searchResultCache);
+        ReflectionTestUtils.setField(alertResource, "shardService", shardService);
+        ReflectionTestUtils.setField(alertResource, "alertService", alertService);
+        ReflectionTestUtils.setField(alertResource, "objectMapper", objectMapper);
         this.restAlertMockMvc = MockMvcBuilders.standaloneSetup(alertResource)
             .setCustomArgumentResolvers(pageableArgumentResolver)
+            .setControllerAdvice(exceptionTranslator)
             .setMessageConverters(jacksonMessageConverter).build();
     }
 
@@ -299,6 +342,7 @@ public class AlertResourceIntTest {
         // Update the alert
         Alert updatedAlert = new Alert();
         updatedAlert.setId(alert.getId());
+        updatedAlert.setVersion(alert.getVersion());
         updatedAlert.setName(UPDATED_NAME);
         updatedAlert.setDescription(UPDATED_DESCRIPTION);
         updatedAlert.setCategory(UPDATED_CATEGORY);
@@ -339,6 +383,107 @@ public class AlertResourceIntTest {
         assertThat(alertEs).isEqualToComparingFieldByField(testAlert);
     }
 
+    @Test
+    @Transactional
+    public void updateAlertWithoutVersion() throws Exception {
+        // Initialize the database
+        alertRepository.saveAndFlush(alert);
+
+        // Update the alert without its version, nor an ETag
+        restAlertMockMvc.perform(put("/api/alerts")
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content(TestUtil.convertObjectToJsonBytes(unversioned(alert))))
+                .andExpect(status().is(HttpStatus.PRECONDITION_REQUIRED.value()));
+
+        assertThat(alertRepository.findOne(alert.getId()).getName()).isEqualTo(DEFAULT_NAME);
+    }
+
+    @Test
+    @Transactional
+    public void updateAlertWithIfMatch() throws Exception {
+        // Initialize the database
+        alertRepository.saveAndFlush(alert);
+
+        // Update the alert without its version, but with its current ETag
+        restAlertMockMvc.perform(put("/api/alerts")
+                .header(HttpHeaders.IF_MATCH, ETagUtil.entityTag("alert", alert.getId(), alert.getVersion()))
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content(TestUtil.convertObjectToJsonBytes(unversioned(alert))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value(UPDATED_NAME));
+    }
+
+    @Test
+    @Transactional
+    public void transitionAlertStatus() throws Exception {
+        // Initialize the database
+        alertRepository.saveAndFlush(alert);
+
+        // Change the status of the alerts of the domain
+        AlertStatusTransitionDTO transition = new AlertStatusTransitionDTO();
+        transition.setStatus(DEFAULT_STATUS);
+        transition.setDomain(DEFAULT_DOMAIN);
+        transition.setNewStatus(UPDATED_STATUS);
+
+        restAlertMockMvc.perform(post("/api/alerts/status-transitions")
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content(TestUtil.convertObjectToJsonBytes(transition)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.updated").value(1));
+
+        // Validate the Alert in the database, the bulk update bypassing the persistence context
+        entityManager.clear();
+        Alert testAlert = alertRepository.findOne(alert.getId());
+        assertThat(testAlert.getStatus()).isEqualTo(UPDATED_STATUS);
+        assertThat(testAlert.getVersion()).isEqualTo(alert.getVersion() + 1);
+    }
+
+    @Test
+    @Transactional
+    public void transitionOnlyTheMatchingAlerts() throws Exception {
+        // Initialize the database
+        alertRepository.saveAndFlush(alert);
+        Alert otherDomain = unversioned(alert);
+        otherDomain.setId(null);
+        otherDomain.setStatus(DEFAULT_STATUS);
+        otherDomain.setDomain(UPDATED_DOMAIN);
+        alertRepository.saveAndFlush(otherDomain);
+
+        AlertStatusTransitionDTO transition = new AlertStatusTransitionDTO();
+        transition.setDomain(DEFAULT_DOMAIN);
+        transition.setNewStatus(UPDATED_STATUS);
+
+        restAlertMockMvc.perform(post("/api/alerts/status-transitions")
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content(TestUtil.convertObjectToJsonBytes(transition)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.updated").value(1));
+
+        // The changed alert is reindexed, and only it
+        entityManager.clear();
+        assertThat(alertRepository.findOne(otherDomain.getId()).getStatus()).isEqualTo(DEFAULT_STATUS);
+        assertThat(alertSearchRepository.findOne(alert.getId()).getStatus()).isEqualTo(UPDATED_STATUS);
+        assertThat(alertSearchRepository.exists(otherDomain.getId())).isFalse();
+    }
+
+    @Test
+    @Transactional
+    public void rejectATransitionWithoutCriteria() throws Exception {
+        // Initialize the database
+        alertRepository.saveAndFlush(alert);
+
+        AlertStatusTransitionDTO transition = new AlertStatusTransitionDTO();
+        transition.setNewStatus(UPDATED_STATUS);
+
+        restAlertMockMvc.perform(post("/api/alerts/status-transitions")
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content(TestUtil.convertObjectToJsonBytes(transition)))
+                .andExpect(status().isBadRequest());
+
+        entityManager.clear();
+        assertThat(alertRepository.findOne(alert.getId()).getStatus()).isEqualTo(DEFAULT_STATUS);
+    }
+
     @Test
     @Transactional
     public void deleteAlert() throws Exception {
@@ -386,4 +531,18 @@ public class AlertResourceIntTest {
             .andExpect(jsonPath("$.[*].lastmodifieddatetime").value(hasItem(DEFAULT_LASTMODIFIEDDATETIME_STR)))
             .andExpect(jsonPath("$.[*].domain").value(hasItem(DEFAULT_DOMAIN.toString())));
     }
+
+    /**
+     * @return an update of the alert without its version
+     */
+    private static Alert unversioned(Alert alert) {
+        Alert updatedAlert = new Alert();
+        updatedAlert.setId(alert.getId());
+        updatedAlert.setName(UPDATED_NAME);
+        updatedAlert.setStatus(alert.getStatus());
+        updatedAlert.setLastmodifiedby(alert.getLastmodifiedby());
+        updatedAlert.setLastmodifieddatetime(alert.getLastmodifieddatetime());
+        updatedAlert.setDomain(alert.getDomain());
+        return updatedAlert;
+    }
 }
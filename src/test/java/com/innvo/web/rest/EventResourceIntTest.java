@@ -1,36 +1,70 @@
 package com.innvo.web.rest;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.innvo.AdapEventApp;
 import com.innvo.domain.Event;
 import com.innvo.repository.EventRepository;
 import com.innvo.repository.search.EventSearchRepository;
+import com.innvo.service.BulkLoadService;
+import com.innvo.service.EventColdStorage;
+import com.innvo.service.EventDeduplicator;
+import com.innvo.service.EventService;
+import com.innvo.service.EventTimeIndex;
+import com.innvo.service.LiveStreamService;
+import com.innvo.service.ModificationWatermarkService;
+import com.innvo.service.RateLimiter;
+import com.innvo.service.RecentEventStore;
+import com.innvo.service.SearchResultCache;
+import com.innvo.service.ShardService;
+import com.innvo.web.rest.converter.FramedStreamCodec;
+import com.innvo.web.rest.errors.ExceptionTranslator;
+import com.innvo.web.rest.util.ETagUtil;
+import com.innvo.web.rest.util.MergePatchUtil;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.notNullValue;
 import org.mockito.MockitoAnnotations;
 import org.springframework.boot.test.IntegrationTest;
 import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.web.PageableHandlerMethodArgumentResolver;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -82,15 +116,59 @@ public class EventResourceIntTest {
     @Inject
     private EventRepository eventRepository;
 
+    @Inject
+    private EventService eventService;
+
     @Inject
     private EventSearchRepository eventSearchRepository;
 
+    @Inject
+    private FramedStreamCodec framedStreamCodec;
+
+    @Inject
+    private RecentEventStore recentEventStore;
+
+    @Inject
+    private EventTimeIndex eventTimeIndex;
+
+    @Inject
+    private EventColdStorage eventColdStorage;
+
+    @Inject
+    private BulkLoadService bulkLoadService;
+
+    @Inject
+    private EventDeduplicator eventDeduplicator;
+
+    @Inject
+    private LiveStreamService liveStreamService;
+
+    @Inject
+    private ModificationWatermarkService modificationWatermarkService;
+
+    @Inject
+    private SearchResultCache searchResultCache;
+
+    @Inject
+    private ShardService shardService;
+
+    @Inject
+    private RateLimiter rateLimiter;
+
+    @Inject
+    private ObjectMapper objectMapper;
+
+    @Inject
+    private ExceptionTranslator exceptionTranslator;
+
     @Inject
     private MappingJackson2HttpMessageConverter jacksonMessageConverter;
 
     @Inject
     private PageableHandlerMethodArgumentResolver pageableArgumentResolver;
 
+    private EventResource eventResource;
+
     private MockMvc restEventMockMvc;
 
     private Event event;
@@ -98,11 +176,24 @@ public class EventResourceIntTest {
     @PostConstruct
     public void setup() {
         MockitoAnnotations.initMocks(this);
-        EventResource eventResource = new EventResource();
-        ReflectionTestUtils.setField(eventResource, "eventSearchRepository", eventSearchRepository);
+        eventResource = new EventResource();
         ReflectionTestUtils.setField(eventResource, "eventRepository", eventRepository);
+        ReflectionTestUtils.setField(eventResource, "eventService", eventService);
+        ReflectionTestUtils.setField(eventResource, "framedStreamCodec", framedStreamCodec);
+        ReflectionTestUtils.setField(eventResource, "recentEventStore", recentEventStore);
+        ReflectionTestUtils.setField(eventResource, "eventTimeIndex", eventTimeIndex);
+        ReflectionTestUtils.setField(eventResource, "eventColdStorage", eventColdStorage);
+        ReflectionTestUtils.setField(eventResource, "bulkLoadService", bulkLoadService);
+        ReflectionTestUtils.setField(eventResource, "eventDeduplicator", eventDeduplicator);
+        ReflectionTestUtils.setField(eventResource, "liveStreamService", liveStreamService);
+        ReflectionTestUtils.setField(eventResource, "modificationWatermarkService", modificationWatermarkService);
+        ReflectionTestUtils.setField(eventResource, "searchResultCache", searchResultCache);
+        ReflectionTestUtils.setField(eventResource, "shardService", shardService);
+        ReflectionTestUtils.setField(eventResource, "rateLimiter", rateLimiter);
+        ReflectionTestUtils.setField(eventResource, "objectMapper", objectMapper);
         this.restEventMockMvc = MockMvcBuilders.standaloneSetup(eventResource)
             .setCustomArgumentResolvers(pageableArgumentResolver)
+            .setControllerAdvice(exceptionTranslator)
             .setMessageConverters(jacksonMessageConverter).build();
     }
 
@@ -158,6 +249,178 @@ public class EventResourceIntTest {
         assertThat(eventEs).isEqualToComparingFieldByField(testEvent);
     }
 
+    @Test
+    @Transactional
+    public void createEventsInBulk() throws Exception {
+        int databaseSizeBeforeCreate = eventRepository.findAll().size();
+
+        Event other = new Event();
+        other.setName(UPDATED_NAME);
+        other.setStatus(UPDATED_STATUS);
+        other.setLastmodifiedby(UPDATED_LASTMODIFIEDBY);
+        other.setLastmodifieddatetime(UPDATED_LASTMODIFIEDDATETIME);
+        other.setDomain(UPDATED_DOMAIN);
+
+        restEventMockMvc.perform(post("/api/events/bulk")
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content(TestUtil.convertObjectToJsonBytes(Arrays.asList(event, other))))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.created").value(2));
+
+        List<Event> events = eventRepository.findAll();
+        assertThat(events).hasSize(databaseSizeBeforeCreate + 2);
+    }
+
+    @Test
+    @Transactional
+    public void createEventsFromFrames() throws Exception {
+        int databaseSizeBeforeCreate = eventRepository.findAll().size();
+        Event other = unversioned(event);
+        // Ignored, so that an export can be imported again
+        other.setId(Long.MAX_VALUE);
+
+        restEventMockMvc.perform(post("/api/events/bulk")
+                .contentType(FramedStreamCodec.APPLICATION_FRAMES)
+                .content(frames(Arrays.asList(event, other))))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.created").value(2));
+
+        List<Event> events = eventRepository.findAll();
+        assertThat(events).hasSize(databaseSizeBeforeCreate + 2);
+        assertThat(events).extracting(Event::getName).contains(DEFAULT_NAME, UPDATED_NAME);
+        assertThat(eventRepository.findOne(Long.MAX_VALUE)).isNull();
+    }
+
+    @Test
+    @Transactional
+    public void rejectAnInvalidEventInBulk() throws Exception {
+        int databaseSizeBeforeCreate = eventRepository.findAll().size();
+        Event invalid = unversioned(event);
+        invalid.setStatus(null);
+
+        restEventMockMvc.perform(post("/api/events/bulk")
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content(TestUtil.convertObjectToJsonBytes(Arrays.asList(event, invalid))))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.params[0]").value("1"));
+
+        // None of them is created
+        assertThat(eventRepository.findAll()).hasSize(databaseSizeBeforeCreate);
+    }
+
+    @Test
+    @Transactional
+    public void stopTheFramesAtAnInvalidOne() throws Exception {
+        int databaseSizeBeforeCreate = eventRepository.findAll().size();
+        Event invalid = unversioned(event);
+        invalid.setName(UPDATED_NAME);
+        invalid.setDomain(null);
+        Event after = unversioned(event);
+        after.setName(UPDATED_NAME);
+
+        restEventMockMvc.perform(post("/api/events/bulk")
+                .contentType(FramedStreamCodec.APPLICATION_FRAMES)
+                .content(frames(Arrays.asList(event, invalid, after))))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.params[0]").value("1"))
+                .andExpect(jsonPath("$.params[1]").value("1"));
+
+        // The frames before the invalid one are created, so that the import can be resumed from it
+        List<Event> events = eventRepository.findAll();
+        assertThat(events).hasSize(databaseSizeBeforeCreate + 1);
+        assertThat(events).extracting(Event::getName).doesNotContain(UPDATED_NAME);
+    }
+
+    @Test
+    @Transactional
+    public void stopTheFramesOverTheRateLimit() throws Exception {
+        int databaseSizeBeforeCreate = eventRepository.findAll().size();
+        List<Event> stream = new ArrayList<>();
+        // One more than a batch
+        for (int i = 0; i < 501; i++) {
+            Event frame = unversioned(event);
+            frame.setName("frame " + i);
+            stream.add(frame);
+        }
+        RateLimiter overLimit = mock(RateLimiter.class);
+        when(overLimit.charge(anyString(), eq(RateLimiter.EndpointClass.INGEST), anyInt())).thenReturn(1500L);
+        ReflectionTestUtils.setField(eventResource, "rateLimiter", overLimit);
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken("user", "password"));
+        try {
+            restEventMockMvc.perform(post("/api/events/bulk")
+                    .contentType(FramedStreamCodec.APPLICATION_FRAMES)
+                    .content(frames(stream)))
+                    .andExpect(status().is(HttpStatus.TOO_MANY_REQUESTS.value()))
+                    .andExpect(header().string(HttpHeaders.RETRY_AFTER, "2"))
+                    .andExpect(jsonPath("$.created").value(500))
+                    .andExpect(jsonPath("$.duplicates").value(0));
+        } finally {
+            SecurityContextHolder.clearContext();
+            ReflectionTestUtils.setField(eventResource, "rateLimiter", rateLimiter);
+        }
+
+        // The first batch is created, and the stream is not read any further
+        List<Event> events = eventRepository.findAll();
+        assertThat(events).hasSize(databaseSizeBeforeCreate + 500);
+        assertThat(events).extracting(Event::getName).contains("frame 499").doesNotContain("frame 500");
+    }
+
+    @Test
+    public void exportAndImportEventFrames() throws Exception {
+        // Committed, as the export is read by another thread; at a start date of its own
+        ZonedDateTime start = ZonedDateTime.of(1999, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+        event.setStartdatetime(start);
+        eventRepository.saveAndFlush(event);
+        try {
+            MvcResult export = restEventMockMvc.perform(get("/api/events/export")
+                    .param("from", dateTimeFormatter.format(start.minusSeconds(1)))
+                    .param("to", dateTimeFormatter.format(start.plusSeconds(1)))
+                    .accept(FramedStreamCodec.APPLICATION_FRAMES))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+            byte[] frames = restEventMockMvc.perform(asyncDispatch(export))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentType(FramedStreamCodec.APPLICATION_FRAMES))
+                    .andReturn().getResponse().getContentAsByteArray();
+
+            List<Event> exported = readFrames(frames);
+            assertThat(exported).extracting(Event::getId).containsExactly(event.getId());
+            assertThat(exported.get(0).getName()).isEqualTo(DEFAULT_NAME);
+            assertThat(exported.get(0).getStartdatetime().toInstant()).isEqualTo(start.toInstant());
+            assertThat(exported.get(0).getDomain()).isEqualTo(DEFAULT_DOMAIN);
+
+            // Imported again as a new event
+            restEventMockMvc.perform(post("/api/events/bulk")
+                    .contentType(FramedStreamCodec.APPLICATION_FRAMES)
+                    .content(frames))
+                    .andExpect(status().isCreated())
+                    .andExpect(jsonPath("$.created").value(1));
+            assertThat(eventRepository.findByStartdatetimeBetween(start, start, new PageRequest(0, 10))).hasSize(2);
+        } finally {
+            eventRepository.delete(eventRepository.findByStartdatetimeBetween(start, start, new PageRequest(0, 10)));
+        }
+    }
+
+    private byte[] frames(List<Event> events) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (FramedStreamCodec.FrameWriter<Event> writer = framedStreamCodec.writer(out, Event.class)) {
+            for (Event event : events) {
+                writer.write(event);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private List<Event> readFrames(byte[] frames) throws IOException {
+        FramedStreamCodec.FrameReader<Event> reader = framedStreamCodec.reader(new ByteArrayInputStream(frames), Event.class);
+        List<Event> events = new ArrayList<>();
+        Event event;
+        while ((event = reader.next()) != null) {
+            events.add(event);
+        }
+        return events;
+    }
+
     @Test
     @Transactional
     public void checkStatusIsRequired() throws Exception {
@@ -255,6 +518,28 @@ public class EventResourceIntTest {
                 .andExpect(jsonPath("$.[*].domain").value(hasItem(DEFAULT_DOMAIN.toString())));
     }
 
+    @Test
+    @Transactional
+    public void getAllEventsWithoutValidatorsUntilTheReplicasSettle() throws Exception {
+        // Initialize the database
+        eventRepository.saveAndFlush(event);
+        String etag = restEventMockMvc.perform(get("/api/events?sort=id,desc"))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, notNullValue()))
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // The last change may not have reached the replicas yet
+        ReflectionTestUtils.setField(modificationWatermarkService, "settleMillis", Long.MAX_VALUE);
+        try {
+            restEventMockMvc.perform(get("/api/events?sort=id,desc").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.ETAG))
+                .andExpect(header().doesNotExist(HttpHeaders.LAST_MODIFIED));
+        } finally {
+            ReflectionTestUtils.setField(modificationWatermarkService, "settleMillis", 0L);
+        }
+    }
+
     @Test
     @Transactional
     public void getEvent() throws Exception {
@@ -280,6 +565,28 @@ public class EventResourceIntTest {
             .andExpect(jsonPath("$.domain").value(DEFAULT_DOMAIN.toString()));
     }
 
+    @Test
+    @Transactional
+    public void getUnchangedEvent() throws Exception {
+        // Initialize the database
+        eventRepository.saveAndFlush(event);
+
+        // Get the event, then get it again with its ETag
+        String etag = restEventMockMvc.perform(get("/api/events/{id}", event.getId()))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, notNullValue()))
+            .andExpect(header().doesNotExist(HttpHeaders.LAST_MODIFIED))
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        restEventMockMvc.perform(get("/api/events/{id}", event.getId()).header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isNotModified())
+            .andExpect(content().string(""));
+
+        // The modification date set by the client is not a validator
+        restEventMockMvc.perform(get("/api/events/{id}", event.getId())
+                .header(HttpHeaders.IF_MODIFIED_SINCE, "Fri, 01 Jan 2100 00:00:00 GMT"))
+            .andExpect(status().isOk());
+    }
+
     @Test
     @Transactional
     public void getNonExistingEvent() throws Exception {
@@ -299,6 +606,7 @@ public class EventResourceIntTest {
         // Update the event
         Event updatedEvent = new Event();
         updatedEvent.setId(event.getId());
+        updatedEvent.setVersion(event.getVersion());
         updatedEvent.setName(UPDATED_NAME);
         updatedEvent.setDescription(UPDATED_DESCRIPTION);
         updatedEvent.setCategory(UPDATED_CATEGORY);
@@ -339,6 +647,116 @@ public class EventResourceIntTest {
         assertThat(eventEs).isEqualToComparingFieldByField(testEvent);
     }
 
+    @Test
+    @Transactional
+    public void updateEventWithStaleVersion() throws Exception {
+        // Initialize the database
+        eventRepository.saveAndFlush(event);
+
+        // Update the event from an outdated version
+        Event staleEvent = new Event();
+        staleEvent.setId(event.getId());
+        staleEvent.setVersion(event.getVersion() + 1);
+        staleEvent.setName(UPDATED_NAME);
+        staleEvent.setStatus(UPDATED_STATUS);
+        staleEvent.setLastmodifiedby(UPDATED_LASTMODIFIEDBY);
+        staleEvent.setLastmodifieddatetime(UPDATED_LASTMODIFIEDDATETIME);
+        staleEvent.setDomain(UPDATED_DOMAIN);
+
+        restEventMockMvc.perform(put("/api/events")
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content(TestUtil.convertObjectToJsonBytes(staleEvent)))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    @Transactional
+    public void updateEventWithoutVersion() throws Exception {
+        // Initialize the database
+        eventRepository.saveAndFlush(event);
+
+        // Update the event without its version, nor an ETag
+        restEventMockMvc.perform(put("/api/events")
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content(TestUtil.convertObjectToJsonBytes(unversioned(event))))
+                .andExpect(status().is(HttpStatus.PRECONDITION_REQUIRED.value()));
+
+        assertThat(eventRepository.findOne(event.getId()).getName()).isEqualTo(DEFAULT_NAME);
+    }
+
+    @Test
+    @Transactional
+    public void updateEventWithIfMatch() throws Exception {
+        // Initialize the database
+        eventRepository.saveAndFlush(event);
+
+        // Update the event without its version, but with its current ETag
+        restEventMockMvc.perform(put("/api/events")
+                .header(HttpHeaders.IF_MATCH, ETagUtil.entityTag("event", event.getId(), event.getVersion()))
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content(TestUtil.convertObjectToJsonBytes(unversioned(event))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value(UPDATED_NAME));
+    }
+
+    @Test
+    @Transactional
+    public void updateEventWithStaleIfMatch() throws Exception {
+        // Initialize the database
+        eventRepository.saveAndFlush(event);
+
+        restEventMockMvc.perform(put("/api/events")
+                .header(HttpHeaders.IF_MATCH, ETagUtil.entityTag("event", event.getId(), event.getVersion() + 1))
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content(TestUtil.convertObjectToJsonBytes(unversioned(event))))
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    @Transactional
+    public void patchEvent() throws Exception {
+        // Initialize the database
+        eventRepository.saveAndFlush(event);
+
+        // Patch the name of the event only
+        restEventMockMvc.perform(patch("/api/events/{id}", event.getId())
+                .contentType(MediaType.valueOf(MergePatchUtil.APPLICATION_MERGE_PATCH_JSON_VALUE))
+                .content("{\"name\": \"" + UPDATED_NAME + "\"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value(UPDATED_NAME))
+                .andExpect(jsonPath("$.description").value(DEFAULT_DESCRIPTION));
+
+        // Validate the Event in the database
+        Event testEvent = eventRepository.findOne(event.getId());
+        assertThat(testEvent.getName()).isEqualTo(UPDATED_NAME);
+        assertThat(testEvent.getDescription()).isEqualTo(DEFAULT_DESCRIPTION);
+    }
+
+    @Test
+    @Transactional
+    public void patchEventWithStaleVersion() throws Exception {
+        // Initialize the database
+        eventRepository.saveAndFlush(event);
+
+        restEventMockMvc.perform(patch("/api/events/{id}", event.getId())
+                .contentType(MediaType.valueOf(MergePatchUtil.APPLICATION_MERGE_PATCH_JSON_VALUE))
+                .content("{\"name\": \"" + UPDATED_NAME + "\", \"version\": " + (event.getVersion() + 1) + "}"))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    @Transactional
+    public void patchEventWithStaleIfMatch() throws Exception {
+        // Initialize the database
+        eventRepository.saveAndFlush(event);
+
+        restEventMockMvc.perform(patch("/api/events/{id}", event.getId())
+                .header(HttpHeaders.IF_MATCH, ETagUtil.entityTag("event", event.getId(), event.getVersion() + 1))
+                .contentType(MediaType.valueOf(MergePatchUtil.APPLICATION_MERGE_PATCH_JSON_VALUE))
+                .content("{\"name\": \"" + UPDATED_NAME + "\"}"))
+                .andExpect(status().isPreconditionFailed());
+    }
+
     @Test
     @Transactional
     public void deleteEvent() throws Exception {
@@ -386,4 +804,18 @@ public class EventResourceIntTest {
             .andExpect(jsonPath("$.[*].lastmodifieddatetime").value(hasItem(DEFAULT_LASTMODIFIEDDATETIME_STR)))
             .andExpect(jsonPath("$.[*].domain").value(hasItem(DEFAULT_DOMAIN.toString())));
     }
+
+    /**
+     * @return an update of the event without its version
+     */
+    private static Event unversioned(Event event) {
+        Event updatedEvent = new Event();
+        updatedEvent.setId(event.getId());
+        updatedEvent.setName(UPDATED_NAME);
+        updatedEvent.setStatus(event.getStatus());
+        updatedEvent.setLastmodifiedby(event.getLastmodifiedby());
+        updatedEvent.setLastmodifieddatetime(event.getLastmodifieddatetime());
+        updatedEvent.setDomain(event.getDomain());
+        return updatedEvent;
+    }
 }
@@ -0,0 +1,190 @@
+package com.innvo.web.rest;
+
+import com.innvo.AdapEventApp;
+import com.innvo.domain.Event;
+import com.innvo.repository.EventRepository;
+import com.innvo.repository.search.EventSearchRepository;
+import com.innvo.security.AuthoritiesConstants;
+import com.innvo.service.EventService;
+import com.innvo.service.PurgeService;
+import com.innvo.service.ShardService;
+import com.innvo.web.rest.dto.PurgeJobDTO;
+import com.innvo.web.rest.errors.ExceptionTranslator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.IntegrationTest;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import javax.inject.Inject;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.startsWith;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Test class for the PurgeJobResource REST controller.
+ *
+ * <p>
+ * The purge jobs run in their own transactions on another thread, so the rows they delete are committed, and
+ * the controller is the proxy checking its secured methods.
+ * </p>
+ *
+ * @see PurgeJobResource
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = AdapEventApp.class)
+@WebAppConfiguration
+@IntegrationTest
+public class PurgeJobResourceIntTest {
+
+    private static final String PURGED_DOMAIN = "PURGED";
+
+    private static final long JOB_TIMEOUT_MILLIS = 10000;
+
+    @Inject
+    private PurgeJobResource purgeJobResource;
+
+    @Inject
+    private PurgeService purgeService;
+
+    @Inject
+    private EventService eventService;
+
+    @Inject
+    private EventRepository eventRepository;
+
+    @Inject
+    private EventSearchRepository eventSearchRepository;
+
+    @Inject
+    private ShardService shardService;
+
+    @Inject
+    private CacheManager cacheManager;
+
+    @Inject
+    private ExceptionTranslator exceptionTranslator;
+
+    @Inject
+    private MappingJackson2HttpMessageConverter jacksonMessageConverter;
+
+    private MockMvc restPurgeJobMockMvc;
+
+    private List<Long> ids;
+
+    @Before
+    public void setup() {
+        this.restPurgeJobMockMvc = MockMvcBuilders.standaloneSetup(purgeJobResource)
+            .setControllerAdvice(exceptionTranslator)
+            .setMessageConverters(jacksonMessageConverter).build();
+        ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Event event = new Event();
+            event.setName("purged_" + i);
+            event.setStatus("Active");
+            event.setLastmodifiedby("system");
+            event.setLastmodifieddatetime(ZonedDateTime.ofInstant(Instant.ofEpochMilli(0L), ZoneId.systemDefault()));
+            event.setDomain(PURGED_DOMAIN);
+            event = eventService.save(event);
+            shardService.indexEvent(ShardService.DEFAULT_SHARD, event);
+            ids.add(event.getId());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+        ids.stream().filter(eventRepository::exists).forEach(eventRepository::delete);
+        ids.stream().filter(eventSearchRepository::exists).forEach(eventSearchRepository::delete);
+        eventService.evict(ids);
+    }
+
+    @Test
+    public void purgeEvents() throws Exception {
+        authenticate(AuthoritiesConstants.ADMIN);
+        // Read the events once, so that they are cached
+        ids.forEach(eventService::findOne);
+        assertThat(cacheManager.getCache(EventService.CACHE_NAME).get(ids.get(0))).isNotNull();
+
+        String jobId = restPurgeJobMockMvc.perform(post("/api/events/purge")
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content("{\"domain\": \"" + PURGED_DOMAIN + "\"}"))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", startsWith("/api/purge-jobs/")))
+                .andExpect(jsonPath("$.entity").value("event"))
+                .andReturn().getResponse().getHeader("Location").substring("/api/purge-jobs/".length());
+
+        PurgeJobDTO job = awaitJob(jobId);
+        assertThat(job.getState()).isEqualTo(PurgeJobDTO.State.COMPLETED);
+        assertThat(job.getDeleted()).isEqualTo(ids.size());
+
+        for (Long id : ids) {
+            assertThat(eventRepository.exists(id)).isFalse();
+            assertThat(eventSearchRepository.exists(id)).isFalse();
+            assertThat(cacheManager.getCache(EventService.CACHE_NAME).get(id)).isNull();
+            assertThat(eventService.findOne(id)).isNull();
+        }
+    }
+
+    @Test
+    public void purgeEventsWithoutCriteria() throws Exception {
+        authenticate(AuthoritiesConstants.ADMIN);
+
+        restPurgeJobMockMvc.perform(post("/api/events/purge")
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content("{}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void purgeEventsIsForbiddenToUsers() throws Exception {
+        authenticate(AuthoritiesConstants.USER);
+
+        restPurgeJobMockMvc.perform(post("/api/events/purge")
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content("{\"domain\": \"" + PURGED_DOMAIN + "\"}"))
+                .andExpect(status().isForbidden());
+        restPurgeJobMockMvc.perform(post("/api/alerts/purge")
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content("{\"domain\": \"" + PURGED_DOMAIN + "\"}"))
+                .andExpect(status().isForbidden());
+
+        for (Long id : ids) {
+            assertThat(eventRepository.exists(id)).isTrue();
+        }
+    }
+
+    private static void authenticate(String authority) {
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken("test", "test",
+            Collections.singletonList(new SimpleGrantedAuthority(authority))));
+    }
+
+    private PurgeJobDTO awaitJob(String jobId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + JOB_TIMEOUT_MILLIS;
+        PurgeJobDTO job = purgeService.findJob(jobId).get();
+        while (job.getState() == PurgeJobDTO.State.RUNNING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            job = purgeService.findJob(jobId).get();
+        }
+        return job;
+    }
+}
@@ -0,0 +1,194 @@
+package com.innvo.web.rest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.innvo.AdapEventApp;
+import com.innvo.domain.Event;
+import com.innvo.repository.search.EventSearchRepository;
+import com.innvo.service.StructuredSearchService;
+import com.innvo.web.rest.dto.SearchRequestDTO;
+import com.innvo.web.rest.errors.ExceptionTranslator;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.IntegrationTest;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Test class for the StructuredSearchResource REST controller: the pages of the cursor, with the events without a
+ * start date last, and the criteria sent as null.
+ *
+ * @see StructuredSearchResource
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = AdapEventApp.class)
+@WebAppConfiguration
+@IntegrationTest
+public class StructuredSearchResourceIntTest {
+
+    private static final long START = 1467331200000L;
+
+    @Inject
+    private StructuredSearchService structuredSearchService;
+
+    @Inject
+    private EventSearchRepository eventSearchRepository;
+
+    @Inject
+    private ObjectMapper objectMapper;
+
+    @Inject
+    private ExceptionTranslator exceptionTranslator;
+
+    @Inject
+    private MappingJackson2HttpMessageConverter jacksonMessageConverter;
+
+    private MockMvc restStructuredSearchMockMvc;
+
+    @PostConstruct
+    public void setup() {
+        StructuredSearchResource structuredSearchResource = new StructuredSearchResource();
+        ReflectionTestUtils.setField(structuredSearchResource, "structuredSearchService", structuredSearchService);
+        this.restStructuredSearchMockMvc = MockMvcBuilders.standaloneSetup(structuredSearchResource)
+            .setControllerAdvice(exceptionTranslator)
+            .setMessageConverters(new ByteArrayHttpMessageConverter(), jacksonMessageConverter).build();
+    }
+
+    @Before
+    public void initTest() {
+        eventSearchRepository.deleteAll();
+        // Three events tied on their start date, ordered by id, and an older one
+        eventSearchRepository.save(Arrays.asList(event(1L, START), event(2L, START), event(3L, START), event(4L, START - 1000)));
+    }
+
+    @Test
+    public void pageThroughTiesWithTheCursor() throws Exception {
+        SearchRequestDTO request = new SearchRequestDTO();
+        request.setSize(2);
+
+        JsonNode first = search(request);
+
+        assertThat(ids(first)).containsExactly("3", "2");
+        assertThat(first.get("total").asLong()).isEqualTo(4);
+        // The start date and id of the last hit
+        assertThat(first.get("searchAfter").get(0).asLong()).isEqualTo(START);
+        assertThat(first.get("searchAfter").get(1).asLong()).isEqualTo(2);
+
+        request.setSearchAfter(Arrays.asList(first.get("searchAfter").get(0).asLong(), first.get("searchAfter").get(1).asLong()));
+        JsonNode second = search(request);
+
+        // The last tie, then past the page boundary to the older start date
+        assertThat(ids(second)).containsExactly("1", "4");
+        assertThat(second.get("searchAfter").get(0).asLong()).isEqualTo(START - 1000);
+        assertThat(second.get("searchAfter").get(1).asLong()).isEqualTo(4);
+
+        request.setSearchAfter(Arrays.asList(START - 1000, 4L));
+        JsonNode last = search(request);
+
+        assertThat(ids(last)).isEmpty();
+        assertThat(last.has("searchAfter")).isFalse();
+    }
+
+    @Test
+    public void endTheCursorOnAPageNotFull() throws Exception {
+        SearchRequestDTO request = new SearchRequestDTO();
+        request.setSize(3);
+        request.setSearchAfter(Arrays.asList(START, 3L));
+
+        JsonNode page = search(request);
+
+        assertThat(ids(page)).containsExactly("2", "1", "4");
+        assertThat(page.has("searchAfter")).isTrue();
+
+        request.setSize(4);
+        assertThat(search(request).has("searchAfter")).isFalse();
+    }
+
+    @Test
+    public void pageThroughTheEventsWithoutAStartDateLast() throws Exception {
+        eventSearchRepository.save(Arrays.asList(event(5L, null), event(6L, null)));
+        SearchRequestDTO request = new SearchRequestDTO();
+        request.setSize(2);
+        request.setSearchAfter(Arrays.asList(START, 2L));
+
+        JsonNode first = search(request);
+
+        assertThat(ids(first)).containsExactly("1", "4");
+        assertThat(first.get("total").asLong()).isEqualTo(4);
+
+        request.setSearchAfter(Arrays.asList(START - 1000, 4L));
+        JsonNode second = search(request);
+
+        assertThat(ids(second)).containsExactly("6", "5");
+        assertThat(second.get("searchAfter").get(0).asLong()).isEqualTo(StructuredSearchService.MISSING_START);
+        assertThat(second.get("searchAfter").get(1).asLong()).isEqualTo(5);
+
+        request.setSearchAfter(Arrays.asList(StructuredSearchService.MISSING_START, 6L));
+        assertThat(ids(search(request))).containsExactly("5");
+    }
+
+    @Test
+    public void rejectACursorWithANullValue() throws Exception {
+        restStructuredSearchMockMvc.perform(post("/api/_search/events")
+            .contentType(TestUtil.APPLICATION_JSON_UTF8)
+            .content("{\"searchAfter\": [null, 5]}"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void searchWithNullCriteria() throws Exception {
+        restStructuredSearchMockMvc.perform(post("/api/_search/events")
+            .contentType(TestUtil.APPLICATION_JSON_UTF8)
+            .content("{\"terms\": null, \"ranges\": null, \"includes\": null, \"size\": 10}"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.total").value(4));
+    }
+
+    private JsonNode search(SearchRequestDTO request) throws Exception {
+        byte[] response = restStructuredSearchMockMvc.perform(post("/api/_search/events")
+            .contentType(TestUtil.APPLICATION_JSON_UTF8)
+            .content(TestUtil.convertObjectToJsonBytes(request)))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsByteArray();
+        return objectMapper.readTree(response);
+    }
+
+    private static List<String> ids(JsonNode page) {
+        List<String> ids = new ArrayList<>();
+        page.get("hits").forEach(hit -> ids.add(hit.get("id").asText()));
+        return ids;
+    }
+
+    private static Event event(Long id, Long startMillis) {
+        Event event = new Event();
+        event.setId(id);
+        event.setName("event " + id);
+        if (startMillis != null) {
+            event.setStartdatetime(ZonedDateTime.ofInstant(Instant.ofEpochMilli(startMillis), ZoneOffset.UTC));
+        }
+        event.setStatus("Active");
+        event.setDomain("DEMO");
+        return event;
+    }
+}